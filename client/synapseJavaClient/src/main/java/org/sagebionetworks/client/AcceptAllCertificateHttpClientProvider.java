@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Map;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
@@ -66,6 +67,12 @@ public class AcceptAllCertificateHttpClientProvider implements HttpClientProvide
 		return HttpClientHelper.performRequest(getSingleton(), requestUrl, requestMethod, requestContent, requestHeaders);
 	}
 
+	@Override
+	public HttpResponse performEntityRequest(String requestUrl, String requestMethod,
+			HttpEntity requestEntity, Map<String, String> requestHeaders, Integer socketTimeoutMs) throws ClientProtocolException, IOException, HttpClientHelperException {
+		return HttpClientHelper.performEntityRequest(getSingleton(), requestUrl, requestMethod, requestEntity, requestHeaders, socketTimeoutMs);
+	}
+
 
 	@Override
 	public void downloadFile(String requestUrl, String filepath)
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.sagebionetworks.utils.HttpClientHelperException;
@@ -79,4 +80,20 @@ public interface HttpClientProvider {
 	 */
 	public HttpResponse performRequest(String string, String requestMethod,	String requestContent, Map<String, String> requestHeaders) throws ClientProtocolException, IOException, HttpClientHelperException;
 
+	/**
+	 * Perform an HTTP request with the passed entity as the body.  Use this to stream a body
+	 * that should not be held in memory.
+	 * @param requestUrl
+	 * @param requestMethod
+	 * @param requestEntity
+	 * @param requestHeaders
+	 * @param socketTimeoutMs The socket timeout for this request only, or null to use the default.
+	 * A streamed body can take much longer than the default timeout.
+	 * @return the response
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 * @throws HttpClientHelperException
+	 */
+	public HttpResponse performEntityRequest(String requestUrl, String requestMethod, HttpEntity requestEntity, Map<String, String> requestHeaders, Integer socketTimeoutMs) throws ClientProtocolException, IOException, HttpClientHelperException;
+
 }
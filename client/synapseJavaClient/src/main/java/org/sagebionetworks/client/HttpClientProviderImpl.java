@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Map;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
@@ -41,6 +42,12 @@ public class HttpClientProviderImpl implements HttpClientProvider {
 		return HttpClientHelper.performRequest(DefaultHttpClientSingleton.getInstance(), requestUrl, requestMethod, requestContent, requestHeaders);
 	}
 
+	@Override
+	public HttpResponse performEntityRequest(String requestUrl, String requestMethod,
+			HttpEntity requestEntity, Map<String, String> requestHeaders, Integer socketTimeoutMs) throws ClientProtocolException, IOException, HttpClientHelperException {
+		return HttpClientHelper.performEntityRequest(DefaultHttpClientSingleton.getInstance(), requestUrl, requestMethod, requestEntity, requestHeaders, socketTimeoutMs);
+	}
+
 	@Override
 	public void downloadFile(String requestUrl, String filepath)throws ClientProtocolException, IOException, HttpClientHelperException {
 		HttpClientHelper.downloadFile(DefaultHttpClientSingleton.getInstance(), requestUrl, filepath);
@@ -98,6 +98,8 @@ public class Synapse {
 	protected static final String PASSWORD_FIELD = "password";
 	
 	protected static final String QUERY_URI = "/query?query=";
+	protected static final String KEYSET_PARAM = "keyset";
+	protected static final String PAGE_TOKEN_PARAM = "pageToken";
 	protected static final String REPO_SUFFIX_PATH = "/path";	
 	protected static final String REPO_SUFFIX_VERSION = "/version";
 	protected static final String ANNOTATION_URI_SUFFIX = "annotations";
@@ -1091,6 +1093,41 @@ public class Synapse {
 		return querySynapse(repoEndpoint, query);
 	}
 
+	/**
+	 * Perform a query using keyset paging. The offset of the query is ignored;
+	 * instead each result contains a 'nextPageToken' that should be passed to
+	 * fetch the following page. The token is absent when there are no more
+	 * results. The total number of results is only computed for the first page.
+	 * 
+	 * @param query
+	 *            the query to perform
+	 * @param pageToken
+	 *            the 'nextPageToken' from the previous page or null for the
+	 *            first page
+	 * @return the query result
+	 * @throws SynapseException
+	 */
+	public JSONObject queryWithPageToken(String query, String pageToken) throws SynapseException {
+		if (null == query) {
+			throw new IllegalArgumentException("must provide a query");
+		}
+		try {
+			StringBuilder queryUri = new StringBuilder();
+			queryUri.append(QUERY_URI).append(URLEncoder.encode(query, "UTF-8"));
+			queryUri.append("&").append(KEYSET_PARAM).append("=true");
+			if (pageToken != null) {
+				queryUri.append("&").append(PAGE_TOKEN_PARAM).append("=")
+						.append(URLEncoder.encode(pageToken, "UTF-8"));
+			}
+			Map<String, String> requestHeaders = new HashMap<String, String>();
+			requestHeaders.putAll(defaultGETDELETEHeaders);
+			return signAndDispatchSynapseRequest(repoEndpoint, queryUri.toString(), "GET", null,
+					requestHeaders);
+		} catch (UnsupportedEncodingException e) {
+			throw new SynapseException(e);
+		}
+	}
+
 	/**
 	 * Download the locationable to a tempfile
 	 * 
@@ -1773,6 +1810,19 @@ public class Synapse {
 	protected JSONObject signAndDispatchSynapseRequest(String endpoint, String uri,
 			String requestMethod, String requestContent,
 			Map<String, String> requestHeaders) throws SynapseException {
+		return dispatchSynapseRequest(endpoint, uri, requestMethod, requestContent, signHeaders(endpoint, uri, requestHeaders));
+	}
+
+	/**
+	 * Add the signature headers when an API key is in use.
+	 * @param endpoint
+	 * @param uri
+	 * @param requestHeaders
+	 * @return A copy of the headers with the signature, or the passed headers when there is no API key.
+	 * @throws SynapseException
+	 */
+	protected Map<String, String> signHeaders(String endpoint, String uri,
+			Map<String, String> requestHeaders) throws SynapseException {
 		if (apiKey!=null) {
 			String timeStamp = (new DateTime()).toString();
 			String uriRawPath = null; 
@@ -1786,9 +1836,26 @@ public class Synapse {
 		    modHeaders.put(AuthorizationConstants.USER_ID_HEADER, userName);
 		    modHeaders.put(AuthorizationConstants.SIGNATURE_TIMESTAMP, timeStamp);
 		    modHeaders.put(AuthorizationConstants.SIGNATURE, signature);
-		    return dispatchSynapseRequest(endpoint, uri, requestMethod, requestContent, modHeaders);
+		    return modHeaders;
 		} 
-		return dispatchSynapseRequest(endpoint, uri, requestMethod, requestContent, requestHeaders);
+		return requestHeaders;
+	}
+
+	/**
+	 * Build the full URL of a request.  The URI may already include the path of the endpoint.
+	 * @param endpoint
+	 * @param uri
+	 * @return
+	 * @throws MalformedURLException
+	 */
+	protected static URL createRequestUrl(String endpoint, String uri) throws MalformedURLException {
+		URL parsedEndpoint = new URL(endpoint);
+		String endpointPrefix = parsedEndpoint.getPath();
+		String endpointLocation = endpoint.substring(0, endpoint.length()
+				- endpointPrefix.length());
+
+		return (uri.startsWith(endpointPrefix)) ? new URL(
+				endpointLocation + uri) : new URL(endpoint + uri);
 	}
 
 	/**
@@ -1822,13 +1889,7 @@ public class Synapse {
 		URL requestUrl = null;
 
 		try {
-			URL parsedEndpoint = new URL(endpoint);
-			String endpointPrefix = parsedEndpoint.getPath();
-			String endpointLocation = endpoint.substring(0, endpoint.length()
-					- endpointPrefix.length());
-
-			requestUrl = (uri.startsWith(endpointPrefix)) ? new URL(
-					endpointLocation + uri) : new URL(endpoint + uri);
+			requestUrl = createRequestUrl(endpoint, uri);
 
 			HttpResponse response = clientProvider.performRequest(requestUrl
 					.toString(), requestMethod, requestContent, requestHeaders);
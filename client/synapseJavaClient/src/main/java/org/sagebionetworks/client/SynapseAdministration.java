@@ -1,12 +1,21 @@
 package org.sagebionetworks.client;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 import org.sagebionetworks.client.exceptions.SynapseException;
 import org.sagebionetworks.client.exceptions.SynapseNotFoundException;
+import org.sagebionetworks.client.exceptions.SynapseServiceException;
+import org.sagebionetworks.client.exceptions.SynapseUserException;
 import org.sagebionetworks.repo.model.MigratableObjectData;
 import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.repo.model.MigratableObjectType;
@@ -21,6 +30,7 @@ import org.sagebionetworks.schema.adapter.JSONObjectAdapter;
 import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
 import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
 import org.sagebionetworks.schema.adapter.org.json.JSONObjectAdapterImpl;
+import org.sagebionetworks.utils.HttpClientHelperException;
 
 /**
  * Java Client API for Synapse Administrative REST APIs
@@ -38,6 +48,17 @@ public class SynapseAdministration extends Synapse {
 	public static final String DAEMON_SEARCH_DOCUMENT = DAEMON + SEARCH_DOCUMENT;
 	public static final String GET_ALL_BACKUP_OBJECTS = "/backupObjects";
 	public static final String INCLUDE_DEPENDENCIES_PARAM = "includeDependencies";
+	public static final String GET_BACKUP_OBJECTS_AFTER = "/backupObjectsAfter";
+	public static final String AFTER_TYPE_PARAM = "afterType";
+	public static final String AFTER_ID_PARAM = "afterId";
+	public static final String MAX_WAIT_MS_PARAM = "maxWaitMS";
+	public static final String STREAM = ADMIN + "/stream";
+	public static final String STREAM_BACKUP = STREAM + BACKUP;
+	public static final String STREAM_RESTORE = STREAM + RESTORE;
+	// A framed zip, so not a plain zip.
+	public static final String BACKUP_STREAM_CONTENT_TYPE = "application/octet-stream";
+	// A restore does not respond until it is finished, which takes far longer than the default timeout.
+	public static final int STREAM_TIMEOUT_MSEC = 30*60*1000;
 	
 	public SynapseAdministration() {
 		super();
@@ -52,6 +73,31 @@ public class SynapseAdministration extends Synapse {
 			ServiceConstants.PAGINATION_OFFSET_PARAM+"="+offset+"&"+
 			ServiceConstants.PAGINATION_LIMIT_PARAM+"="+limit+"&"+
 			INCLUDE_DEPENDENCIES_PARAM+"="+includeDependencies;
+		return getMigratableObjects(uri);
+	}
+	
+	/**
+	 * Get the objects that follow the given object, ordered by type and then by ID.
+	 * 
+	 * @param after the last object of the previous page, or null for the first page
+	 * @param limit
+	 * @param includeDependencies
+	 * @return
+	 * @throws JSONObjectAdapterException
+	 * @throws SynapseException
+	 */
+	public PaginatedResults<MigratableObjectData> getMigratableObjectsAfter(MigratableObjectDescriptor after, long limit, boolean includeDependencies)  throws JSONObjectAdapterException, SynapseException  {
+		StringBuilder uri = new StringBuilder(GET_BACKUP_OBJECTS_AFTER);
+		uri.append("?"+ServiceConstants.PAGINATION_LIMIT_PARAM+"="+limit);
+		uri.append("&"+INCLUDE_DEPENDENCIES_PARAM+"="+includeDependencies);
+		if (after!=null) {
+			uri.append("&"+AFTER_TYPE_PARAM+"="+after.getType());
+			uri.append("&"+AFTER_ID_PARAM+"="+after.getId());
+		}
+		return getMigratableObjects(uri.toString());
+	}
+	
+	private PaginatedResults<MigratableObjectData> getMigratableObjects(String uri) throws JSONObjectAdapterException, SynapseException {
 		JSONObject jsonUsers = getEntity(uri);
 		JSONObjectAdapter adapter = new JSONObjectAdapterImpl(jsonUsers);
 		PaginatedResults<MigratableObjectData> results = new PaginatedResults<MigratableObjectData>(MigratableObjectData.class);
@@ -129,6 +175,80 @@ public class SynapseAdministration extends Synapse {
 				BackupRestoreStatus.class);
 	}
 
+	/**
+	 * Stream a backup of the given objects directly from this stack, without a daemon or S3.
+	 * The backup is a zip that is produced as it is read, sent in frames that end with an empty frame once
+	 * the backup is complete.  Pass it unchanged to {@link #restoreFromStream(InputStream, MigratableObjectType)},
+	 * which rejects a stream that was cut short.  The caller must close the stream.
+	 * @param submission
+	 * @param migrationType
+	 * @return the framed backup
+	 * @throws JSONObjectAdapterException
+	 * @throws SynapseException
+	 */
+	public InputStream getBackupStream(BackupSubmission submission, MigratableObjectType migrationType)
+			throws JSONObjectAdapterException, SynapseException {
+		JSONObject json = EntityFactory.createJSONObjectForEntity(submission);
+		Map<String, String> requestHeaders = new HashMap<String, String>();
+		requestHeaders.putAll(defaultPOSTPUTHeaders);
+		try {
+			HttpResponse response = performStreamRequest(STREAM_BACKUP+"?migrationType="+migrationType, new StringEntity(json.toString()), requestHeaders);
+			return response.getEntity().getContent();
+		} catch (IOException e) {
+			throw new SynapseServiceException(e);
+		}
+	}
+
+	/**
+	 * Restore a backup stream, such as one from {@link #getBackupStream(BackupSubmission, MigratableObjectType)}
+	 * of another stack.  The stream is sent in chunks as it is read and this stack applies it as it arrives,
+	 * so the backup is never written to disk.  The restore is finished when this returns, so the socket timeout
+	 * for this call is {@link #STREAM_TIMEOUT_MSEC}.  If the stream ends before the end of the backup the restore fails,
+	 * but the batches applied before that point are kept.  Restoring creates or updates each object, so it can be run again.
+	 * @param backup The framed backup.  It is read to the end but not closed.
+	 * @param migrationType
+	 * @return the status of the finished restore
+	 * @throws JSONObjectAdapterException
+	 * @throws SynapseException
+	 */
+	public BackupRestoreStatus restoreFromStream(InputStream backup, MigratableObjectType migrationType)
+			throws JSONObjectAdapterException, SynapseException {
+		Map<String, String> requestHeaders = new HashMap<String, String>();
+		requestHeaders.putAll(defaultPOSTPUTHeaders);
+		requestHeaders.put("Content-Type", BACKUP_STREAM_CONTENT_TYPE);
+		// The length is unknown so the body is chunked.
+		InputStreamEntity body = new InputStreamEntity(backup, -1);
+		body.setChunked(true);
+		try {
+			HttpResponse response = performStreamRequest(STREAM_RESTORE+"?migrationType="+migrationType, body, requestHeaders);
+			return EntityFactory.createEntityFromJSONString(EntityUtils.toString(response.getEntity()), BackupRestoreStatus.class);
+		} catch (IOException e) {
+			throw new SynapseServiceException(e);
+		}
+	}
+
+	/**
+	 * POST a streamed body to the repository with the longer {@link #STREAM_TIMEOUT_MSEC}.  The response is not read.
+	 * @param uri
+	 * @param body
+	 * @param requestHeaders
+	 * @return
+	 * @throws SynapseException
+	 */
+	private HttpResponse performStreamRequest(String uri, HttpEntity body, Map<String, String> requestHeaders) throws SynapseException {
+		try {
+			String requestUrl = createRequestUrl(repoEndpoint, uri).toString();
+			return clientProvider.performEntityRequest(requestUrl, "POST", body, signHeaders(repoEndpoint, uri, requestHeaders), STREAM_TIMEOUT_MSEC);
+		} catch (HttpClientHelperException e) {
+			if (e.getHttpStatus() >= 400 && e.getHttpStatus() < 500) {
+				throw new SynapseUserException("Service Error(" + e.getHttpStatus() + "): " + e.getMessage(), e);
+			}
+			throw new SynapseServiceException("Service Error(" + e.getHttpStatus() + "): " + e.getMessage(), e);
+		} catch (IOException e) {
+			throw new SynapseServiceException(e);
+		}
+	}
+
 	/**
 	 * @param daemonId
 	 * @return the status
@@ -139,4 +259,18 @@ public class SynapseAdministration extends Synapse {
 			throws SynapseException, JSONObjectAdapterException {
 		return getJSONEntity(DAEMON + "/" + daemonId, BackupRestoreStatus.class);
 	}
+	
+	/**
+	 * Wait for a daemon to finish and then get its status.  The server returns as soon as the daemon
+	 * is finished, or when the wait is over, so this can be called in a loop instead of sleeping between calls.
+	 * @param daemonId
+	 * @param maxWaitMS The server caps this at 30 seconds.
+	 * @return
+	 * @throws SynapseException
+	 * @throws JSONObjectAdapterException
+	 */
+	public BackupRestoreStatus waitForDaemonStatus(String daemonId, long maxWaitMS)
+			throws SynapseException, JSONObjectAdapterException {
+		return getJSONEntity(DAEMON + "/" + daemonId + "?" + MAX_WAIT_MS_PARAM + "=" + maxWaitMS, BackupRestoreStatus.class);
+	}
 }
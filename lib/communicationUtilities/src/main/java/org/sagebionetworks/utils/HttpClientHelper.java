@@ -307,6 +307,33 @@ public class HttpClientHelper {
 			String requestUrl, String requestMethod, HttpEntity requestEntity,
 			Map<String, String> requestHeaders) throws ClientProtocolException,
 			IOException, HttpClientHelperException {
+		return performEntityRequest(client, requestUrl, requestMethod,
+				requestEntity, requestHeaders, null);
+	}
+
+	/**
+	 * Perform a request using the provided Client, with a socket timeout for
+	 * this request only. Use this for a response that can take longer than the
+	 * client's default timeout, such as a streamed body.
+	 * 
+	 * @param client
+	 * @param requestUrl
+	 * @param requestMethod
+	 * @param requestEntity
+	 * @param requestHeaders
+	 * @param socketTimeoutMs
+	 *            The longest to wait for data on the socket, or null to use
+	 *            the client's default.
+	 * @return the response object
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 * @throws HttpClientHelperException
+	 */
+	public static HttpResponse performEntityRequest(HttpClient client,
+			String requestUrl, String requestMethod, HttpEntity requestEntity,
+			Map<String, String> requestHeaders, Integer socketTimeoutMs)
+			throws ClientProtocolException, IOException,
+			HttpClientHelperException {
 
 		HttpRequestBase request = null;
 		if (requestMethod.equals("GET")) {
@@ -333,6 +360,12 @@ public class HttpClientHelper {
 			}
 		}
 
+		if (null != socketTimeoutMs) {
+			// Request parameters take precedence over the client's
+			request.getParams().setIntParameter(
+					CoreConnectionPNames.SO_TIMEOUT, socketTimeoutMs);
+		}
+
 		HttpResponse response = client.execute(request);
 
 		if (300 <= response.getStatusLine().getStatusCode()) {
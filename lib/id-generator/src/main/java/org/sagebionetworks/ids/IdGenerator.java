@@ -1,5 +1,7 @@
 package org.sagebionetworks.ids;
 
+import java.util.List;
+
 /**
  * 
  * @author jmhill
@@ -14,6 +16,13 @@ public interface IdGenerator {
 	 */
 	public Long generateNewId();
 	
+	/**
+	 * Generate many new IDs at once.
+	 * @param count The number of IDs to generate.
+	 * @return The new IDs in ascending order.
+	 */
+	public List<Long> generateNewIds(int count);
+	
 	/**
 	 * Ensure that the given ID is reserved.  If the ID is not already reserved then, 
 	 * this method will reserve it and all values below it.
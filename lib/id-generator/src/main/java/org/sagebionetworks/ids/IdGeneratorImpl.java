@@ -5,15 +5,23 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.sagebionetworks.StackConfiguration;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -23,12 +31,27 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * This class creates domain unique ids using a MySql sequence via AUTO_INCREMENT of a primary key.
  * For a full explanation of how this works @See http://dev.mysql.com/doc/refman/5.1/en/information-functions.html#function_last-insert-id.
+ *
+ * IDs are reserved in blocks by inserting one row per ID with a single multiple-row INSERT.  With the 'traditional'
+ * or 'consecutive' innodb_autoinc_lock_mode MySQL assigns consecutive values to such an insert, so the block is the range
+ * starting at LAST_INSERT_ID().  The IDs of a block are then handed out from memory.
+ *
+ * IDs are monotonic across the cluster: an ID is always greater than every ID handed out before the
+ * call started, on any instance.  An instance only hands out an ID from its block while the block is
+ * still the latest, which is checked with a single read of MAX(ID).  Once any instance reserves a newer
+ * block, the rest of every older block is skipped and those instances reserve new blocks.
+ *
+ * The same check lets the restore path reserve an ID that falls inside a block held by another instance.
+ * reserveId inserts one more row past the current maximum, a fence, so every block that could hold the
+ * restored ID stops being the latest and is never used again.
  * @author jmhill
  *
  */
 @Transactional(readOnly = false)
 public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 	
+	static private Log log = LogFactory.getLog(IdGeneratorImpl.class);
+
 	// The table name
 	public static String TABLE_DOMAIN_ID = "DOMAIN_IDS";
 	// The file that defines the table
@@ -45,6 +68,11 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 	public static final String GET_ID_SQL = "SELECT LAST_INSERT_ID()";
 	// Determine if the table exists
 	public static final String TABLE_EXISTS_SQL_PERFIX = "SELECT TABLE_NAME FROM Information_schema.tables WHERE table_name = '"+TABLE_DOMAIN_ID+"' AND table_schema = '";
+	// The 'interleaved' lock mode does not assign consecutive values to a multiple-row insert.
+	public static final String AUTO_INCREMENT_LOCK_MODE_SQL = "SELECT @@innodb_autoinc_lock_mode";
+	public static final int AUTO_INCREMENT_LOCK_MODE_INTERLEAVED = 2;
+	// The maximum number of rows inserted by a single statement.
+	public static final int MAX_ROWS_PER_INSERT = 1000;
 	
 	@Autowired
 	JdbcTemplate idGeneratorJdbcTemplate;
@@ -53,24 +81,134 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 	@Autowired
 	DataSourceTransactionManager idGeneratorTransactionManager;
 
+	private int blockSize = 1;
+	// The IDs reserved by this instance that have not been handed out.
+	private AtomicReference<IdBlock> currentBlock = new AtomicReference<IdBlock>();
+	// No block reserved before this ID was inserted can still be used, on any instance.
+	private AtomicLong fence = new AtomicLong(0);
+
 	/**
-	 * This call occurs in its own transaction.
+	 * IDs are normally taken from the block in memory, which costs one read to check the block is
+	 * still the latest.  When the block runs out or a newer block exists a new block is reserved with
+	 * a single auto-commit statement.
 	 */
-	@Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	@Override
 	public Long generateNewId() {
-		// Create a new time
+		while(true){
+			IdBlock block = currentBlock.get();
+			if(block != null){
+				long id = block.next.getAndIncrement();
+				if(id <= block.last && isLatestBlock(block)) return id;
+			}
+			// This block is used up or out of date so reserve a new block.
+			synchronized (this) {
+				// Another thread might have already replaced it.
+				if(currentBlock.get() == block){
+					// A block that was just reserved is the latest, so its first ID needs no check.
+					IdBlock reserved = reserveBlock(blockSize);
+					long id = reserved.next.getAndIncrement();
+					currentBlock.set(reserved);
+					return id;
+				}
+			}
+		}
+	}
+
+	/**
+	 * IDs from a single block are consecutive.  A batch larger than MAX_ROWS_PER_INSERT is reserved
+	 * with several inserts, so IDs handed out by other instances at the same time can fall between them.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public List<Long> generateNewIds(int count) {
+		if(count < 1) throw new IllegalArgumentException("Count must be at least one");
+		List<Long> results = new ArrayList<Long>(count);
+		IdBlock block = currentBlock.get();
+		if(block != null){
+			long first = block.next.getAndAdd(count);
+			if(first+count-1 <= block.last && isLatestBlock(block)){
+				for(long id=first; id<first+count; id++){
+					results.add(id);
+				}
+				return results;
+			}
+			// The rest of this block would be lower than the new IDs so it is not used.
+			currentBlock.compareAndSet(block, null);
+		}
+		while(results.size() < count){
+			IdBlock toAdd = reserveBlock(Math.min(count-results.size(), MAX_ROWS_PER_INSERT));
+			for(long id=toAdd.first; id<=toAdd.last; id++){
+				results.add(id);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * A block is the latest while no ID above it has been inserted by any instance.
+	 * @param block
+	 * @return
+	 */
+	private boolean isLatestBlock(IdBlock block){
+		return idGeneratorJdbcTemplate.queryForLong(MAX_ID) <= block.last;
+	}
+
+	/**
+	 * Reserve a range of IDs with a single multiple-row insert.  Both statements must use the same connection.
+	 * @param size
+	 * @return
+	 */
+	private IdBlock reserveBlock(final int size){
 		final long now = System.currentTimeMillis();
-		idGeneratorJdbcTemplate.update(INSERT_SQL, new PreparedStatementSetter(){
+		final String sql = createMultipleRowInsertSql(size);
+		long first = idGeneratorJdbcTemplate.execute(new ConnectionCallback<Long>() {
 			@Override
-			public void setValues(PreparedStatement ps) throws SQLException {
-				ps.setLong(1, now);
-				
-			}});
-		// Get the ID we just created.
-		return idGeneratorJdbcTemplate.queryForLong(GET_ID_SQL);
+			public Long doInConnection(Connection con) throws SQLException, DataAccessException {
+				PreparedStatement insert = con.prepareStatement(sql);
+				try{
+					for(int i=1; i<=size; i++){
+						insert.setLong(i, now);
+					}
+					insert.executeUpdate();
+				}finally{
+					insert.close();
+				}
+				// For a multiple-row insert this is the first of the consecutive values.
+				PreparedStatement select = con.prepareStatement(GET_ID_SQL);
+				try{
+					ResultSet rs = select.executeQuery();
+					rs.next();
+					return rs.getLong(1);
+				}finally{
+					select.close();
+				}
+			}
+		});
+		return new IdBlock(first, first+size-1);
+	}
+
+	/**
+	 * Build an insert of one row for each ID.
+	 * @param rows
+	 * @return
+	 */
+	public static String createMultipleRowInsertSql(int rows){
+		if(rows < 1) throw new IllegalArgumentException("Must insert at least one row");
+		StringBuilder builder = new StringBuilder(INSERT_SQL);
+		for(int i=1; i<rows; i++){
+			builder.append(",(?)");
+		}
+		return builder.toString();
 	}
 	
+	/**
+	 * Reserving an ID also makes sure no instance hands it out later.  An ID above the
+	 * current maximum is inserted, which puts it above every block.  An ID at or below the
+	 * maximum is skipped if it is in this instance's block.  Otherwise it could be in a block
+	 * held by another instance, so a fence row is inserted past the maximum unless an earlier
+	 * fence is already above the ID.
+	 */
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
 	@Override
 	public void reserveId(final Long idToLock) {
@@ -85,6 +223,42 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 					ps.setLong(1, idToLock);
 					ps.setLong(2, now);
 				}});
+			raiseFence(idToLock);
+		}else if(!isInCurrentBlock(idToLock) && idToLock > fence.get()){
+			// The fence is never handed out.
+			raiseFence(reserveBlock(1).first);
+		}
+		skipTo(idToLock);
+	}
+
+	private void raiseFence(long id){
+		while(true){
+			long current = fence.get();
+			if(id <= current || fence.compareAndSet(current, id)) return;
+		}
+	}
+
+	private boolean isInCurrentBlock(long id){
+		IdBlock block = currentBlock.get();
+		return block != null && block.first <= id && id <= block.last;
+	}
+
+	/**
+	 * Make sure the next ID from the current block is greater than the given ID.
+	 * @param id
+	 */
+	private void skipTo(long id){
+		while(true){
+			IdBlock block = currentBlock.get();
+			if(block == null) return;
+			if(id >= block.last){
+				// Nothing left in this block can be used.
+				if(currentBlock.compareAndSet(block, null)) return;
+				continue;
+			}
+			long next = block.next.get();
+			if(next > id) return;
+			if(block.next.compareAndSet(next, id+1)) return;
 		}
 	}
 
@@ -113,6 +287,15 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 				throw new RuntimeException("Failed to create the domain table: "+TABLE_DOMAIN_ID+" using connection: "+connectionString);
 			}
 		}
+		// Blocks are only safe when a multiple-row insert gets consecutive values.
+		blockSize = stackConfiguration.getIdGeneratorBlockSize();
+		if(blockSize < 1) throw new IllegalArgumentException("The ID generator block size must be at least one");
+		if(blockSize > MAX_ROWS_PER_INSERT) throw new IllegalArgumentException("The ID generator block size cannot be more than "+MAX_ROWS_PER_INSERT);
+		int lockMode = idGeneratorJdbcTemplate.queryForInt(AUTO_INCREMENT_LOCK_MODE_SQL);
+		if(lockMode == AUTO_INCREMENT_LOCK_MODE_INTERLEAVED){
+			log.warn("innodb_autoinc_lock_mode is 'interleaved' so the ID generator will reserve one ID at a time");
+			blockSize = 1;
+		}
 	}
 	
 	/**
@@ -150,4 +333,18 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 		}
 	}
 
+	/**
+	 * A range of reserved IDs.  The next ID is claimed with an atomic increment.
+	 */
+	private static class IdBlock {
+		final long first;
+		final AtomicLong next;
+		final long last;
+		IdBlock(long first, long last){
+			this.first = first;
+			this.next = new AtomicLong(first);
+			this.last = last;
+		}
+	}
+
 }
@@ -3,12 +3,17 @@ package org.sagebionetworks.ids;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.sagebionetworks.StackConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -18,6 +23,12 @@ public class IdGeneratorImplTest {
 	
 	@Autowired
 	IdGenerator idGenerator;
+	@Autowired
+	JdbcTemplate idGeneratorJdbcTemplate;
+	@Autowired
+	StackConfiguration stackConfiguration;
+	@Autowired
+	DataSourceTransactionManager idGeneratorTransactionManager;
 	
 	@Test
 	public void testGetSchema(){
@@ -75,5 +86,93 @@ public class IdGeneratorImplTest {
 		Long next = idGenerator.generateNewId();
 		assertEquals(next.longValue(), id.longValue()+1);
 	}
+	
+	@Test
+	public void testReserveIdPastBlock(){
+		Long id = idGenerator.generateNewId();
+		// Reserve an ID well past any block held in memory.
+		Long reserved = id+IdGeneratorImpl.MAX_ROWS_PER_INSERT*2;
+		idGenerator.reserveId(reserved);
+		Long next = idGenerator.generateNewId();
+		assertEquals(reserved.longValue()+1, next.longValue());
+	}
+	
+	@Test
+	public void testReserveIdInOtherInstanceBlock() throws Exception{
+		IdGeneratorImpl first = createInstance();
+		IdGeneratorImpl second = createInstance();
+		// The first instance now holds the rest of its block in memory.
+		Long id = first.generateNewId();
+		Long reserved = id+1;
+		// The second instance fences the block rather than waiting for the first instance.
+		long start = System.currentTimeMillis();
+		second.reserveId(reserved);
+		long elapsed = System.currentTimeMillis()-start;
+		assertTrue("Reserving an ID took "+elapsed+" ms", elapsed < 1000);
+		// The first instance must not hand out the reserved ID.
+		Long next = first.generateNewId();
+		assertTrue(next > reserved);
+	}
+	
+	@Test
+	public void testMonotonicAcrossInstances() throws Exception{
+		IdGeneratorImpl first = createInstance();
+		IdGeneratorImpl second = createInstance();
+		// Both instances now hold a block, the second one above the first.
+		Long last = first.generateNewId();
+		Long id = second.generateNewId();
+		assertTrue(id > last);
+		last = id;
+		// Whichever instance is called next must not go back below an ID already handed out.
+		for(int i=0; i<10; i++){
+			IdGeneratorImpl instance = i % 2 == 0 ? first : second;
+			id = instance.generateNewId();
+			assertTrue("IDs must be ascending across instances", id > last);
+			last = id;
+		}
+		List<Long> batch = first.generateNewIds(3);
+		assertTrue(batch.get(0) > last);
+	}
+	
+	/**
+	 * A second generator, as if it were running on another instance.
+	 */
+	private IdGeneratorImpl createInstance() throws Exception{
+		IdGeneratorImpl instance = new IdGeneratorImpl();
+		instance.idGeneratorJdbcTemplate = idGeneratorJdbcTemplate;
+		instance.stackConfiguration = stackConfiguration;
+		instance.idGeneratorTransactionManager = idGeneratorTransactionManager;
+		instance.afterPropertiesSet();
+		return instance;
+	}
+	
+	@Test
+	public void testGenerateNewIds(){
+		Long before = idGenerator.generateNewId();
+		// Small enough to come from the block
+		List<Long> small = idGenerator.generateNewIds(3);
+		// Larger than a single insert
+		List<Long> large = idGenerator.generateNewIds(IdGeneratorImpl.MAX_ROWS_PER_INSERT+5);
+		assertEquals(3, small.size());
+		assertEquals(IdGeneratorImpl.MAX_ROWS_PER_INSERT+5, large.size());
+		List<Long> all = new ArrayList<Long>(small);
+		all.addAll(large);
+		Set<Long> unique = new HashSet<Long>();
+		unique.add(before);
+		Long last = before;
+		for(Long id: all){
+			assertTrue("IDs must be ascending", id > last);
+			assertTrue("Duplicate ID found!", unique.add(id));
+			last = id;
+		}
+		// Single IDs continue after the batch
+		assertTrue(idGenerator.generateNewId() > last);
+	}
+	
+	@Test
+	public void testCreateMultipleRowInsertSql(){
+		assertEquals(IdGeneratorImpl.INSERT_SQL, IdGeneratorImpl.createMultipleRowInsertSql(1));
+		assertEquals("INSERT INTO DOMAIN_IDS (CREATED_ON) VALUES (?),(?),(?)", IdGeneratorImpl.createMultipleRowInsertSql(3));
+	}
 
 }
@@ -1,5 +1,8 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.web.NotFoundException;
@@ -16,6 +19,14 @@ public interface DBOAccessControlListDao {
 	
 	public AccessControlList getACL(Long owner) throws DatastoreException, NotFoundException;
 	
+	/**
+	 * Get the ACLs of many owners with a single query.
+	 * @param owners
+	 * @return The ACLs keyed by owner.  Owners that do not have an ACL are not included.
+	 * @throws DatastoreException
+	 */
+	public Map<Long, AccessControlList> getACLs(Collection<Long> owners) throws DatastoreException;
+	
 	public AccessControlList update(AccessControlList acl) throws DatastoreException, NotFoundException;
 	
 	public boolean delete(Long owner) throws DatastoreException;
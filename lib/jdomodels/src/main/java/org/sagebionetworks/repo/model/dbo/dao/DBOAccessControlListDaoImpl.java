@@ -1,22 +1,34 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CREATED_ON;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ETAG;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_RESOURCE_ACCESS_GROUP_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_RESOURCE_ACCESS_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_RESOURCE_ACCESS_OWNER;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_RESOURCE_ACCESS_TYPE_ELEMENT;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_RESOURCE_ACCESS_TYPE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ACCESS_CONTROL_LIST;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_RESOURCE_ACCESS;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_RESOURCE_ACCESS_TYPE;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.AccessControlList;
+import org.sagebionetworks.repo.model.ChangeDAO;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.ResourceAccess;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
@@ -24,9 +36,12 @@ import org.sagebionetworks.repo.model.dbo.persistence.DBOAccessControlList;
 import org.sagebionetworks.repo.model.dbo.persistence.DBOResourceAccess;
 import org.sagebionetworks.repo.model.dbo.persistence.DBOResourceAccessType;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.annotation.Propagation;
@@ -35,24 +50,36 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional(readOnly = true)
 public class DBOAccessControlListDaoImpl implements DBOAccessControlListDao {
 	
-	private static final String SELECT_ACCESS_TYPES_FOR_RESOURCE = "SELECT "+COL_RESOURCE_ACCESS_TYPE_ELEMENT+" FROM "+TABLE_RESOURCE_ACCESS_TYPE+" WHERE "+COL_RESOURCE_ACCESS_TYPE_ID+" = ?";
+	private static final String OWNERS_PARAM = "owners";
+	private static final String ALIAS_ACL_ID = "ACL_ID";
+	private static final String ALIAS_RESOURCE_ACCESS_ID = "RA_ID";
+
+	/**
+	 * Loads the ACLs, their etags, resource access and access types of many owners in a single query.
+	 * There is one row for each access type of each resource access.  A resource access with no types,
+	 * and an ACL with no resource access, will have a single row with null values.
+	 */
+	private static final String SELECT_ACLS_FOR_OWNERS =
+		"SELECT acl."+COL_ACL_ID+" AS "+ALIAS_ACL_ID+", acl."+COL_NODE_CREATED_ON+", n."+COL_NODE_ETAG+
+		", ra."+COL_RESOURCE_ACCESS_ID+" AS "+ALIAS_RESOURCE_ACCESS_ID+", ra."+COL_RESOURCE_ACCESS_GROUP_ID+", rat."+COL_RESOURCE_ACCESS_TYPE_ELEMENT+
+		" FROM "+TABLE_ACCESS_CONTROL_LIST+" acl"+
+		" JOIN "+TABLE_NODE+" n ON (n."+COL_NODE_ID+" = acl."+COL_ACL_ID+")"+
+		" LEFT JOIN "+TABLE_RESOURCE_ACCESS+" ra ON (ra."+COL_RESOURCE_ACCESS_OWNER+" = acl."+COL_ACL_ID+")"+
+		" LEFT JOIN "+TABLE_RESOURCE_ACCESS_TYPE+" rat ON (rat."+COL_RESOURCE_ACCESS_TYPE_ID+" = ra."+COL_RESOURCE_ACCESS_ID+")"+
+		" WHERE acl."+COL_ACL_ID+" IN (:"+OWNERS_PARAM+")";
 
 	private static final String SELECT_OWNER_ETAG = "SELECT "+COL_NODE_ETAG+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
 
 	private static final String DELETE_RESOURCE_ACCESS_SQL = "DELETE FROM "+TABLE_RESOURCE_ACCESS+" WHERE "+COL_RESOURCE_ACCESS_OWNER+" = ?";
 
-	private static final String SELECT_ALL_RESOURCE_ACCESS = "SELECT * FROM "+TABLE_RESOURCE_ACCESS+" WHERE "+COL_RESOURCE_ACCESS_OWNER+" = ?";
-
-	/**
-	 * Keep a copy of the row mapper.
-	 */
-	private static RowMapper<DBOResourceAccess> accessMapper = new DBOResourceAccess().getTableMapping();
-	
 	@Autowired
 	private SimpleJdbcTemplate simpleJdbcTemplate;
 	
 	@Autowired
 	DBOBasicDao dboBasicDao;
+	
+	@Autowired
+	ChangeDAO changeDAO;
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	@Override
@@ -64,9 +91,26 @@ public class DBOAccessControlListDaoImpl implements DBOAccessControlListDao {
 		dboBasicDao.createNew(dbo);
 		populateResourceAccess(acl);
 		acl.setEtag(getETag(acl.getId()));
+		recordChange(acl.getId(), acl.getEtag(), ChangeType.CREATE);
 		return acl;
 	}
 
+	/**
+	 * Record the change in the change log.  The etag of an ACL is the etag of its owner.
+	 * @param ownerId
+	 * @param eTag
+	 * @param changeType
+	 * @throws DatastoreException
+	 */
+	private void recordChange(String ownerId, String eTag, ChangeType changeType) throws DatastoreException{
+		ChangeMessage change = new ChangeMessage();
+		change.setObjectId(ownerId);
+		change.setObjectType(ObjectType.ACL);
+		change.setObjectEtag(eTag);
+		change.setChangeType(changeType);
+		changeDAO.replaceChange(change);
+	}
+
 
 	/**
 	 * Populate the resource access table after the ACL table is ready.
@@ -100,31 +144,57 @@ public class DBOAccessControlListDaoImpl implements DBOAccessControlListDao {
 	@Transactional(readOnly = true)
 	@Override
 	public AccessControlList getACL(Long owner) throws DatastoreException, NotFoundException {
-		MapSqlParameterSource param = new MapSqlParameterSource();
-		param.addValue("id", owner);
-		DBOAccessControlList dboAcl = dboBasicDao.getObjectById(DBOAccessControlList.class, param);
-		AccessControlList acl = AccessControlListUtils.createAcl(dboAcl);
-		// Now fetch the rest of the data for this ACL
-		List<DBOResourceAccess> raList = simpleJdbcTemplate.query(SELECT_ALL_RESOURCE_ACCESS, accessMapper, owner);
-		Set<ResourceAccess> raSet = new HashSet<ResourceAccess>();
-		acl.setResourceAccess(raSet);
-		for(DBOResourceAccess raDbo: raList){
-			List<String> typeList = simpleJdbcTemplate.query(SELECT_ACCESS_TYPES_FOR_RESOURCE, new RowMapper<String>(){
-				@Override
-				public String mapRow(ResultSet rs, int rowNum)throws SQLException {
-					return rs.getString(COL_RESOURCE_ACCESS_TYPE_ELEMENT);
-				}}, raDbo.getId());
-			// build up this type
-			ResourceAccess ra = new ResourceAccess();
-			ra.setPrincipalId(raDbo.getUserGroupId());
-			ra.setAccessType(new HashSet<ACCESS_TYPE>());
-			for(String typeString: typeList){
-				ra.getAccessType().add(ACCESS_TYPE.valueOf(typeString));
+		if(owner == null) throw new IllegalArgumentException("Owner cannot be null");
+		Map<Long, AccessControlList> results = getACLs(Collections.singletonList(owner));
+		AccessControlList acl = results.get(owner);
+		if(acl == null) throw new NotFoundException("The resource you are attempting to access cannot be found");
+		return acl;
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public Map<Long, AccessControlList> getACLs(Collection<Long> owners) throws DatastoreException {
+		if(owners == null) throw new IllegalArgumentException("Owners cannot be null");
+		final Map<Long, AccessControlList> results = new HashMap<Long, AccessControlList>(owners.size());
+		if(owners.isEmpty()) return results;
+		// The access types are added to each resource access as the rows are read so the
+		// resource access cannot be added to the ACL's set until all rows have been read.
+		final Map<Long, Map<Long, ResourceAccess>> accessByAcl = new HashMap<Long, Map<Long, ResourceAccess>>(owners.size());
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue(OWNERS_PARAM, owners);
+		simpleJdbcTemplate.getNamedParameterJdbcOperations().query(SELECT_ACLS_FOR_OWNERS, params, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				Long aclId = rs.getLong(ALIAS_ACL_ID);
+				Map<Long, ResourceAccess> accessMap = accessByAcl.get(aclId);
+				if(accessMap == null){
+					AccessControlList acl = new AccessControlList();
+					acl.setId(KeyFactory.keyToString(aclId));
+					acl.setCreationDate(new Date(rs.getLong(COL_NODE_CREATED_ON)));
+					acl.setEtag(rs.getString(COL_NODE_ETAG));
+					results.put(aclId, acl);
+					accessMap = new LinkedHashMap<Long, ResourceAccess>();
+					accessByAcl.put(aclId, accessMap);
+				}
+				Long raId = rs.getLong(ALIAS_RESOURCE_ACCESS_ID);
+				if(rs.wasNull()) return;
+				ResourceAccess ra = accessMap.get(raId);
+				if(ra == null){
+					ra = new ResourceAccess();
+					ra.setPrincipalId(rs.getLong(COL_RESOURCE_ACCESS_GROUP_ID));
+					ra.setAccessType(new HashSet<ACCESS_TYPE>());
+					accessMap.put(raId, ra);
+				}
+				String typeString = rs.getString(COL_RESOURCE_ACCESS_TYPE_ELEMENT);
+				if(typeString != null){
+					ra.getAccessType().add(ACCESS_TYPE.valueOf(typeString));
+				}
 			}
-			raSet.add(ra);
+		});
+		for(Long aclId: results.keySet()){
+			results.get(aclId).setResourceAccess(new HashSet<ResourceAccess>(accessByAcl.get(aclId).values()));
 		}
-		acl.setEtag(getETag(acl.getId()));
-		return acl;
+		return results;
 	}
 	
 	private String getETag(String ownerString) throws DatastoreException{
@@ -146,6 +216,7 @@ public class DBOAccessControlListDaoImpl implements DBOAccessControlListDao {
 		simpleJdbcTemplate.update(DELETE_RESOURCE_ACCESS_SQL, owner);
 		// Now recreate it from the passed data.
 		populateResourceAccess(acl);
+		recordChange(acl.getId(), getETag(acl.getId()), ChangeType.UPDATE);
 		return null;
 	}
 
@@ -155,7 +226,11 @@ public class DBOAccessControlListDaoImpl implements DBOAccessControlListDao {
 		// TODO Auto-generated method stub
 		MapSqlParameterSource params = new MapSqlParameterSource();
 		params.addValue("id", owner);
-		return dboBasicDao.deleteObjectById(DBOAccessControlList.class, params);
+		boolean deleted = dboBasicDao.deleteObjectById(DBOAccessControlList.class, params);
+		if(deleted){
+			recordChange(KeyFactory.keyToString(owner), null, ChangeType.DELETE);
+		}
+		return deleted;
 	}
 
 }
@@ -11,6 +11,7 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACCESS_R
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACCESS_REQUIREMENT_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ACCESS_REQUIREMENT_NODE_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ACCESS_REQUIREMENT_REQUIREMENT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.AFTER_ID_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.LIMIT_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.OFFSET_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ACCESS_APPROVAL;
@@ -86,6 +87,9 @@ public class DBOAccessRequirementDAOImpl implements AccessRequirementDAO {
 	private static final String SELECT_FOR_RANGE_SQL = "select * from "+TABLE_ACCESS_REQUIREMENT+" order by "+COL_ACCESS_REQUIREMENT_ID+
 	" limit :"+LIMIT_PARAM_NAME+" offset :"+OFFSET_PARAM_NAME;
 
+	private static final String SELECT_AFTER_SQL = "select * from "+TABLE_ACCESS_REQUIREMENT+" where "+COL_ACCESS_REQUIREMENT_ID+" > :"+AFTER_ID_PARAM_NAME+
+	" order by "+COL_ACCESS_REQUIREMENT_ID+" limit :"+LIMIT_PARAM_NAME;
+
 	private static final String SELECT_FOR_MULTIPLE_NAR_SQL = "select * from "+TABLE_NODE_ACCESS_REQUIREMENT+" where "+
 		COL_NODE_ACCESS_REQUIREMENT_REQUIREMENT_ID+" IN (:"+COL_NODE_ACCESS_REQUIREMENT_REQUIREMENT_ID+")";
 
@@ -225,13 +229,31 @@ public class DBOAccessRequirementDAOImpl implements AccessRequirementDAO {
 	@Transactional(readOnly = true)
 	@Override
 	public QueryResults<MigratableObjectData> getMigrationObjectData(long offset, long limit, boolean includeDependencies) throws DatastoreException {
+		MapSqlParameterSource param = new MapSqlParameterSource();
+		param.addValue(OFFSET_PARAM_NAME, offset);
+		param.addValue(LIMIT_PARAM_NAME, limit);
+		return queryMigrationObjectData(SELECT_FOR_RANGE_SQL, param, includeDependencies);
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public QueryResults<MigratableObjectData> getMigrationObjectDataAfter(long afterId, long limit, boolean includeDependencies) throws DatastoreException {
+		MapSqlParameterSource param = new MapSqlParameterSource();
+		param.addValue(AFTER_ID_PARAM_NAME, afterId);
+		param.addValue(LIMIT_PARAM_NAME, limit);
+		return queryMigrationObjectData(SELECT_AFTER_SQL, param, includeDependencies);
+	}
+
+	@Override
+	public MigratableObjectType getMigratableObjectType() {
+		return MigratableObjectType.ACCESSREQUIREMENT;
+	}
+
+	private QueryResults<MigratableObjectData> queryMigrationObjectData(String sql, MapSqlParameterSource pageParam, boolean includeDependencies) throws DatastoreException {
 		// (1) get one 'page' of AccessRequirements (just their IDs and Etags)
 		List<MigratableObjectData> ods = null;
 		{
-			MapSqlParameterSource param = new MapSqlParameterSource();
-			param.addValue(OFFSET_PARAM_NAME, offset);
-			param.addValue(LIMIT_PARAM_NAME, limit);
-			ods = simpleJdbcTempalte.query(SELECT_FOR_RANGE_SQL, new RowMapper<MigratableObjectData>() {
+			ods = simpleJdbcTempalte.query(sql, new RowMapper<MigratableObjectData>() {
 
 				@Override
 				public MigratableObjectData mapRow(ResultSet rs, int rowNum)
@@ -248,7 +270,7 @@ public class DBOAccessRequirementDAOImpl implements AccessRequirementDAO {
 					return objectData;
 				}
 			
-			}, param);
+			}, pageParam);
 		}
 		
 		// (2) find the dependencies
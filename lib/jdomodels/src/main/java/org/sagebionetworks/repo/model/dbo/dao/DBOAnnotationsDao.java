@@ -1,5 +1,7 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
+import java.util.List;
+
 import org.sagebionetworks.repo.model.Annotations;
 import org.sagebionetworks.repo.model.DatastoreException;
 
@@ -18,5 +20,13 @@ public interface DBOAnnotationsDao {
 	 * @throws DatastoreException 
 	 */
 	public void replaceAnnotations(Annotations annotations) throws DatastoreException;
+	
+	/**
+	 * Replace all annotations of many entities with one delete per table and
+	 * one batch insert per table.
+	 * @param annotations
+	 * @throws DatastoreException
+	 */
+	public void replaceAnnotations(List<Annotations> annotations) throws DatastoreException;
 
 }
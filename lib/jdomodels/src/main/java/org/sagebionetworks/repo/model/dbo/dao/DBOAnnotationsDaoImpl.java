@@ -10,6 +10,7 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_STRING
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +25,7 @@ import org.sagebionetworks.repo.model.dbo.persistence.DBOStringAnnotation;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -47,6 +49,16 @@ public class DBOAnnotationsDaoImpl implements DBOAnnotationsDao {
 		}
 	}
 	
+	private static final String OWNER_IDS_PARAM = "ownerIds";
+	private static String DELETE_IN_SQL_FORMAT = "DELETE FROM `%1$s` WHERE "+ANNOTATION_OWNER_ID_COLUMN+" IN (:"+OWNER_IDS_PARAM+")";
+	// Contains the delete sql for many owners
+	private static String[] ALL_DELETE_IN_SQL = new String[ANNOTATION_TABLES.length];
+	static{
+		for(int i=0; i<ANNOTATION_TABLES.length; i++){
+			ALL_DELETE_IN_SQL[i] = String.format(DELETE_IN_SQL_FORMAT, ANNOTATION_TABLES[i]);
+		}
+	}
+	
 	private static String SELECT_FORMAT = "SELECT "+ANNOTATION_ATTRIBUTE_COLUMN+", "+ANNOTATION_VALUE_COLUMN+" FROM `%1$s` WHERE "+ANNOTATION_OWNER_ID_COLUMN+" = ?";
 	
 	/**
@@ -154,4 +166,55 @@ public class DBOAnnotationsDaoImpl implements DBOAnnotationsDao {
 		}
 	}
 
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void replaceAnnotations(List<Annotations> annotationsList) throws DatastoreException {
+		if(annotationsList == null) throw new IllegalArgumentException("Annotations cannot be null");
+		if(annotationsList.isEmpty()) return;
+		List<Long> ownerIds = new ArrayList<Long>(annotationsList.size());
+		List<DBOStringAnnotation> stringBatch = new ArrayList<DBOStringAnnotation>();
+		List<DBOLongAnnotation> longBatch = new ArrayList<DBOLongAnnotation>();
+		List<DBODoubleAnnotation> doubleBatch = new ArrayList<DBODoubleAnnotation>();
+		List<DBODateAnnotation> dateBatch = new ArrayList<DBODateAnnotation>();
+		for(Annotations annotations: annotationsList){
+			if(annotations == null) throw new IllegalArgumentException("Annotations cannot be null");
+			if(annotations.getId() == null) throw new IllegalArgumentException("Annotations owner id cannot be null");
+			Long ownerId = KeyFactory.stringToKey(annotations.getId());
+			ownerIds.add(ownerId);
+			Map<String, List<String>> stringAnnos = annotations.getStringAnnotations();
+			if(stringAnnos != null && stringAnnos.size() > 0){
+				stringBatch.addAll(AnnotationUtils.createStringAnnotations(ownerId, stringAnnos));
+			}
+			Map<String, List<Long>> longAnnos = annotations.getLongAnnotations();
+			if(longAnnos != null && longAnnos.size() > 0){
+				longBatch.addAll(AnnotationUtils.createLongAnnotations(ownerId, longAnnos));
+			}
+			Map<String, List<Double>> doubleAnnos = annotations.getDoubleAnnotations();
+			if(doubleAnnos != null && doubleAnnos.size() > 0){
+				doubleBatch.addAll(AnnotationUtils.createDoubleAnnotations(ownerId, doubleAnnos));
+			}
+			Map<String, List<Date>> dateAnnos = annotations.getDateAnnotations();
+			if(dateAnnos != null && dateAnnos.size() > 0){
+				dateBatch.addAll(AnnotationUtils.createDateAnnotations(ownerId, dateAnnos));
+			}
+		}
+		// First delete all annotations for these owners.
+		MapSqlParameterSource params = new MapSqlParameterSource(OWNER_IDS_PARAM, ownerIds);
+		for(String deleteSql: ALL_DELETE_IN_SQL){
+			simpleJdbcTempalte.update(deleteSql, params);
+		}
+		if(!stringBatch.isEmpty()){
+			dboBasicDao.createBatch(stringBatch);
+		}
+		if(!longBatch.isEmpty()){
+			dboBasicDao.createBatch(longBatch);
+		}
+		if(!doubleBatch.isEmpty()){
+			dboBasicDao.createBatch(doubleBatch);
+		}
+		if(!dateBatch.isEmpty()){
+			dboBasicDao.createBatch(dateBatch);
+		}
+	}
+
 }
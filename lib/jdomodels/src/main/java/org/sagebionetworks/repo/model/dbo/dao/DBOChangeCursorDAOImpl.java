@@ -0,0 +1,84 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_LEASE_EXPIRES_ON;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_LEASE_OWNER;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_NEXT_CHANGE_NUM;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_CHANGE_CURSORS;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.ChangeCursorDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
+import org.sagebionetworks.repo.model.dbo.persistence.DBOChangeCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Each lease is taken with a single conditional update, so two instances cannot both take it.
+ * Leases are timed with the database clock so the clocks of the instances do not matter.
+ *
+ */
+@Transactional(readOnly = true)
+public class DBOChangeCursorDAOImpl implements ChangeCursorDAO {
+
+	private static final String SQL_NOW_MS = "UNIX_TIMESTAMP()*1000";
+	private static final String SQL_CREATE_CURSOR = "INSERT IGNORE INTO "+TABLE_CHANGE_CURSORS+" ("+COL_CHANGE_CURSORS_NAME+", "+COL_CHANGE_CURSORS_LEASE_EXPIRES_ON+") VALUES (?, 0)";
+	private static final String SQL_ACQUIRE_LEASE = "UPDATE "+TABLE_CHANGE_CURSORS+" SET "+COL_CHANGE_CURSORS_LEASE_OWNER+" = ?, "+COL_CHANGE_CURSORS_LEASE_EXPIRES_ON+" = "+SQL_NOW_MS+" + ?"+
+		" WHERE "+COL_CHANGE_CURSORS_NAME+" = ? AND ("+COL_CHANGE_CURSORS_LEASE_OWNER+" IS NULL OR "+COL_CHANGE_CURSORS_LEASE_OWNER+" = ? OR "+COL_CHANGE_CURSORS_LEASE_EXPIRES_ON+" < "+SQL_NOW_MS+")";
+	private static final String SQL_SET_NEXT_CHANGE_NUM = "UPDATE "+TABLE_CHANGE_CURSORS+" SET "+COL_CHANGE_CURSORS_NEXT_CHANGE_NUM+" = ?, "+COL_CHANGE_CURSORS_LEASE_EXPIRES_ON+" = "+SQL_NOW_MS+" + ?"+
+		" WHERE "+COL_CHANGE_CURSORS_NAME+" = ? AND "+COL_CHANGE_CURSORS_LEASE_OWNER+" = ?";
+	private static final String SQL_RELEASE_LEASE = "UPDATE "+TABLE_CHANGE_CURSORS+" SET "+COL_CHANGE_CURSORS_LEASE_OWNER+" = NULL, "+COL_CHANGE_CURSORS_LEASE_EXPIRES_ON+" = 0"+
+		" WHERE "+COL_CHANGE_CURSORS_NAME+" = ? AND "+COL_CHANGE_CURSORS_LEASE_OWNER+" = ?";
+	private static final String SQL_SELECT_CURSOR = "SELECT * FROM "+TABLE_CHANGE_CURSORS+" WHERE "+COL_CHANGE_CURSORS_NAME+" = ?";
+	private static final String SQL_DELETE_ALL = "DELETE FROM "+TABLE_CHANGE_CURSORS;
+
+	private static final TableMapping<DBOChangeCursor> CURSOR_MAPPING = new DBOChangeCursor().getTableMapping();
+
+	@Autowired
+	private SimpleJdbcTemplate simpleJdbcTemplate;
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public boolean acquireLease(String cursorName, String owner, long leaseMS) throws DatastoreException {
+		if(cursorName == null) throw new IllegalArgumentException("Cursor name cannot be null");
+		if(owner == null) throw new IllegalArgumentException("Owner cannot be null");
+		simpleJdbcTemplate.update(SQL_CREATE_CURSOR, cursorName);
+		// MySQL counts the matched rows, so renewing a lease that is already held counts too.
+		return simpleJdbcTemplate.update(SQL_ACQUIRE_LEASE, owner, leaseMS, cursorName, owner) == 1;
+	}
+
+	@Override
+	public Long getNextChangeNumber(String cursorName) throws DatastoreException {
+		if(cursorName == null) throw new IllegalArgumentException("Cursor name cannot be null");
+		List<DBOChangeCursor> cursors = simpleJdbcTemplate.query(SQL_SELECT_CURSOR, CURSOR_MAPPING, cursorName);
+		if(cursors.isEmpty()) return null;
+		return cursors.get(0).getNextChangeNumber();
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public boolean setNextChangeNumber(String cursorName, String owner, long nextChangeNumber, long leaseMS) throws DatastoreException {
+		if(cursorName == null) throw new IllegalArgumentException("Cursor name cannot be null");
+		if(owner == null) throw new IllegalArgumentException("Owner cannot be null");
+		return simpleJdbcTemplate.update(SQL_SET_NEXT_CHANGE_NUM, nextChangeNumber, leaseMS, cursorName, owner) == 1;
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void releaseLease(String cursorName, String owner) throws DatastoreException {
+		if(cursorName == null) throw new IllegalArgumentException("Cursor name cannot be null");
+		if(owner == null) throw new IllegalArgumentException("Owner cannot be null");
+		simpleJdbcTemplate.update(SQL_RELEASE_LEASE, cursorName, owner);
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void deleteAllCursors() {
+		simpleJdbcTemplate.update(SQL_DELETE_ALL);
+	}
+
+}
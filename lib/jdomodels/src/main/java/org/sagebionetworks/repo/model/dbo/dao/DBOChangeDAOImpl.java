@@ -0,0 +1,131 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_CHANGE_NUM;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_CHANGE_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_ETAG;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_CHANGES;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
+import org.sagebionetworks.repo.model.dbo.persistence.DBOChange;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The change log is written with REPLACE so each object keeps a single row.  Replacing the
+ * row deletes the old row and inserts a new one, so the change is given a new change number.
+ *
+ * Committed changes are read with a locking read.  InnoDB makes a locking read wait for the
+ * transaction of any row it reaches that is not committed, including the old row of a replace,
+ * so no change below the last row read can still be in flight.
+ *
+ */
+@Transactional(readOnly = true)
+public class DBOChangeDAOImpl implements ChangeDAO {
+
+	private static final String SQL_REPLACE_CHANGE = "REPLACE INTO "+TABLE_CHANGES+" ("+COL_CHANGES_OBJECT_ID+", "+COL_CHANGES_OBJECT_TYPE+", "+COL_CHANGES_OBJECT_ETAG+", "+COL_CHANGES_CHANGE_TYPE+") VALUES (?, ?, ?, ?)";
+	private static final String SQL_LAST_INSERT_ID = "SELECT LAST_INSERT_ID()";
+	private static final String SQL_SELECT_CHANGES = "SELECT * FROM "+TABLE_CHANGES+" WHERE "+COL_CHANGES_CHANGE_NUM+" >= ? ORDER BY "+COL_CHANGES_CHANGE_NUM+" LIMIT ?";
+	private static final String SQL_SELECT_COMMITTED_CHANGES = SQL_SELECT_CHANGES+" LOCK IN SHARE MODE";
+	private static final String SQL_SELECT_CHANGES_OF_TYPE = "SELECT * FROM "+TABLE_CHANGES+" WHERE "+COL_CHANGES_CHANGE_NUM+" >= ? AND "+COL_CHANGES_OBJECT_TYPE+" = ? ORDER BY "+COL_CHANGES_CHANGE_NUM+" LIMIT ?";
+	private static final String SQL_MAX_CHANGE_NUM = "SELECT COALESCE(MAX("+COL_CHANGES_CHANGE_NUM+"), 0) FROM "+TABLE_CHANGES;
+	private static final String SQL_DELETE_ALL = "DELETE FROM "+TABLE_CHANGES;
+
+	private static final TableMapping<DBOChange> CHANGE_MAPPING = new DBOChange().getTableMapping();
+
+	@Autowired
+	private SimpleJdbcTemplate simpleJdbcTemplate;
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public ChangeMessage replaceChange(ChangeMessage change) throws DatastoreException {
+		Object[] args = createReplaceArgs(change);
+		simpleJdbcTemplate.update(SQL_REPLACE_CHANGE, args);
+		// This is the same connection so this is the number of the row we just inserted.
+		change.setChangeNumber(simpleJdbcTemplate.queryForLong(SQL_LAST_INSERT_ID));
+		return change;
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void replaceChanges(List<ChangeMessage> batch) throws DatastoreException {
+		if(batch == null) throw new IllegalArgumentException("Batch cannot be null");
+		if(batch.isEmpty()) return;
+		List<Object[]> args = new ArrayList<Object[]>(batch.size());
+		for(ChangeMessage change: batch){
+			args.add(createReplaceArgs(change));
+		}
+		simpleJdbcTemplate.batchUpdate(SQL_REPLACE_CHANGE, args);
+	}
+
+	private static Object[] createReplaceArgs(ChangeMessage change) throws DatastoreException{
+		if(change == null) throw new IllegalArgumentException("Change cannot be null");
+		if(change.getObjectId() == null) throw new IllegalArgumentException("Object ID cannot be null");
+		if(change.getObjectType() == null) throw new IllegalArgumentException("Object type cannot be null");
+		if(change.getChangeType() == null) throw new IllegalArgumentException("Change type cannot be null");
+		return new Object[]{KeyFactory.stringToKey(change.getObjectId()), change.getObjectType().name(), change.getObjectEtag(), change.getChangeType().name()};
+	}
+
+	@Override
+	public List<ChangeMessage> listChanges(long greaterOrEqualChangeNumber, ObjectType type, long limit) throws DatastoreException {
+		if(limit < 0) throw new IllegalArgumentException("Limit cannot be negative");
+		List<DBOChange> dbos = null;
+		if(type == null){
+			dbos = simpleJdbcTemplate.query(SQL_SELECT_CHANGES, CHANGE_MAPPING, greaterOrEqualChangeNumber, limit);
+		}else{
+			dbos = simpleJdbcTemplate.query(SQL_SELECT_CHANGES_OF_TYPE, CHANGE_MAPPING, greaterOrEqualChangeNumber, type.name(), limit);
+		}
+		return createChangeMessages(dbos);
+	}
+
+	/**
+	 * The read runs in its own short transaction so its locks are released as soon as the page is read.
+	 * Read committed means only the rows are locked, not the gaps between them, so new changes are
+	 * never blocked by the read.
+	 */
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.READ_COMMITTED)
+	@Override
+	public List<ChangeMessage> listCommittedChanges(long greaterOrEqualChangeNumber, long limit) throws DatastoreException {
+		if(limit < 0) throw new IllegalArgumentException("Limit cannot be negative");
+		return createChangeMessages(simpleJdbcTemplate.query(SQL_SELECT_COMMITTED_CHANGES, CHANGE_MAPPING, greaterOrEqualChangeNumber, limit));
+	}
+
+	private static List<ChangeMessage> createChangeMessages(List<DBOChange> dbos){
+		List<ChangeMessage> results = new ArrayList<ChangeMessage>(dbos.size());
+		for(DBOChange dbo: dbos){
+			ChangeMessage change = new ChangeMessage();
+			change.setChangeNumber(dbo.getChangeNumber());
+			change.setObjectId(KeyFactory.keyToString(dbo.getObjectId()));
+			change.setObjectType(ObjectType.valueOf(dbo.getObjectType()));
+			change.setObjectEtag(dbo.getObjectEtag());
+			change.setChangeType(ChangeType.valueOf(dbo.getChangeType()));
+			results.add(change);
+		}
+		return results;
+	}
+
+	@Override
+	public long getCurrentChangeNumber() {
+		return simpleJdbcTemplate.queryForLong(SQL_MAX_CHANGE_NUM);
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void deleteAllChanges() {
+		simpleJdbcTemplate.update(SQL_DELETE_ALL);
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import org.sagebionetworks.repo.model.DatastoreException;
+
+/**
+ * Rewrites the annotation and reference blobs of revisions that are still in the
+ * old XStream (zip) format using the binary format.
+ *
+ */
+public interface DBORevisionBlobMigrator {
+
+	/**
+	 * Re-encode the next batch of revisions that are still in the old format.
+	 * Each call continues from where the previous call stopped.  Each revision is
+	 * updated on its own only if it is unchanged since it was read, so this does not
+	 * need a transaction.
+	 * @param batchSize The maximum number of revisions to re-encode.
+	 * @return The number of revisions that were re-encoded.
+	 * @throws DatastoreException
+	 */
+	public int migrateBatch(int batchSize) throws DatastoreException;
+
+	/**
+	 * Called by the scheduler. Re-encodes batches until the configured maximum
+	 * for a single run is reached or there are no revisions left to migrate.
+	 * @throws DatastoreException
+	 */
+	public void migrate() throws DatastoreException;
+
+	/**
+	 * Has a full pass of the revision table found no revisions in the old format?
+	 * @return
+	 */
+	public boolean isComplete();
+
+	/**
+	 * The total number of revisions re-encoded.
+	 * @return
+	 */
+	public long getMigratedCount();
+
+}
@@ -0,0 +1,154 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_REVISION_ANNOS_BLOB;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_REVISION_NUMBER;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_REVISION_OWNER_NODE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_REVISION_REFS_BLOB;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_REVISION;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+
+/**
+ * Walks the revision table in primary key order re-encoding the blobs that are still
+ * in the old format. Each update only succeeds if the blobs have not changed since
+ * they were read, so a revision updated by a user while it is being migrated is left
+ * alone (it was already written in the new format).
+ * 
+ * There is deliberately no transaction around a batch. Each update is its own
+ * compare-and-set and commits on its own, so a batch never holds the row locks of
+ * revisions that users are writing, and a failure part way keeps the rows already done.
+ *
+ */
+public class DBORevisionBlobMigratorImpl implements DBORevisionBlobMigrator {
+
+	static private Log log = LogFactory.getLog(DBORevisionBlobMigratorImpl.class);
+
+	/**
+	 * The first two bytes of a GZIP stream.
+	 */
+	private static final String LEGACY_MAGIC = "X'1F8B'";
+
+	private static final String SQL_SELECT_LEGACY_BATCH =
+		"SELECT "+COL_REVISION_OWNER_NODE+", "+COL_REVISION_NUMBER+", "+COL_REVISION_ANNOS_BLOB+", `"+COL_REVISION_REFS_BLOB+"`" +
+		" FROM "+TABLE_REVISION+
+		" WHERE ("+COL_REVISION_OWNER_NODE+" > ? OR ("+COL_REVISION_OWNER_NODE+" = ? AND "+COL_REVISION_NUMBER+" > ?))" +
+		" AND (LEFT("+COL_REVISION_ANNOS_BLOB+", 2) = "+LEGACY_MAGIC+" OR LEFT(`"+COL_REVISION_REFS_BLOB+"`, 2) = "+LEGACY_MAGIC+")" +
+		" ORDER BY "+COL_REVISION_OWNER_NODE+", "+COL_REVISION_NUMBER+" LIMIT ?";
+
+	private static final String SQL_UPDATE_IF_UNCHANGED =
+		"UPDATE "+TABLE_REVISION+" SET "+COL_REVISION_ANNOS_BLOB+" = ?, `"+COL_REVISION_REFS_BLOB+"` = ?" +
+		" WHERE "+COL_REVISION_OWNER_NODE+" = ? AND "+COL_REVISION_NUMBER+" = ?" +
+		" AND "+COL_REVISION_ANNOS_BLOB+" <=> ? AND `"+COL_REVISION_REFS_BLOB+"` <=> ?";
+
+	@Autowired
+	private SimpleJdbcTemplate simpleJdbcTempalte;
+
+	// The position of the last revision examined.
+	private long lastOwnerId = -1;
+	private long lastNumber = -1;
+	// Set when a pass started since the last complete pass found revisions to migrate.
+	private boolean foundInPass = false;
+	private volatile boolean complete = false;
+	private AtomicLong migratedCount = new AtomicLong(0);
+
+	@Override
+	public synchronized int migrateBatch(int batchSize) throws DatastoreException {
+		if(batchSize < 1) throw new IllegalArgumentException("Batch size must be greater than zero");
+		if(complete) return 0;
+		List<LegacyRevision> batch = simpleJdbcTempalte.query(SQL_SELECT_LEGACY_BATCH, new RowMapper<LegacyRevision>() {
+			@Override
+			public LegacyRevision mapRow(ResultSet rs, int rowNum) throws SQLException {
+				LegacyRevision rev = new LegacyRevision();
+				rev.ownerId = rs.getLong(COL_REVISION_OWNER_NODE);
+				rev.number = rs.getLong(COL_REVISION_NUMBER);
+				rev.annotations = rs.getBytes(COL_REVISION_ANNOS_BLOB);
+				rev.references = rs.getBytes(COL_REVISION_REFS_BLOB);
+				return rev;
+			}
+		}, lastOwnerId, lastOwnerId, lastNumber, batchSize);
+		if(batch.isEmpty()){
+			// The end of the table was reached.
+			if(!foundInPass){
+				complete = true;
+				log.info("All revision blobs have been migrated to the binary format");
+			}
+			lastOwnerId = -1;
+			lastNumber = -1;
+			foundInPass = false;
+			return 0;
+		}
+		foundInPass = true;
+		int updated = 0;
+		for(LegacyRevision rev: batch){
+			lastOwnerId = rev.ownerId;
+			lastNumber = rev.number;
+			try {
+				byte[] newAnnos = rev.annotations;
+				if(JDOSecondaryPropertyUtils.isLegacyFormat(rev.annotations)){
+					newAnnos = JDOSecondaryPropertyUtils.compressAnnotations(JDOSecondaryPropertyUtils.decompressedAnnotations(rev.annotations));
+				}
+				byte[] newRefs = rev.references;
+				if(JDOSecondaryPropertyUtils.isLegacyFormat(rev.references)){
+					newRefs = JDOSecondaryPropertyUtils.compressReferences(JDOSecondaryPropertyUtils.decompressedReferences(rev.references));
+				}
+				updated += simpleJdbcTempalte.update(SQL_UPDATE_IF_UNCHANGED, newAnnos, newRefs, rev.ownerId, rev.number, rev.annotations, rev.references);
+			} catch (IOException e) {
+				// Leave this revision in the old format, it can still be read.
+				log.warn("Failed to migrate the blobs of revision: "+rev.ownerId+"."+rev.number, e);
+			}
+		}
+		migratedCount.addAndGet(updated);
+		return updated;
+	}
+
+	@Override
+	public void migrate() throws DatastoreException {
+		if(complete) return;
+		int batchSize = StackConfiguration.getRevisionBlobMigrationBatchSize();
+		int maxPerRun = StackConfiguration.getRevisionBlobMigrationMaxPerRun();
+		long start = System.currentTimeMillis();
+		int total = 0;
+		while(total < maxPerRun && !complete){
+			int count = migrateBatch(batchSize);
+			total += count;
+			// An empty batch means the end of the table was reached.
+			if(count == 0 && lastOwnerId < 0) break;
+		}
+		if(total > 0 && log.isDebugEnabled()){
+			log.debug("Migrated the blobs of "+total+" revisions in "+(System.currentTimeMillis()-start)+" ms");
+		}
+	}
+
+	@Override
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public long getMigratedCount() {
+		return migratedCount.get();
+	}
+
+	/**
+	 * The blobs of a single revision as they were read.
+	 */
+	private static class LegacyRevision {
+		long ownerId;
+		long number;
+		byte[] annotations;
+		byte[] references;
+	}
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.model.dbo.dao;
 
 import static org.sagebionetworks.repo.model.AuthorizationConstants.BOOTSTRAP_USER_GROUP_ID;
 import static org.sagebionetworks.repo.model.AuthorizationConstants.BOOTSTRAP_USER_GROUP_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.AFTER_ID_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_USER_GROUP_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_USER_PROFILE_ETAG;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_USER_PROFILE_ID;
@@ -101,6 +102,13 @@ public class DBOUserGroupDAOImpl implements UserGroupDAOInitializingBean {
 		" ORDER BY g."+COL_USER_GROUP_ID+" LIMIT :"+LIMIT_PARAM_NAME+
 		" OFFSET :"+OFFSET_PARAM_NAME;
 	
+	private static final String SELECT_AFTER_WITH_ETAG = 
+		"SELECT g."+COL_USER_GROUP_ID+", p."+COL_USER_PROFILE_ETAG+" FROM "+
+		TABLE_USER_GROUP+" g LEFT OUTER JOIN "+TABLE_USER_PROFILE+
+		" p ON g."+COL_USER_GROUP_ID+" = p."+COL_USER_PROFILE_ID+
+		" WHERE g."+COL_USER_GROUP_ID+" > :"+AFTER_ID_PARAM_NAME+
+		" ORDER BY g."+COL_USER_GROUP_ID+" LIMIT :"+LIMIT_PARAM_NAME;
+	
 	// the query above is an outer join. For non-individual groups there is no UserProfile and
 	// hence no etag.  The group is immutable and so it's Etag should always be 0.  The following
 	// is the default etag used in such a case.
@@ -166,12 +174,31 @@ public class DBOUserGroupDAOImpl implements UserGroupDAOInitializingBean {
 	public QueryResults<MigratableObjectData> getMigrationObjectData(long offset, long limit, boolean includeDependencies)
 			throws DatastoreException {
 		// get a page of user groups
+		MapSqlParameterSource param = new MapSqlParameterSource();
+		param.addValue(OFFSET_PARAM_NAME, offset);		
+		param.addValue(LIMIT_PARAM_NAME, limit);		
+		return queryMigrationObjectData(SELECT_ALL_PAGINATED_WITH_ETAG, param);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public QueryResults<MigratableObjectData> getMigrationObjectDataAfter(long afterId, long limit, boolean includeDependencies)
+			throws DatastoreException {
+		MapSqlParameterSource param = new MapSqlParameterSource();
+		param.addValue(AFTER_ID_PARAM_NAME, afterId);		
+		param.addValue(LIMIT_PARAM_NAME, limit);		
+		return queryMigrationObjectData(SELECT_AFTER_WITH_ETAG, param);
+	}
+
+	@Override
+	public MigratableObjectType getMigratableObjectType() {
+		return MigratableObjectType.PRINCIPAL;
+	}
+
+	private QueryResults<MigratableObjectData> queryMigrationObjectData(String sql, MapSqlParameterSource param) throws DatastoreException {
 		List<MigratableObjectData> ods = null;
 		{
-			MapSqlParameterSource param = new MapSqlParameterSource();
-			param.addValue(OFFSET_PARAM_NAME, offset);		
-			param.addValue(LIMIT_PARAM_NAME, limit);		
-			ods = simpleJdbcTempalte.query(SELECT_ALL_PAGINATED_WITH_ETAG, new RowMapper<MigratableObjectData>() {
+			ods = simpleJdbcTempalte.query(sql, new RowMapper<MigratableObjectData>() {
 
 				@Override
 				public MigratableObjectData mapRow(ResultSet rs, int rowNum)
@@ -1,6 +1,7 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.ACL_OWNER_ID_COLUMN;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.AFTER_ID_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.ANNOTATION_ATTRIBUTE_COLUMN;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.ANNOTATION_OWNER_ID_COLUMN;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CURRENT_REV;
@@ -33,16 +34,26 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.sagebionetworks.ids.ETagGenerator;
 import org.sagebionetworks.ids.IdGenerator;
 import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.ChangeDAO;
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityHeader;
@@ -50,6 +61,7 @@ import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.MigratableObjectData;
 import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
+import org.sagebionetworks.repo.model.MigratableObjectType;
 import org.sagebionetworks.repo.model.NameConflictException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
@@ -57,17 +69,23 @@ import org.sagebionetworks.repo.model.NodeBackupDAO;
 import org.sagebionetworks.repo.model.NodeConstants;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.QueryResults;
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
 import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
 import org.sagebionetworks.repo.model.dbo.persistence.DBONodeType;
 import org.sagebionetworks.repo.model.dbo.persistence.DBONodeTypeAlias;
+import org.sagebionetworks.repo.model.dbo.persistence.DBOReference;
 import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
 import org.sagebionetworks.repo.model.jdo.JDORevisionUtils;
 import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.jdo.ObjectDescriptorUtils;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -93,6 +111,9 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 	private static final String UPDATE_ETAG_SQL = "UPDATE "+TABLE_NODE+" SET "+COL_NODE_ETAG+" = ? WHERE "+COL_NODE_ID+" = ?";
 	private static final String SQL_COUNT_NODES = "SELECT COUNT("+COL_NODE_ID+") FROM "+TABLE_NODE;
 	private static final String SQL_SELECT_PARENT_TYPE_NAME = "SELECT "+COL_NODE_PARENT_ID+", "+COL_NODE_TYPE+", "+COL_NODE_NAME+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
+	// The number of ancestors fetched by a single path query.  Deeper paths take another query for each additional block.
+	public static final int MAX_PATH_DEPTH_PER_QUERY = 20;
+	private static final String SQL_SELECT_ENTITY_PATH = createEntityPathSql(MAX_PATH_DEPTH_PER_QUERY);
 	private static final String SQL_GET_ALL_CHILDREN_IDS = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" = ? ORDER BY "+COL_NODE_ID;
 	private static final String SQL_COUNT_STRING_ANNOTATIONS_FOR_NODE = "SELECT COUNT("+ANNOTATION_OWNER_ID_COLUMN+") FROM "+TABLE_STRING_ANNOTATIONS+" WHERE "+ANNOTATION_OWNER_ID_COLUMN+" = ? AND "+ANNOTATION_ATTRIBUTE_COLUMN+" = ?";
 		
@@ -104,6 +125,14 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		" ORDER BY n."+COL_NODE_ID+
 		" LIMIT :"+LIMIT_PARAM_NAME+" OFFSET :"+OFFSET_PARAM_NAME;
 	
+	// get the ids after a given id, using the primary key rather than an offset
+	private static final String SQL_GET_NODES_AFTER =
+		"SELECT n."+COL_NODE_ID+", n."+COL_NODE_ETAG+
+		" FROM "+TABLE_NODE+" n "+
+		" WHERE n."+COL_NODE_ID+" > :"+AFTER_ID_PARAM_NAME+
+		" ORDER BY n."+COL_NODE_ID+
+		" LIMIT :"+LIMIT_PARAM_NAME;
+	
 	// select n.id, n.created_by, n.etag, n.parent_id, n.benefactor_id, r.modified_by
 	// from jdonode n, jdorevison r
 	// where n.id=r.owner_node_id order by n.id limit L offset O
@@ -114,6 +143,16 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 			" WHERE n."+COL_NODE_ID+"=r."+COL_REVISION_OWNER_NODE+" ORDER BY n."+COL_NODE_ID+
 			" LIMIT :"+LIMIT_PARAM_NAME+" OFFSET :"+OFFSET_PARAM_NAME;
 	
+	// One row per node, so the limit counts nodes and a page never ends part way through a node.
+	// The modifiers of each node's revisions are read with SQL_GET_REVISION_MODIFIERS.
+	private static final String SQL_GET_NODES_AND_DEPENDENCIES_AFTER =
+		"SELECT n."+COL_NODE_ID+", n."+COL_NODE_CREATED_BY+", n."+COL_NODE_ETAG+", n."+COL_NODE_PARENT_ID+
+			", n."+COL_NODE_BENEFACTOR_ID+
+			" FROM "+TABLE_NODE+" n "+
+			" WHERE n."+COL_NODE_ID+" > :"+AFTER_ID_PARAM_NAME+
+			" ORDER BY n."+COL_NODE_ID+
+			" LIMIT :"+LIMIT_PARAM_NAME;
+	
 	// find the principal dependencies created by the ACLs on auth benefactor nodes
 	// Note, we identify the benefactor nodes by the fact that they are their own benefactor
 	// below 'LIST' is the list of ids returned by the paginated query above
@@ -127,6 +166,42 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		" WHERE n."+COL_NODE_ID+"=acl."+ACL_OWNER_ID_COLUMN+" and ra."+COL_RESOURCE_ACCESS_OWNER+"=acl."+ACL_OWNER_ID_COLUMN+
 		" AND n."+COL_NODE_ID+"=n."+COL_NODE_BENEFACTOR_ID+" AND n."+COL_NODE_ID+" in (:"+COL_NODE_ID+")";
 	
+	// The most ids bound to a single IN clause.  Longer lists are read in blocks of this size.
+	public static final int MAX_IDS_PER_QUERY = 1000;
+	// Fewer nodes than this are decoded on the calling thread.
+	public static final int MIN_NODES_FOR_PARALLEL_DECODE = 32;
+	private static final String IDS_PARAM_NAME = "ids";
+	
+	// The node and revision column names do not overlap, so each row maps to both objects.
+	private static final String SQL_SELECT_CURRENT_REVISIONS =
+		"SELECT n.*, r.* FROM "+TABLE_NODE+" n, "+TABLE_REVISION+" r"+
+		" WHERE n."+COL_NODE_ID+"=r."+COL_REVISION_OWNER_NODE+" AND n."+COL_CURRENT_REV+"=r."+COL_REVISION_NUMBER+
+		" AND n."+COL_NODE_ID+" IN (:"+IDS_PARAM_NAME+")";
+	private static final String SQL_SELECT_PARENT_IDS = "SELECT "+COL_NODE_ID+", "+COL_NODE_PARENT_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" IN (:"+IDS_PARAM_NAME+")";
+	private static final String SQL_SELECT_CHILD_IDS = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" IN (:"+IDS_PARAM_NAME+")";
+	private static final String SQL_GET_REVISION_MODIFIERS =
+		"SELECT DISTINCT "+COL_REVISION_OWNER_NODE+", "+COL_REVISION_MODIFIED_BY+" FROM "+TABLE_REVISION+
+		" WHERE "+COL_REVISION_OWNER_NODE+" IN (:"+IDS_PARAM_NAME+")";
+	
+	private static final TableMapping<DBONode> NODE_MAPPING = new DBONode().getTableMapping();
+	private static final TableMapping<DBORevision> REVISION_MAPPING = new DBORevision().getTableMapping();
+	private static final RowMapper<CurrentRevision> CURRENT_REVISION_MAPPER = new RowMapper<CurrentRevision>() {
+		@Override
+		public CurrentRevision mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return new CurrentRevision(NODE_MAPPING.mapRow(rs, rowNum), REVISION_MAPPING.mapRow(rs, rowNum));
+		}
+	};
+	
+	private static final int DECODE_THREADS = Runtime.getRuntime().availableProcessors();
+	private static final ExecutorService DECODE_EXECUTOR = Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "node-revision-decoder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
 	// This is better suited for simple JDBC query.
 	@Autowired
 	private SimpleJdbcTemplate simpleJdbcTemplate;
@@ -142,6 +217,8 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 	DBOBasicDao dboBasicDao;
 	@Autowired
 	DBOAnnotationsDao dboAnnotationsDao;
+	@Autowired
+	ChangeDAO changeDAO;
 	
 	private static String BIND_ID_KEY = "bindId";
 	private static String SQL_ETAG_WITHOUT_LOCK = "SELECT "+COL_NODE_ETAG+" FROM "+TABLE_NODE+" WHERE ID = ?";
@@ -239,6 +316,7 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		if(dto.getReferences() != null){
 			dboReferenceDao.replaceReferences(node.getId(), dto.getReferences());
 		}
+		changeDAO.replaceChange(createChange(node.getId(), node.geteTag(), ChangeType.CREATE));
 		return KeyFactory.keyToString(node.getId());
 	}
 
@@ -258,6 +336,112 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		if(!startingId.equals(KeyFactory.stringToKey(id))) throw new DatastoreException("Creating a node from a backup changed the ID.");
 	}
 
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public void createNewNodesFromBackup(List<Node> nodes, List<NodeRevisionBackup> revisions) throws DatastoreException, InvalidModelException {
+		if(nodes == null) throw new IllegalArgumentException("Nodes cannot be null");
+		if(revisions == null) throw new IllegalArgumentException("Revisions cannot be null");
+		if(nodes.isEmpty()) return;
+		List<DBONode> nodeBatch = new ArrayList<DBONode>(nodes.size());
+		// All revisions keyed by owner and revision number.
+		Map<String, DBORevision> revisionMap = new LinkedHashMap<String, DBORevision>();
+		long maxId = 0;
+		for(Node dto: nodes){
+			if(dto == null) throw new IllegalArgumentException("Node cannot be null");
+			if(dto.getETag() == null) throw new IllegalArgumentException("The backup node must have an etag");
+			if(dto.getId() == null) throw new IllegalArgumentException("The backup node must have an id");
+			if(dto.getNodeType() == null) throw new IllegalArgumentException("Node type cannot be null");
+			DBORevision rev = new DBORevision();
+			if(dto.getVersionLabel() == null){
+				rev.setLabel(NodeConstants.DEFAULT_VERSION_LABEL);
+			}
+			if(dto.getVersionNumber() == null || dto.getVersionNumber().longValue() < 1){
+				rev.setRevisionNumber(NodeConstants.DEFAULT_VERSION_NUMBER);
+			}else{
+				rev.setRevisionNumber(dto.getVersionNumber());
+			}
+			DBONode node = new DBONode();
+			node.setCurrentRevNumber(rev.getRevisionNumber());
+			NodeUtils.updateFromDto(dto, node, rev);
+			node.setId(KeyFactory.stringToKey(dto.getId()));
+			node.setNodeType(EntityType.valueOf(dto.getNodeType()).getId());
+			// See PLFM-845.  The eTag of the backup is used.
+			node.seteTag(KeyFactory.urlDecode(dto.getETag()));
+			if(dto.getParentId() != null){
+				// The parent is either already in the database or earlier in this batch.
+				node.setParentId(KeyFactory.stringToKey(dto.getParentId()));
+			}
+			node.setBenefactorId(node.getId());
+			rev.setOwner(node.getId());
+			nodeBatch.add(node);
+			revisionMap.put(createRevisionKey(node.getId(), rev.getRevisionNumber()), rev);
+			maxId = Math.max(maxId, node.getId());
+		}
+		// The backup revisions replace the revisions created from the nodes.
+		for(NodeRevisionBackup backupRev: revisions){
+			validateNodeRevision(backupRev);
+			String key = createRevisionKey(KeyFactory.stringToKey(backupRev.getNodeId()), backupRev.getRevisionNumber());
+			DBORevision rev = revisionMap.get(key);
+			if(rev == null){
+				rev = new DBORevision();
+				revisionMap.put(key, rev);
+			}
+			JDORevisionUtils.updateJdoFromDto(backupRev, rev);
+		}
+		// Reserving the largest ID also reserves all IDs less than it.
+		idGenerator.reserveId(maxId);
+		dboBasicDao.createBatch(nodeBatch);
+		dboBasicDao.createBatch(new ArrayList<DBORevision>(revisionMap.values()));
+		List<ChangeMessage> changes = new ArrayList<ChangeMessage>(nodeBatch.size());
+		for(DBONode node: nodeBatch){
+			changes.add(createChange(node.getId(), node.geteTag(), ChangeType.CREATE));
+		}
+		changeDAO.replaceChanges(changes);
+		// The annotation tables and references are populated from the current revision of each node.
+		// These are new nodes so there is nothing to delete first.
+		List<DBOReference> referenceBatch = new ArrayList<DBOReference>();
+		List<Annotations> annotationBatch = new ArrayList<Annotations>(nodeBatch.size());
+		try {
+			for(DBONode node: nodeBatch){
+				DBORevision current = revisionMap.get(createRevisionKey(node.getId(), node.getCurrentRevNumber()));
+				if(current.getReferences() != null){
+					Map<String, Set<Reference>> references = JDOSecondaryPropertyUtils.decompressedReferences(current.getReferences());
+					if(references != null){
+						referenceBatch.addAll(ReferenceUtil.createDBOReferences(node.getId(), references));
+					}
+				}
+				NamedAnnotations named = JDOSecondaryPropertyUtils.decompressedAnnotations(current.getAnnotations());
+				annotationBatch.add(prepareAnnotationsForDBReplacement(named, KeyFactory.keyToString(node.getId())));
+			}
+		} catch (IOException e) {
+			throw new DatastoreException(e);
+		}
+		if(!referenceBatch.isEmpty()){
+			dboBasicDao.createBatch(referenceBatch);
+		}
+		dboAnnotationsDao.replaceAnnotations(annotationBatch);
+	}
+	
+	private static String createRevisionKey(Long nodeId, Long revisionNumber){
+		return nodeId+"-"+revisionNumber;
+	}
+
+	/**
+	 * Create the change log entry for a node.
+	 * @param nodeId
+	 * @param eTag Null for a delete.
+	 * @param changeType
+	 * @return
+	 */
+	private static ChangeMessage createChange(Long nodeId, String eTag, ChangeType changeType){
+		ChangeMessage change = new ChangeMessage();
+		change.setObjectId(KeyFactory.keyToString(nodeId));
+		change.setObjectType(ObjectType.ENTITY);
+		change.setObjectEtag(eTag);
+		change.setChangeType(changeType);
+		return change;
+	}
+
 	/**
 	 * Determine which constraint was violated and throw a more meaningful exception.
 	 * @param dto
@@ -324,8 +508,47 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 	@Override
 	public boolean delete(String id) throws NotFoundException, DatastoreException {
 		if(id == null) throw new IllegalArgumentException("NodeId cannot be null");
-		MapSqlParameterSource prams = getNodeParameters(KeyFactory.stringToKey(id));
-		return dboBasicDao.deleteObjectById(DBONode.class, prams);
+		Long nodeId = KeyFactory.stringToKey(id);
+		MapSqlParameterSource prams = getNodeParameters(nodeId);
+		// The cascade also deletes the descendants, so their deletes are recorded with the root's.
+		List<Long> descendantIds = getDescendantIds(nodeId);
+		boolean deleted = dboBasicDao.deleteObjectById(DBONode.class, prams);
+		if(deleted){
+			List<ChangeMessage> changes = new ArrayList<ChangeMessage>(descendantIds.size()+1);
+			changes.add(createChange(nodeId, null, ChangeType.DELETE));
+			for(Long descendantId: descendantIds){
+				changes.add(createChange(descendantId, null, ChangeType.DELETE));
+			}
+			changeDAO.replaceChanges(changes);
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Get the IDs of every descendant of a node.  The tree is read a level at a time with one
+	 * query per level per block of ids.
+	 * @param nodeId
+	 * @return
+	 */
+	private List<Long> getDescendantIds(Long nodeId){
+		List<Long> descendants = new ArrayList<Long>();
+		List<Long> parents = Collections.singletonList(nodeId);
+		while(!parents.isEmpty()){
+			List<Long> children = new ArrayList<Long>();
+			for(int start=0; start<parents.size(); start+=MAX_IDS_PER_QUERY){
+				MapSqlParameterSource params = new MapSqlParameterSource();
+				params.addValue(IDS_PARAM_NAME, parents.subList(start, Math.min(parents.size(), start+MAX_IDS_PER_QUERY)));
+				children.addAll(simpleJdbcTemplate.query(SQL_SELECT_CHILD_IDS, new RowMapper<Long>() {
+					@Override
+					public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+						return rs.getLong(COL_NODE_ID);
+					}
+				}, params));
+			}
+			descendants.addAll(children);
+			parents = children;
+		}
+		return descendants;
 	}
 	
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -473,14 +696,157 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		if(id == null) throw new IllegalArgumentException("Id cannot be null");
 		Set<String> childIds = getChildrenIds(id);
 		Set<Node> results = new HashSet<Node>();
-		// for each child get the nodes
-		for(String childId: childIds){
-			Node child = this.getNode(childId);
-			results.add(child);
+		// Read the children with their current revisions in bulk
+		for(CurrentRevision current: getCurrentRevisions(childIds)){
+			results.add(NodeUtils.copyFromJDO(current.node, current.revision));
+		}
+		return results;
+	}
+	
+	@Transactional(readOnly = true)
+	@Override
+	public Map<String, NodeWithAnnotations> getNodesWithAnnotations(Collection<String> ids) throws DatastoreException {
+		if(ids == null) throw new IllegalArgumentException("Ids cannot be null");
+		Map<String, NodeWithAnnotations> results = new HashMap<String, NodeWithAnnotations>();
+		if(ids.isEmpty()) return results;
+		Map<Long, NodeWithAnnotations> byKey = new HashMap<Long, NodeWithAnnotations>();
+		for(NodeWithAnnotations decoded: decode(getCurrentRevisions(ids))){
+			byKey.put(KeyFactory.stringToKey(decoded.getNode().getId()), decoded);
+		}
+		// Key the results by the ids as they were passed in.
+		for(String id: ids){
+			NodeWithAnnotations decoded = byKey.get(KeyFactory.stringToKey(id));
+			if(decoded != null){
+				results.put(id, decoded);
+			}
+		}
+		return results;
+	}
+	
+	@Transactional(readOnly = true)
+	@Override
+	public Map<String, String> getParentIds(Collection<String> ids) throws DatastoreException {
+		if(ids == null) throw new IllegalArgumentException("Ids cannot be null");
+		Map<String, String> results = new HashMap<String, String>();
+		if(ids.isEmpty()) return results;
+		Set<Long> keySet = new LinkedHashSet<Long>();
+		for(String id: ids){
+			keySet.add(KeyFactory.stringToKey(id));
+		}
+		List<Long> keys = new ArrayList<Long>(keySet);
+		final Map<Long, String> byKey = new HashMap<Long, String>();
+		for(int start=0; start<keys.size(); start+=MAX_IDS_PER_QUERY){
+			MapSqlParameterSource params = new MapSqlParameterSource();
+			params.addValue(IDS_PARAM_NAME, keys.subList(start, Math.min(keys.size(), start+MAX_IDS_PER_QUERY)));
+			simpleJdbcTemplate.query(SQL_SELECT_PARENT_IDS, new RowMapper<Void>() {
+				@Override
+				public Void mapRow(ResultSet rs, int rowNum) throws SQLException {
+					long parentId = rs.getLong(COL_NODE_PARENT_ID);
+					byKey.put(rs.getLong(COL_NODE_ID), rs.wasNull() ? null : KeyFactory.keyToString(parentId));
+					return null;
+				}
+			}, params);
+		}
+		// Key the results by the ids as they were passed in.
+		for(String id: ids){
+			Long key = KeyFactory.stringToKey(id);
+			if(byKey.containsKey(key)){
+				results.put(id, byKey.get(key));
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Read the nodes and their current revisions with one query per block of ids.
+	 * @param ids
+	 * @return one entry for each node that exists.
+	 * @throws DatastoreException
+	 */
+	private List<CurrentRevision> getCurrentRevisions(Collection<String> ids) throws DatastoreException {
+		Set<Long> keySet = new LinkedHashSet<Long>();
+		for(String id: ids){
+			keySet.add(KeyFactory.stringToKey(id));
+		}
+		List<Long> keys = new ArrayList<Long>(keySet);
+		List<CurrentRevision> results = new ArrayList<CurrentRevision>(keys.size());
+		for(int start=0; start<keys.size(); start+=MAX_IDS_PER_QUERY){
+			MapSqlParameterSource params = new MapSqlParameterSource();
+			params.addValue(IDS_PARAM_NAME, keys.subList(start, Math.min(keys.size(), start+MAX_IDS_PER_QUERY)));
+			results.addAll(simpleJdbcTemplate.query(SQL_SELECT_CURRENT_REVISIONS, CURRENT_REVISION_MAPPER, params));
 		}
 		return results;
 	}
 	
+	/**
+	 * Decode the references and annotations blobs of each revision.  Large
+	 * batches are split across the decoder threads, with the first block
+	 * decoded on the calling thread.
+	 * @param currentRevisions
+	 * @return
+	 * @throws DatastoreException
+	 */
+	private List<NodeWithAnnotations> decode(List<CurrentRevision> currentRevisions) throws DatastoreException {
+		if(currentRevisions.size() < MIN_NODES_FOR_PARALLEL_DECODE || DECODE_THREADS < 2){
+			return decodeBlock(currentRevisions);
+		}
+		int blockSize = (currentRevisions.size() + DECODE_THREADS - 1) / DECODE_THREADS;
+		List<Future<List<NodeWithAnnotations>>> futures = new ArrayList<Future<List<NodeWithAnnotations>>>();
+		for(int start=blockSize; start<currentRevisions.size(); start+=blockSize){
+			final List<CurrentRevision> block = currentRevisions.subList(start, Math.min(currentRevisions.size(), start+blockSize));
+			futures.add(DECODE_EXECUTOR.submit(new Callable<List<NodeWithAnnotations>>() {
+				@Override
+				public List<NodeWithAnnotations> call() throws Exception {
+					return decodeBlock(block);
+				}
+			}));
+		}
+		List<NodeWithAnnotations> results = new ArrayList<NodeWithAnnotations>(currentRevisions.size());
+		results.addAll(decodeBlock(currentRevisions.subList(0, blockSize)));
+		for(Future<List<NodeWithAnnotations>> future: futures){
+			results.addAll(await(future));
+		}
+		return results;
+	}
+	
+	private List<NodeWithAnnotations> decodeBlock(List<CurrentRevision> block) throws DatastoreException {
+		List<NodeWithAnnotations> results = new ArrayList<NodeWithAnnotations>(block.size());
+		for(CurrentRevision current: block){
+			Node node = NodeUtils.copyFromJDO(current.node, current.revision);
+			NamedAnnotations annos = getAnnotations(current.node, current.revision);
+			results.add(new NodeWithAnnotations(node, annos, KeyFactory.keyToString(current.node.getBenefactorId())));
+		}
+		return results;
+	}
+	
+	private static List<NodeWithAnnotations> await(Future<List<NodeWithAnnotations>> future) throws DatastoreException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatastoreException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DatastoreException) throw (DatastoreException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new DatastoreException(cause);
+		}
+	}
+	
+	/**
+	 * A node and its current revision as read from a single row.
+	 */
+	private static class CurrentRevision {
+		final DBONode node;
+		final DBORevision revision;
+		
+		CurrentRevision(DBONode node, DBORevision revision) {
+			this.node = node;
+			this.revision = revision;
+		}
+	}
+	
 	@Override
 	public Set<String> getChildrenIds(String id) throws NotFoundException, DatastoreException {
 		if(id == null) throw new IllegalArgumentException("Id cannot be null");
@@ -521,6 +887,7 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		// Update the etag
 		int updated = simpleJdbcTemplate.update(UPDATE_ETAG_SQL, currentTag, longId);
 		if(updated != 1) throw new ConflictingUpdateException("Failed to lock Node: "+longId);
+		changeDAO.replaceChange(createChange(longId, currentTag, ChangeType.UPDATE));
 		// Return the new tag
 		return String.valueOf(currentTag);
 	}
@@ -566,6 +933,7 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		dboBasicDao.update(revToUpdate);
 		// But we also need to create any new references or delete removed references, as applicable
 		replaceAnnotationsAndReferencesIfCurrent(jdoToUpdate.getCurrentRevNumber(), revToUpdate);
+		// The change was recorded when the etag was incremented.
 	}
 	
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -584,6 +952,7 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 			// Check to see if this is a duplicate name exception.
 			checkExceptionDetails(toReplace.getName(), toReplace.getParentId(), e);
 		}
+		changeDAO.replaceChange(createChange(nodeId, jdoToUpdate.geteTag(), ChangeType.UPDATE));
 	}
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -792,29 +1161,69 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 	@Transactional(readOnly = true)
 	@Override
 	public List<EntityHeader> getEntityPath(String nodeId) throws DatastoreException, NotFoundException {
-		// Call the recursive method
-		List<EntityHeader> results = new ArrayList<EntityHeader>();
-		appendPath(results, KeyFactory.stringToKey(nodeId));
-		return results;
+		if(nodeId == null) throw new IllegalArgumentException("NodeId cannot be null");
+		// The headers are gathered from the node up to the root.
+		final List<EntityHeader> reversed = new ArrayList<EntityHeader>();
+		Long nextId = KeyFactory.stringToKey(nodeId);
+		while(nextId != null){
+			final Long startId = nextId;
+			List<Long> next = simpleJdbcTemplate.query(SQL_SELECT_ENTITY_PATH, new RowMapper<Long>() {
+				@Override
+				public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return appendAncestors(rs, reversed, MAX_PATH_DEPTH_PER_QUERY);
+				}
+			}, startId);
+			if(next.isEmpty()){
+				throw new NotFoundException("Cannot find a node with id: "+startId);
+			}
+			nextId = next.get(0);
+		}
+		Collections.reverse(reversed);
+		return reversed;
+	}
+	
+	/**
+	 * Build a query that fetches a node and up to depth-1 of its ancestors in a single row
+	 * by joining the node table to itself once for each level.
+	 * @param depth
+	 * @return
+	 */
+	static String createEntityPathSql(int depth){
+		if(depth < 1) throw new IllegalArgumentException("Depth must be at least one");
+		StringBuilder select = new StringBuilder("SELECT ");
+		StringBuilder from = new StringBuilder(" FROM "+TABLE_NODE+" N0");
+		for(int i=0; i<depth; i++){
+			if(i > 0){
+				select.append(", ");
+				from.append(" LEFT JOIN "+TABLE_NODE+" N"+i+" ON N"+i+"."+COL_NODE_ID+" = N"+(i-1)+"."+COL_NODE_PARENT_ID);
+			}
+			select.append("N"+i+"."+COL_NODE_ID+", N"+i+"."+COL_NODE_TYPE+", N"+i+"."+COL_NODE_NAME);
+		}
+		select.append(", N"+(depth-1)+"."+COL_NODE_PARENT_ID);
+		return select.toString()+from.toString()+" WHERE N0."+COL_NODE_ID+" = ?";
 	}
 	
 	/**
-	 * A recursive method to build up the full path of of an entity.
+	 * Add a header for each node in a row of the path query.
+	 * @param rs
 	 * @param results
-	 * @param nodeId
-	 * @throws NotFoundException 
-	 * @throws DatastoreException 
+	 * @param depth
+	 * @return The parent of the last node in the row if the path continues, else null.
+	 * @throws SQLException
 	 */
-	private void appendPath(List<EntityHeader> results, Long nodeId) throws NotFoundException, DatastoreException{
-		// First Build the entity header for this node
-		ParentTypeName ptn = getParentTypeName(nodeId);
-		EntityHeader header = createHeaderFromParentTypeName(KeyFactory.keyToString(nodeId), ptn);
-		// Add at the front
-		results.add(0, header);
-		if(ptn.getParentId() != null){
-			// Recurse
-			appendPath(results, ptn.getParentId());
+	private static Long appendAncestors(ResultSet rs, List<EntityHeader> results, int depth) throws SQLException{
+		for(int i=0; i<depth; i++){
+			long id = rs.getLong(i*3+1);
+			// The root was reached
+			if(rs.wasNull()) return null;
+			ParentTypeName ptn = new ParentTypeName();
+			ptn.setType(rs.getShort(i*3+2));
+			ptn.setName(rs.getString(i*3+3));
+			results.add(createHeaderFromParentTypeName(KeyFactory.keyToString(id), ptn));
 		}
+		long parentId = rs.getLong(depth*3+1);
+		if(rs.wasNull()) return null;
+		return parentId;
 	}
 
 	@Transactional(readOnly = true)
@@ -1062,8 +1471,11 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		MapSqlParameterSource params = new MapSqlParameterSource();
 		params.addValue(OFFSET_PARAM_NAME, offset);
 		params.addValue(LIMIT_PARAM_NAME, limit);
-		
-		List<MigratableObjectData> ods = this.simpleJdbcTemplate.query(SQL_GET_NODES_PAGINATED, new RowMapper<MigratableObjectData>() {
+		return queryMigrationObjectDataWithoutDependencies(SQL_GET_NODES_PAGINATED, params);
+	}
+	
+	private QueryResults<MigratableObjectData> queryMigrationObjectDataWithoutDependencies(String sql, MapSqlParameterSource params) throws DatastoreException {
+		List<MigratableObjectData> ods = this.simpleJdbcTemplate.query(sql, new RowMapper<MigratableObjectData>() {
 			@Override
 			public MigratableObjectData mapRow(ResultSet rs, int rowNum) throws SQLException {
 				MigratableObjectData data = new MigratableObjectData();
@@ -1086,20 +1498,47 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 		
 		// if we don't want dependencies then use an alternate, faster query
 		if (!includeDependencies) return getMigrationObjectDataWithoutDependencies(offset, limit);
-		
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue(OFFSET_PARAM_NAME, offset);
+		params.addValue(LIMIT_PARAM_NAME, limit);
+		return queryMigrationObjectData(SQL_GET_NODES_AND_DEPENDENCIES_PAGINATED, params, true);
+	}
+	
+	@Transactional(readOnly = true)
+	@Override
+	public QueryResults<MigratableObjectData> getMigrationObjectDataAfter(long afterId,
+			long limit, boolean includeDependencies) throws DatastoreException {
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue(AFTER_ID_PARAM_NAME, afterId);
+		params.addValue(LIMIT_PARAM_NAME, limit);
+		if (!includeDependencies) return queryMigrationObjectDataWithoutDependencies(SQL_GET_NODES_AFTER, params);
+		// The page is read from the node table alone so each node appears once and in order.
+		return queryMigrationObjectData(SQL_GET_NODES_AND_DEPENDENCIES_AFTER, params, false);
+	}
+	
+	@Override
+	public MigratableObjectType getMigratableObjectType() {
+		return MigratableObjectType.ENTITY;
+	}
+	
+	/**
+	 * @param sql
+	 * @param params
+	 * @param rowsIncludeModifier True if the query joins the revisions and returns the modifier on each row.
+	 * Otherwise the modifiers are read for the whole page with a second query.
+	 * @return
+	 * @throws DatastoreException
+	 */
+	private QueryResults<MigratableObjectData> queryMigrationObjectData(String sql, MapSqlParameterSource params, final boolean rowsIncludeModifier) throws DatastoreException {
 		// for each node, need to get its ID, etag, parent, creator, modifier, and everything referenced by its ACL
 		// first get all the dependencies EXCEPT those of the ACL (include the auth-benefactor dependency which
 		// implicitly makes the node dependent on its ACL)
 		// select n.id, n.created_by, n.etag, n.parent_id, n.benefactor_id, r.modified_by
 		// from jdonode n, jdorevison r
 		// where n.id=r.owner_node_id order by n.id limit L offset O
-		MapSqlParameterSource params = new MapSqlParameterSource();
-		params.addValue(OFFSET_PARAM_NAME, offset);
-		params.addValue(LIMIT_PARAM_NAME, limit);
-
 		final List<Long> benefactorIDList = new ArrayList<Long>();
 
-		List<MigratableObjectData> ods = this.simpleJdbcTemplate.query(SQL_GET_NODES_AND_DEPENDENCIES_PAGINATED, new RowMapper<MigratableObjectData>() {
+		List<MigratableObjectData> ods = this.simpleJdbcTemplate.query(sql, new RowMapper<MigratableObjectData>() {
 			@Override
 			public MigratableObjectData mapRow(ResultSet rs, int rowNum) throws SQLException {
 				MigratableObjectData data = new MigratableObjectData();
@@ -1110,8 +1549,10 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 
 				long createdBy = rs.getLong(COL_NODE_CREATED_BY);
 				dependencies.add(ObjectDescriptorUtils.createPrincipalObjectDescriptor(createdBy));
-				long modifiedBy = rs.getLong(COL_REVISION_MODIFIED_BY);
-				dependencies.add(ObjectDescriptorUtils.createPrincipalObjectDescriptor(modifiedBy));					
+				if (rowsIncludeModifier) {
+					long modifiedBy = rs.getLong(COL_REVISION_MODIFIED_BY);
+					dependencies.add(ObjectDescriptorUtils.createPrincipalObjectDescriptor(modifiedBy));					
+				}
 				long parentId = rs.getLong(COL_NODE_PARENT_ID); // can be null (in which case it's set to 0)
 				if (!rs.wasNull()) {
 					dependencies.add(ObjectDescriptorUtils.createEntityObjectDescriptor(parentId));
@@ -1141,8 +1582,8 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 				}
 			}
 			
-			params = new MapSqlParameterSource();
-			params.addValue(COL_NODE_ID, benefactorIDList);		
+			MapSqlParameterSource benefactorParams = new MapSqlParameterSource();
+			benefactorParams.addValue(COL_NODE_ID, benefactorIDList);		
 			
 			// now find the principal dependencies created by the ACLs on auth benefactor nodes
 			// Note, we identify the benefactor nodes by the fact that they are their own benefactor
@@ -1162,12 +1603,40 @@ public class NodeDAOImpl implements NodeDAO, NodeBackupDAO, InitializingBean {
 					if (!dependencies.contains(aclMember)) dependencies.add(aclMember);
 					return 0;
 				}
-			}, params);
+			}, benefactorParams);
 		}
 		
+		if (!rowsIncludeModifier) addRevisionModifiers(ods);
+		
 		QueryResults<MigratableObjectData> queryResults = new QueryResults<MigratableObjectData>();
 		queryResults.setResults(ods);
 		queryResults.setTotalNumberOfResults((int)getCount());
 		return queryResults;
 	}
+
+	/**
+	 * Add the modifier of every revision of each node to its dependencies.  The modifiers are read
+	 * with one query per block of ids.
+	 * @param ods
+	 */
+	private void addRevisionModifiers(List<MigratableObjectData> ods) {
+		if (ods.isEmpty()) return;
+		final Map<Long, MigratableObjectData> byId = new HashMap<Long, MigratableObjectData>();
+		for (MigratableObjectData od : ods) {
+			byId.put(KeyFactory.stringToKey(od.getId().getId()), od);
+		}
+		List<Long> keys = new ArrayList<Long>(byId.keySet());
+		for(int start=0; start<keys.size(); start+=MAX_IDS_PER_QUERY){
+			MapSqlParameterSource params = new MapSqlParameterSource();
+			params.addValue(IDS_PARAM_NAME, keys.subList(start, Math.min(keys.size(), start+MAX_IDS_PER_QUERY)));
+			simpleJdbcTemplate.query(SQL_GET_REVISION_MODIFIERS, new RowMapper<Void>() {
+				@Override
+				public Void mapRow(ResultSet rs, int rowNum) throws SQLException {
+					MigratableObjectData od = byId.get(rs.getLong(COL_REVISION_OWNER_NODE));
+					od.getDependencies().add(ObjectDescriptorUtils.createPrincipalObjectDescriptor(rs.getLong(COL_REVISION_MODIFIED_BY)));
+					return null;
+				}
+			}, params);
+		}
+	}
 }
@@ -0,0 +1,164 @@
+package org.sagebionetworks.repo.model.dbo.persistence;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_CHANGE_NUM;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_CHANGE_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_ETAG;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGES_OBJECT_TYPE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.DDL_CHANGES;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_CHANGES;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.FieldColumn;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
+
+/**
+ * DBO for the latest change made to an object.
+ *
+ */
+public class DBOChange implements DatabaseObject<DBOChange> {
+
+	private static FieldColumn[] FIELDS = new FieldColumn[] {
+			new FieldColumn("changeNumber", COL_CHANGES_CHANGE_NUM, true),
+			new FieldColumn("objectId", COL_CHANGES_OBJECT_ID),
+			new FieldColumn("objectType", COL_CHANGES_OBJECT_TYPE),
+			new FieldColumn("objectEtag", COL_CHANGES_OBJECT_ETAG),
+			new FieldColumn("changeType", COL_CHANGES_CHANGE_TYPE),
+	};
+
+	@Override
+	public TableMapping<DBOChange> getTableMapping() {
+		return new TableMapping<DBOChange>() {
+
+			@Override
+			public DBOChange mapRow(ResultSet rs, int index) throws SQLException {
+				DBOChange change = new DBOChange();
+				change.setChangeNumber(rs.getLong(COL_CHANGES_CHANGE_NUM));
+				change.setObjectId(rs.getLong(COL_CHANGES_OBJECT_ID));
+				change.setObjectType(rs.getString(COL_CHANGES_OBJECT_TYPE));
+				change.setObjectEtag(rs.getString(COL_CHANGES_OBJECT_ETAG));
+				change.setChangeType(rs.getString(COL_CHANGES_CHANGE_TYPE));
+				return change;
+			}
+
+			@Override
+			public String getTableName() {
+				return TABLE_CHANGES;
+			}
+
+			@Override
+			public String getDDLFileName() {
+				return DDL_CHANGES;
+			}
+
+			@Override
+			public FieldColumn[] getFieldColumns() {
+				return FIELDS;
+			}
+
+			@Override
+			public Class<? extends DBOChange> getDBOClass() {
+				return DBOChange.class;
+			}
+		};
+	}
+
+	private Long changeNumber;
+	private Long objectId;
+	private String objectType;
+	private String objectEtag;
+	private String changeType;
+
+	public Long getChangeNumber() {
+		return changeNumber;
+	}
+	public void setChangeNumber(Long changeNumber) {
+		this.changeNumber = changeNumber;
+	}
+	public Long getObjectId() {
+		return objectId;
+	}
+	public void setObjectId(Long objectId) {
+		this.objectId = objectId;
+	}
+	public String getObjectType() {
+		return objectType;
+	}
+	public void setObjectType(String objectType) {
+		this.objectType = objectType;
+	}
+	public String getObjectEtag() {
+		return objectEtag;
+	}
+	public void setObjectEtag(String objectEtag) {
+		this.objectEtag = objectEtag;
+	}
+	public String getChangeType() {
+		return changeType;
+	}
+	public void setChangeType(String changeType) {
+		this.changeType = changeType;
+	}
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((changeNumber == null) ? 0 : changeNumber.hashCode());
+		result = prime * result
+				+ ((changeType == null) ? 0 : changeType.hashCode());
+		result = prime * result
+				+ ((objectEtag == null) ? 0 : objectEtag.hashCode());
+		result = prime * result
+				+ ((objectId == null) ? 0 : objectId.hashCode());
+		result = prime * result
+				+ ((objectType == null) ? 0 : objectType.hashCode());
+		return result;
+	}
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DBOChange other = (DBOChange) obj;
+		if (changeNumber == null) {
+			if (other.changeNumber != null)
+				return false;
+		} else if (!changeNumber.equals(other.changeNumber))
+			return false;
+		if (changeType == null) {
+			if (other.changeType != null)
+				return false;
+		} else if (!changeType.equals(other.changeType))
+			return false;
+		if (objectEtag == null) {
+			if (other.objectEtag != null)
+				return false;
+		} else if (!objectEtag.equals(other.objectEtag))
+			return false;
+		if (objectId == null) {
+			if (other.objectId != null)
+				return false;
+		} else if (!objectId.equals(other.objectId))
+			return false;
+		if (objectType == null) {
+			if (other.objectType != null)
+				return false;
+		} else if (!objectType.equals(other.objectType))
+			return false;
+		return true;
+	}
+	@Override
+	public String toString() {
+		return "DBOChange [changeNumber=" + changeNumber + ", objectId="
+				+ objectId + ", objectType=" + objectType + ", objectEtag="
+				+ objectEtag + ", changeType=" + changeType + "]";
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.sagebionetworks.repo.model.dbo.persistence;
+
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_LEASE_EXPIRES_ON;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_LEASE_OWNER;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CHANGE_CURSORS_NEXT_CHANGE_NUM;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.DDL_CHANGE_CURSORS;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_CHANGE_CURSORS;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.FieldColumn;
+import org.sagebionetworks.repo.model.dbo.TableMapping;
+
+/**
+ * DBO for the position of a reader of the change log.
+ *
+ */
+public class DBOChangeCursor implements DatabaseObject<DBOChangeCursor> {
+
+	private static FieldColumn[] FIELDS = new FieldColumn[] {
+			new FieldColumn("name", COL_CHANGE_CURSORS_NAME, true),
+			new FieldColumn("nextChangeNumber", COL_CHANGE_CURSORS_NEXT_CHANGE_NUM),
+			new FieldColumn("leaseOwner", COL_CHANGE_CURSORS_LEASE_OWNER),
+			new FieldColumn("leaseExpiresOn", COL_CHANGE_CURSORS_LEASE_EXPIRES_ON),
+	};
+
+	@Override
+	public TableMapping<DBOChangeCursor> getTableMapping() {
+		return new TableMapping<DBOChangeCursor>() {
+
+			@Override
+			public DBOChangeCursor mapRow(ResultSet rs, int index) throws SQLException {
+				DBOChangeCursor cursor = new DBOChangeCursor();
+				cursor.setName(rs.getString(COL_CHANGE_CURSORS_NAME));
+				long next = rs.getLong(COL_CHANGE_CURSORS_NEXT_CHANGE_NUM);
+				cursor.setNextChangeNumber(rs.wasNull() ? null : next);
+				cursor.setLeaseOwner(rs.getString(COL_CHANGE_CURSORS_LEASE_OWNER));
+				cursor.setLeaseExpiresOn(rs.getLong(COL_CHANGE_CURSORS_LEASE_EXPIRES_ON));
+				return cursor;
+			}
+
+			@Override
+			public String getTableName() {
+				return TABLE_CHANGE_CURSORS;
+			}
+
+			@Override
+			public String getDDLFileName() {
+				return DDL_CHANGE_CURSORS;
+			}
+
+			@Override
+			public FieldColumn[] getFieldColumns() {
+				return FIELDS;
+			}
+
+			@Override
+			public Class<? extends DBOChangeCursor> getDBOClass() {
+				return DBOChangeCursor.class;
+			}
+		};
+	}
+
+	private String name;
+	private Long nextChangeNumber;
+	private String leaseOwner;
+	private Long leaseExpiresOn;
+
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+	public Long getNextChangeNumber() {
+		return nextChangeNumber;
+	}
+	public void setNextChangeNumber(Long nextChangeNumber) {
+		this.nextChangeNumber = nextChangeNumber;
+	}
+	public String getLeaseOwner() {
+		return leaseOwner;
+	}
+	public void setLeaseOwner(String leaseOwner) {
+		this.leaseOwner = leaseOwner;
+	}
+	public Long getLeaseExpiresOn() {
+		return leaseExpiresOn;
+	}
+	public void setLeaseExpiresOn(Long leaseExpiresOn) {
+		this.leaseExpiresOn = leaseExpiresOn;
+	}
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((leaseExpiresOn == null) ? 0 : leaseExpiresOn.hashCode());
+		result = prime * result
+				+ ((leaseOwner == null) ? 0 : leaseOwner.hashCode());
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		result = prime * result
+				+ ((nextChangeNumber == null) ? 0 : nextChangeNumber.hashCode());
+		return result;
+	}
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DBOChangeCursor other = (DBOChangeCursor) obj;
+		if (leaseExpiresOn == null) {
+			if (other.leaseExpiresOn != null)
+				return false;
+		} else if (!leaseExpiresOn.equals(other.leaseExpiresOn))
+			return false;
+		if (leaseOwner == null) {
+			if (other.leaseOwner != null)
+				return false;
+		} else if (!leaseOwner.equals(other.leaseOwner))
+			return false;
+		if (name == null) {
+			if (other.name != null)
+				return false;
+		} else if (!name.equals(other.name))
+			return false;
+		if (nextChangeNumber == null) {
+			if (other.nextChangeNumber != null)
+				return false;
+		} else if (!nextChangeNumber.equals(other.nextChangeNumber))
+			return false;
+		return true;
+	}
+	@Override
+	public String toString() {
+		return "DBOChangeCursor [name=" + name + ", nextChangeNumber="
+				+ nextChangeNumber + ", leaseOwner=" + leaseOwner
+				+ ", leaseExpiresOn=" + leaseExpiresOn + "]";
+	}
+
+}
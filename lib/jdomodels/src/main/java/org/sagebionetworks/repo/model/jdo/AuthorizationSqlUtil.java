@@ -30,6 +30,9 @@ public class AuthorizationSqlUtil {
 	
 	private static final String CAN_ACCESS_SQL_1 ="select count(n."+SqlConstants.COL_NODE_ID+")  from "+SqlConstants.TABLE_ACCESS_CONTROL_LIST+" acl, "+SqlConstants.TABLE_RESOURCE_ACCESS+" ra, "+SqlConstants.TABLE_RESOURCE_ACCESS_TYPE+" at, "+SqlConstants.TABLE_NODE+" n where ra."+SqlConstants.COL_RESOURCE_ACCESS_OWNER+"=acl."+SqlConstants.COL_ACL_ID+" and (ra."+SqlConstants.COL_RESOURCE_ACCESS_GROUP_ID+" in (";
 	private static final String CAN_ACCESS_SQL_2 =")) and at."+SqlConstants.COL_RESOURCE_ACCESS_TYPE_ID+"=ra."+SqlConstants.COL_RESOURCE_ACCESS_ID+" and at."+SqlConstants.COL_RESOURCE_ACCESS_TYPE_ELEMENT+"=:"+ACCESS_TYPE_BIND_VAR+" AND acl."+SqlConstants.ACL_OWNER_ID_COLUMN+" = n."+SqlConstants.COL_NODE_BENEFACTOR_ID+" and n."+SqlConstants.COL_NODE_ID+" =:"+NODE_ID_BIND_VAR;
+	
+	private static final String ACCESS_TYPES_SQL_1 ="select distinct at."+SqlConstants.COL_RESOURCE_ACCESS_TYPE_ELEMENT+" from "+SqlConstants.TABLE_ACCESS_CONTROL_LIST+" acl, "+SqlConstants.TABLE_RESOURCE_ACCESS+" ra, "+SqlConstants.TABLE_RESOURCE_ACCESS_TYPE+" at, "+SqlConstants.TABLE_NODE+" n where ra."+SqlConstants.COL_RESOURCE_ACCESS_OWNER+"=acl."+SqlConstants.COL_ACL_ID+" and (ra."+SqlConstants.COL_RESOURCE_ACCESS_GROUP_ID+" in (";
+	private static final String ACCESS_TYPES_SQL_2 =")) and at."+SqlConstants.COL_RESOURCE_ACCESS_TYPE_ID+"=ra."+SqlConstants.COL_RESOURCE_ACCESS_ID+" AND acl."+SqlConstants.ACL_OWNER_ID_COLUMN+" = n."+SqlConstants.COL_NODE_BENEFACTOR_ID+" and n."+SqlConstants.COL_NODE_ID+" =:"+NODE_ID_BIND_VAR;
 
 	/**
 	 * The bind variable prefix used for group ID for the authorization SQL.
@@ -72,5 +75,22 @@ public class AuthorizationSqlUtil {
 		sb.append(CAN_ACCESS_SQL_2);
 		return sb.toString();
 	}
+	
+	/**
+	 * Create the SQL to find all of the access types the user groups have on a node.
+	 * @param numberUserGroups
+	 * @return
+	 */
+	public static String authorizationAccessTypesSQL(int numberUserGroups){
+		StringBuilder sb = new StringBuilder(ACCESS_TYPES_SQL_1);
+		for (int i=0; i<numberUserGroups; i++) {
+			if (i>0) sb.append(",");
+			sb.append(":");
+			sb.append(BIND_VAR_PREFIX);
+			sb.append(i);
+		}
+		sb.append(ACCESS_TYPES_SQL_2);
+		return sb.toString();
+	}
 
 }
@@ -0,0 +1,436 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Reference;
+
+/**
+ * A compact, versioned binary encoding for annotations and references.
+ *
+ * Every blob starts with a five byte header: two magic bytes, the format version,
+ * the type of object in the body and a flags byte. Bodies larger than
+ * {@link #DEFLATE_THRESHOLD} are deflated. The magic bytes can never be confused
+ * with the GZIP magic used by the old XStream blobs so both formats can be read
+ * from the same column.
+ *
+ * Each annotation map entry is prefixed with its length in bytes so a reader that
+ * only needs a few keys can skip the values of all other keys.
+ *
+ */
+public class BinaryAnnotationsCodec {
+
+	static final byte MAGIC_0 = 'S';
+	static final byte MAGIC_1 = 'B';
+	static final byte VERSION = 1;
+
+	static final byte TYPE_NAMED_ANNOTATIONS = 1;
+	static final byte TYPE_REFERENCES = 2;
+
+	static final byte FLAG_DEFLATED = 0x01;
+
+	static final int HEADER_SIZE = 5;
+	/**
+	 * Bodies smaller than this are not worth deflating.
+	 */
+	static final int DEFLATE_THRESHOLD = 512;
+
+	private static final String UTF_8 = "UTF-8";
+	private static final int NULL_LENGTH = -1;
+
+	/**
+	 * Is the passed blob in this binary format?
+	 * @param bytes
+	 * @return
+	 */
+	public static boolean isBinary(byte[] bytes){
+		return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+	}
+
+	/**
+	 * Encode the passed annotations.
+	 * @param named
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encodeAnnotations(NamedAnnotations named) throws IOException{
+		if(named == null) throw new IllegalArgumentException("NamedAnnotations cannot be null");
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(body);
+		writeString(out, named.getId());
+		writeDate(out, named.getCreationDate());
+		writeString(out, named.getEtag());
+		Map<String, Annotations> map = named.getMap();
+		out.writeInt(map.size());
+		// Reused for each map entry
+		ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+		for(String name: map.keySet()){
+			writeString(out, name);
+			writeAnnotations(out, map.get(name), entryBuffer);
+		}
+		out.flush();
+		return wrap(TYPE_NAMED_ANNOTATIONS, body.toByteArray());
+	}
+
+	/**
+	 * Decode all of the annotations from the passed blob.
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decodeAnnotations(byte[] bytes) throws IOException{
+		return decodeAnnotations(bytes, null);
+	}
+
+	/**
+	 * Decode the annotations from the passed blob, only materializing the values of the given keys.
+	 * @param bytes
+	 * @param keys The annotation keys to decode. When null all keys are decoded.
+	 * @return
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decodeAnnotations(byte[] bytes, Collection<String> keys) throws IOException{
+		DataInputStream in = unwrap(bytes, TYPE_NAMED_ANNOTATIONS);
+		NamedAnnotations named = new NamedAnnotations();
+		named.setId(readString(in));
+		named.setCreationDate(readDate(in));
+		named.setEtag(readString(in));
+		int count = in.readInt();
+		for(int i=0; i<count; i++){
+			String name = readString(in);
+			Annotations annos = readAnnotations(in, keys);
+			if(annos != null){
+				named.put(name, annos);
+			}
+		}
+		return named;
+	}
+
+	/**
+	 * Encode the passed references.
+	 * @param references
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encodeReferences(Map<String, Set<Reference>> references) throws IOException{
+		if(references == null) throw new IllegalArgumentException("References cannot be null");
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeInt(references.size());
+		for(String group: references.keySet()){
+			writeString(out, group);
+			Set<Reference> set = references.get(group);
+			if(set == null){
+				out.writeInt(NULL_LENGTH);
+				continue;
+			}
+			out.writeInt(set.size());
+			for(Reference ref: set){
+				writeString(out, ref.getTargetId());
+				writeLong(out, ref.getTargetVersionNumber());
+			}
+		}
+		out.flush();
+		return wrap(TYPE_REFERENCES, body.toByteArray());
+	}
+
+	/**
+	 * Decode the references from the passed blob.
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static Map<String, Set<Reference>> decodeReferences(byte[] bytes) throws IOException{
+		DataInputStream in = unwrap(bytes, TYPE_REFERENCES);
+		int count = in.readInt();
+		Map<String, Set<Reference>> results = new HashMap<String, Set<Reference>>(count);
+		for(int i=0; i<count; i++){
+			String group = readString(in);
+			int size = in.readInt();
+			Set<Reference> set = null;
+			if(size != NULL_LENGTH){
+				set = new HashSet<Reference>(size);
+				for(int j=0; j<size; j++){
+					Reference ref = new Reference();
+					ref.setTargetId(readString(in));
+					ref.setTargetVersionNumber(readLong(in));
+					set.add(ref);
+				}
+			}
+			results.put(group, set);
+		}
+		return results;
+	}
+
+	/**
+	 * Add the header and deflate large bodies.
+	 */
+	private static byte[] wrap(byte type, byte[] body){
+		byte flags = 0;
+		if(body.length > DEFLATE_THRESHOLD){
+			body = deflate(body);
+			flags |= FLAG_DEFLATED;
+		}
+		byte[] result = new byte[HEADER_SIZE+body.length];
+		result[0] = MAGIC_0;
+		result[1] = MAGIC_1;
+		result[2] = VERSION;
+		result[3] = type;
+		result[4] = flags;
+		System.arraycopy(body, 0, result, HEADER_SIZE, body.length);
+		return result;
+	}
+
+	/**
+	 * Validate the header and open the body for reading.
+	 */
+	private static DataInputStream unwrap(byte[] bytes, byte expectedType) throws IOException{
+		if(!isBinary(bytes)) throw new IllegalArgumentException("Not a binary annotations blob");
+		if(bytes[2] != VERSION) throw new IOException("Unsupported annotations blob version: "+bytes[2]);
+		if(bytes[3] != expectedType) throw new IOException("Expected blob type: "+expectedType+" but was: "+bytes[3]);
+		ByteArrayInputStream body = null;
+		if((bytes[4] & FLAG_DEFLATED) != 0){
+			byte[] inflated = inflate(bytes, HEADER_SIZE, bytes.length-HEADER_SIZE);
+			body = new ByteArrayInputStream(inflated);
+		}else{
+			body = new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length-HEADER_SIZE);
+		}
+		return new DataInputStream(body);
+	}
+
+	private static byte[] deflate(byte[] body){
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try{
+			deflater.setInput(body);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length/2);
+			byte[] buffer = new byte[4096];
+			while(!deflater.finished()){
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		}finally{
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] bytes, int offset, int length) throws IOException{
+		Inflater inflater = new Inflater();
+		try{
+			inflater.setInput(bytes, offset, length);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length*4);
+			byte[] buffer = new byte[4096];
+			while(!inflater.finished()){
+				int count = inflater.inflate(buffer);
+				if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+					throw new IOException("Truncated annotations blob");
+				}
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		}finally{
+			inflater.end();
+		}
+	}
+
+	private static void writeAnnotations(DataOutputStream out, Annotations annos, ByteArrayOutputStream entryBuffer) throws IOException{
+		if(annos == null){
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		writeString(out, annos.getId());
+		writeString(out, annos.getUri());
+		writeString(out, annos.getEtag());
+		writeDate(out, annos.getCreationDate());
+		// The order of the maps is part of the format.
+		writeMap(out, annos.getStringAnnotations(), ValueType.STRING, entryBuffer);
+		writeMap(out, annos.getDoubleAnnotations(), ValueType.DOUBLE, entryBuffer);
+		writeMap(out, annos.getLongAnnotations(), ValueType.LONG, entryBuffer);
+		writeMap(out, annos.getDateAnnotations(), ValueType.DATE, entryBuffer);
+		writeMap(out, annos.getBlobAnnotations(), ValueType.BLOB, entryBuffer);
+	}
+
+	private static Annotations readAnnotations(DataInputStream in, Collection<String> keys) throws IOException{
+		if(!in.readBoolean()) return null;
+		Annotations annos = new Annotations();
+		annos.setId(readString(in));
+		annos.setUri(readString(in));
+		annos.setEtag(readString(in));
+		annos.setCreationDate(readDate(in));
+		annos.setStringAnnotations(BinaryAnnotationsCodec.<String>readMap(in, ValueType.STRING, keys));
+		annos.setDoubleAnnotations(BinaryAnnotationsCodec.<Double>readMap(in, ValueType.DOUBLE, keys));
+		annos.setLongAnnotations(BinaryAnnotationsCodec.<Long>readMap(in, ValueType.LONG, keys));
+		annos.setDateAnnotations(BinaryAnnotationsCodec.<Date>readMap(in, ValueType.DATE, keys));
+		annos.setBlobAnnotations(BinaryAnnotationsCodec.<byte[]>readMap(in, ValueType.BLOB, keys));
+		return annos;
+	}
+
+	/**
+	 * Each entry is written as: key, entry length in bytes, list size, values.
+	 */
+	private static void writeMap(DataOutputStream out, Map<String, ? extends List<?>> map, ValueType type, ByteArrayOutputStream entryBuffer) throws IOException{
+		if(map == null){
+			out.writeInt(NULL_LENGTH);
+			return;
+		}
+		out.writeInt(map.size());
+		for(Iterator<String> it = map.keySet().iterator(); it.hasNext();){
+			String key = it.next();
+			writeString(out, key);
+			entryBuffer.reset();
+			DataOutputStream entry = new DataOutputStream(entryBuffer);
+			List<?> list = map.get(key);
+			if(list == null){
+				entry.writeInt(NULL_LENGTH);
+			}else{
+				entry.writeInt(list.size());
+				for(Object value: list){
+					writeValue(entry, type, value);
+				}
+			}
+			entry.flush();
+			out.writeInt(entryBuffer.size());
+			entryBuffer.writeTo(out);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Map<String, List<T>> readMap(DataInputStream in, ValueType type, Collection<String> keys) throws IOException{
+		int size = in.readInt();
+		if(size == NULL_LENGTH) return null;
+		Map<String, List<T>> map = new HashMap<String, List<T>>(keys == null ? size : Math.min(size, keys.size()));
+		for(int i=0; i<size; i++){
+			String key = readString(in);
+			int entryLength = in.readInt();
+			if(keys != null && !keys.contains(key)){
+				// Skip the values of keys that were not requested.
+				skipFully(in, entryLength);
+				continue;
+			}
+			int listSize = in.readInt();
+			List<T> list = null;
+			if(listSize != NULL_LENGTH){
+				list = new ArrayList<T>(listSize);
+				for(int j=0; j<listSize; j++){
+					list.add((T) readValue(in, type));
+				}
+			}
+			map.put(key, list);
+		}
+		return map;
+	}
+
+	private static void writeValue(DataOutputStream out, ValueType type, Object value) throws IOException{
+		switch(type){
+		case STRING:
+			writeString(out, (String) value);
+			break;
+		case DOUBLE:
+			out.writeBoolean(value != null);
+			if(value != null) out.writeDouble((Double) value);
+			break;
+		case LONG:
+			writeLong(out, (Long) value);
+			break;
+		case DATE:
+			writeDate(out, (Date) value);
+			break;
+		case BLOB:
+			writeBytes(out, (byte[]) value);
+			break;
+		}
+	}
+
+	private static Object readValue(DataInputStream in, ValueType type) throws IOException{
+		switch(type){
+		case STRING:
+			return readString(in);
+		case DOUBLE:
+			return in.readBoolean() ? in.readDouble() : null;
+		case LONG:
+			return readLong(in);
+		case DATE:
+			return readDate(in);
+		case BLOB:
+			return readBytes(in);
+		}
+		throw new IllegalArgumentException("Unknown type: "+type);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException{
+		writeBytes(out, value == null ? null : value.getBytes(UTF_8));
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = readBytes(in);
+		return bytes == null ? null : new String(bytes, UTF_8);
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] value) throws IOException{
+		if(value == null){
+			out.writeInt(NULL_LENGTH);
+		}else{
+			out.writeInt(value.length);
+			out.write(value);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException{
+		int length = in.readInt();
+		if(length == NULL_LENGTH) return null;
+		if(length < 0) throw new IOException("Invalid length: "+length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writeLong(DataOutputStream out, Long value) throws IOException{
+		out.writeBoolean(value != null);
+		if(value != null) out.writeLong(value);
+	}
+
+	private static Long readLong(DataInputStream in) throws IOException{
+		return in.readBoolean() ? in.readLong() : null;
+	}
+
+	private static void writeDate(DataOutputStream out, Date value) throws IOException{
+		writeLong(out, value == null ? null : value.getTime());
+	}
+
+	private static Date readDate(DataInputStream in) throws IOException{
+		Long time = readLong(in);
+		return time == null ? null : new Date(time);
+	}
+
+	private static void skipFully(DataInputStream in, int length) throws IOException{
+		if(in.skipBytes(length) != length) throw new IOException("Truncated annotations blob");
+	}
+
+	/**
+	 * The value types of the annotation maps.
+	 */
+	private enum ValueType {
+		STRING, DOUBLE, LONG, DATE, BLOB
+	}
+}
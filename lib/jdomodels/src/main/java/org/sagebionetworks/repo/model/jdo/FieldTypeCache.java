@@ -37,10 +37,10 @@ public class FieldTypeCache {
 
 	/**
 	 * Since the types never change once they are set, we can safely cache the
-	 * results.
+	 * results. The map is only written by the constructor so reads do not need
+	 * a lock.
 	 */
-	private Map<String, FieldType> localCache = Collections
-			.synchronizedMap(new HashMap<String, FieldType>());
+	private final Map<String, FieldType> localCache;
 
 	/**
 	 * This instance can be treated as a singleton. Create a new field type
@@ -49,19 +49,21 @@ public class FieldTypeCache {
 	 * @throws JSONObjectAdapterException
 	 */
 	private FieldTypeCache() {
+		Map<String, FieldType> types = new HashMap<String, FieldType>();
 		// Make sure the primary Node fields are in place
 		Field[] fields = Node.class.getDeclaredFields();
 		for (Field field : fields) {
 			// Add the primary fields from the node class
-			localCache.put(field.getName(), FieldType.PRIMARY_FIELD);
+			types.put(field.getName(), FieldType.PRIMARY_FIELD);
 		}
 		// Map all of the Entity field names to the schema type.
 		AutoGenFactory factory = new AutoGenFactory();
 		try {
-			addEntityTypeNamesToCache(factory, localCache);
+			addEntityTypeNamesToCache(factory, types);
 		} catch (JSONObjectAdapterException e) {
 			throw new RuntimeException(e);
 		}
+		localCache = Collections.unmodifiableMap(types);
 	}
 
 	/**
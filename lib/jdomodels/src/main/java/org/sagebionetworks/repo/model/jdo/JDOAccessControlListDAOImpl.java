@@ -1,8 +1,11 @@
 package org.sagebionetworks.repo.model.jdo;
 
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.AccessControlList;
@@ -15,6 +18,7 @@ import org.sagebionetworks.repo.model.dbo.dao.DBOAccessControlListDao;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -40,6 +44,23 @@ public class JDOAccessControlListDAOImpl implements AccessControlListDAO {
 		return dboAccessControlListDao.getACL(KeyFactory.stringToKey(rId));
 	}
 	
+	@Transactional(readOnly = true)
+	@Override
+	public Map<String, AccessControlList> getForResources(Collection<String> rids) throws DatastoreException {
+		if(rids == null) throw new IllegalArgumentException("Resource IDs cannot be null");
+		// The results are keyed by the passed IDs.
+		Map<Long, String> owners = new HashMap<Long, String>(rids.size());
+		for(String rid: rids){
+			owners.put(KeyFactory.stringToKey(rid), rid);
+		}
+		Map<Long, AccessControlList> byOwner = dboAccessControlListDao.getACLs(owners.keySet());
+		Map<String, AccessControlList> results = new HashMap<String, AccessControlList>(byOwner.size());
+		for(Long owner: byOwner.keySet()){
+			results.put(owners.get(owner), byOwner.get(owner));
+		}
+		return results;
+	}
+	
 	/**
 	 * @return true iff some group in 'groups' has explicit permission to access 'resourceId' using access type 'accessType'
 	 */
@@ -68,6 +89,38 @@ public class JDOAccessControlListDAOImpl implements AccessControlListDAO {
 	}
 
 
+	/**
+	 * @return every access type that some group in 'groups' has on 'resourceId'
+	 */
+	@Transactional(readOnly = true)
+	@Override
+	public Set<ACCESS_TYPE> getAccessTypes(Collection<UserGroup> groups, String resourceId) throws DatastoreException {
+		if(groups == null) throw new IllegalArgumentException("Groups cannot be null");
+		if(resourceId == null) throw new IllegalArgumentException("Resource ID cannot be null");
+		Set<ACCESS_TYPE> results = EnumSet.noneOf(ACCESS_TYPE.class);
+		// An empty 'in' clause is not valid SQL.
+		if(groups.isEmpty()) return results;
+		// Build up the parameters
+		Map<String,Object> parameters = new HashMap<String,Object>();
+		int i=0;
+		for (UserGroup gId : groups) {
+			parameters.put(AuthorizationSqlUtil.BIND_VAR_PREFIX+(i++), gId.getId());
+		}
+		// Bind the node id
+		parameters.put(AuthorizationSqlUtil.NODE_ID_BIND_VAR, KeyFactory.stringToKey(resourceId));
+		String sql = AuthorizationSqlUtil.authorizationAccessTypesSQL(groups.size());
+		try{
+			List<String> types = simpleJdbcTemplate.query(sql, new SingleColumnRowMapper<String>(String.class), parameters);
+			for(String type: types){
+				results.add(ACCESS_TYPE.valueOf(type));
+			}
+			return results;
+		}catch (DataAccessException e){
+			throw new DatastoreException(e);
+		}
+	}
+
+
 	/**
 	 * @return the SQL to find the root-accessible nodes that a specified user-group list can access
 	 * using a specified access type
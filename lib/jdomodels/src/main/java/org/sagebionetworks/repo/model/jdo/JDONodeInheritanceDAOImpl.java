@@ -2,10 +2,14 @@ package org.sagebionetworks.repo.model.jdo;
 
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_BENEFACTOR_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_PARENT_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -28,6 +32,14 @@ public class JDONodeInheritanceDAOImpl implements NodeInheritanceDAO {
 	
 	private static final String SELECT_BENEFICIARIES = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_BENEFACTOR_ID+" = ?";
 	private static final String SELECT_BENEFACTOR = "SELECT "+COL_NODE_BENEFACTOR_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
+	private static final String SELECT_CHILDREN_INHERITING_FROM = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" IN (:parentIds) AND "+COL_NODE_BENEFACTOR_ID+" = :benefactorId";
+	private static final String UPDATE_BENEFACTORS = "UPDATE "+TABLE_NODE+" SET "+COL_NODE_BENEFACTOR_ID+" = :benefactorId WHERE "+COL_NODE_ID+" IN (:ids)";
+	
+	/**
+	 * The maximum number of IDs in a single IN clause.
+	 */
+	public static final int MAX_BATCH_SIZE = 1000;
+	
 	@Autowired
 	DBOBasicDao dboBasicDao;
 	@Autowired
@@ -78,4 +90,60 @@ public class JDONodeInheritanceDAOImpl implements NodeInheritanceDAO {
 		dboBasicDao.update(beneficiary);
 	}
 
+	@Transactional(readOnly = true)
+	@Override
+	public Set<String> getChildrenInheritingFrom(Collection<String> parentIds, String benefactorId) throws DatastoreException {
+		if(parentIds == null) throw new IllegalArgumentException("Parent IDs cannot be null");
+		if(benefactorId == null) throw new IllegalArgumentException("Benefactor ID cannot be null");
+		Set<String> results = new HashSet<String>();
+		for(List<Long> batch: createBatches(parentIds)){
+			MapSqlParameterSource params = new MapSqlParameterSource();
+			params.addValue("parentIds", batch);
+			params.addValue("benefactorId", KeyFactory.stringToKey(benefactorId));
+			List<String> children = simpleJdbcTemplate.getNamedParameterJdbcOperations().query(SELECT_CHILDREN_INHERITING_FROM, params, new RowMapper<String>(){
+				@Override
+				public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return KeyFactory.keyToString(rs.getLong(COL_NODE_ID));
+				}});
+			results.addAll(children);
+		}
+		return results;
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public int addBeneficiaries(Collection<String> beneficiaryIds, String toBenefactorId) throws NotFoundException, DatastoreException {
+		if(beneficiaryIds == null) throw new IllegalArgumentException("Beneficiary IDs cannot be null");
+		if(toBenefactorId == null) throw new IllegalArgumentException("Benefactor ID cannot be null");
+		// Make sure the benefactor exists
+		DBONode benefactor = getNodeById(KeyFactory.stringToKey(toBenefactorId));
+		int count = 0;
+		for(List<Long> batch: createBatches(beneficiaryIds)){
+			MapSqlParameterSource params = new MapSqlParameterSource();
+			params.addValue("ids", batch);
+			params.addValue("benefactorId", benefactor.getId());
+			count += simpleJdbcTemplate.getNamedParameterJdbcOperations().update(UPDATE_BENEFACTORS, params);
+		}
+		return count;
+	}
+	
+	/**
+	 * Split the IDs into sorted batches no larger than MAX_BATCH_SIZE.
+	 * The IDs are sorted by their numeric value, which is the order rows are locked in.
+	 * @param ids
+	 * @return
+	 */
+	private static List<List<Long>> createBatches(Collection<String> ids){
+		List<Long> sorted = new ArrayList<Long>(ids.size());
+		for(String id: ids){
+			sorted.add(KeyFactory.stringToKey(id));
+		}
+		Collections.sort(sorted);
+		List<List<Long>> batches = new ArrayList<List<Long>>();
+		for(int start=0; start<sorted.size(); start+=MAX_BATCH_SIZE){
+			batches.add(sorted.subList(start, Math.min(start+MAX_BATCH_SIZE, sorted.size())));
+		}
+		return batches;
+	}
+
 }
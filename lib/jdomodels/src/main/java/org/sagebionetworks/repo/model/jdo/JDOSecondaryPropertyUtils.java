@@ -6,6 +6,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -30,6 +31,10 @@ import com.thoughtworks.xstream.XStream;
  */
 public class JDOSecondaryPropertyUtils {
 	
+	/**
+	 * An XStream instance is expensive to create but is thread safe once configured.
+	 */
+	private static final XStream XSTREAM = createXStream();
 
 	/**
 	 * Merge all of the annotations in the map into a single set.
@@ -98,13 +103,14 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Convert the passed annotations to a compressed (zip) byte array
+	 * Convert the passed annotations to a compressed byte array using the {@link BinaryAnnotationsCodec}.
 	 * @param dto
 	 * @return compressed annotations
 	 * @throws IOException 
 	 */
 	public static byte[] compressAnnotations(NamedAnnotations dto) throws IOException{
-		return compressObject(dto);
+		if(dto == null) return null;
+		return BinaryAnnotationsCodec.encodeAnnotations(dto);
 	}
 	
 	public static byte[] compressObject(Object dto) throws IOException{
@@ -113,8 +119,7 @@ public class JDOSecondaryPropertyUtils {
 		BufferedOutputStream buff = new BufferedOutputStream(out);
 		GZIPOutputStream zipper = new GZIPOutputStream(buff);
 		try{
-			XStream xstream = createXStream();
-			xstream.toXML(dto, zipper);
+			XSTREAM.toXML(dto, zipper);
 			zipper.flush();
 			zipper.close();
 			return out.toByteArray();
@@ -125,48 +130,25 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Convert the passed references to a compressed (zip) byte array
+	 * Convert the passed references to a compressed byte array using the {@link BinaryAnnotationsCodec}.
 	 * @param dto
 	 * @return the compressed references
 	 * @throws IOException 
 	 */
 	public static byte[] compressReferences(Map<String, Set<Reference>> dto) throws IOException{
 		if(dto == null) return null;
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		BufferedOutputStream buff = new BufferedOutputStream(out);
-		GZIPOutputStream zipper = new GZIPOutputStream(buff);
-		try{
-			XStream xstream = createXStream();
-			xstream.toXML(dto, zipper);
-			zipper.flush();
-			zipper.close();
-			return out.toByteArray();
-		}finally{
-			zipper.flush();
-			zipper.close();
-		}
+		return BinaryAnnotationsCodec.encodeReferences(dto);
 	}
 
 	public static String toXml(NamedAnnotations dto) throws IOException{
 		StringWriter writer = new StringWriter();
-		try{
-			XStream xstream = createXStream();
-			xstream.toXML(dto, writer);
-			return writer.toString();
-		}finally{
-			
-		}
+		XSTREAM.toXML(dto, writer);
+		return writer.toString();
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static NamedAnnotations fromXml(String xml) throws IOException{
 		StringReader reader = new StringReader(xml);
-		try{
-			XStream xstream = createXStream();
-			return (NamedAnnotations) xstream.fromXML(reader);
-		}finally{
-			
-		}
+		return (NamedAnnotations) XSTREAM.fromXML(reader);
 	}
 
 	public static XStream createXStream() {
@@ -177,13 +159,28 @@ public class JDOSecondaryPropertyUtils {
 	}
 	
 	/**
-	 * Read the compressed (zip) byte array into the Annotations.
+	 * Read the compressed byte array into the Annotations.
+	 * Both the binary format and the old XStream (zip) format can be read.
 	 * @param zippedByes
 	 * @return the resurrected Annotations
 	 * @throws IOException 
 	 */
-	@SuppressWarnings("unchecked")
 	public static NamedAnnotations decompressedAnnotations(byte[] zippedByes) throws IOException{
+		return decompressedAnnotations(zippedByes, null);
+	}
+	
+	/**
+	 * Read the compressed byte array into the Annotations, only decoding the values of the passed keys.
+	 * Blobs in the old XStream (zip) format are always fully decoded.
+	 * @param zippedByes
+	 * @param keys The annotation keys to decode. When null all keys are decoded.
+	 * @return the resurrected Annotations
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decompressedAnnotations(byte[] zippedByes, Collection<String> keys) throws IOException{
+		if(BinaryAnnotationsCodec.isBinary(zippedByes)){
+			return BinaryAnnotationsCodec.decodeAnnotations(zippedByes, keys);
+		}
 		Object o = decompressedObject(zippedByes);
 		if (o==null) return new NamedAnnotations();
 		return (NamedAnnotations)o;
@@ -194,10 +191,7 @@ public class JDOSecondaryPropertyUtils {
 			ByteArrayInputStream in = new ByteArrayInputStream(zippedByes);
 			GZIPInputStream unZipper = new GZIPInputStream(in);
 			try{
-				XStream xstream = createXStream();
-				if(zippedByes != null){
-					return xstream.fromXML(unZipper);
-				}
+				return XSTREAM.fromXML(unZipper);
 			}finally{
 				unZipper.close();
 			}			
@@ -206,29 +200,34 @@ public class JDOSecondaryPropertyUtils {
 	}
 
 	/**
-	 * Read the compressed (zip) byte array into the References.
+	 * Read the compressed byte array into the References.
+	 * Both the binary format and the old XStream (zip) format can be read.
 	 * @param zippedByes
 	 * @return the resurrected References
 	 * @throws IOException 
 	 */
 	@SuppressWarnings("unchecked")
 	public static Map<String, Set<Reference>> decompressedReferences(byte[] zippedByes) throws IOException{
-		if(zippedByes != null){
-			ByteArrayInputStream in = new ByteArrayInputStream(zippedByes);
-			GZIPInputStream unZipper = new GZIPInputStream(in);
-			try{
-				XStream xstream = createXStream();
-				if(zippedByes != null){
-					return (Map<String, Set<Reference>>) xstream.fromXML(unZipper);
-				}
-			}finally{
-				unZipper.close();
-			}			
+		if(BinaryAnnotationsCodec.isBinary(zippedByes)){
+			return BinaryAnnotationsCodec.decodeReferences(zippedByes);
+		}
+		Object o = decompressedObject(zippedByes);
+		if(o != null){
+			return (Map<String, Set<Reference>>) o;
 		}
 		// Return an empty map.
 		return new HashMap<String, Set<Reference>>();
 	}
 	
+	/**
+	 * Is the passed blob still in the old XStream (zip) format?
+	 * @param bytes
+	 * @return
+	 */
+	public static boolean isLegacyFormat(byte[] bytes){
+		return bytes != null && bytes.length > 1 && !BinaryAnnotationsCodec.isBinary(bytes);
+	}
+	
 	/**
 	 * Create a new Annotations object from the JDO.
 	 * @param jdo
@@ -8,7 +8,9 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_STACK_
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.StackStatusDao;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
@@ -23,11 +25,17 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * The status is checked on every request so it is read from a snapshot that is refreshed
+ * from the database once it is older than the cache timeout.  An update made through this
+ * instance replaces the snapshot as soon as it commits.
+ *
+ */
 public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 	
-	public static final String SQL_GET_STATUS = "SELECT "+COL_STACK_STATUS_STATUS+" FROM "+TABLE_STACK_STATUS+" WHERE "+COL_NODE_ID+" = "+DBOStackStatus.STATUS_ID;
-	
 	public static final String SQL_GET_ALL_STATUS = "SELECT "+COL_STACK_STATUS_STATUS+", "+COL_STACK_STATUS_CURRENT_MESSAGE+", "+COL_STACK_STATUS_PENDING_MESSAGE+" FROM "+TABLE_STACK_STATUS+" WHERE "+COL_NODE_ID+" = "+DBOStackStatus.STATUS_ID;
 	
 	@Autowired
@@ -37,6 +45,23 @@ public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 	@Autowired
 	private SimpleJdbcTemplate simpleJdbcTempalte;
 
+	private long cacheTimeoutMS = StackConfiguration.getStackStatusCacheTimeoutMS();
+
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+	/**
+	 * The status as it was read at a point in time.
+	 */
+	private static class Snapshot {
+		final StackStatus status;
+		final long expiresOn;
+
+		Snapshot(StackStatus status, long expiresOn) {
+			this.status = status;
+			this.expiresOn = expiresOn;
+		}
+	}
+
 
 	/**
 	 * This should always occur in its own transaction.
@@ -54,6 +79,7 @@ public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 			jdo.setCurrentMessage(dto.getCurrentMessage());
 			jdo.setPendingMessage(dto.getPendingMaintenanceMessage());
 			dboBasicDao.update(jdo);
+			publishAfterCommit(copy(dto));
 		}catch(NotFoundException e){
 			throw new RuntimeException("Failed to get the current status!!!!",e);
 		} catch (DatastoreException e) {
@@ -62,6 +88,25 @@ public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 
 	}
 
+	/**
+	 * Replace the snapshot with the new status once the transaction commits, so a rolled back
+	 * update is never seen.  This replaces any snapshot a refresh read before the commit.
+	 * @param status
+	 */
+	private void publishAfterCommit(final StackStatus status) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()){
+			// There is no transaction so the update is already committed.
+			snapshot.set(new Snapshot(status, System.currentTimeMillis()+cacheTimeoutMS));
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				snapshot.set(new Snapshot(status, System.currentTimeMillis()+cacheTimeoutMS));
+			}
+		});
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		// This is the boot strap.
@@ -94,9 +139,45 @@ public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 		throw new IllegalArgumentException("StatusEnum cannot be null");
 	}
 
-	@Transactional(readOnly = true)
+	/**
+	 * Get the snapshot, refreshing it from the database when it has expired.
+	 * @return
+	 */
+	private StackStatus getSnapshot() {
+		Snapshot current = snapshot.get();
+		if(current != null && System.currentTimeMillis() < current.expiresOn){
+			return current.status;
+		}
+		StackStatus status = readFullCurrentStatus();
+		// Only replace the snapshot we found expired.  If an update replaced it while we were
+		// reading, the update wins.
+		snapshot.compareAndSet(current, new Snapshot(status, System.currentTimeMillis()+cacheTimeoutMS));
+		return status;
+	}
+
+	/**
+	 * Callers are free to change the status they are given, so never hand out the snapshot itself.
+	 * @param status
+	 * @return
+	 */
+	private static StackStatus copy(StackStatus status) {
+		StackStatus copy = new StackStatus();
+		copy.setStatus(status.getStatus());
+		copy.setCurrentMessage(status.getCurrentMessage());
+		copy.setPendingMaintenanceMessage(status.getPendingMaintenanceMessage());
+		return copy;
+	}
+
 	@Override
 	public StackStatus getFullCurrentStatus() {
+		return copy(getSnapshot());
+	}
+
+	/**
+	 * Read the full status from the database.
+	 * @return
+	 */
+	private StackStatus readFullCurrentStatus() {
 		RowMapper<StackStatus> mapper = new RowMapper<StackStatus>() {
 			@Override
 			public StackStatus mapRow(ResultSet rs, int rowNum)
@@ -113,11 +194,14 @@ public class StackStatusDaoImpl implements StackStatusDao, InitializingBean {
 		return simpleJdbcTempalte.queryForObject(SQL_GET_ALL_STATUS, mapper);
 	}
 
-	@Transactional(readOnly = true)
 	@Override
 	public StatusEnum getCurrentStatus() {
-		int index = simpleJdbcTempalte.queryForInt(SQL_GET_STATUS);
-		return StatusEnum.values()[index];
+		return getSnapshot().getStatus();
+	}
+
+	@Override
+	public long getMaxStalenessMS() {
+		return cacheTimeoutMS;
 	}
 
 }
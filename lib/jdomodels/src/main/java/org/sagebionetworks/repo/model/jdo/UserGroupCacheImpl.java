@@ -1,10 +1,7 @@
 package org.sagebionetworks.repo.model.jdo;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.sagebionetworks.repo.model.query.jdo.SqlConstants;
+import org.sagebionetworks.repo.model.util.BoundedCache;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
@@ -20,12 +17,15 @@ public class UserGroupCacheImpl implements UserGroupCache {
 	
 	// Get an ID using the name.
 	private static final String SQL_GET_ID_FOR_NAME = "SELECT "+SqlConstants.COL_USER_GROUP_ID+" FROM "+SqlConstants.TABLE_USER_GROUP+" WHERE "+SqlConstants.COL_USER_GROUP_NAME+" = ?";
+	// The maximum number of principals in each map.
+	private static final int MAX_ENTRIES = 10000;
 
 	@Autowired
 	private SimpleJdbcTemplate simpleJdbcTempalte;
 	
-	private Map<String, Long> mapNamesToId = Collections.synchronizedMap(new HashMap<String, Long>());
-	private Map<Long, String> mapIdToName = Collections.synchronizedMap(new HashMap<Long, String>());
+	// Names and IDs do not change so the entries do not expire.
+	private BoundedCache<String, Long> mapNamesToId = new BoundedCache<String, Long>("userGroupIdCache", MAX_ENTRIES, 0);
+	private BoundedCache<Long, String> mapIdToName = new BoundedCache<Long, String>("userGroupNameCache", MAX_ENTRIES, 0);
 
 	@Transactional(readOnly = true)
 	@Override
@@ -6,6 +6,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,6 +18,7 @@ import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.NodeQueryDao;
 import org.sagebionetworks.repo.model.NodeQueryResults;
+import org.sagebionetworks.repo.model.NodeQueryRowHandler;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.jdo.FieldTypeCache;
 import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
@@ -26,6 +30,8 @@ import org.sagebionetworks.repo.model.query.Expression;
 import org.sagebionetworks.repo.model.query.FieldType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -47,12 +53,26 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 	
 	@Autowired
 	private NodeAliasCache alaisCache;
+	
+	// Used for streaming queries.
+	private volatile NamedParameterJdbcTemplate streamingTemplate;
 
 	/**
 	 * The maximum number of bytes allowed per query.
 	 */
 	public static final long MAX_BYTES_PER_QUERY = StackConfiguration.getMaximumBytesPerQueryResult();
 	
+	/**
+	 * Counts are cached so paging through the same results does not recompute the total.
+	 */
+	private QueryCountCache countCache = new QueryCountCache(StackConfiguration.getQueryCountCacheMaxSize(), StackConfiguration.getQueryCountCacheTimeoutMS());
+	
+	// Timing metrics for the count and fetch queries.
+	private AtomicLong countQueryCount = new AtomicLong(0);
+	private AtomicLong countQueryTimeMS = new AtomicLong(0);
+	private AtomicLong fetchQueryCount = new AtomicLong(0);
+	private AtomicLong fetchQueryTimeMS = new AtomicLong(0);
+	
 	
 	/**
 	 * Execute the actual query
@@ -69,6 +89,21 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 		}
 	}
 	
+	/**
+	 * Execute a query streaming the results.
+	 */
+	@Transactional(readOnly = true)
+	@Override
+	public void executeQuery(BasicQuery query, UserInfo userInfo, NodeQueryRowHandler handler) throws DatastoreException {
+		try {
+			executeStreamingQueryImpl(query, userInfo, handler);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(e);
+		} catch (Exception e) {
+			throw new DatastoreException(e);
+		}
+	}
+	
 	/**
 	 * Execute a count query.
 	 */
@@ -117,11 +152,23 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 			// For this case there will be no results
 			return new NodeQueryResults();
 		}
-		// Run the count query
-		long count = this.simpleJdbcTemplate.queryForLong(countQuery.toString(), parameters);
+		// Run the count query unless the caller opted out. Continuation pages of a keyset paged query do not need the count.
+		long count = NodeQueryResults.COUNT_NOT_COMPUTED;
+		if(in.isCount() && in.getPageToken() == null){
+			count = runCountQuery(countQuery.toString(), parameters);
+		}
 		// Now execute the non-count query
 		SizeLimitRowMapper sizeLimitMapper = new SizeLimitRowMapper(MAX_BYTES_PER_QUERY);
+		long start = System.currentTimeMillis();
 		List<Map<String, Object>> results = simpleJdbcTemplate.query(fullQuery.toString(), sizeLimitMapper, parameters);
+		long elapse = System.currentTimeMillis()-start;
+		fetchQueryCount.incrementAndGet();
+		fetchQueryTimeMS.addAndGet(elapse);
+		// Capture the next page token before the rows are translated.
+		String nextPageToken = null;
+		if(in.isKeysetPaging()){
+			nextPageToken = buildNextPageToken(results, in.getLimit());
+		}
 		String userId = null;
 		if(userInfo.getUser() != null){
 			userId = userInfo.getUser().getUserId();
@@ -131,11 +178,93 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 			log.debug("user: "+userId+ " Query: "+fullQuery.toString());
 			log.debug("user: "+userId+ " parameters: "+parameters);
 		}
-		if(log.isInfoEnabled()){
+		if(log.isDebugEnabled()){
 			log.debug("user: "+userId+ " query bytes returned: "+sizeLimitMapper.getBytesUsed()+" bytes");
+			log.debug("user: "+userId+ " fetch query time: "+elapse+" ms");
 		}
 		// Create the results
-		return translateResults(results, count, in.getSelect());
+		NodeQueryResults queryResults = translateResults(results, count, in.getSelect());
+		queryResults.setNextPageToken(nextPageToken);
+		return queryResults;
+	}
+	
+	/**
+	 * Run the query, passing each row to the handler as it is read.
+	 * 
+	 * @param in
+	 * @param userInfo
+	 * @param handler
+	 * @throws DatastoreException
+	 */
+	private void executeStreamingQueryImpl(BasicQuery in, UserInfo userInfo, NodeQueryRowHandler handler) throws DatastoreException {
+		if(handler == null) throw new IllegalArgumentException("Handler cannot be null");
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		StringBuilder countQuery = new StringBuilder();
+		StringBuilder fullQuery = new StringBuilder();
+		boolean columnsExist = buildQueryStrings(in, userInfo, countQuery, fullQuery, parameters);
+		if(!columnsExist){
+			// For this case there will be no results
+			handler.startResults(0);
+			handler.endResults(null);
+			return;
+		}
+		long count = NodeQueryResults.COUNT_NOT_COMPUTED;
+		if(in.isCount() && in.getPageToken() == null){
+			count = runCountQuery(countQuery.toString(), parameters);
+		}
+		handler.startResults(count);
+		NodeQueryRowCallbackHandler callback = new NodeQueryRowCallbackHandler(handler, in.getSelect());
+		long start = System.currentTimeMillis();
+		getStreamingTemplate().query(fullQuery.toString(), parameters, callback);
+		long elapse = System.currentTimeMillis()-start;
+		fetchQueryCount.incrementAndGet();
+		fetchQueryTimeMS.addAndGet(elapse);
+		if(log.isDebugEnabled()){
+			log.debug("Streaming query: "+fullQuery.toString()+" rows: "+callback.getRowCount()+" time: "+elapse+" ms");
+		}
+		String nextPageToken = null;
+		if(in.isKeysetPaging()){
+			nextPageToken = callback.getNextPageToken(in.getLimit());
+		}
+		handler.endResults(nextPageToken);
+	}
+	
+	/**
+	 * A template that shares the data source (and therefore the transaction) of the
+	 * simpleJdbcTemplate but sets a fetch size of Integer.MIN_VALUE.  For this one statement
+	 * MySQL Connector/J then streams the rows one at a time rather than reading the entire
+	 * result set into memory.  No other statement can use the connection until the rows have
+	 * been read, so the row callback must not query the database.
+	 * @return
+	 */
+	private NamedParameterJdbcTemplate getStreamingTemplate(){
+		if(streamingTemplate == null){
+			DataSource dataSource = ((JdbcTemplate)simpleJdbcTemplate.getJdbcOperations()).getDataSource();
+			JdbcTemplate template = new JdbcTemplate(dataSource);
+			template.setFetchSize(Integer.MIN_VALUE);
+			streamingTemplate = new NamedParameterJdbcTemplate(template);
+		}
+		return streamingTemplate;
+	}
+	
+	/**
+	 * Build the token for the page following the passed results. The keyset sort value is removed
+	 * from each row as it was not part of the select.
+	 * @param results
+	 * @param limit
+	 * @return The token or null if this is the last page.
+	 */
+	static String buildNextPageToken(List<Map<String, Object>> results, long limit){
+		Object lastSortValue = null;
+		for(Map<String, Object> row: results){
+			lastSortValue = row.remove(SqlConstants.KEYSET_SORT_VALUE_ALIAS);
+		}
+		// A short page is the last page.
+		if(results.size() < 1 || results.size() < limit) return null;
+		Map<String, Object> lastRow = results.get(results.size()-1);
+		Long lastId = (Long) lastRow.get(NodeField.ID.getFieldName());
+		if(lastId == null) throw new IllegalStateException("The node ID must be selected for keyset paging");
+		return new QueryPageToken(lastId, lastSortValue).encode();
 	}
 	
 	/**
@@ -158,9 +287,70 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 			return 0;
 		}
 		// Run the count query
-		long count = this.simpleJdbcTemplate.queryForLong(countQuery.toString(), parameters);
+		return runCountQuery(countQuery.toString(), parameters);
+	}
+	
+	/**
+	 * Run a count query, using the cached count when there is one.
+	 * @param countSql
+	 * @param parameters
+	 * @return
+	 */
+	private long runCountQuery(String countSql, Map<String, Object> parameters){
+		String key = QueryCountCache.createKey(countSql, parameters);
+		Long count = countCache.get(key);
+		if(count != null) return count;
+		long start = System.currentTimeMillis();
+		count = this.simpleJdbcTemplate.queryForLong(countSql, parameters);
+		long elapse = System.currentTimeMillis()-start;
+		countQueryCount.incrementAndGet();
+		countQueryTimeMS.addAndGet(elapse);
+		if(log.isDebugEnabled()){
+			log.debug("count query time: "+elapse+" ms");
+		}
+		countCache.put(key, count);
 		return count;
 	}
+	
+	/**
+	 * The cache used for query counts.
+	 * @return
+	 */
+	public QueryCountCache getCountCache() {
+		return countCache;
+	}
+
+	/**
+	 * The number of count queries run against the database.
+	 * @return
+	 */
+	public long getCountQueryCount() {
+		return countQueryCount.get();
+	}
+
+	/**
+	 * The total time (MS) spent running count queries.
+	 * @return
+	 */
+	public long getCountQueryTimeMS() {
+		return countQueryTimeMS.get();
+	}
+
+	/**
+	 * The number of fetch queries run against the database.
+	 * @return
+	 */
+	public long getFetchQueryCount() {
+		return fetchQueryCount.get();
+	}
+
+	/**
+	 * The total time (MS) spent running fetch queries.
+	 * @return
+	 */
+	public long getFetchQueryTimeMS() {
+		return fetchQueryTimeMS.get();
+	}
 
 	/**
 	 * Builds the two query strings and prepares the query parameters.
@@ -192,6 +382,7 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 		StringBuilder from = new StringBuilder();
 		StringBuilder where = new StringBuilder();
 		StringBuilder orderByClause = new StringBuilder();
+		String sortColumn = null;
 
 		try {
 			// Build the from
@@ -201,8 +392,15 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 			
 			// These two get built at the same time
 			if (in.getSort() != null) {
-				buildAllSorting(orderByClause,
-						in.getSort(), in.isAscending());
+				sortColumn = buildAllSorting(orderByClause,
+						in.getSort(), in.isAscending(), in.isKeysetPaging());
+			}else if(in.isKeysetPaging()){
+				// Keyset paging requires a deterministic order.
+				orderByClause.append(" order by ");
+				orderByClause.append(SqlConstants.NODE_ALIAS);
+				orderByClause.append(".");
+				orderByClause.append(SqlConstants.COL_NODE_ID);
+				orderByClause.append(" asc");
 			}
 
 		} catch (AttributeDoesNotExist e) {
@@ -214,7 +412,21 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 		// Build the authorization filter
 		String authorizationFilter = QueryUtils.buildAuthorizationFilter(userInfo, parameters);
 		// Build the paging
-		String paging = QueryUtils.buildPaging(in.getOffset(), in.getLimit(), parameters);
+		String paging = null;
+		String keysetFilter = "";
+		if(in.isKeysetPaging()){
+			paging = QueryUtils.buildKeysetPaging(in.getLimit(), parameters);
+			if(sortColumn != null){
+				// The sort value is needed to build the next page token.
+				selectId = selectId+", "+sortColumn+" as "+SqlConstants.KEYSET_SORT_VALUE_ALIAS;
+			}
+			if(in.getPageToken() != null){
+				QueryPageToken token = QueryPageToken.decode(in.getPageToken());
+				keysetFilter = QueryUtils.buildKeysetFilter(sortColumn, in.isAscending(), token, parameters);
+			}
+		}else{
+			paging = QueryUtils.buildPaging(in.getOffset(), in.getLimit(), parameters);
+		}
 
 		// Build the SQL strings
 		// Count
@@ -234,6 +446,7 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 		fullQuery.append(authorizationFilter);
 		fullQuery.append(" ");
 		fullQuery.append(where);
+		fullQuery.append(keysetFilter);
 		fullQuery.append(" ");
 		fullQuery.append(orderByClause);
 		fullQuery.append(" ");
@@ -268,10 +481,11 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 	 * @param orderByClause
 	 * @param sort
 	 * @param ascending
-	 * @param parameters
+	 * @param keysetPaging When true the node ID is added as a tie-breaker.
+	 * @return The sort column (alias.column)
 	 * @throws DatastoreException
 	 */
-	private void buildAllSorting(StringBuilder orderByClause, String sort, boolean ascending) throws DatastoreException,
+	private String buildAllSorting(StringBuilder orderByClause, String sort, boolean ascending, boolean keysetPaging) throws DatastoreException,
 			AttributeDoesNotExist {
 		// The first thing we need to do is determine if we are sorting on a
 		// primary field or an attribute.
@@ -303,6 +517,16 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 		orderByClause.append(sortColumnName);
 		orderByClause.append(" ");
 		orderByClause.append(ascString);
+		if(keysetPaging){
+			// The ID breaks ties so each row has a unique position.
+			orderByClause.append(", ");
+			orderByClause.append(SqlConstants.NODE_ALIAS);
+			orderByClause.append(".");
+			orderByClause.append(SqlConstants.COL_NODE_ID);
+			orderByClause.append(" ");
+			orderByClause.append(ascString);
+		}
+		return alias+"."+sortColumnName;
 	}
 	
 
@@ -670,7 +894,8 @@ public class JDONodeQueryDaoImpl implements NodeQueryDao {
 			// If select is null then add all
 			if(zippedAnnos != null){
 				try {
-					NamedAnnotations named = JDOSecondaryPropertyUtils.decompressedAnnotations(zippedAnnos);
+					// Only the selected annotations need to be decoded.
+					NamedAnnotations named = JDOSecondaryPropertyUtils.decompressedAnnotations(zippedAnnos, select);
 					// Add the primary
 					addNewToMap(row, named.getPrimaryAnnotations(), select);
 					// Now add the secondary.
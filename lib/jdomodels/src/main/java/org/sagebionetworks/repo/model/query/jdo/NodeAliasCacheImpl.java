@@ -1,12 +1,10 @@
 package org.sagebionetworks.repo.model.query.jdo;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.util.BoundedCache;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
@@ -19,9 +17,9 @@ public class NodeAliasCacheImpl implements NodeAliasCache {
 	
 	@Autowired
 	private NodeDAO nodeDao;
-	// da cache
-	private Map<String, List<Short>> cache = Collections
-			.synchronizedMap(new HashMap<String, List<Short>>());
+	// da cache. There are only a few aliases and they do not change.
+	private BoundedCache<String, List<Short>> cache = new BoundedCache<String, List<Short>>(
+			"nodeAliasCache", 1000, 0);
 
 	@Override
 	public List<Short> getAllNodeTypesForAlias(String alias) {
@@ -0,0 +1,160 @@
+package org.sagebionetworks.repo.model.query.jdo;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.NodeQueryRow;
+import org.sagebionetworks.repo.model.NodeQueryRowHandler;
+import org.sagebionetworks.repo.model.jdo.JDOSecondaryPropertyUtils;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * Decodes each row of a query result set into a single reusable {@link NodeQueryRow}
+ * and passes it to a {@link NodeQueryRowHandler}. Unlike the {@link SizeLimitRowMapper}
+ * no row is kept after it has been handled.
+ *
+ */
+public class NodeQueryRowCallbackHandler implements RowCallbackHandler {
+
+	private NodeQueryRowHandler handler;
+	private List<String> select;
+	private Set<String> selectKeys;
+	private NodeQueryRow row = new NodeQueryRow();
+	private String[] columnLabels;
+	private long rowCount = 0;
+	private Long lastId;
+	private Object lastSortValue;
+
+	/**
+	 *
+	 * @param handler Each row is passed to this handler.
+	 * @param select The selected annotation names, or null to include all annotations.
+	 */
+	public NodeQueryRowCallbackHandler(NodeQueryRowHandler handler, List<String> select) {
+		if(handler == null) throw new IllegalArgumentException("Handler cannot be null");
+		this.handler = handler;
+		this.select = select;
+		// Used to skip the annotations that were not selected when decoding.
+		this.selectKeys = select == null ? null : new HashSet<String>(select);
+	}
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		if(columnLabels == null){
+			// The labels are the same for every row.
+			ResultSetMetaData meta = rs.getMetaData();
+			columnLabels = new String[meta.getColumnCount()];
+			for(int i=0; i<columnLabels.length; i++){
+				columnLabels[i] = JdbcUtils.lookupColumnName(meta, i+1);
+			}
+		}
+		row.clear();
+		byte[] zippedAnnos = null;
+		for(int i=0; i<columnLabels.length; i++){
+			String label = columnLabels[i];
+			Object value = JdbcUtils.getResultSetValue(rs, i+1);
+			if(SqlConstants.KEYSET_SORT_VALUE_ALIAS.equalsIgnoreCase(label)){
+				// Only used to build the next page token.
+				lastSortValue = value;
+				continue;
+			}
+			if(SqlConstants.COL_REVISION_ANNOS_BLOB.equalsIgnoreCase(label)){
+				// Annotations are added after the primary fields.
+				zippedAnnos = (byte[]) value;
+				continue;
+			}
+			if(NodeField.ID.getFieldName().equalsIgnoreCase(label)){
+				label = NodeField.ID.getFieldName();
+				if(value != null){
+					lastId = (Long) value;
+					value = KeyFactory.keyToString(lastId);
+				}
+			}else if(NodeField.PARENT_ID.getFieldName().equalsIgnoreCase(label)){
+				if(value != null){
+					value = KeyFactory.keyToString((Long) value);
+				}
+			}
+			// The ID can be selected twice.
+			if(!row.contains(label)){
+				row.add(label, value);
+			}
+		}
+		if(zippedAnnos != null){
+			try {
+				NamedAnnotations named = JDOSecondaryPropertyUtils.decompressedAnnotations(zippedAnnos, selectKeys);
+				addNewToRow(named.getPrimaryAnnotations());
+				addNewToRow(named.getAdditionalAnnotations());
+			} catch (IOException e) {
+				throw new SQLException(e);
+			}
+			if(select != null){
+				// Selected annotations that this node does not have are null.
+				for(String key: select){
+					if(!row.contains(key)){
+						row.add(key, null);
+					}
+				}
+			}
+		}
+		rowCount++;
+		handler.handleRow(row);
+	}
+
+	/**
+	 * Add each annotation not already in the row.
+	 * @param annotations
+	 */
+	private void addNewToRow(Annotations annotations){
+		if(annotations != null){
+			addNewOnly(annotations.getStringAnnotations());
+			addNewOnly(annotations.getDateAnnotations());
+			addNewOnly(annotations.getLongAnnotations());
+			addNewOnly(annotations.getDoubleAnnotations());
+		}
+	}
+
+	private void addNewOnly(Map<String, ? extends Object> toAdd){
+		if(toAdd == null) return;
+		// If the select list is null then add all keys
+		Iterable<String> keys = select == null ? toAdd.keySet() : select;
+		for(String key: keys){
+			if(!row.contains(key)){
+				Object value = toAdd.get(key);
+				if(value != null){
+					row.add(key, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The number of rows handled.
+	 * @return
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Build the token for the page following the handled rows.
+	 * @param limit
+	 * @return The token or null if this was the last page.
+	 */
+	public String getNextPageToken(long limit){
+		// A short page is the last page.
+		if(rowCount < 1 || rowCount < limit) return null;
+		if(lastId == null) throw new IllegalStateException("The node ID must be selected for keyset paging");
+		return new QueryPageToken(lastId, lastSortValue).encode();
+	}
+
+}
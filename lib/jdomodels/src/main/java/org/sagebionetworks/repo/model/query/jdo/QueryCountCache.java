@@ -0,0 +1,92 @@
+package org.sagebionetworks.repo.model.query.jdo;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.sagebionetworks.repo.model.util.BoundedCache;
+
+/**
+ * A short lived cache of query counts. When a user pages through the results of a query
+ * the total count does not change from page to page, so there is no need to run the count
+ * query for each page.
+ *
+ * The key is the count SQL plus the bound parameters it references. Since the authorization
+ * filter binds each of the user's groups the key includes the user's group set.
+ *
+ */
+public class QueryCountCache {
+
+	private BoundedCache<String, Long> cache;
+
+	/**
+	 *
+	 * @param maxEntries The maximum number of counts to hold.  The least recently used count is removed first.
+	 * @param timeoutMS How long a count is valid.
+	 */
+	public QueryCountCache(final int maxEntries, long timeoutMS){
+		this.cache = new BoundedCache<String, Long>("queryCountCache", maxEntries, timeoutMS);
+	}
+
+	/**
+	 * Create the cache key for a count query.  Only parameters referenced by the SQL are included
+	 * so paging parameters do not change the key.
+	 * @param countSql
+	 * @param parameters
+	 * @return
+	 */
+	public static String createKey(String countSql, Map<String, Object> parameters){
+		if(countSql == null) throw new IllegalArgumentException("SQL cannot be null");
+		if(parameters == null) throw new IllegalArgumentException("Parameters cannot be null");
+		String normalSql = countSql.trim().replaceAll("\\s+", " ");
+		// Sort the parameters so the key does not depend on the order they were bound.
+		TreeMap<String, Object> referenced = new TreeMap<String, Object>();
+		for(String name: parameters.keySet()){
+			if(normalSql.contains(":"+name)){
+				referenced.put(name, parameters.get(name));
+			}
+		}
+		return normalSql+" "+referenced.toString();
+	}
+
+	/**
+	 * Get a cached count.
+	 * @param key
+	 * @return The count or null if there is no valid count for this key.
+	 */
+	public Long get(String key){
+		return cache.get(key);
+	}
+
+	/**
+	 * Add a count to the cache.
+	 * @param key
+	 * @param count
+	 */
+	public void put(String key, long count){
+		cache.put(key, count);
+	}
+
+	/**
+	 * Remove all counts from the cache.
+	 */
+	public void clear(){
+		cache.clear();
+	}
+
+	/**
+	 * The number of times a count was found in the cache.
+	 * @return
+	 */
+	public long getHitCount(){
+		return cache.getHitCount();
+	}
+
+	/**
+	 * The number of times a count was not found in the cache.
+	 * @return
+	 */
+	public long getMissCount(){
+		return cache.getMissCount();
+	}
+
+}
@@ -0,0 +1,151 @@
+package org.sagebionetworks.repo.model.query.jdo;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * An opaque continuation token used for keyset (seek) paging of a query.
+ * The token captures the sort key and node ID of the last row of a page so the
+ * next page can seek directly to the following row rather than scanning past an
+ * offset.
+ *
+ * The decoded form is: <nodeId>:<valueType>:<sortValue> where the value type is
+ * one of the single character codes below.
+ *
+ */
+public class QueryPageToken {
+
+	private static final String UTF_8 = "UTF-8";
+	private static final String DELIMITER = ":";
+
+	static final char TYPE_NULL		= 'N';
+	static final char TYPE_STRING	= 'S';
+	static final char TYPE_LONG		= 'L';
+	static final char TYPE_DOUBLE	= 'D';
+	static final char TYPE_DATE		= 'T';
+	static final char TYPE_BYTES	= 'B';
+
+	private long lastId;
+	private Object lastSortValue;
+
+	/**
+	 *
+	 * @param lastId The ID of the last node of the previous page.
+	 * @param lastSortValue The value of the sort column for the last node of the previous page.
+	 * Can be null.
+	 */
+	public QueryPageToken(long lastId, Object lastSortValue) {
+		this.lastId = lastId;
+		this.lastSortValue = lastSortValue;
+	}
+
+	/**
+	 * The ID of the last node of the previous page.
+	 * @return
+	 */
+	public long getLastId() {
+		return lastId;
+	}
+
+	/**
+	 * The sort value of the last node of the previous page.
+	 * @return
+	 */
+	public Object getLastSortValue() {
+		return lastSortValue;
+	}
+
+	/**
+	 * Encode this token as an opaque string.
+	 * @return
+	 */
+	public String encode(){
+		StringBuilder builder = new StringBuilder();
+		builder.append(lastId);
+		builder.append(DELIMITER);
+		if(lastSortValue == null){
+			builder.append(TYPE_NULL);
+			builder.append(DELIMITER);
+		}else if(lastSortValue instanceof String){
+			builder.append(TYPE_STRING);
+			builder.append(DELIMITER);
+			builder.append((String)lastSortValue);
+		}else if(lastSortValue instanceof Long || lastSortValue instanceof Integer || lastSortValue instanceof Short){
+			builder.append(TYPE_LONG);
+			builder.append(DELIMITER);
+			builder.append(((Number)lastSortValue).longValue());
+		}else if(lastSortValue instanceof Double || lastSortValue instanceof Float){
+			builder.append(TYPE_DOUBLE);
+			builder.append(DELIMITER);
+			builder.append(((Number)lastSortValue).doubleValue());
+		}else if(lastSortValue instanceof Date){
+			builder.append(TYPE_DATE);
+			builder.append(DELIMITER);
+			builder.append(((Date)lastSortValue).getTime());
+		}else if(lastSortValue instanceof byte[]){
+			builder.append(TYPE_BYTES);
+			builder.append(DELIMITER);
+			builder.append(new String(Base64.encodeBase64((byte[])lastSortValue)));
+		}else{
+			throw new IllegalArgumentException("Unsupported sort value type: "+lastSortValue.getClass().getName());
+		}
+		try {
+			return new String(Base64.encodeBase64(builder.toString().getBytes(UTF_8)), UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decode a token created with {@link #encode()}.
+	 * @param token
+	 * @return
+	 * @throws IllegalArgumentException If the token is not valid.
+	 */
+	public static QueryPageToken decode(String token){
+		if(token == null) throw new IllegalArgumentException("Token cannot be null");
+		String decoded = null;
+		try {
+			decoded = new String(Base64.decodeBase64(token.getBytes(UTF_8)), UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		// The value itself might contain the delimiter so only split twice
+		String[] split = decoded.split(DELIMITER, 3);
+		if(split.length != 3 || split[1].length() != 1) throw new IllegalArgumentException("Invalid page token: "+token);
+		try{
+			long lastId = Long.parseLong(split[0]);
+			char type = split[1].charAt(0);
+			String value = split[2];
+			Object sortValue = null;
+			switch(type){
+			case TYPE_NULL:
+				sortValue = null;
+				break;
+			case TYPE_STRING:
+				sortValue = value;
+				break;
+			case TYPE_LONG:
+				sortValue = Long.parseLong(value);
+				break;
+			case TYPE_DOUBLE:
+				sortValue = Double.parseDouble(value);
+				break;
+			case TYPE_DATE:
+				sortValue = new Date(Long.parseLong(value));
+				break;
+			case TYPE_BYTES:
+				sortValue = Base64.decodeBase64(value.getBytes());
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid page token: "+token);
+			}
+			return new QueryPageToken(lastId, sortValue);
+		}catch(NumberFormatException e){
+			throw new IllegalArgumentException("Invalid page token: "+token);
+		}
+	}
+
+}
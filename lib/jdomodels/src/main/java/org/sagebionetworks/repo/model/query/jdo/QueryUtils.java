@@ -138,6 +138,64 @@ public class QueryUtils {
 		parameters.put("offsetVal", offset);
 		return paging;
 	}
+	
+	/**
+	 * Build the paging used for keyset paging. There is no offset as each page
+	 * seeks directly to the first row after the previous page.
+	 * @param limit
+	 * @param parameters
+	 * @return
+	 */
+	public static String buildKeysetPaging(long limit, Map<String, Object> parameters) {
+		if (limit > MAX_LIMIT) {
+			limit = MAX_LIMIT - 1;
+		}
+		parameters.put("limitVal", limit);
+		return "limit :limitVal";
+	}
+
+	/**
+	 * Build the keyset predicate that seeks past the last row of the previous page.
+	 * The rows must be ordered by the sort column then by node ID, both in the same direction.
+	 * Nulls sort first in MySQL, so a null sort value is only followed by other nulls with a
+	 * larger ID or any non-null value when ascending.
+	 * 
+	 * @param sortColumn The full sort column (alias.column) or null if there is no sort.
+	 * @param ascending
+	 * @param token The token from the previous page.
+	 * @param parameters a mutable parameter list
+	 * @return A condition that can be appended to an existing where clause.
+	 */
+	public static String buildKeysetFilter(String sortColumn, boolean ascending, QueryPageToken token, Map<String, Object> parameters) {
+		if(token == null) throw new IllegalArgumentException("Token cannot be null");
+		if(parameters == null) throw new IllegalArgumentException("Parameters cannot be null");
+		String idColumn = SqlConstants.NODE_ALIAS+"."+SqlConstants.COL_NODE_ID;
+		String compare = ascending ? ">" : "<";
+		parameters.put("keysetId", token.getLastId());
+		StringBuilder builder = new StringBuilder();
+		builder.append(" and (");
+		if(sortColumn == null){
+			// Without a sort the rows are ordered by ID only.
+			builder.append(idColumn).append(" ").append(compare).append(" :keysetId");
+		}else if(token.getLastSortValue() == null){
+			builder.append("(").append(sortColumn).append(" IS NULL and ");
+			builder.append(idColumn).append(" ").append(compare).append(" :keysetId)");
+			if(ascending){
+				builder.append(" or ").append(sortColumn).append(" IS NOT NULL");
+			}
+		}else{
+			parameters.put("keysetValue", token.getLastSortValue());
+			builder.append(sortColumn).append(" ").append(compare).append(" :keysetValue");
+			builder.append(" or (").append(sortColumn).append(" = :keysetValue and ");
+			builder.append(idColumn).append(" ").append(compare).append(" :keysetId)");
+			if(!ascending){
+				// Nulls come last when descending.
+				builder.append(" or ").append(sortColumn).append(" IS NULL");
+			}
+		}
+		builder.append(")");
+		return builder.toString();
+	}
 
 
 }
@@ -178,6 +178,23 @@ public class SqlConstants {
 	public static final String COL_BACKUP_TERM_OWNER			= "BACKUP_OWNER";
 	public static final String COL_BACKUP_FORCE_TERMINATION		= "FORCE_TERMINATION";
 	public static final String DDL_DAEMON_TERMINATE				= "schema/DaemonTerminate-ddl.sql";
+	
+	// The change log.  Each object has a single row for its latest change.
+	public static final String TABLE_CHANGES					= "CHANGES";
+	public static final String COL_CHANGES_CHANGE_NUM			= "CHANGE_NUM";
+	public static final String COL_CHANGES_OBJECT_ID			= "OBJECT_ID";
+	public static final String COL_CHANGES_OBJECT_TYPE			= "OBJECT_TYPE";
+	public static final String COL_CHANGES_OBJECT_ETAG			= "OBJECT_ETAG";
+	public static final String COL_CHANGES_CHANGE_TYPE			= "CHANGE_TYPE";
+	public static final String DDL_CHANGES						= "schema/Changes-ddl.sql";
+	
+	// The position of each reader of the change log.
+	public static final String TABLE_CHANGE_CURSORS				= "CHANGE_CURSORS";
+	public static final String COL_CHANGE_CURSORS_NAME			= "NAME";
+	public static final String COL_CHANGE_CURSORS_NEXT_CHANGE_NUM	= "NEXT_CHANGE_NUM";
+	public static final String COL_CHANGE_CURSORS_LEASE_OWNER	= "LEASE_OWNER";
+	public static final String COL_CHANGE_CURSORS_LEASE_EXPIRES_ON	= "LEASE_EXPIRES_ON";
+	public static final String DDL_CHANGE_CURSORS				= "schema/ChangeCursors-ddl.sql";
 		
 	// The resource access join table
 	// datanucleus doesn't seem to be respecting the join table name when creating the schema
@@ -211,9 +228,14 @@ public class SqlConstants {
 	
 	public static final String AUTH_FILTER_ALIAS = "auth";
 	
+	// The column alias used to select the sort value for keyset paging.
+	public static final String KEYSET_SORT_VALUE_ALIAS = "keysetSortValue";
+	
 	// standard range parameters
 	public static final String OFFSET_PARAM_NAME = "OFFSET";
 	public static final String LIMIT_PARAM_NAME = "LIMIT";
+	// Used for keyset paging: the page starts after this ID.
+	public static final String AFTER_ID_PARAM_NAME = "AFTER_ID";
 	
 	public static final String[] PRIMARY_FIELDS;
 	
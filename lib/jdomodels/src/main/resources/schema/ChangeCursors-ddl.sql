@@ -0,0 +1,7 @@
+CREATE TABLE `CHANGE_CURSORS` (
+  `NAME` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  `NEXT_CHANGE_NUM` bigint(20) DEFAULT NULL,
+  `LEASE_OWNER` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin DEFAULT NULL,
+  `LEASE_EXPIRES_ON` bigint(20) NOT NULL,
+  PRIMARY KEY (`NAME`)
+)
@@ -0,0 +1,9 @@
+CREATE TABLE `CHANGES` (
+  `CHANGE_NUM` bigint(20) NOT NULL AUTO_INCREMENT,
+  `OBJECT_ID` bigint(20) NOT NULL,
+  `OBJECT_TYPE` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  `OBJECT_ETAG` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin DEFAULT NULL,
+  `CHANGE_TYPE` varchar(256) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+  PRIMARY KEY (`CHANGE_NUM`),
+  UNIQUE KEY `CHANGES_UNIQUE_OBJECT` (`OBJECT_ID`, `OBJECT_TYPE`)
+)
@@ -0,0 +1,67 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sagebionetworks.repo.model.ChangeCursorDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
+public class DBOChangeCursorDAOImplTest {
+
+	private static final String CURSOR = "DBOChangeCursorDAOImplTest";
+	private static final long LEASE_MS = 60*1000;
+
+	@Autowired
+	ChangeCursorDAO changeCursorDAO;
+
+	@Before
+	public void before(){
+		changeCursorDAO.deleteAllCursors();
+	}
+
+	@After
+	public void after(){
+		if(changeCursorDAO != null){
+			changeCursorDAO.deleteAllCursors();
+		}
+	}
+
+	@Test
+	public void testLease() throws Exception {
+		assertNull(changeCursorDAO.getNextChangeNumber(CURSOR));
+		assertTrue(changeCursorDAO.acquireLease(CURSOR, "one", LEASE_MS));
+		// The cursor exists but has not been moved.
+		assertNull(changeCursorDAO.getNextChangeNumber(CURSOR));
+		// Only one owner at a time.
+		assertFalse(changeCursorDAO.acquireLease(CURSOR, "two", LEASE_MS));
+		assertTrue(changeCursorDAO.acquireLease(CURSOR, "one", LEASE_MS));
+		// Only the owner can move the cursor.
+		assertTrue(changeCursorDAO.setNextChangeNumber(CURSOR, "one", 123, LEASE_MS));
+		assertFalse(changeCursorDAO.setNextChangeNumber(CURSOR, "two", 456, LEASE_MS));
+		assertEquals(new Long(123), changeCursorDAO.getNextChangeNumber(CURSOR));
+		// Once released another owner can take it.
+		changeCursorDAO.releaseLease(CURSOR, "one");
+		assertTrue(changeCursorDAO.acquireLease(CURSOR, "two", LEASE_MS));
+		assertFalse(changeCursorDAO.setNextChangeNumber(CURSOR, "one", 456, LEASE_MS));
+		assertEquals(new Long(123), changeCursorDAO.getNextChangeNumber(CURSOR));
+	}
+
+	@Test
+	public void testExpiredLease() throws Exception {
+		// A lease that has already expired.
+		assertTrue(changeCursorDAO.acquireLease(CURSOR, "one", -1000));
+		assertTrue(changeCursorDAO.acquireLease(CURSOR, "two", LEASE_MS));
+		assertFalse(changeCursorDAO.acquireLease(CURSOR, "one", LEASE_MS));
+	}
+
+}
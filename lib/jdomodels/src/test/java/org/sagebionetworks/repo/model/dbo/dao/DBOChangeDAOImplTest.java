@@ -0,0 +1,149 @@
+package org.sagebionetworks.repo.model.dbo.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
+public class DBOChangeDAOImplTest {
+
+	@Autowired
+	ChangeDAO changeDAO;
+
+	@Autowired
+	PlatformTransactionManager txManager;
+
+	@Before
+	public void before(){
+		changeDAO.deleteAllChanges();
+	}
+
+	@After
+	public void after(){
+		if(changeDAO != null){
+			changeDAO.deleteAllChanges();
+		}
+	}
+
+	private ChangeMessage createChange(String id, ObjectType objectType, String etag, ChangeType changeType){
+		ChangeMessage change = new ChangeMessage();
+		change.setObjectId(id);
+		change.setObjectType(objectType);
+		change.setObjectEtag(etag);
+		change.setChangeType(changeType);
+		return change;
+	}
+
+	@Test
+	public void testReplace() throws DatastoreException{
+		assertEquals(0, changeDAO.getCurrentChangeNumber());
+		ChangeMessage first = changeDAO.replaceChange(createChange("syn123", ObjectType.ENTITY, "etag1", ChangeType.CREATE));
+		assertNotNull(first.getChangeNumber());
+		assertEquals(first.getChangeNumber().longValue(), changeDAO.getCurrentChangeNumber());
+		// An ACL with the same ID is a different object.
+		ChangeMessage acl = changeDAO.replaceChange(createChange("syn123", ObjectType.ACL, "etag1", ChangeType.CREATE));
+		assertTrue(acl.getChangeNumber() > first.getChangeNumber());
+		// Replacing the entity gives it a new change number.
+		ChangeMessage second = changeDAO.replaceChange(createChange("syn123", ObjectType.ENTITY, "etag2", ChangeType.UPDATE));
+		assertTrue(second.getChangeNumber() > acl.getChangeNumber());
+		List<ChangeMessage> all = changeDAO.listChanges(0, null, 100);
+		assertEquals(2, all.size());
+		assertEquals(acl, all.get(0));
+		assertEquals(second, all.get(1));
+		// Only the entity
+		List<ChangeMessage> entities = changeDAO.listChanges(0, ObjectType.ENTITY, 100);
+		assertEquals(1, entities.size());
+		assertEquals("etag2", entities.get(0).getObjectEtag());
+		// Only changes since the second
+		List<ChangeMessage> since = changeDAO.listChanges(second.getChangeNumber(), null, 100);
+		assertEquals(1, since.size());
+		assertEquals(second, since.get(0));
+	}
+
+	@Test
+	public void testReplaceBatch() throws DatastoreException{
+		List<ChangeMessage> batch = new ArrayList<ChangeMessage>();
+		for(int i=0; i<5; i++){
+			batch.add(createChange("syn"+i, ObjectType.ENTITY, "etag"+i, ChangeType.CREATE));
+		}
+		changeDAO.replaceChanges(batch);
+		changeDAO.replaceChange(createChange("syn2", ObjectType.ENTITY, null, ChangeType.DELETE));
+		List<ChangeMessage> all = changeDAO.listChanges(0, null, 100);
+		assertEquals(5, all.size());
+		ChangeMessage last = all.get(4);
+		assertEquals("syn2", last.getObjectId());
+		assertEquals(ChangeType.DELETE, last.getChangeType());
+		assertNull(last.getObjectEtag());
+		// The limit
+		assertEquals(2, changeDAO.listChanges(0, null, 2).size());
+	}
+
+	@Test
+	public void testListCommittedChangesWaitsForOpenTransaction() throws Exception{
+		changeDAO.replaceChange(createChange("syn1", ObjectType.ENTITY, "etag1", ChangeType.CREATE));
+		final CountDownLatch written = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		// This change is given its change number but is not committed until after the next change.
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					new TransactionTemplate(txManager).execute(new TransactionCallbackWithoutResult() {
+						@Override
+						protected void doInTransactionWithoutResult(TransactionStatus status) {
+							try{
+								changeDAO.replaceChange(createChange("syn2", ObjectType.ENTITY, "etag2", ChangeType.CREATE));
+								written.countDown();
+								Thread.sleep(500);
+							}catch(Exception e){
+								throw new RuntimeException(e);
+							}
+						}
+					});
+				}catch(Throwable e){
+					failure.set(e);
+				}finally{
+					written.countDown();
+				}
+			}
+		});
+		writer.start();
+		written.await();
+		changeDAO.replaceChange(createChange("syn3", ObjectType.ENTITY, "etag3", ChangeType.CREATE));
+		// A plain read skips over the open change.
+		assertEquals(2, changeDAO.listChanges(0, null, 100).size());
+		// The committed read waits for it.
+		List<ChangeMessage> committed = changeDAO.listCommittedChanges(0, 100);
+		writer.join();
+		assertNull(failure.get());
+		assertEquals(3, committed.size());
+		assertEquals("syn1", committed.get(0).getObjectId());
+		assertEquals("syn2", committed.get(1).getObjectId());
+		assertEquals("syn3", committed.get(2).getObjectId());
+	}
+
+}
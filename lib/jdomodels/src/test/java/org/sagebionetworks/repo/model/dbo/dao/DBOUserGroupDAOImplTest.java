@@ -128,6 +128,20 @@ public class DBOUserGroupDAOImplTest {
 		// make sure pagination works
 		migrationData = userGroupDAO.getMigrationObjectData(0, 1, true);
 		assertEquals(1, migrationData.getResults().size());
+		
+		// paging by ID should walk the same objects in the same order
+		QueryResults<MigratableObjectData> all = userGroupDAO.getMigrationObjectData(0, 10000, false);
+		long afterId = -1;
+		int index = 0;
+		while (true) {
+			migrationData = userGroupDAO.getMigrationObjectDataAfter(afterId, 2, false);
+			if (migrationData.getResults().isEmpty()) break;
+			for (MigratableObjectData od : migrationData.getResults()) {
+				assertEquals(all.getResults().get(index++).getId(), od.getId());
+				afterId = Long.parseLong(od.getId().getId());
+			}
+		}
+		assertEquals(all.getResults().size(), index);
 	}
 	
 	
@@ -28,6 +28,7 @@ import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.AccessControlListDAO;
 import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.ChangeDAO;
 import org.sagebionetworks.repo.model.AuthorizationConstants;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityHeader;
@@ -43,18 +44,26 @@ import org.sagebionetworks.repo.model.NodeConstants;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.NodeInheritanceDAO;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.QueryResults;
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.ResourceAccess;
 import org.sagebionetworks.repo.model.UserGroupDAO;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.jdo.NodeTestUtils;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.orm.jdo.JdoObjectRetrievalFailureException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
@@ -81,6 +90,12 @@ public class NodeDAOImplTest {
 	@Autowired
 	private UserGroupDAO userGroupDAO;
 	
+	@Autowired
+	private ChangeDAO changeDAO;
+	
+	@Autowired
+	private PlatformTransactionManager txManager;
+	
 	// the datasets that must be deleted at the end of each test.
 	List<String> toDelete = new ArrayList<String>();
 	
@@ -148,6 +163,73 @@ public class NodeDAOImplTest {
 		return id;
 	}
 	
+	@Test
+	public void testChangeLog() throws Exception{
+		long start = changeDAO.getCurrentChangeNumber()+1;
+		String id = nodeDao.createNew(privateCreateNew("changeLog"));
+		toDelete.add(id);
+		List<ChangeMessage> changes = changeDAO.listChanges(start, ObjectType.ENTITY, 100);
+		assertEquals(1, changes.size());
+		assertEquals(id, changes.get(0).getObjectId());
+		assertEquals(ChangeType.CREATE, changes.get(0).getChangeType());
+		assertEquals(nodeDao.peekCurrentEtag(id), changes.get(0).getObjectEtag());
+		// An update replaces the create
+		final Node node = nodeDao.getNode(id);
+		node.setDescription("updated");
+		// The change number recorded by the lock.
+		final long[] lockChangeNumber = new long[1];
+		String etag = new TransactionTemplate(txManager).execute(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				try{
+					String etag = nodeDao.lockNodeAndIncrementEtag(node.getId(), nodeDao.peekCurrentEtag(node.getId()));
+					lockChangeNumber[0] = changeDAO.getCurrentChangeNumber();
+					nodeDao.updateNode(node);
+					return etag;
+				}catch(Exception e){
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		changes = changeDAO.listChanges(start, ObjectType.ENTITY, 100);
+		assertEquals(1, changes.size());
+		assertEquals(ChangeType.UPDATE, changes.get(0).getChangeType());
+		assertEquals(etag, changes.get(0).getObjectEtag());
+		// The update itself does not write the change a second time.
+		assertEquals(lockChangeNumber[0], changes.get(0).getChangeNumber().longValue());
+		// Delete
+		nodeDao.delete(id);
+		changes = changeDAO.listChanges(start, ObjectType.ENTITY, 100);
+		assertEquals(1, changes.size());
+		assertEquals(ChangeType.DELETE, changes.get(0).getChangeType());
+		assertNull(changes.get(0).getObjectEtag());
+	}
+	
+	@Test
+	public void testChangeLogDeleteSubtree() throws Exception{
+		String parentId = nodeDao.createNew(privateCreateNew("changeLogParent"));
+		toDelete.add(parentId);
+		Node child = privateCreateNew("changeLogChild");
+		child.setNodeType(EntityType.dataset.name());
+		child.setParentId(parentId);
+		String childId = nodeDao.createNew(child);
+		Node grandchild = privateCreateNew("changeLogGrandchild");
+		grandchild.setNodeType(EntityType.layer.name());
+		grandchild.setParentId(childId);
+		String grandchildId = nodeDao.createNew(grandchild);
+		long start = changeDAO.getCurrentChangeNumber()+1;
+		// The cascade deletes the whole subtree, so each node gets a delete.
+		nodeDao.delete(parentId);
+		List<ChangeMessage> changes = changeDAO.listChanges(start, ObjectType.ENTITY, 100);
+		assertEquals(3, changes.size());
+		Set<String> deleted = new HashSet<String>();
+		for(ChangeMessage change: changes){
+			assertEquals(ChangeType.DELETE, change.getChangeType());
+			deleted.add(change.getObjectId());
+		}
+		assertEquals(new HashSet<String>(Arrays.asList(parentId, childId, grandchildId)), deleted);
+	}
+	
 	@Test 
 	public void testCreateNode() throws Exception{
 		Node toCreate = privateCreateNewDistinctModifier("firstNodeEver");
@@ -227,6 +309,49 @@ public class NodeDAOImplTest {
 		assertTrue(foundId);
 	}
 	
+	@Test
+	public void testGetMigrationObjectDataAfterMultipleRevisions() throws Exception {
+		// The first revision is modified by the creator and the later ones by another user.
+		Node node = privateCreateNew("multipleRevisions");
+		String id = nodeDao.createNew(node);
+		toDelete.add(id);
+		for(int i=1; i<3; i++){
+			Node current = nodeDao.getNode(id);
+			current.setVersionLabel("0.0."+i);
+			current.setModifiedByPrincipalId(altUserGroupId);
+			nodeDao.createNewVersion(current);
+		}
+		String nextId = nodeDao.createNew(privateCreateNew("nextNode"));
+		toDelete.add(nextId);
+		long key = KeyFactory.stringToKey(id);
+		
+		// A page of one must hold the whole node, with the modifiers of all its revisions.
+		QueryResults<MigratableObjectData> results = nodeDao.getMigrationObjectDataAfter(key-1, 1, true);
+		assertEquals(1, results.getResults().size());
+		MigratableObjectData od = results.getResults().get(0);
+		assertEquals(id, od.getId().getId());
+		Set<String> principals = new HashSet<String>();
+		for (MigratableObjectDescriptor mod : od.getDependencies()) {
+			assertEquals(MigratableObjectType.PRINCIPAL, mod.getType());
+			principals.add(mod.getId());
+		}
+		assertEquals(new HashSet<String>(Arrays.asList(creatorUserGroupId.toString(), altUserGroupId.toString())), principals);
+		
+		// The next page starts with the next node rather than another revision of the first.
+		results = nodeDao.getMigrationObjectDataAfter(key, 1, true);
+		assertEquals(1, results.getResults().size());
+		assertEquals(nextId, results.getResults().get(0).getId().getId());
+		
+		// Each node is listed once, in order.
+		results = nodeDao.getMigrationObjectDataAfter(key-1, 10, true);
+		List<String> ids = new ArrayList<String>();
+		for (MigratableObjectData data : results.getResults()) {
+			ids.add(data.getId().getId());
+		}
+		assertEquals(Arrays.asList(id, nextId), ids.subList(0, 2));
+		assertEquals(ids.size(), new HashSet<String>(ids).size());
+	}
+	
 	@Test (expected=IllegalArgumentException.class)
 	public void testCreateWithExistingId() throws Exception{
 		Node toCreate = privateCreateNew("secondNodeEver");
@@ -1060,6 +1185,50 @@ public class NodeDAOImplTest {
 		assertEquals(array[0], path.get(0));
 	}
 	
+	@Test
+	public void testGetEntityPathDeep() throws Exception {
+		// Deeper than a single path query
+		int depth = NodeDAOImpl.MAX_PATH_DEPTH_PER_QUERY*2+3;
+		List<String> ids = new ArrayList<String>();
+		String parentId = null;
+		for(int i=0; i<depth; i++){
+			Node node = privateCreateNew("level"+i);
+			node.setNodeType(i == 0 ? EntityType.project.name() : EntityType.folder.name());
+			node.setParentId(parentId);
+			parentId = nodeDao.createNew(node);
+			toDelete.add(parentId);
+			ids.add(parentId);
+		}
+		List<EntityHeader> path = nodeDao.getEntityPath(parentId);
+		assertEquals(depth, path.size());
+		for(int i=0; i<depth; i++){
+			assertEquals(nodeDao.getEntityHeader(ids.get(i)), path.get(i));
+		}
+		// A node exactly at the end of the first query
+		path = nodeDao.getEntityPath(ids.get(NodeDAOImpl.MAX_PATH_DEPTH_PER_QUERY-1));
+		assertEquals(NodeDAOImpl.MAX_PATH_DEPTH_PER_QUERY, path.size());
+		
+		// Move the last node to the root project
+		String lastId = ids.get(depth-1);
+		assertTrue(nodeDao.changeNodeParent(lastId, ids.get(0)));
+		path = nodeDao.getEntityPath(lastId);
+		assertEquals(2, path.size());
+		assertEquals(ids.get(0), path.get(0).getId());
+		assertEquals(lastId, path.get(1).getId());
+	}
+	
+	@Test (expected=NotFoundException.class)
+	public void testGetEntityPathDoesNotExist() throws NotFoundException, DatastoreException{
+		long id = idGenerator.generateNewId();
+		nodeDao.getEntityPath(KeyFactory.keyToString(id));
+	}
+	
+	@Test
+	public void testCreateEntityPathSql(){
+		String sql = NodeDAOImpl.createEntityPathSql(2);
+		assertEquals("SELECT N0.ID, N0.NODE_TYPE, N0.NAME, N1.ID, N1.NODE_TYPE, N1.NAME, N1.PARENT_ID FROM JDONODE N0 LEFT JOIN JDONODE N1 ON N1.ID = N0.PARENT_ID WHERE N0.ID = ?", sql);
+	}
+	
 	@Test
 	public void testGetChildrenList() throws NotFoundException, DatastoreException, InvalidModelException {
 		Node node = privateCreateNew("parent");
@@ -1083,6 +1252,66 @@ public class NodeDAOImplTest {
 		assertEquals(childIds, fromDao);
 	}
 	
+	@Test
+	public void testGetNodesWithAnnotations() throws Exception {
+		Node node = privateCreateNew("parent");
+		node.setNodeType(EntityType.project.name());
+		String parentId = nodeDao.createNew(node);
+		toDelete.add(parentId);
+		// Enough children to decode them in parallel
+		List<String> childIds = new ArrayList<String>();
+		for(int i=0; i<NodeDAOImpl.MIN_NODES_FOR_PARALLEL_DECODE+1; i++){
+			node = privateCreateNew("child"+i);
+			node.setNodeType(EntityType.dataset.name());
+			node.setParentId(parentId);
+			String id = nodeDao.createNew(node);
+			childIds.add(id);
+			NamedAnnotations named = nodeDao.getAnnotations(id);
+			named.getAdditionalAnnotations().addAnnotation("index", new Long(i));
+			nodeDao.updateAnnotations(id, named);
+		}
+		List<String> ids = new ArrayList<String>(childIds);
+		// Missing nodes are left out
+		String doesNotExist = KeyFactory.keyToString(Long.MAX_VALUE);
+		ids.add(doesNotExist);
+		Map<String, NodeWithAnnotations> results = nodeDao.getNodesWithAnnotations(ids);
+		assertNotNull(results);
+		assertEquals(childIds.size(), results.size());
+		assertFalse(results.containsKey(doesNotExist));
+		for(int i=0; i<childIds.size(); i++){
+			String id = childIds.get(i);
+			NodeWithAnnotations loaded = results.get(id);
+			assertNotNull(loaded);
+			assertEquals(nodeDao.getNode(id), loaded.getNode());
+			assertEquals(new Long(i), loaded.getAnnotations().getAdditionalAnnotations().getSingleValue("index"));
+			assertEquals(nodeDao.peekCurrentEtag(id), loaded.getAnnotations().getEtag());
+			assertEquals(nodeInheritanceDAO.getBenefactor(id), loaded.getBenefactorId());
+		}
+		// Nothing to load
+		assertTrue(nodeDao.getNodesWithAnnotations(new ArrayList<String>()).isEmpty());
+	}
+	
+	@Test
+	public void testGetParentIds() throws Exception {
+		Node node = privateCreateNew("parent");
+		node.setNodeType(EntityType.project.name());
+		String parentId = nodeDao.createNew(node);
+		toDelete.add(parentId);
+		node = privateCreateNew("child");
+		node.setNodeType(EntityType.dataset.name());
+		node.setParentId(parentId);
+		String childId = nodeDao.createNew(node);
+		String doesNotExist = KeyFactory.keyToString(Long.MAX_VALUE);
+		Map<String, String> results = nodeDao.getParentIds(Arrays.asList(parentId, childId, doesNotExist));
+		assertEquals(2, results.size());
+		assertTrue(results.containsKey(parentId));
+		assertEquals(nodeDao.getParentId(parentId), results.get(parentId));
+		assertEquals(parentId, results.get(childId));
+		assertFalse(results.containsKey(doesNotExist));
+		// Nothing to load
+		assertTrue(nodeDao.getParentIds(new ArrayList<String>()).isEmpty());
+	}
+	
 	@Test
 	public void testUpdateRevision() throws NotFoundException, DatastoreException, InvalidModelException {
 		Node node = privateCreateNew("parent");
@@ -1597,6 +1826,49 @@ public class NodeDAOImplTest {
 		assertEquals("Failed to set the eTag. See: PLFM-845", newEtag, restored.getETag());
 	}
 	
+	@Test
+	public void testCreateNodesFromBackup() throws Exception {
+		// Create a parent and child then delete them so they can be restored in one batch.
+		Node parent = privateCreateNew("batchParent");
+		parent.setNodeType(EntityType.project.name());
+		String parentId = nodeDao.createNew(parent);
+		toDelete.add(parentId);
+		Node child = privateCreateNew("batchChild");
+		child.setNodeType(EntityType.dataset.name());
+		child.setParentId(parentId);
+		String childId = nodeDao.createNew(child);
+		toDelete.add(childId);
+		parent = nodeDao.getNode(parentId);
+		child = nodeDao.getNode(childId);
+		NodeRevisionBackup parentRev = nodeBackupDao.getNodeRevision(parentId, parent.getVersionNumber());
+		NodeRevisionBackup childRev = nodeBackupDao.getNodeRevision(childId, child.getVersionNumber());
+		String key = "NodeDAOImplTest.testCreateNodesFromBackup";
+		Annotations annos = new Annotations();
+		annos.addAnnotation(key, "value");
+		NamedAnnotations named = new NamedAnnotations();
+		named.put(NamedAnnotations.NAME_SPACE_ADDITIONAL, annos);
+		childRev.setNamedAnnotations(named);
+		nodeDao.delete(parentId);
+		assertFalse(nodeDao.doesNodeExist(KeyFactory.stringToKey(childId)));
+		
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(parent);
+		nodes.add(child);
+		List<NodeRevisionBackup> revisions = new ArrayList<NodeRevisionBackup>();
+		revisions.add(parentRev);
+		revisions.add(childRev);
+		nodeBackupDao.createNewNodesFromBackup(nodes, revisions);
+		
+		Node restoredChild = nodeDao.getNode(childId);
+		assertEquals(parentId, restoredChild.getParentId());
+		assertEquals(child.getETag(), restoredChild.getETag());
+		assertEquals(childRev, nodeBackupDao.getNodeRevision(childId, child.getVersionNumber()));
+		// The annotation tables are populated from the current revision.
+		assertTrue(nodeDao.isStringAnnotationQueryable(childId, key));
+		// Each node is its own benefactor until the caller sets it.
+		assertEquals(childId, nodeInheritanceDAO.getBenefactor(childId));
+	}
+	
 	@Test
 	public void testUpdateNodeFromBackup() throws NotFoundException, DatastoreException, InvalidModelException {
 		// This will be our backup node.
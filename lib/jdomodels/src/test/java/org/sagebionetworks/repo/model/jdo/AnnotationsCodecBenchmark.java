@@ -0,0 +1,130 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+
+/**
+ * Compares the encode/decode throughput and blob size of the old XStream (zip) format
+ * with the {@link BinaryAnnotationsCodec}. The old format is measured both as it used to run,
+ * with a new XStream for each call, and with the shared XStream it now uses to read old blobs.
+ * This is not a unit test, run the main method with: <annotationCount> <iterations>
+ *
+ */
+public class AnnotationsCodecBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 2000;
+
+	public static void main(String[] args) throws IOException{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		NamedAnnotations named = new NamedAnnotations();
+		named.setId("syn123");
+		named.setEtag("1");
+		Annotations annos = RandomAnnotationsUtil.generateRandom(123L, count);
+		// Random blobs cannot be compressed and would dominate the size of both formats.
+		annos.getBlobAnnotations().clear();
+		named.put(NamedAnnotations.NAME_SPACE_ADDITIONAL, annos);
+		// Pick two keys for the selected decode.
+		Set<String> selected = new HashSet<String>();
+		Iterator<String> it = annos.keySet().iterator();
+		while(it.hasNext() && selected.size() < 2){
+			selected.add(it.next());
+		}
+
+		byte[] legacy = JDOSecondaryPropertyUtils.compressObject(named);
+		byte[] binary = BinaryAnnotationsCodec.encodeAnnotations(named);
+		System.out.println("Annotations: "+count+" iterations: "+iterations);
+		System.out.println("XStream blob size: "+legacy.length+" bytes");
+		System.out.println("Binary blob size: "+binary.length+" bytes");
+
+		// Warm up the JIT
+		run(named, legacy, binary, selected, WARM_UP_ITERATIONS, false);
+		run(named, legacy, binary, selected, iterations, true);
+	}
+
+	private static void run(NamedAnnotations named, byte[] legacy, byte[] binary, Set<String> selected, int iterations, boolean print) throws IOException{
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			compressWithNewXStream(named);
+		}
+		report(print, "XStream encode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			JDOSecondaryPropertyUtils.compressObject(named);
+		}
+		report(print, "XStream (shared) encode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			BinaryAnnotationsCodec.encodeAnnotations(named);
+		}
+		report(print, "Binary encode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			decompressWithNewXStream(legacy);
+		}
+		report(print, "XStream decode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			JDOSecondaryPropertyUtils.decompressedObject(legacy);
+		}
+		report(print, "XStream (shared) decode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			BinaryAnnotationsCodec.decodeAnnotations(binary);
+		}
+		report(print, "Binary decode", start, iterations);
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++){
+			BinaryAnnotationsCodec.decodeAnnotations(binary, selected);
+		}
+		report(print, "Binary decode of "+selected.size()+" keys", start, iterations);
+	}
+
+	/**
+	 * The old write path, which created and configured an XStream for each blob.
+	 */
+	private static byte[] compressWithNewXStream(Object dto) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream zipper = new GZIPOutputStream(new BufferedOutputStream(out));
+		try{
+			JDOSecondaryPropertyUtils.createXStream().toXML(dto, zipper);
+		}finally{
+			zipper.close();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * The old read path, which created and configured an XStream for each blob.
+	 */
+	private static Object decompressWithNewXStream(byte[] zipped) throws IOException{
+		GZIPInputStream unZipper = new GZIPInputStream(new ByteArrayInputStream(zipped));
+		try{
+			return JDOSecondaryPropertyUtils.createXStream().fromXML(unZipper);
+		}finally{
+			unZipper.close();
+		}
+	}
+
+	private static void report(boolean print, String name, long startNano, int iterations){
+		if(!print) return;
+		double elapsedMS = (System.nanoTime()-startNano)/1000000.0;
+		System.out.println(String.format("%-30s %10.0f ops/sec", name, iterations/(elapsedMS/1000.0)));
+	}
+}
@@ -0,0 +1,169 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Reference;
+
+public class BinaryAnnotationsCodecTest {
+
+	private NamedAnnotations createNamed(){
+		NamedAnnotations named = new NamedAnnotations();
+		named.setId("syn123");
+		named.setEtag("45");
+		named.setCreationDate(new Date(1000));
+		Annotations additional = named.getAdditionalAnnotations();
+		additional.addAnnotation("stringOne", "one");
+		additional.addAnnotation("stringOne", "two");
+		additional.addAnnotation("longOne", new Long(324));
+		additional.addAnnotation("doubleOne", new Double(32.4));
+		additional.addAnnotation("dateOne", new Date(System.currentTimeMillis()));
+		named.getPrimaryAnnotations().addAnnotation("primaryString", "primary");
+		return named;
+	}
+
+	@Test
+	public void testAnnotationsRoundTrip() throws IOException{
+		NamedAnnotations named = createNamed();
+		byte[] bytes = BinaryAnnotationsCodec.encodeAnnotations(named);
+		assertTrue(BinaryAnnotationsCodec.isBinary(bytes));
+		NamedAnnotations clone = BinaryAnnotationsCodec.decodeAnnotations(bytes);
+		assertEquals(named, clone);
+	}
+
+	@Test
+	public void testAnnotationsRoundTripNulls() throws IOException{
+		NamedAnnotations named = new NamedAnnotations();
+		Annotations annos = named.getAdditionalAnnotations();
+		annos.getLongAnnotations().put("nullList", null);
+		annos.getLongAnnotations().put("emptyList", new ArrayList<Long>());
+		List<String> withNull = new ArrayList<String>();
+		withNull.add(null);
+		withNull.add("notNull");
+		annos.getStringAnnotations().put("nullValue", withNull);
+		annos.setBlobAnnotations(null);
+		NamedAnnotations clone = BinaryAnnotationsCodec.decodeAnnotations(BinaryAnnotationsCodec.encodeAnnotations(named));
+		Annotations cloneAnnos = clone.getAdditionalAnnotations();
+		assertTrue(cloneAnnos.getLongAnnotations().containsKey("nullList"));
+		assertNull(cloneAnnos.getLongAnnotations().get("nullList"));
+		assertEquals(0, cloneAnnos.getLongAnnotations().get("emptyList").size());
+		assertEquals(withNull, cloneAnnos.getStringAnnotations().get("nullValue"));
+		assertNull(cloneAnnos.getBlobAnnotations());
+	}
+
+	@Test
+	public void testBlobRoundTrip() throws IOException{
+		NamedAnnotations named = new NamedAnnotations();
+		named.getAdditionalAnnotations().addAnnotation("blobOne", "first blob".getBytes("UTF-8"));
+		named.getAdditionalAnnotations().addAnnotation("blobOne", "second blob".getBytes("UTF-8"));
+		NamedAnnotations clone = BinaryAnnotationsCodec.decodeAnnotations(BinaryAnnotationsCodec.encodeAnnotations(named));
+		List<byte[]> blobs = clone.getAdditionalAnnotations().getBlobAnnotations().get("blobOne");
+		assertEquals(2, blobs.size());
+		assertEquals("first blob", new String(blobs.get(0), "UTF-8"));
+		assertEquals("second blob", new String(blobs.get(1), "UTF-8"));
+	}
+
+	@Test
+	public void testLargeIsDeflated() throws IOException{
+		NamedAnnotations named = new NamedAnnotations();
+		named.put("random", RandomAnnotationsUtil.generateRandom(123, 50));
+		byte[] bytes = BinaryAnnotationsCodec.encodeAnnotations(named);
+		assertEquals(BinaryAnnotationsCodec.FLAG_DEFLATED, bytes[4] & BinaryAnnotationsCodec.FLAG_DEFLATED);
+		NamedAnnotations clone = BinaryAnnotationsCodec.decodeAnnotations(bytes);
+		assertEquals(named, clone);
+	}
+
+	@Test
+	public void testSmallIsNotDeflated() throws IOException{
+		byte[] bytes = BinaryAnnotationsCodec.encodeAnnotations(new NamedAnnotations());
+		assertEquals(0, bytes[4] & BinaryAnnotationsCodec.FLAG_DEFLATED);
+	}
+
+	@Test
+	public void testSelectedKeys() throws IOException{
+		NamedAnnotations named = createNamed();
+		Set<String> keys = new HashSet<String>();
+		keys.add("longOne");
+		keys.add("primaryString");
+		NamedAnnotations selected = BinaryAnnotationsCodec.decodeAnnotations(BinaryAnnotationsCodec.encodeAnnotations(named), keys);
+		Annotations additional = selected.getAdditionalAnnotations();
+		assertEquals(new Long(324), additional.getSingleValue("longOne"));
+		assertFalse(additional.getStringAnnotations().containsKey("stringOne"));
+		assertFalse(additional.getDoubleAnnotations().containsKey("doubleOne"));
+		assertFalse(additional.getDateAnnotations().containsKey("dateOne"));
+		assertEquals("primary", selected.getPrimaryAnnotations().getSingleValue("primaryString"));
+		// The metadata is always decoded
+		assertEquals("syn123", selected.getId());
+		assertEquals("45", selected.getEtag());
+	}
+
+	@Test
+	public void testReferencesRoundTrip() throws IOException{
+		Map<String, Set<Reference>> references = new HashMap<String, Set<Reference>>();
+		Set<Reference> set = new HashSet<Reference>();
+		Reference ref = new Reference();
+		ref.setTargetId("syn1");
+		ref.setTargetVersionNumber(2L);
+		set.add(ref);
+		ref = new Reference();
+		ref.setTargetId("syn3");
+		set.add(ref);
+		references.put("groupOne", set);
+		references.put("empty", new HashSet<Reference>());
+		byte[] bytes = BinaryAnnotationsCodec.encodeReferences(references);
+		assertTrue(BinaryAnnotationsCodec.isBinary(bytes));
+		assertEquals(references, BinaryAnnotationsCodec.decodeReferences(bytes));
+	}
+
+	@Test (expected=IOException.class)
+	public void testWrongType() throws IOException{
+		byte[] bytes = BinaryAnnotationsCodec.encodeReferences(new HashMap<String, Set<Reference>>());
+		BinaryAnnotationsCodec.decodeAnnotations(bytes);
+	}
+
+	@Test
+	public void testReadLegacyAnnotations() throws IOException{
+		NamedAnnotations named = createNamed();
+		// The old format
+		byte[] legacy = JDOSecondaryPropertyUtils.compressObject(named);
+		assertFalse(BinaryAnnotationsCodec.isBinary(legacy));
+		assertTrue(JDOSecondaryPropertyUtils.isLegacyFormat(legacy));
+		assertEquals(named, JDOSecondaryPropertyUtils.decompressedAnnotations(legacy));
+		// New blobs are written in the binary format
+		byte[] binary = JDOSecondaryPropertyUtils.compressAnnotations(named);
+		assertFalse(JDOSecondaryPropertyUtils.isLegacyFormat(binary));
+		assertEquals(named, JDOSecondaryPropertyUtils.decompressedAnnotations(binary));
+	}
+
+	@Test
+	public void testReadLegacyReferences() throws IOException{
+		Map<String, Set<Reference>> references = new HashMap<String, Set<Reference>>();
+		Set<Reference> set = new HashSet<Reference>();
+		Reference ref = new Reference();
+		ref.setTargetId("syn1");
+		ref.setTargetVersionNumber(2L);
+		set.add(ref);
+		references.put("groupOne", set);
+		byte[] legacy = JDOSecondaryPropertyUtils.compressObject(references);
+		assertEquals(references, JDOSecondaryPropertyUtils.decompressedReferences(legacy));
+		byte[] binary = JDOSecondaryPropertyUtils.compressReferences(references);
+		assertTrue(BinaryAnnotationsCodec.isBinary(binary));
+		assertEquals(references, JDOSecondaryPropertyUtils.decompressedReferences(binary));
+		assertNotNull(JDOSecondaryPropertyUtils.decompressedReferences(null));
+	}
+}
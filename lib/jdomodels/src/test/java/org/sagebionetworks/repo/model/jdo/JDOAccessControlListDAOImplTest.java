@@ -16,6 +16,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -231,6 +232,19 @@ public class JDOAccessControlListDAOImplTest {
 		assertNull(acl);
 	}
 	
+	@Test
+	public void testGetForResources() throws Exception {
+		Node node = nodeList.iterator().next();
+		String rid = node.getId();
+		String badId = "-598787";
+		Map<String, AccessControlList> results = accessControlListDAO.getForResources(Arrays.asList(new String[]{rid, badId}));
+		assertNotNull(results);
+		// Only the node with an ACL is included
+		assertEquals(1, results.size());
+		assertEquals(aclList.iterator().next(), results.get(rid));
+		assertTrue(accessControlListDAO.getForResources(new ArrayList<String>()).isEmpty());
+	}
+	
 	@Test
 	public void testNOOP() {
 	
@@ -259,6 +273,29 @@ public class JDOAccessControlListDAOImplTest {
 		gs.add(sham);
 		assertFalse(accessControlListDAO.canAccess(gs, node.getId(), ACCESS_TYPE.READ));
 	}
+	
+	@Test
+	public void testGetAccessTypes() throws Exception {
+		Collection<UserGroup> gs = new ArrayList<UserGroup>();
+		gs.add(group);
+		// as expressed in 'setUp', 'group' only has 'READ' access to 'node'
+		Set<ACCESS_TYPE> types = accessControlListDAO.getAccessTypes(gs, node.getId());
+		assertEquals(1, types.size());
+		assertTrue(types.contains(ACCESS_TYPE.READ));
+		// Each type must match canAccess
+		for(ACCESS_TYPE type: ACCESS_TYPE.values()){
+			assertEquals(accessControlListDAO.canAccess(gs, node.getId(), type), types.contains(type));
+		}
+		// no other group has been given access
+		UserGroup sham = new UserGroup();
+		sham.setName("sham");
+		sham.setId("-34876387468764"); // dummy
+		gs.clear();
+		gs.add(sham);
+		assertTrue(accessControlListDAO.getAccessTypes(gs, node.getId()).isEmpty());
+		gs.clear();
+		assertTrue(accessControlListDAO.getAccessTypes(gs, node.getId()).isEmpty());
+	}
 
 	/**
 	 * Test method for {@link org.sagebionetworks.repo.model.jdo.JDOBaseDAOImpl#get(java.lang.String)}.
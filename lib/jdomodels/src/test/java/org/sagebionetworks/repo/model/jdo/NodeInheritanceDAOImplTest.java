@@ -5,6 +5,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -105,4 +107,39 @@ public class NodeInheritanceDAOImplTest {
 		nodeDao.delete(parentId);
 	}
 	
+	@Test
+	public void testBulk() throws Exception{
+		Long creatorUserGroupId = Long.parseLong(userGroupDAO.findGroup(AuthorizationConstants.BOOTSTRAP_USER_GROUP_NAME, false).getId());
+		Node root = NodeTestUtils.createNew("nodeInheritanceDaoBulkRoot", creatorUserGroupId);
+		String rootId = nodeDao.createNew(root);
+		toDelete.add(rootId);
+		List<String> children = new ArrayList<String>();
+		for(int i=0; i<3; i++){
+			Node child = NodeTestUtils.createNew("nodeInheritanceDaoBulkChild"+i, creatorUserGroupId);
+			child.setParentId(rootId);
+			children.add(nodeDao.createNew(child));
+		}
+		// The children inherit from the root
+		Set<String> found = nodenheritanceDao.getChildrenInheritingFrom(Arrays.asList(rootId), rootId);
+		assertEquals(new HashSet<String>(children), found);
+		// Nothing inherits from a child yet
+		assertTrue(nodenheritanceDao.getChildrenInheritingFrom(Arrays.asList(rootId), children.get(0)).isEmpty());
+		// Move two children to the first child.
+		List<String> toMove = children.subList(1, 3);
+		assertEquals(2, nodenheritanceDao.addBeneficiaries(toMove, children.get(0)));
+		for(String id: toMove){
+			assertEquals(children.get(0), nodenheritanceDao.getBenefactor(id));
+		}
+		assertEquals(new HashSet<String>(toMove), nodenheritanceDao.getChildrenInheritingFrom(Arrays.asList(rootId), children.get(0)));
+		assertEquals(1, nodenheritanceDao.getChildrenInheritingFrom(Arrays.asList(rootId), rootId).size());
+		// Empty sets are fine
+		assertEquals(0, nodenheritanceDao.addBeneficiaries(new ArrayList<String>(), rootId));
+		assertTrue(nodenheritanceDao.getChildrenInheritingFrom(new ArrayList<String>(), rootId).isEmpty());
+	}
+	
+	@Test (expected=NotFoundException.class)
+	public void testAddBeneficiariesBenefactorNotFound() throws Exception{
+		nodenheritanceDao.addBeneficiaries(new ArrayList<String>(), "-123");
+	}
+	
 }
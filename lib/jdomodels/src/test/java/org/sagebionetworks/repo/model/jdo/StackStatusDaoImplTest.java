@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.model.jdo;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -58,5 +59,19 @@ public class StackStatusDaoImplTest {
 		current = stackStatusDao.getFullCurrentStatus();
 		assertEquals(starting, current);
 	}
+	
+	@Test
+	public void testSnapshotIsCopied(){
+		StackStatus status = stackStatusDao.getFullCurrentStatus();
+		// Changing the returned status must not change the snapshot
+		status.setStatus(StatusEnum.DOWN);
+		assertEquals(StatusEnum.READ_WRITE, stackStatusDao.getCurrentStatus());
+		assertEquals(StatusEnum.READ_WRITE, stackStatusDao.getFullCurrentStatus().getStatus());
+	}
+	
+	@Test
+	public void testMaxStaleness(){
+		assertTrue(stackStatusDao.getMaxStalenessMS() > 0);
+	}
 
 }
@@ -0,0 +1,66 @@
+package org.sagebionetworks.repo.model.query.jdo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class QueryCountCacheTest {
+	
+	@Test
+	public void testCreateKeyIgnoresPaging(){
+		String sql = "select count(nod.id) from JDONODE nod where nod.PARENT_ID = :expKey0 and  nod.ID in (:bGroup0)";
+		Map<String, Object> pageOne = new HashMap<String, Object>();
+		pageOne.put("expKey0", 123L);
+		pageOne.put("bGroup0", 456L);
+		pageOne.put("limitVal", 10L);
+		pageOne.put("offsetVal", 0L);
+		Map<String, Object> pageTwo = new HashMap<String, Object>(pageOne);
+		pageTwo.put("offsetVal", 10L);
+		assertEquals(QueryCountCache.createKey(sql, pageOne), QueryCountCache.createKey(sql, pageTwo));
+	}
+	
+	@Test
+	public void testCreateKeyGroups(){
+		String sql = "select count(nod.id) from JDONODE nod where nod.ID in (:bGroup0)";
+		Map<String, Object> one = new HashMap<String, Object>();
+		one.put("bGroup0", 456L);
+		Map<String, Object> two = new HashMap<String, Object>();
+		two.put("bGroup0", 789L);
+		assertFalse(QueryCountCache.createKey(sql, one).equals(QueryCountCache.createKey(sql, two)));
+	}
+	
+	@Test
+	public void testGetPut(){
+		QueryCountCache cache = new QueryCountCache(10, 10000);
+		assertNull(cache.get("key"));
+		cache.put("key", 12);
+		assertEquals(new Long(12), cache.get("key"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	@Test
+	public void testExpired() throws InterruptedException{
+		QueryCountCache cache = new QueryCountCache(10, 1);
+		cache.put("key", 12);
+		Thread.sleep(10);
+		assertNull(cache.get("key"));
+	}
+	
+	@Test
+	public void testMaxSize(){
+		QueryCountCache cache = new QueryCountCache(2, 10000);
+		cache.put("one", 1);
+		cache.put("two", 2);
+		cache.put("three", 3);
+		// The eldest entry should be gone
+		assertNull(cache.get("one"));
+		assertEquals(new Long(3), cache.get("three"));
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.sagebionetworks.repo.model.query.jdo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class QueryPageTokenTest {
+	
+	@Test
+	public void testRoundTripString(){
+		// The value contains the delimiter.
+		QueryPageToken token = new QueryPageToken(123L, "a:b:c");
+		QueryPageToken clone = QueryPageToken.decode(token.encode());
+		assertEquals(123L, clone.getLastId());
+		assertEquals("a:b:c", clone.getLastSortValue());
+	}
+	
+	@Test
+	public void testRoundTripLong(){
+		QueryPageToken clone = QueryPageToken.decode(new QueryPageToken(5L, new Long(-99)).encode());
+		assertEquals(5L, clone.getLastId());
+		assertEquals(new Long(-99), clone.getLastSortValue());
+	}
+	
+	@Test
+	public void testRoundTripDouble(){
+		QueryPageToken clone = QueryPageToken.decode(new QueryPageToken(5L, new Double(1.5)).encode());
+		assertEquals(new Double(1.5), clone.getLastSortValue());
+	}
+	
+	@Test
+	public void testRoundTripDate(){
+		Date now = new Date();
+		QueryPageToken clone = QueryPageToken.decode(new QueryPageToken(5L, now).encode());
+		assertEquals(now, clone.getLastSortValue());
+	}
+	
+	@Test
+	public void testRoundTripBytes(){
+		byte[] bytes = new byte[]{1,2,3};
+		QueryPageToken clone = QueryPageToken.decode(new QueryPageToken(5L, bytes).encode());
+		assertArrayEquals(bytes, (byte[])clone.getLastSortValue());
+	}
+	
+	@Test
+	public void testRoundTripNull(){
+		QueryPageToken clone = QueryPageToken.decode(new QueryPageToken(5L, null).encode());
+		assertEquals(5L, clone.getLastId());
+		assertNull(clone.getLastSortValue());
+	}
+	
+	@Test (expected=IllegalArgumentException.class)
+	public void testDecodeInvalid(){
+		QueryPageToken.decode("bm90IGEgdG9rZW4=");
+	}
+	
+	@Test
+	public void testBuildNextPageToken(){
+		List<Map<String, Object>> results = new ArrayList<Map<String,Object>>();
+		for(int i=0; i<2; i++){
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put(NodeField.ID.getFieldName(), new Long(i));
+			row.put(SqlConstants.KEYSET_SORT_VALUE_ALIAS, "name"+i);
+			results.add(row);
+		}
+		String next = JDONodeQueryDaoImpl.buildNextPageToken(results, 2);
+		assertNotNull(next);
+		QueryPageToken token = QueryPageToken.decode(next);
+		assertEquals(1L, token.getLastId());
+		assertEquals("name1", token.getLastSortValue());
+		// The sort value should have been removed from each row
+		assertNull(results.get(0).get(SqlConstants.KEYSET_SORT_VALUE_ALIAS));
+	}
+	
+	@Test
+	public void testBuildNextPageTokenLastPage(){
+		List<Map<String, Object>> results = new ArrayList<Map<String,Object>>();
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put(NodeField.ID.getFieldName(), new Long(1));
+		results.add(row);
+		// A short page is the last page.
+		assertNull(JDONodeQueryDaoImpl.buildNextPageToken(results, 10));
+	}
+
+}
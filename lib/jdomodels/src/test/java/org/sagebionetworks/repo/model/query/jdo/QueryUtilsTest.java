@@ -1,7 +1,12 @@
 package org.sagebionetworks.repo.model.query.jdo;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 import org.sagebionetworks.repo.model.query.FieldType;
 
@@ -24,4 +29,44 @@ public class QueryUtilsTest {
 		tableName = QueryUtils.getTableNameForFieldType(FieldType.DOUBLE_ATTRIBUTE);
 		assertNotNull(tableName);
 	}
+	
+	@Test
+	public void testBuildKeysetFilterNoSort(){
+		Map<String, Object> params = new HashMap<String, Object>();
+		String sql = QueryUtils.buildKeysetFilter(null, true, new QueryPageToken(99L, null), params);
+		assertEquals(" and (nod.ID > :keysetId)", sql);
+		assertEquals(99L, params.get("keysetId"));
+	}
+	
+	@Test
+	public void testBuildKeysetFilterAscending(){
+		Map<String, Object> params = new HashMap<String, Object>();
+		String sql = QueryUtils.buildKeysetFilter("srt.VALUE", true, new QueryPageToken(99L, "foo"), params);
+		assertEquals(" and (srt.VALUE > :keysetValue or (srt.VALUE = :keysetValue and nod.ID > :keysetId))", sql);
+		assertEquals("foo", params.get("keysetValue"));
+		assertEquals(99L, params.get("keysetId"));
+	}
+	
+	@Test
+	public void testBuildKeysetFilterDescending(){
+		Map<String, Object> params = new HashMap<String, Object>();
+		String sql = QueryUtils.buildKeysetFilter("srt.VALUE", false, new QueryPageToken(99L, "foo"), params);
+		assertEquals(" and (srt.VALUE < :keysetValue or (srt.VALUE = :keysetValue and nod.ID < :keysetId) or srt.VALUE IS NULL)", sql);
+	}
+	
+	@Test
+	public void testBuildKeysetFilterNullValue(){
+		Map<String, Object> params = new HashMap<String, Object>();
+		String sql = QueryUtils.buildKeysetFilter("nod.DESCRIPTION", true, new QueryPageToken(99L, null), params);
+		assertEquals(" and ((nod.DESCRIPTION IS NULL and nod.ID > :keysetId) or nod.DESCRIPTION IS NOT NULL)", sql);
+		assertFalse(params.containsKey("keysetValue"));
+	}
+	
+	@Test
+	public void testBuildKeysetPaging(){
+		Map<String, Object> params = new HashMap<String, Object>();
+		String sql = QueryUtils.buildKeysetPaging(10, params);
+		assertEquals("limit :limitVal", sql);
+		assertEquals(10L, params.get("limitVal"));
+	}
 }
@@ -114,6 +114,24 @@ public class ServiceConstants {
 	 */
 	public static final String QUERY_PARAM = "query";
 
+	/**
+	 * Request parameter to page query results with a continuation token
+	 * (keyset paging) rather than an offset.
+	 */
+	public static final String QUERY_KEYSET_PARAM = "keyset";
+
+	/**
+	 * Request parameter for the continuation token returned with the previous
+	 * page of a keyset paged query.
+	 */
+	public static final String QUERY_PAGE_TOKEN_PARAM = "pageToken";
+
+	/**
+	 * Request parameter to skip computing the total number of query results
+	 * when set to false.
+	 */
+	public static final String QUERY_COUNT_PARAM = "count";
+
 	/**
 	 * Request parameter for the ids in a batch request.
 	 */
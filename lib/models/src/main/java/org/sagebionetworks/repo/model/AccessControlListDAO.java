@@ -1,6 +1,8 @@
 package org.sagebionetworks.repo.model;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 
 import org.sagebionetworks.repo.web.NotFoundException;
 
@@ -12,12 +14,27 @@ public interface AccessControlListDAO  {
 	 * @throws NotFoundException 
 	 */
 	public AccessControlList getForResource(String rid) throws DatastoreException, NotFoundException;
+	
+	/**
+	 * Find the access control lists of many resources with a single query.
+	 * @param rids
+	 * @return The ACLs keyed by resource ID. Resources that do not have an ACL are not included.
+	 * @throws DatastoreException
+	 */
+	public Map<String, AccessControlList> getForResources(Collection<String> rids) throws DatastoreException;
 
 	/**
 	 * @return true iff some group in 'groups' has explicit permission to access 'resourceId' using access type 'accessType'
 	 * @throws DatastoreException 
 	 */
 	public boolean canAccess(Collection<UserGroup> groups, String resourceId, ACCESS_TYPE accessType) throws DatastoreException;
+	
+	/**
+	 * Get every access type that some group in 'groups' has on 'resourceId' with a single query.
+	 * @return The granted access types, empty if the groups have no access.
+	 * @throws DatastoreException 
+	 */
+	public Set<ACCESS_TYPE> getAccessTypes(Collection<UserGroup> groups, String resourceId) throws DatastoreException;
 
 	/**
 	 * @return the SQL to find the root-accessible nodes that a specified user-group list can access
@@ -137,4 +137,15 @@ public class AuthorizationConstants {
 	 * The default auth cache invalidation interval
 	 */
 	public static final long AUTH_CACHE_TIMEOUT_DEFAULT = 60000L;
+	
+	/**
+	 * The name of a system property which bounds the number of entries in each of the
+	 * Authentication filter's caches.
+	 */
+	public static final String AUTH_CACHE_MAX_ENTRIES = "org.sagebionetworks.authCacheMaxEntries";
+	
+	/**
+	 * The default bound on the number of entries in each auth cache
+	 */
+	public static final int AUTH_CACHE_MAX_ENTRIES_DEFAULT = 10000;
 }
@@ -0,0 +1,57 @@
+package org.sagebionetworks.repo.model;
+
+/**
+ * The positions of the workers that read the change log.  A cursor is kept in the database so
+ * it survives a restart and is shared by every instance of the stack.
+ *
+ * Only the holder of a cursor's lease may move it, so a single instance reads the change log
+ * for each cursor at a time.  A lease that is not renewed expires, so a cursor held by an
+ * instance that went away is taken over by another.
+ *
+ */
+public interface ChangeCursorDAO {
+
+	/**
+	 * Take the lease of a cursor if no one holds it, the lease has expired or the owner already
+	 * holds it.  The cursor is created if it does not exist.
+	 * @param cursorName
+	 * @param owner
+	 * @param leaseMS How long the lease lasts unless it is renewed.
+	 * @return True if the owner now holds the lease.
+	 * @throws DatastoreException
+	 */
+	public boolean acquireLease(String cursorName, String owner, long leaseMS) throws DatastoreException;
+
+	/**
+	 * The first change number that the reader of the cursor has not processed.
+	 * @param cursorName
+	 * @return Null if the cursor has never been moved.
+	 * @throws DatastoreException
+	 */
+	public Long getNextChangeNumber(String cursorName) throws DatastoreException;
+
+	/**
+	 * Move a cursor and renew its lease.
+	 * @param cursorName
+	 * @param owner
+	 * @param nextChangeNumber
+	 * @param leaseMS
+	 * @return False if the owner no longer holds the lease, in which case the cursor is not moved.
+	 * @throws DatastoreException
+	 */
+	public boolean setNextChangeNumber(String cursorName, String owner, long nextChangeNumber, long leaseMS) throws DatastoreException;
+
+	/**
+	 * Give up the lease of a cursor so another instance can take it without waiting for it to expire.
+	 * @param cursorName
+	 * @param owner
+	 * @throws DatastoreException
+	 */
+	public void releaseLease(String cursorName, String owner) throws DatastoreException;
+
+	/**
+	 * Remove all cursors.
+	 */
+	public void deleteAllCursors();
+
+}
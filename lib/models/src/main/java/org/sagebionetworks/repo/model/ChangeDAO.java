@@ -0,0 +1,72 @@
+package org.sagebionetworks.repo.model;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ObjectType;
+
+/**
+ * The change log.  Only the latest change of each object is kept, so the log grows with the
+ * number of objects rather than the number of changes.
+ *
+ * Changes must be recorded in the same transaction that changes the object so the log
+ * cannot disagree with the data.
+ *
+ */
+public interface ChangeDAO {
+
+	/**
+	 * Record a change, replacing any earlier change of the same object.
+	 * The change is given a new change number.
+	 * @param change
+	 * @return The change with its new change number.
+	 * @throws DatastoreException
+	 */
+	public ChangeMessage replaceChange(ChangeMessage change) throws DatastoreException;
+
+	/**
+	 * Record a batch of changes with a single batch statement.
+	 * @param batch
+	 * @throws DatastoreException
+	 */
+	public void replaceChanges(List<ChangeMessage> batch) throws DatastoreException;
+
+	/**
+	 * List the changes with a change number greater than or equal to the given change number, ordered by change number.
+	 *
+	 * A change number is assigned when the change is written but becomes visible when its transaction
+	 * commits, so a change below the last one listed can still appear later.  Callers that read the log
+	 * repeatedly should use {@link #listCommittedChanges(long, long)}.
+	 * @param greaterOrEqualChangeNumber
+	 * @param type Only changes of this type are listed.  When null changes of all types are listed.
+	 * @param limit
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public List<ChangeMessage> listChanges(long greaterOrEqualChangeNumber, ObjectType type, long limit) throws DatastoreException;
+
+	/**
+	 * List the changes with a change number greater than or equal to the given change number, ordered by change number.
+	 *
+	 * Unlike {@link #listChanges(long, ObjectType, long)} this waits for the transactions of any changes it reaches
+	 * that have not yet committed.  Once it returns, every change up to the last one listed is either in the list or
+	 * will never appear, so a reader can continue from the next change number without missing a change.
+	 * @param greaterOrEqualChangeNumber
+	 * @param limit
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public List<ChangeMessage> listCommittedChanges(long greaterOrEqualChangeNumber, long limit) throws DatastoreException;
+
+	/**
+	 * The largest change number.
+	 * @return Zero if there are no changes.
+	 */
+	public long getCurrentChangeNumber();
+
+	/**
+	 * Remove all changes.
+	 */
+	public void deleteAllChanges();
+
+}
@@ -26,4 +26,22 @@ public interface MigratableDAO {
 	 */
 	QueryResults<MigratableObjectData> getMigrationObjectData(long offset, long limit, boolean includeDependencies) throws DatastoreException;
 	
+	/**
+	 * Page through the objects by ID rather than by offset, so each page costs the same
+	 * no matter how far into the listing it is.
+	 * 
+	 * @param afterId only objects with an ID greater than this are returned.  Use -1 for the first page.
+	 * @param limit page size
+	 * @param includeDependencies says whether to include dependencies for each object or omit (for efficiency)
+	 * @return objects ordered by ID (optionally with their dependencies)
+	 * @throws DatastoreException
+	 */
+	QueryResults<MigratableObjectData> getMigrationObjectDataAfter(long afterId, long limit, boolean includeDependencies) throws DatastoreException;
+	
+	/**
+	 * 
+	 * @return the type of the objects managed by the DAO
+	 */
+	MigratableObjectType getMigratableObjectType();
+	
 }
@@ -1,5 +1,7 @@
 package org.sagebionetworks.repo.model;
 
+import java.util.List;
+
 import org.sagebionetworks.repo.web.NotFoundException;
 
 /**
@@ -42,6 +44,20 @@ public interface NodeBackupDAO {
 	public void updateRevisionFromBackup(NodeRevisionBackup rev)
 			throws NotFoundException, DatastoreException;
 
+	/**
+	 * Create many new nodes and their revisions from a backup with a batch insert for
+	 * each table. The nodes must be ordered so each parent is before its children.
+	 * Each node is created as its own benefactor so the caller must set the benefactors
+	 * once all of the nodes exist.
+	 * 
+	 * @param nodes
+	 * @param revisions All of the revisions of the nodes.
+	 * @throws DatastoreException
+	 * @throws InvalidModelException
+	 */
+	public void createNewNodesFromBackup(List<Node> nodes, List<NodeRevisionBackup> revisions)
+			throws DatastoreException, InvalidModelException;
+
 	/**
 	 * Get the total node count
 	 * 
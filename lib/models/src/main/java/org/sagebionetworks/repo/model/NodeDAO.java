@@ -1,7 +1,9 @@
 package org.sagebionetworks.repo.model;
 
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sagebionetworks.repo.web.NotFoundException;
@@ -54,7 +56,8 @@ public interface NodeDAO extends MigratableDAO {
 	public Node getNodeForVersion(String id, Long versionNumber) throws NotFoundException, DatastoreException;
 	
 	/**
-	 * Delete a node using its id.
+	 * Delete a node using its id.  The descendants of the node are deleted with it and
+	 * a delete is recorded in the change log for each of them.
 	 * @param id
 	 * @return boolean
 	 * @throws NotFoundException 
@@ -99,6 +102,24 @@ public interface NodeDAO extends MigratableDAO {
 	 */
 	public Set<Node> getChildren(String id) throws NotFoundException, DatastoreException;
 	
+	/**
+	 * Get the current revision of many nodes along with their annotations.
+	 * The nodes and their revisions are read with one query per block of ids
+	 * rather than a query per node.
+	 * @param ids
+	 * @return the nodes keyed by id. Ids that do not exist are not in the map.
+	 * @throws DatastoreException 
+	 */
+	public Map<String, NodeWithAnnotations> getNodesWithAnnotations(Collection<String> ids) throws DatastoreException;
+	
+	/**
+	 * Get the parent of many nodes with one query per block of ids.
+	 * @param ids
+	 * @return the parent id of each node keyed by id.  The root maps to null.  Ids that do not exist are not in the map.
+	 * @throws DatastoreException
+	 */
+	public Map<String, String> getParentIds(Collection<String> ids) throws DatastoreException;
+	
 	/**
 	 * Get all of the version numbers for this node.
 	 * @param id
@@ -141,7 +162,8 @@ public interface NodeDAO extends MigratableDAO {
 	
 	
 	/**
-	 * Make changes to an existing node.
+	 * Make changes to an existing node.  The change is recorded in the change log by
+	 * {@link #lockNodeAndIncrementEtag(String, String)}, which must be called first in the same transaction.
 	 * @param updatedNode fields that are left null are not modified
 	 * @throws NotFoundException 
 	 * @throws DatastoreException 
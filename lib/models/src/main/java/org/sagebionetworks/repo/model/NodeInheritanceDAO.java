@@ -1,5 +1,6 @@
 package org.sagebionetworks.repo.model;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.sagebionetworks.repo.web.NotFoundException;
@@ -37,4 +38,25 @@ public interface NodeInheritanceDAO {
 	 * @throws DatastoreException 
 	 */
 	public void addBeneficiary(String beneficiaryId, String toBenefactorId) throws NotFoundException, DatastoreException;
+	
+	/**
+	 * Find the children of the given parents that currently inherit from the given benefactor.
+	 * Large parent sets are looked up in batches.
+	 * @param parentIds
+	 * @param benefactorId
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public Set<String> getChildrenInheritingFrom(Collection<String> parentIds, String benefactorId) throws DatastoreException;
+	
+	/**
+	 * Add many nodes as beneficiaries of a given benefactor. The nodes are updated in batches
+	 * in ascending ID order so concurrent updates always lock rows in the same order.
+	 * @param beneficiaryIds
+	 * @param toBenefactorId - The new permissions benefactor of all of the nodes.
+	 * @return The number of nodes that changed.
+	 * @throws NotFoundException - If the benefactor does not exist.
+	 * @throws DatastoreException
+	 */
+	public int addBeneficiaries(Collection<String> beneficiaryIds, String toBenefactorId) throws NotFoundException, DatastoreException;
 }
@@ -15,12 +15,24 @@ public interface NodeQueryDao {
 	
 	/**
 	 * Execute a query, and return a paginated list of node ids.
+	 * If the query uses keyset paging (see {@link BasicQuery#isKeysetPaging()}) the results
+	 * will include a token for the next page, and the count is only computed for the first page.
 	 * @param query
 	 * @return
 	 * @throws DatastoreException 
 	 */
 	public NodeQueryResults executeQuery(BasicQuery query, UserInfo userInfo) throws DatastoreException;
 	
+	/**
+	 * Execute a query, streaming each row of the results to the passed handler rather
+	 * than holding the results in memory.
+	 * @param query
+	 * @param userInfo
+	 * @param handler
+	 * @throws DatastoreException
+	 */
+	public void executeQuery(BasicQuery query, UserInfo userInfo, NodeQueryRowHandler handler) throws DatastoreException;
+	
 	/**
 	 * Execute the given query as a 'count' query.  The count will be the number of nodes that meet the passed criteria.
 	 * @param query
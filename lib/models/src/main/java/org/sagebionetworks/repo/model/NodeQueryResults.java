@@ -6,10 +6,15 @@ import java.util.Map;
 
 public class NodeQueryResults {
 	
+	/**
+	 * The total number of results reported when the count query was not run.
+	 */
+	public static final long COUNT_NOT_COMPUTED = -1;
 
 	private List<String> resultIds;
 	private List<Map<String, Object>> allSelectedData;
 	private long totalNumberOfResults;
+	private String nextPageToken;
 	
 
 	
@@ -38,6 +43,19 @@ public class NodeQueryResults {
 		this.totalNumberOfResults = totalNumberOfResults;
 	}
 
+	/**
+	 * For keyset paged queries, the token used to fetch the next page.
+	 * Null when there are no more results.
+	 * @return
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public void setNextPageToken(String nextPageToken) {
+		this.nextPageToken = nextPageToken;
+	}
+
 	public List<Map<String, Object>> getAllSelectedData() {
 		return allSelectedData;
 	}
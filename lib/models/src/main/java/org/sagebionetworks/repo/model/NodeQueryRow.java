@@ -0,0 +1,86 @@
+package org.sagebionetworks.repo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact record holding the selected values of a single query result row.
+ * 
+ * A single instance is reused for every row of a streaming query, so a
+ * {@link NodeQueryRowHandler} must copy any values it needs to keep.
+ * 
+ */
+public class NodeQueryRow {
+
+	private List<String> names = new ArrayList<String>();
+	private List<Object> values = new ArrayList<Object>();
+
+	/**
+	 * Remove all values so this record can be used for the next row.
+	 */
+	public void clear() {
+		names.clear();
+		values.clear();
+	}
+
+	/**
+	 * Add a value to this row.
+	 * 
+	 * @param name
+	 * @param value
+	 */
+	public void add(String name, Object value) {
+		if (name == null) throw new IllegalArgumentException("Name cannot be null");
+		names.add(name);
+		values.add(value);
+	}
+
+	/**
+	 * Does this row already have a value with the given name? Names are not
+	 * case sensitive.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public boolean contains(String name) {
+		for (String existing : names) {
+			if (existing.equalsIgnoreCase(name)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The number of values in this row.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * The name of the value at the given index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public String getName(int index) {
+		return names.get(index);
+	}
+
+	/**
+	 * The value at the given index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Object getValue(int index) {
+		return values.get(index);
+	}
+
+	@Override
+	public String toString() {
+		return "NodeQueryRow [names=" + names + ", values=" + values + "]";
+	}
+
+}
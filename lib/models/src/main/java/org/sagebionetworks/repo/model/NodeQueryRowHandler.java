@@ -0,0 +1,39 @@
+package org.sagebionetworks.repo.model;
+
+/**
+ * Receives the results of a streaming query one row at a time, so the
+ * results never need to be held in memory.
+ * 
+ * Implementations should throw runtime exceptions to stop the query.
+ * 
+ */
+public interface NodeQueryRowHandler {
+
+	/**
+	 * Called once before any rows.
+	 * 
+	 * @param totalNumberOfResults
+	 *            The total number of results or
+	 *            {@link NodeQueryResults#COUNT_NOT_COMPUTED} if the count was
+	 *            not run.
+	 */
+	public void startResults(long totalNumberOfResults);
+
+	/**
+	 * Called once for each row. The row is reused so it must not be kept
+	 * after this call returns.
+	 * 
+	 * @param row
+	 */
+	public void handleRow(NodeQueryRow row);
+
+	/**
+	 * Called once after all rows.
+	 * 
+	 * @param nextPageToken
+	 *            For keyset paged queries, the token for the next page. Null
+	 *            when there are no more results.
+	 */
+	public void endResults(String nextPageToken);
+
+}
@@ -0,0 +1,41 @@
+package org.sagebionetworks.repo.model;
+
+/**
+ * The current revision of a node together with its annotations and the node
+ * it inherits its permissions from, as loaded by a single bulk fetch.
+ *
+ */
+public class NodeWithAnnotations {
+
+	private Node node;
+	private NamedAnnotations annotations;
+	private String benefactorId;
+
+	public NodeWithAnnotations(Node node, NamedAnnotations annotations, String benefactorId) {
+		this.node = node;
+		this.annotations = annotations;
+		this.benefactorId = benefactorId;
+	}
+
+	public Node getNode() {
+		return node;
+	}
+
+	public NamedAnnotations getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * The node this node inherits its permissions from.
+	 * @return
+	 */
+	public String getBenefactorId() {
+		return benefactorId;
+	}
+
+	@Override
+	public String toString() {
+		return "NodeWithAnnotations [node=" + node + ", benefactorId=" + benefactorId + "]";
+	}
+
+}
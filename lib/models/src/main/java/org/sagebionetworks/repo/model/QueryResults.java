@@ -36,10 +36,12 @@ public class QueryResults<T> {
 		ObjectSchema results = new ObjectSchema(TYPE.ARRAY);
 		results.setItems(new ObjectSchema(TYPE.OBJECT));
 		schema.getProperties().put("results", results);
+		schema.getProperties().put("nextPageToken", new ObjectSchema(TYPE.STRING));
 	}
 
 	private long totalNumberOfResults;
 	private List<T> results;
+	private String nextPageToken;
 
 	/**
 	 * Default constructor
@@ -90,10 +92,25 @@ public class QueryResults<T> {
 		this.results = results;
 	}
 
+	/**
+	 * @return the token used to fetch the next page of a keyset paged query,
+	 *         or null if there are no more results
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	/**
+	 * @param nextPageToken
+	 */
+	public void setNextPageToken(String nextPageToken) {
+		this.nextPageToken = nextPageToken;
+	}
+
 	@Override
 	public String toString() {
 		return "QueryResults [totalNumberOfResults=" + totalNumberOfResults
-				+ ", results=" + results + "]";
+				+ ", results=" + results + ", nextPageToken=" + nextPageToken + "]";
 	}
 	
 }
@@ -13,20 +13,28 @@ public interface StackStatusDao {
 	
 	/**
 	 * Get the current stack status.
+	 * The status is read from a snapshot that can be up to {@link #getMaxStalenessMS()} old.
 	 * @return
 	 */
 	public StackStatus getFullCurrentStatus();
 	
 	/**
 	 * Get the current status.
+	 * The status is read from a snapshot that can be up to {@link #getMaxStalenessMS()} old.
 	 * @return
 	 */
 	public StatusEnum getCurrentStatus();
 	
 	/**
-	 * Update the current status.
+	 * Update the current status.  The snapshot of this instance is replaced immediately.
 	 * @param status
 	 */
 	public void updateStatus(StackStatus status);
 
+	/**
+	 * The longest a status change made by another instance can go unnoticed by this one.
+	 * @return
+	 */
+	public long getMaxStalenessMS();
+
 }
@@ -20,6 +20,9 @@ public class BasicQuery {
 	boolean ascending = true;
 	long offset = 0;
 	long limit = 10;
+	boolean keysetPaging = false;
+	boolean count = true;
+	String pageToken;
 	
 	public List<String> getSelect() {
 		return select;
@@ -58,6 +61,38 @@ public class BasicQuery {
 	public void setLimit(long limit) {
 		this.limit = limit;
 	}
+	/**
+	 * When true, the query will be paged using a continuation token (keyset paging)
+	 * rather than an offset. The offset is ignored in this mode.
+	 * @return
+	 */
+	public boolean isKeysetPaging() {
+		return keysetPaging || pageToken != null;
+	}
+	public void setKeysetPaging(boolean keysetPaging) {
+		this.keysetPaging = keysetPaging;
+	}
+	/**
+	 * The continuation token returned with the previous page of results.
+	 * Null for the first page.
+	 * @return
+	 */
+	public String getPageToken() {
+		return pageToken;
+	}
+	public void setPageToken(String pageToken) {
+		this.pageToken = pageToken;
+	}
+	/**
+	 * When false, the total number of results is not computed.
+	 * @return
+	 */
+	public boolean isCount() {
+		return count;
+	}
+	public void setCount(boolean count) {
+		this.count = count;
+	}
 	public List<Expression> getFilters() {
 		return filters;
 	}
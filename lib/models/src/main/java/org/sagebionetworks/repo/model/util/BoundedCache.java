@@ -0,0 +1,365 @@
+package org.sagebionetworks.repo.model.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.repo.model.status.CacheStatistics;
+
+/**
+ * A thread-safe, in-memory cache that is bounded by size and optionally by weight.
+ *
+ * The entries are split across lock striped segments, each a least recently used map,
+ * so concurrent readers of different keys do not contend on a single monitor.
+ * Each entry can expire, either after the time to live of the cache or at a time
+ * passed with the entry.  Hits, misses, evictions and expirations are counted and every
+ * cache is registered by name so its statistics can be reported.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class BoundedCache<K, V> {
+
+	/**
+	 * Used to bound a cache by the weight of its entries rather than just the count.
+	 */
+	public interface Weigher<K, V> {
+		/**
+		 * @return The weight of an entry. Must not be negative.
+		 */
+		public long weigh(K key, V value);
+	}
+
+	/**
+	 * Used to remove all entries with matching keys.
+	 */
+	public interface KeyMatcher<K> {
+		public boolean matches(K key);
+	}
+
+	/**
+	 * Used when an entry does not expire.
+	 */
+	public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+	private static final int MAX_SEGMENTS = 16;
+	// Small caches use fewer segments so the least recently used order stays close to exact.
+	private static final int MIN_ENTRIES_PER_SEGMENT = 32;
+
+	// All caches by name.
+	private static final ConcurrentMap<String, BoundedCache<?, ?>> REGISTRY = new ConcurrentHashMap<String, BoundedCache<?, ?>>();
+
+	private final String name;
+	private final int maxEntries;
+	private final long maxWeight;
+	private final long timeToLiveMS;
+	private final Weigher<K, V> weigher;
+	private final Segment<K, V>[] segments;
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong missCount = new AtomicLong(0);
+	private final AtomicLong evictionCount = new AtomicLong(0);
+	private final AtomicLong expirationCount = new AtomicLong(0);
+
+	/**
+	 * Create a cache that is only bounded by the number of entries.
+	 *
+	 * @param name The name used to report the statistics of this cache.
+	 * @param maxEntries The maximum number of entries.
+	 * @param timeToLiveMS How long an entry is valid. Zero or less for entries that do not expire.
+	 */
+	public BoundedCache(String name, int maxEntries, long timeToLiveMS) {
+		this(name, maxEntries, 0, timeToLiveMS, null);
+	}
+
+	/**
+	 *
+	 * @param name The name used to report the statistics of this cache.
+	 * @param maxEntries The maximum number of entries.
+	 * @param maxWeight The maximum total weight of all entries. Zero or less when there is no weight bound.
+	 * @param timeToLiveMS How long an entry is valid. Zero or less for entries that do not expire.
+	 * @param weigher Required when there is a weight bound.
+	 */
+	@SuppressWarnings("unchecked")
+	public BoundedCache(String name, int maxEntries, long maxWeight, long timeToLiveMS, Weigher<K, V> weigher) {
+		if(name == null) throw new IllegalArgumentException("Name cannot be null");
+		if(maxEntries < 1) throw new IllegalArgumentException("Max entries must be at least one");
+		if(maxWeight > 0 && weigher == null) throw new IllegalArgumentException("A weigher is required when there is a max weight");
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight > 0 ? maxWeight : 0;
+		this.timeToLiveMS = timeToLiveMS;
+		this.weigher = weigher;
+		int segmentCount = 1;
+		while(segmentCount < MAX_SEGMENTS && maxEntries/(segmentCount*2) >= MIN_ENTRIES_PER_SEGMENT){
+			segmentCount *= 2;
+		}
+		this.segments = new Segment[segmentCount];
+		int entriesPerSegment = (maxEntries + segmentCount - 1)/segmentCount;
+		long weightPerSegment = this.maxWeight > 0 ? Math.max(1, this.maxWeight/segmentCount) : 0;
+		for(int i=0; i<segmentCount; i++){
+			segments[i] = new Segment<K, V>(entriesPerSegment, weightPerSegment);
+		}
+		REGISTRY.put(name, this);
+	}
+
+	/**
+	 * Spread the hash so keys with similar hash codes do not share a segment.
+	 */
+	private Segment<K, V> segmentFor(Object key){
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (segments.length - 1)];
+	}
+
+	/**
+	 * Get a value from the cache.
+	 * @param key
+	 * @return The value or null if there is no valid entry for the key.
+	 */
+	public V get(K key){
+		if(key == null) throw new IllegalArgumentException("Key cannot be null");
+		Segment<K, V> segment = segmentFor(key);
+		Entry<V> entry = null;
+		synchronized (segment) {
+			entry = segment.map.get(key);
+			if(entry != null && entry.expiresOn <= System.currentTimeMillis()){
+				segment.removeEntry(key);
+				expirationCount.incrementAndGet();
+				entry = null;
+			}
+		}
+		if(entry == null){
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * Add a value that expires after the time to live of this cache.
+	 * @param key
+	 * @param value
+	 */
+	public void put(K key, V value){
+		long expiresOn = timeToLiveMS > 0 ? System.currentTimeMillis() + timeToLiveMS : NEVER_EXPIRES;
+		put(key, value, expiresOn);
+	}
+
+	/**
+	 * Add a value that expires at the given time.
+	 * @param key
+	 * @param value
+	 * @param expiresOn The time in MS when this entry is no longer valid.
+	 */
+	public void put(K key, V value, long expiresOn){
+		if(key == null) throw new IllegalArgumentException("Key cannot be null");
+		if(value == null) throw new IllegalArgumentException("Value cannot be null");
+		long weight = weigher == null ? 0 : weigher.weigh(key, value);
+		if(weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+		Entry<V> entry = new Entry<V>(value, expiresOn, weight);
+		Segment<K, V> segment = segmentFor(key);
+		int evicted = 0;
+		synchronized (segment) {
+			segment.removeEntry(key);
+			segment.map.put(key, entry);
+			segment.weight += weight;
+			evicted = segment.evict();
+		}
+		if(evicted > 0){
+			evictionCount.addAndGet(evicted);
+		}
+	}
+
+	/**
+	 * Remove a single entry.
+	 * @param key
+	 * @return The removed value or null.
+	 */
+	public V remove(K key){
+		if(key == null) throw new IllegalArgumentException("Key cannot be null");
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			Entry<V> entry = segment.removeEntry(key);
+			return entry == null ? null : entry.value;
+		}
+	}
+
+	/**
+	 * Remove every entry with a key that matches.  This visits every entry so it should not be
+	 * used on a hot path.
+	 * @param matcher
+	 * @return The number of entries removed.
+	 */
+	public int removeMatching(KeyMatcher<K> matcher){
+		if(matcher == null) throw new IllegalArgumentException("Matcher cannot be null");
+		int count = 0;
+		for(Segment<K, V> segment: segments){
+			synchronized (segment) {
+				Iterator<Map.Entry<K, Entry<V>>> it = segment.map.entrySet().iterator();
+				while(it.hasNext()){
+					Map.Entry<K, Entry<V>> next = it.next();
+					if(matcher.matches(next.getKey())){
+						segment.weight -= next.getValue().weight;
+						it.remove();
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear(){
+		for(Segment<K, V> segment: segments){
+			synchronized (segment) {
+				segment.map.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	/**
+	 * The number of entries including any that have expired but have not been removed.
+	 * @return
+	 */
+	public int size(){
+		int size = 0;
+		for(Segment<K, V> segment: segments){
+			synchronized (segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The total weight of all entries.
+	 * @return
+	 */
+	public long getWeight(){
+		long weight = 0;
+		for(Segment<K, V> segment: segments){
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getExpirationCount() {
+		return expirationCount.get();
+	}
+
+	/**
+	 * A snapshot of the statistics of this cache.
+	 * @return
+	 */
+	public CacheStatistics getStatistics(){
+		CacheStatistics stats = new CacheStatistics();
+		stats.setName(name);
+		stats.setSize(new Long(size()));
+		stats.setMaxSize(new Long(maxEntries));
+		stats.setWeight(getWeight());
+		stats.setMaxWeight(maxWeight);
+		stats.setHitCount(hitCount.get());
+		stats.setMissCount(missCount.get());
+		stats.setEvictionCount(evictionCount.get());
+		stats.setExpirationCount(expirationCount.get());
+		return stats;
+	}
+
+	/**
+	 * The statistics of every cache sorted by name.
+	 * @return
+	 */
+	public static List<CacheStatistics> getAllStatistics(){
+		TreeMap<String, BoundedCache<?, ?>> sorted = new TreeMap<String, BoundedCache<?, ?>>(REGISTRY);
+		List<CacheStatistics> results = new ArrayList<CacheStatistics>(sorted.size());
+		for(BoundedCache<?, ?> cache: sorted.values()){
+			results.add(cache.getStatistics());
+		}
+		return results;
+	}
+
+	/**
+	 * One lock stripe of the cache.  All access must be synchronized on the segment.
+	 */
+	private static class Segment<K, V> {
+		final LinkedHashMap<K, Entry<V>> map;
+		final int maxEntries;
+		final long maxWeight;
+		long weight = 0;
+
+		Segment(int maxEntries, long maxWeight){
+			this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+		}
+
+		Entry<V> removeEntry(Object key){
+			Entry<V> removed = map.remove(key);
+			if(removed != null){
+				weight -= removed.weight;
+			}
+			return removed;
+		}
+
+		/**
+		 * Remove the least recently used entries until this segment is within its bounds.
+		 * @return The number of entries removed.
+		 */
+		int evict(){
+			int count = 0;
+			Iterator<Entry<V>> it = map.values().iterator();
+			while(it.hasNext() && (map.size() > maxEntries || (maxWeight > 0 && weight > maxWeight))){
+				Entry<V> eldest = it.next();
+				weight -= eldest.weight;
+				it.remove();
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * A cached value, when it expires and its weight.
+	 */
+	private static class Entry<V> {
+		final V value;
+		final long expiresOn;
+		final long weight;
+
+		Entry(V value, long expiresOn, long weight) {
+			this.value = value;
+			this.expiresOn = expiresOn;
+			this.weight = weight;
+		}
+	}
+}
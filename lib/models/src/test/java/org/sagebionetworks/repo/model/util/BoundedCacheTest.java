@@ -0,0 +1,127 @@
+package org.sagebionetworks.repo.model.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sagebionetworks.repo.model.status.CacheStatistics;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testHitAndMiss(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testHitAndMiss", 10, 0);
+		assertNull(cache.get("one"));
+		cache.put("one", "1");
+		assertEquals("1", cache.get("one"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals("1", cache.remove("one"));
+		assertNull(cache.get("one"));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testTimeToLive() throws InterruptedException{
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testTimeToLive", 10, 10);
+		cache.put("one", "1");
+		Thread.sleep(20);
+		assertNull(cache.get("one"));
+		assertEquals(1, cache.getExpirationCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testPerEntryExpires(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testPerEntryExpires", 10, 0);
+		cache.put("past", "1", System.currentTimeMillis()-1);
+		cache.put("future", "2", System.currentTimeMillis()+60*1000);
+		assertNull(cache.get("past"));
+		assertEquals("2", cache.get("future"));
+	}
+
+	@Test
+	public void testMaxEntries(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testMaxEntries", 3, 0);
+		cache.put("0", "0");
+		cache.put("1", "1");
+		cache.put("2", "2");
+		// Use the eldest so the second is evicted instead.
+		assertNotNull(cache.get("0"));
+		cache.put("3", "3");
+		assertEquals(3, cache.size());
+		assertNull(cache.get("1"));
+		assertNotNull(cache.get("0"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testMaxWeight(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testMaxWeight", 10, 10, 0, new BoundedCache.Weigher<String, String>() {
+			@Override
+			public long weigh(String key, String value) {
+				return value.length();
+			}
+		});
+		cache.put("a", "12345");
+		cache.put("b", "12345");
+		assertEquals(10, cache.getWeight());
+		cache.put("c", "123");
+		assertNull(cache.get("a"));
+		assertEquals(8, cache.getWeight());
+		// Replacing an entry replaces its weight.
+		cache.put("b", "1");
+		assertEquals(4, cache.getWeight());
+	}
+
+	@Test
+	public void testRemoveMatching(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testRemoveMatching", 100, 0);
+		cache.put("syn1|a", "1");
+		cache.put("syn1|b", "2");
+		cache.put("syn10|a", "3");
+		int count = cache.removeMatching(new BoundedCache.KeyMatcher<String>() {
+			@Override
+			public boolean matches(String key) {
+				return key.startsWith("syn1|");
+			}
+		});
+		assertEquals(2, count);
+		assertEquals(1, cache.size());
+		assertNotNull(cache.get("syn10|a"));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testManySegments(){
+		BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>("testManySegments", 1000, 0);
+		for(int i=0; i<2000; i++){
+			cache.put(i, i);
+		}
+		assertTrue(cache.size() <= 1000+16);
+		assertEquals(new Integer(1999), cache.get(1999));
+	}
+
+	@Test
+	public void testGetAllStatistics(){
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testGetAllStatistics", 10, 0);
+		cache.put("one", "1");
+		cache.get("one");
+		List<CacheStatistics> all = BoundedCache.getAllStatistics();
+		CacheStatistics found = null;
+		for(CacheStatistics stats: all){
+			if("testGetAllStatistics".equals(stats.getName())){
+				found = stats;
+			}
+		}
+		assertNotNull(found);
+		assertEquals(new Long(1), found.getSize());
+		assertEquals(new Long(10), found.getMaxSize());
+		assertEquals(new Long(1), found.getHitCount());
+	}
+}
@@ -197,6 +197,16 @@ public class StackConfiguration {
 				.getProperty("org.sagebionetworks.id.generator.database.driver");
 	}
 
+	/**
+	 * The number of IDs the ID Generator reserves with each database call.
+	 * 
+	 * @return
+	 */
+	public int getIdGeneratorBlockSize() {
+		return Integer.valueOf(configuration
+				.getProperty("org.sagebionetworks.id.generator.block.size"));
+	}
+
 	/**
 	 * All of these keys are used to build up a map of JDO configurations passed
 	 * to the JDOPersistenceManagerFactory
@@ -481,6 +491,39 @@ public class StackConfiguration {
 						.getProperty("org.sagebionetworks.backup.restore.thread.pool.maximum"));
 	}
 
+	/**
+	 * The number of threads that load and serialize nodes while a backup file is written.
+	 * 
+	 * @return
+	 */
+	public static int getBackupFetcherThreadCount() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.backup.fetcher.thread.count"));
+	}
+
+	/**
+	 * The maximum number of nodes that are loaded ahead of the backup file writer.
+	 * 
+	 * @return
+	 */
+	public static int getBackupQueueDepth() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.backup.queue.depth"));
+	}
+
+	/**
+	 * The number of nodes restored in each transaction.
+	 * 
+	 * @return
+	 */
+	public static int getBackupRestoreBatchSize() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.backup.restore.batch.size"));
+	}
+
 	/**
 	 * The maximum bytes allowed for a single query result.
 	 * 
@@ -492,6 +535,139 @@ public class StackConfiguration {
 						.getProperty("org.sagebionetworks.maximum.bytes.per.query.result"));
 	}
 
+	/**
+	 * How long (MS) the total count of a query can be cached.
+	 * 
+	 * @return
+	 */
+	public static long getQueryCountCacheTimeoutMS() {
+		return Long
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.query.count.cache.timeout.ms"));
+	}
+
+	/**
+	 * The maximum number of query counts held in the cache.
+	 * 
+	 * @return
+	 */
+	public static int getQueryCountCacheMaxSize() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.query.count.cache.max.size"));
+	}
+
+	/**
+	 * How long a cached node benefactor or access decision is used.
+	 * 
+	 * @return
+	 */
+	public static long getPermissionsCacheTimeoutMS() {
+		return Long
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.permissions.cache.timeout.ms"));
+	}
+
+	/**
+	 * The maximum number of entries in each part of the permissions cache.
+	 * 
+	 * @return
+	 */
+	public static int getPermissionsCacheMaxSize() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.permissions.cache.max.size"));
+	}
+
+	/**
+	 * The number of revisions re-encoded in each batch of the annotation blob migration.
+	 * 
+	 * @return
+	 */
+	public static int getRevisionBlobMigrationBatchSize() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.revision.blob.migration.batch.size"));
+	}
+
+	/**
+	 * The maximum number of revisions re-encoded each time the annotation blob migration runs.
+	 * 
+	 * @return
+	 */
+	public static int getRevisionBlobMigrationMaxPerRun() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.revision.blob.migration.max.per.run"));
+	}
+
+	/**
+	 * How long the stack status read by this instance is used before it is read again.
+	 * A change of status made on another instance is seen within this window.
+	 * 
+	 * @return
+	 */
+	public static long getStackStatusCacheTimeoutMS() {
+		return Long
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.stack.status.cache.timeout.ms"));
+	}
+
+	/**
+	 * Should this instance keep the search index up to date from the change log?
+	 * 
+	 * @return
+	 */
+	public static boolean getSearchIndexUpdaterEnabled() {
+		return Boolean
+				.parseBoolean(configuration
+						.getProperty("org.sagebionetworks.search.index.updater.enabled"));
+	}
+
+	/**
+	 * The number of changes read from the change log in each page by the search index updater.
+	 * 
+	 * @return
+	 */
+	public static int getSearchIndexUpdaterPageSize() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.search.index.updater.page.size"));
+	}
+
+	/**
+	 * The maximum size in bytes of a single batch of search documents.
+	 * 
+	 * @return
+	 */
+	public static int getSearchIndexUpdaterMaxBatchBytes() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.search.index.updater.max.batch.bytes"));
+	}
+
+	/**
+	 * The number of times a batch of search documents is retried before the updater gives up until its next run.
+	 * 
+	 * @return
+	 */
+	public static int getSearchIndexUpdaterMaxRetries() {
+		return Integer
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.search.index.updater.max.retries"));
+	}
+
+	/**
+	 * The wait before the first retry of a batch of search documents.  The wait doubles with each retry.
+	 * 
+	 * @return
+	 */
+	public static long getSearchIndexUpdaterRetryBaseMS() {
+		return Long
+				.valueOf(configuration
+						.getProperty("org.sagebionetworks.search.index.updater.retry.base.ms"));
+	}
+
 	/**
 	 * The maximum number entities returned in a single call
 	 * 
@@ -2,8 +2,6 @@ package org.sagebionetworks.authutil;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -52,30 +50,37 @@ public class CrowdAuthenticationFilter implements Filter {
 	}
 	
 	
-	private static Map<String,String> tokenCache = null; // maps authenticated tokens to userIds
-	private static Map<String,String> secretKeyCache = null; // maps userIds to secret keys
+	// Entries expire one at a time and hot entries are refreshed in the background, so there is
+	// never a moment when every request has to go to Crowd at once.
+	private static RefreshAheadCache<String> tokenCache = null; // maps authenticated tokens to userIds
+	private static RefreshAheadCache<String> secretKeyCache = null; // maps userIds to secret keys
 	private static Long cacheTimeout = null;
-	private static Date lastCacheDump = null;
 	
 	private void initCaches() {
-		tokenCache = Collections.synchronizedMap(new HashMap<String,String>());
-		secretKeyCache = Collections.synchronizedMap(new HashMap<String,String>());
-		lastCacheDump = new Date();
 		String s = System.getProperty(AuthorizationConstants.AUTH_CACHE_TIMEOUT_MILLIS);
 		if (s!=null && s.length()>0) {
 			cacheTimeout = Long.parseLong(s);
 		} else {
 			cacheTimeout = AuthorizationConstants.AUTH_CACHE_TIMEOUT_DEFAULT;
 		}
-	}
-	
-	private void checkCacheDump() {
-		Date now = new Date();
-		if (lastCacheDump.getTime()+cacheTimeout<now.getTime()) {
-			tokenCache.clear();
-			secretKeyCache.clear();
-			lastCacheDump = now;
+		if (cacheTimeout<=0) return; // not using cache
+		int maxEntries = AuthorizationConstants.AUTH_CACHE_MAX_ENTRIES_DEFAULT;
+		s = System.getProperty(AuthorizationConstants.AUTH_CACHE_MAX_ENTRIES);
+		if (s!=null && s.length()>0) {
+			maxEntries = Integer.parseInt(s);
 		}
+		tokenCache = new RefreshAheadCache<String>("authSessionTokens", maxEntries, cacheTimeout, new RefreshAheadCache.Loader<String>() {
+			@Override
+			public String load(String sessionToken) throws Exception {
+				return CrowdAuthUtil.revalidate(sessionToken);
+			}
+		});
+		secretKeyCache = new RefreshAheadCache<String>("authSecretKeys", maxEntries, cacheTimeout, new RefreshAheadCache.Loader<String>() {
+			@Override
+			public String load(String userId) throws Exception {
+				return lookupUsersSecretKey(userId);
+			}
+		});
 	}
 
 	@Override
@@ -96,16 +101,10 @@ public class CrowdAuthenticationFilter implements Filter {
 				if (usingMockCrowd) {
 					userId= sessionToken;
 				} else {
-					userId = null;
 					if (cacheTimeout>0) { // then use cache
-						checkCacheDump();
 						userId = tokenCache.get(sessionToken);
-					}
-					if (userId==null) { // not using cache or not found in cache
+					} else {
 						userId = CrowdAuthUtil.revalidate(sessionToken);
-						if (cacheTimeout>0) {
-							tokenCache.put(sessionToken, userId);
-						}
 					}
 				}
 			} catch (Exception xee) {
@@ -140,14 +139,22 @@ public class CrowdAuthenticationFilter implements Filter {
 	}
 	
 	public String getUsersSecretKey(String userId) throws AuthenticationException, IOException {
-		Map<String,Collection<String>> userAttrs = null;
-		String secretKey = null;
-		if (cacheTimeout>0) { // then use cache
-			checkCacheDump();
-			secretKey = secretKeyCache.get(userId);
+		if (cacheTimeout<=0) return lookupUsersSecretKey(userId); // not using cache
+		try {
+			return secretKeyCache.get(userId);
+		} catch (AuthenticationException e) {
+			throw e;
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
 		}
-		if (secretKey!=null) return secretKey;
-		
+	}
+	
+	private static String lookupUsersSecretKey(String userId) throws AuthenticationException, IOException {
+		Map<String,Collection<String>> userAttrs = null;
 		try {
 			userAttrs = CrowdAuthUtil.getUserAttributes(userId);
 		} catch (NotFoundException nfe) {
@@ -157,11 +164,7 @@ public class CrowdAuthenticationFilter implements Filter {
 		if (secretKeyCollection==null || secretKeyCollection.isEmpty()) {
 			throw new AuthenticationException(HttpStatus.UNAUTHORIZED.value(), "Authentication server has no secret key registered for "+userId, null);
 		}
-		secretKey = secretKeyCollection.iterator().next();
-		if (cacheTimeout>0) {
-			secretKeyCache.put(userId, secretKey);
-		}
-		return secretKey;
+		return secretKeyCollection.iterator().next();
 	}
 
 
@@ -0,0 +1,261 @@
+package org.sagebionetworks.authutil;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.repo.model.util.BoundedCache;
+
+/**
+ * A bounded cache of values that are expensive to look up, such as the user of a session token.
+ * <ul>
+ * <li>Each entry expires on its own.  The time to live is jittered so entries added together do not
+ * all expire together.</li>
+ * <li>An entry that is used after most of its time to live has passed is refreshed in the background
+ * while the old value is still served, so hot keys never miss.</li>
+ * <li>Concurrent lookups of the same key share a single load.</li>
+ * </ul>
+ *
+ * @param <V>
+ */
+public class RefreshAheadCache<V> {
+
+	/**
+	 * Looks up the value of a key when it is not in the cache.
+	 */
+	public interface Loader<V> {
+		/**
+		 * @param key
+		 * @return The value, or null if it should not be cached.
+		 * @throws Exception
+		 */
+		public V load(String key) throws Exception;
+	}
+
+	/**
+	 * The fraction of an entry's time to live after which using it starts a background refresh.
+	 */
+	static final double REFRESH_AFTER_FRACTION = 0.75;
+	/**
+	 * Each entry lives between (1 - JITTER_FRACTION) and 1 times the time to live.
+	 */
+	static final double JITTER_FRACTION = 0.1;
+
+	private static final Executor REFRESH_EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "auth-cache-refresh");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final BoundedCache<String, CachedValue<V>> cache;
+	private final Loader<V> loader;
+	private final long timeToLiveMS;
+	private final Executor refreshExecutor;
+	private final ConcurrentMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<String, FutureTask<V>>();
+	private final Random random = new Random();
+	private final AtomicLong loadCount = new AtomicLong(0);
+	private final AtomicLong coalescedCount = new AtomicLong(0);
+	private final AtomicLong refreshCount = new AtomicLong(0);
+	private final AtomicLong refreshFailureCount = new AtomicLong(0);
+
+	/**
+	 * @param name The name used to report the statistics of this cache.
+	 * @param maxEntries
+	 * @param timeToLiveMS
+	 * @param loader
+	 */
+	public RefreshAheadCache(String name, int maxEntries, long timeToLiveMS, Loader<V> loader) {
+		this(name, maxEntries, timeToLiveMS, loader, REFRESH_EXECUTOR);
+	}
+
+	/**
+	 * Used by unit tests to control when background refreshes run.
+	 */
+	RefreshAheadCache(String name, int maxEntries, long timeToLiveMS, Loader<V> loader, Executor refreshExecutor) {
+		if(timeToLiveMS < 1) throw new IllegalArgumentException("Time to live must be greater than zero");
+		if(loader == null) throw new IllegalArgumentException("Loader cannot be null");
+		this.cache = new BoundedCache<String, CachedValue<V>>(name, maxEntries, timeToLiveMS);
+		this.loader = loader;
+		this.timeToLiveMS = timeToLiveMS;
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	/**
+	 * Get the value of a key, loading it if it is not cached.
+	 * @param key
+	 * @return
+	 * @throws Exception Any exception thrown by the loader.
+	 */
+	public V get(String key) throws Exception {
+		CachedValue<V> cached = cache.get(key);
+		if(cached != null){
+			if(System.currentTimeMillis() >= cached.refreshAfter){
+				refreshInBackground(key);
+			}
+			return cached.value;
+		}
+		FutureTask<V> task = newLoadTask(key);
+		FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+		if(existing != null){
+			// Another request is already loading this key.
+			coalescedCount.incrementAndGet();
+			return await(existing);
+		}
+		try{
+			loadCount.incrementAndGet();
+			task.run();
+			return await(task);
+		}finally{
+			inFlight.remove(key, task);
+		}
+	}
+
+	/**
+	 * Remove a single entry.
+	 * @param key
+	 */
+	public void invalidate(String key) {
+		cache.remove(key);
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	private FutureTask<V> newLoadTask(final String key) {
+		return new FutureTask<V>(new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				V value = loader.load(key);
+				if(value != null){
+					put(key, value);
+				}
+				return value;
+			}
+		});
+	}
+
+	private void put(String key, V value) {
+		long now = System.currentTimeMillis();
+		long ttl = (long) (timeToLiveMS*(1.0-JITTER_FRACTION*random.nextDouble()));
+		cache.put(key, new CachedValue<V>(value, now+(long)(ttl*REFRESH_AFTER_FRACTION)), now+ttl);
+	}
+
+	/**
+	 * Start a refresh of the key unless one is already running.  If the refresh fails the entry is
+	 * removed, so the next request looks the key up itself and sees the failure.
+	 * @param key
+	 */
+	private void refreshInBackground(final String key) {
+		final FutureTask<V> task = newLoadTask(key);
+		if(inFlight.putIfAbsent(key, task) != null) return;
+		refreshCount.incrementAndGet();
+		try{
+			refreshExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						task.run();
+						task.get();
+					}catch(ExecutionException e){
+						refreshFailureCount.incrementAndGet();
+						cache.remove(key);
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}finally{
+						inFlight.remove(key, task);
+					}
+				}
+			});
+		}catch(RejectedExecutionException e){
+			// The entry will be loaded again when it expires.
+			inFlight.remove(key, task);
+		}
+	}
+
+	private static <V> V await(FutureTask<V> task) throws Exception {
+		try{
+			return task.get();
+		}catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) throw (Exception) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * The number of lookups answered from the cache.
+	 * @return
+	 */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/**
+	 * The number of lookups that were not in the cache.
+	 * @return
+	 */
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/**
+	 * The number of loads made by the requests that missed.
+	 * @return
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * The number of requests that missed and waited for a load started by another request.
+	 * @return
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * The number of background refreshes started.
+	 * @return
+	 */
+	public long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * The number of background refreshes that failed.
+	 * @return
+	 */
+	public long getRefreshFailureCount() {
+		return refreshFailureCount.get();
+	}
+
+	/**
+	 * A cached value and when it should be refreshed.
+	 */
+	private static class CachedValue<V> {
+		final V value;
+		final long refreshAfter;
+
+		CachedValue(V value, long refreshAfter) {
+			this.value = value;
+			this.refreshAfter = refreshAfter;
+		}
+	}
+}
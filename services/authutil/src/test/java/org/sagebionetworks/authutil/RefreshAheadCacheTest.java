@@ -0,0 +1,169 @@
+package org.sagebionetworks.authutil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RefreshAheadCacheTest {
+
+	/**
+	 * Stands in for Crowd.  Each session token is valid for a user until it is revoked.
+	 */
+	private static class CrowdStub implements RefreshAheadCache.Loader<String> {
+		AtomicInteger calls = new AtomicInteger(0);
+		volatile boolean revoked = false;
+		CountDownLatch release = null;
+
+		@Override
+		public String load(String sessionToken) throws Exception {
+			int call = calls.incrementAndGet();
+			if (release != null) {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			if (revoked) throw new AuthenticationException(401, "Invalid session token: " + sessionToken, null);
+			return "user" + call;
+		}
+	}
+
+	/**
+	 * Holds background refreshes until the test runs them.
+	 */
+	private static class ManualExecutor implements Executor {
+		List<Runnable> queued = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(Runnable command) {
+			queued.add(command);
+		}
+
+		void runAll() {
+			List<Runnable> toRun = new ArrayList<Runnable>(queued);
+			queued.clear();
+			for (Runnable runnable : toRun) {
+				runnable.run();
+			}
+		}
+	}
+
+	CrowdStub crowd;
+	ManualExecutor executor;
+
+	@Before
+	public void before() {
+		crowd = new CrowdStub();
+		executor = new ManualExecutor();
+	}
+
+	@Test
+	public void testHit() throws Exception {
+		RefreshAheadCache<String> cache = new RefreshAheadCache<String>("testHit", 100, 60000, crowd, executor);
+		assertEquals("user1", cache.get("token"));
+		assertEquals("user1", cache.get("token"));
+		assertEquals(1, crowd.calls.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getLoadCount());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final RefreshAheadCache<String> cache = new RefreshAheadCache<String>("testSingleFlight", 100, 60000, crowd, executor);
+		crowd.release = new CountDownLatch(1);
+		final int threadCount = 5;
+		final List<String> results = new ArrayList<String>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String userId = cache.get("token");
+						synchronized (results) {
+							results.add(userId);
+						}
+					} catch (Exception e) {
+						// counted as a missing result
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		// Wait for every other request to join the first one.
+		long start = System.currentTimeMillis();
+		while (cache.getCoalescedCount() < threadCount - 1) {
+			assertTrue("Timed out waiting for the requests", System.currentTimeMillis() - start < 10000);
+			Thread.sleep(10);
+		}
+		crowd.release.countDown();
+		for (Thread thread : threads) {
+			thread.join(10000);
+		}
+		// One call to Crowd answered every request.
+		assertEquals(1, crowd.calls.get());
+		assertEquals(threadCount, results.size());
+		for (String userId : results) {
+			assertEquals("user1", userId);
+		}
+	}
+
+	@Test
+	public void testRefreshAhead() throws Exception {
+		RefreshAheadCache<String> cache = new RefreshAheadCache<String>("testRefreshAhead", 100, 1000, crowd, executor);
+		assertEquals("user1", cache.get("token"));
+		// Past the refresh point but before the entry can expire.
+		Thread.sleep(800);
+		assertEquals("user1", cache.get("token"));
+		assertEquals(1, executor.queued.size());
+		// A second use does not start another refresh.
+		cache.get("token");
+		assertEquals(1, executor.queued.size());
+		executor.runAll();
+		assertEquals(1, cache.getRefreshCount());
+		assertEquals("user2", cache.get("token"));
+		assertEquals(2, crowd.calls.get());
+	}
+
+	@Test
+	public void testFailedRefreshRemovesEntry() throws Exception {
+		RefreshAheadCache<String> cache = new RefreshAheadCache<String>("testFailedRefresh", 100, 1000, crowd, executor);
+		cache.get("token");
+		Thread.sleep(800);
+		crowd.revoked = true;
+		cache.get("token");
+		executor.runAll();
+		assertEquals(1, cache.getRefreshFailureCount());
+		// The next request goes to Crowd itself and is rejected.
+		try {
+			cache.get("token");
+			fail("The token was revoked");
+		} catch (AuthenticationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFailureNotCached() throws Exception {
+		RefreshAheadCache<String> cache = new RefreshAheadCache<String>("testFailureNotCached", 100, 60000, crowd, executor);
+		crowd.revoked = true;
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get("token");
+				fail("The token was revoked");
+			} catch (AuthenticationException e) {
+				// expected
+			}
+		}
+		assertEquals(2, crowd.calls.get());
+	}
+}
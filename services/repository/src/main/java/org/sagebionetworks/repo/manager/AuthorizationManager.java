@@ -1,5 +1,8 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.Map;
+import java.util.Set;
+
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.Node;
@@ -21,6 +24,19 @@ public interface AuthorizationManager {
 	 */
 	public boolean canAccess(UserInfo userInfo, String nodeId, ACCESS_TYPE accessType) 
 		throws NotFoundException, DatastoreException;
+	
+	/**
+	 * Check access to many nodes whose benefactor and creator are already known.
+	 * The ACL of each distinct benefactor is checked at most once.
+	 * 
+	 * @param userInfo
+	 * @param nodes the permissions info of each node keyed by node id
+	 * @param accessType any type but DOWNLOAD, which must be checked one node at a time
+	 * 
+	 * @return the ids of the nodes the given user does not have the given access to
+	 */
+	public Set<String> getNodesWithoutAccess(UserInfo userInfo, Map<String, NodePermissionsInfo> nodes, ACCESS_TYPE accessType)
+		throws DatastoreException;
 		
 	/**
     *
@@ -1,7 +1,10 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
@@ -38,6 +41,16 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 	
 	@Autowired
 	NodeDAO nodeDAO;
+	
+	@Autowired
+	PermissionsCache permissionsCache;
+	
+	/**
+	 * The access types reported in the UserEntityPermissions.
+	 */
+	private static final ACCESS_TYPE[] USER_PERMISSION_TYPES = new ACCESS_TYPE[]{
+		ACCESS_TYPE.CREATE, ACCESS_TYPE.CHANGE_PERMISSIONS, ACCESS_TYPE.DELETE, ACCESS_TYPE.UPDATE, ACCESS_TYPE.READ
+	};
 
 
 	private static boolean agreesToTermsOfUse(UserInfo userInfo) {
@@ -79,16 +92,74 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 		if (accessType.equals(ACCESS_TYPE.DOWNLOAD)) {
 			return canDownload(userInfo, nodeId);
 		}
+		NodePermissionsInfo info = getNodePermissionsInfo(nodeId);
 		{
 			// if the user is the owner of the object, then she has full access to the object
 			// (note, this does not include 'download' access, handled above)
 			Long principalId = Long.parseLong(userInfo.getIndividualGroup().getId());
-			Node node = nodeDAO.getNode(nodeId);
-			if (node.getCreatedByPrincipalId().equals(principalId)) return true;
+			if (info.getCreatedByPrincipalId().equals(principalId)) return true;
 		}
 		// must look-up access
-		String permissionsBenefactor = nodeInheritanceDAO.getBenefactor(nodeId);
-		return accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, accessType);
+		return canAccessBenefactor(userInfo.getGroups(), info.getBenefactorId(), accessType);
+	}
+	
+	@Transactional(readOnly = true)
+	@Override
+	public Set<String> getNodesWithoutAccess(UserInfo userInfo, Map<String, NodePermissionsInfo> nodes, ACCESS_TYPE accessType)
+		throws DatastoreException {
+		if (accessType.equals(ACCESS_TYPE.DOWNLOAD)) throw new IllegalArgumentException("DOWNLOAD access must be checked one node at a time");
+		Set<String> denied = new HashSet<String>();
+		if (userInfo.isAdmin()) return denied;
+		Long principalId = Long.parseLong(userInfo.getIndividualGroup().getId());
+		// Siblings usually share a benefactor so each decision is reused across the nodes.
+		Map<String, Boolean> decisions = new HashMap<String, Boolean>();
+		for (Map.Entry<String, NodePermissionsInfo> entry : nodes.entrySet()) {
+			NodePermissionsInfo info = entry.getValue();
+			// the owner of a node has full access to it
+			if (principalId.equals(info.getCreatedByPrincipalId())) continue;
+			Boolean decision = decisions.get(info.getBenefactorId());
+			if (decision == null) {
+				decision = canAccessBenefactor(userInfo.getGroups(), info.getBenefactorId(), accessType);
+				decisions.put(info.getBenefactorId(), decision);
+			}
+			if (!decision) denied.add(entry.getKey());
+		}
+		return denied;
+	}
+	
+	/**
+	 * Get the benefactor and creator of a node from the cache, loading them on a miss.
+	 * @param nodeId
+	 * @return
+	 * @throws NotFoundException
+	 * @throws DatastoreException
+	 */
+	private NodePermissionsInfo getNodePermissionsInfo(String nodeId) throws NotFoundException, DatastoreException {
+		NodePermissionsInfo info = permissionsCache.getNodeInfo(nodeId);
+		if(info == null){
+			Node node = nodeDAO.getNode(nodeId);
+			String benefactor = nodeInheritanceDAO.getBenefactor(nodeId);
+			info = new NodePermissionsInfo(benefactor, node.getCreatedByPrincipalId());
+			permissionsCache.putNodeInfo(nodeId, info);
+		}
+		return info;
+	}
+	
+	/**
+	 * Check the ACL of a benefactor using the cached decision when there is one.
+	 * @param groups
+	 * @param benefactorId
+	 * @param accessType
+	 * @return
+	 * @throws DatastoreException
+	 */
+	private boolean canAccessBenefactor(Collection<UserGroup> groups, String benefactorId, ACCESS_TYPE accessType) throws DatastoreException {
+		Boolean decision = permissionsCache.getDecision(benefactorId, groups, accessType);
+		if(decision == null){
+			decision = accessControlListDAO.canAccess(groups, benefactorId, accessType);
+			permissionsCache.putDecision(benefactorId, groups, accessType, decision);
+		}
+		return decision;
 	}
 
 	/**
@@ -111,8 +182,8 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 		// must look-up access
 		String parentId = node.getParentId();
 		if (parentId==null) return false; // if not an admin, can't do it!
-		String permissionsBenefactor = nodeInheritanceDAO.getBenefactor(parentId);
-		return accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.CREATE);
+		String permissionsBenefactor = getNodePermissionsInfo(parentId).getBenefactorId();
+		return canAccessBenefactor(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.CREATE);
 	}
 	
 	/**
@@ -130,9 +201,8 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 	@Override
 	public UserEntityPermissions getUserPermissionsForEntity(UserInfo userInfo,	String entityId) throws NotFoundException, DatastoreException {
 		UserEntityPermissions permission = new UserEntityPermissions();
-		Node node = nodeDAO.getNode(entityId);
-		permission.setOwnerPrincipalId(node.getCreatedByPrincipalId());
-		boolean parentIsRoot = nodeDAO.isNodesParentRoot(entityId);
+		NodePermissionsInfo info = getNodePermissionsInfo(entityId);
+		permission.setOwnerPrincipalId(info.getCreatedByPrincipalId());
 		
 		// Admin gets all
 		if (userInfo.isAdmin()) {
@@ -142,19 +212,25 @@ public class AuthorizationManagerImpl implements AuthorizationManager {
 			permission.setCanEdit(true);
 			permission.setCanView(true);
 			permission.setCanDownload(true);
-			permission.setCanEnableInheritance(!parentIsRoot);
+			permission.setCanEnableInheritance(!nodeDAO.isNodesParentRoot(entityId));
 			return permission;
 		}
-		// must look-up access
-		String permissionsBenefactor = nodeInheritanceDAO.getBenefactor(entityId);
+		// must look-up access. All of the types are loaded with one query.
+		String permissionsBenefactor = info.getBenefactorId();
+		Set<ACCESS_TYPE> granted = accessControlListDAO.getAccessTypes(userInfo.getGroups(), permissionsBenefactor);
 		// Child can be added if this entity is not null
-		permission.setCanAddChild(this.accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.CREATE));
-		permission.setCanChangePermissions(this.accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.CHANGE_PERMISSIONS));
-		permission.setCanDelete(this.accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.DELETE));
-		permission.setCanEdit(this.accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.UPDATE));
-		permission.setCanView(this.accessControlListDAO.canAccess(userInfo.getGroups(), permissionsBenefactor, ACCESS_TYPE.READ));
+		permission.setCanAddChild(granted.contains(ACCESS_TYPE.CREATE));
+		permission.setCanChangePermissions(granted.contains(ACCESS_TYPE.CHANGE_PERMISSIONS));
+		permission.setCanDelete(granted.contains(ACCESS_TYPE.DELETE));
+		permission.setCanEdit(granted.contains(ACCESS_TYPE.UPDATE));
+		permission.setCanView(granted.contains(ACCESS_TYPE.READ));
+		// These decisions are likely to be needed by the rest of the page.
+		for(ACCESS_TYPE type: USER_PERMISSION_TYPES){
+			permissionsCache.putDecision(permissionsBenefactor, userInfo.getGroups(), type, granted.contains(type));
+		}
 		permission.setCanDownload(this.canDownload(userInfo, entityId));
-		permission.setCanEnableInheritance(!parentIsRoot && permission.getCanChangePermissions());
+		// Only look up the parent when it matters.
+		permission.setCanEnableInheritance(permission.getCanChangePermissions() && !nodeDAO.isNodesParentRoot(entityId));
 		return permission;
 	}
 }
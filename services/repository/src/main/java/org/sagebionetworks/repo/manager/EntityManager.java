@@ -49,6 +49,19 @@ public interface EntityManager {
 	 */
 	public <T extends Entity> T getEntity(UserInfo userInfo, String entityId, Class<? extends T> entityClass) throws NotFoundException, DatastoreException, UnauthorizedException;
 	
+	/**
+	 * Get many existing entities of the same type at once. The entities are
+	 * loaded in bulk and read access is checked once for each distinct benefactor.
+	 * @param userInfo
+	 * @param entityIds
+	 * @param entityClass
+	 * @return the entities in the order of the given ids
+	 * @throws NotFoundException if any of the entities does not exist
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException if the user cannot read any of the entities
+	 */
+	public <T extends Entity> List<T> getEntities(UserInfo userInfo, Collection<String> entityIds, Class<? extends T> entityClass) throws NotFoundException, DatastoreException, UnauthorizedException;
+	
 	/**
 	 * Get the full path of an entity.
 	 * 
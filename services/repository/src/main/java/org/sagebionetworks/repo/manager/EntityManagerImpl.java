@@ -18,6 +18,7 @@ import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.Locationable;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.attachment.PresignedUrl;
@@ -180,6 +181,28 @@ public class EntityManagerImpl implements EntityManager {
 		return ewa.getEntity();
 	}
 
+	@Transactional(readOnly = true)
+	@Override
+	public <T extends Entity> List<T> getEntities(UserInfo userInfo,
+			Collection<String> entityIds, Class<? extends T> entityClass)
+			throws NotFoundException, DatastoreException, UnauthorizedException {
+		if (entityIds == null)
+			throw new IllegalArgumentException("Entity IDs cannot be null");
+		EntityType requestedType = EntityType.getNodeTypeForClass(entityClass);
+		List<T> results = new ArrayList<T>(entityIds.size());
+		// The nodes and their annotations are loaded together in the requested order
+		for (NodeWithAnnotations loaded : nodeManager.getNodesWithAnnotations(
+				userInfo, entityIds)) {
+			Node node = loaded.getNode();
+			validateType(requestedType, EntityType.valueOf(node.getNodeType()),
+					node.getId());
+			EntityWithAnnotations<T> ewa = populateEntityWithNodeAndAnnotations(
+					entityClass, loaded.getAnnotations(), node);
+			results.add(ewa.getEntity());
+		}
+		return results;
+	}
+
 	@Transactional(readOnly = true)
 	@Override
 	public <T extends Entity> T getEntityForVersion(UserInfo userInfo,
@@ -390,18 +413,16 @@ public class EntityManagerImpl implements EntityManager {
 	public <T extends Entity> List<T> getEntityChildren(UserInfo userInfo,
 			String parentId, Class<? extends T> childrenClass)
 			throws NotFoundException, DatastoreException, UnauthorizedException {
-		List<T> resultSet = new ArrayList<T>();
+		List<String> childIds = new ArrayList<String>();
 		Set<Node> children = nodeManager.getChildren(userInfo, parentId);
-		Iterator<Node> it = children.iterator();
 		EntityType type = EntityType.getNodeTypeForClass(childrenClass);
-		while (it.hasNext()) {
-			Node child = it.next();
+		for (Node child : children) {
 			if (EntityType.valueOf(child.getNodeType()) == type) {
-				resultSet.add(this.getEntity(userInfo, child.getId(),
-						childrenClass));
+				childIds.add(child.getId());
 			}
 		}
-		return resultSet;
+		// Load all of the matching children at once
+		return getEntities(userInfo, childIds, childrenClass);
 	}
 
 	@Override
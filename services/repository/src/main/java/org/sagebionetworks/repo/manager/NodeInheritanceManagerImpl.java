@@ -1,10 +1,10 @@
 package org.sagebionetworks.repo.manager;
 
-import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
@@ -22,10 +22,14 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 public class NodeInheritanceManagerImpl implements NodeInheritanceManager {
 	
+	static private Log log = LogFactory.getLog(NodeInheritanceManagerImpl.class);
+	
 	@Autowired
 	NodeInheritanceDAO nodeInheritanceDao;
 	@Autowired
 	NodeDAO nodeDao;
+	@Autowired
+	PermissionsCache permissionsCache;
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	@Override
@@ -90,41 +94,42 @@ public class NodeInheritanceManagerImpl implements NodeInheritanceManager {
 	 * @throws DatastoreException 
 	 */
 	private void changeAllChildrenTo(String currentlyInheritingFromId, String parentId, String changeToInheritFromId) throws NotFoundException, DatastoreException{
+		long start = System.currentTimeMillis();
 		// This is the set of nodes that will need to change.
-		Set<String> toChange = new HashSet<String>();
-		// Recursively build up the set to change
-		// Now add all children
-		addChildrenToChange(currentlyInheritingFromId, parentId, toChange);
-		// We sort the Ids to prevent deadlock on concurrent updates
-		String[] sortedArrayIds = toChange.toArray(new String[toChange.size()]);
-		Arrays.sort(sortedArrayIds);
-		// Now update each node.
-		for(String idToChange: sortedArrayIds){
-			nodeInheritanceDao.addBeneficiary(idToChange, changeToInheritFromId);
+		Set<String> toChange = findNodesToChange(currentlyInheritingFromId, parentId);
+		// The DAO updates the nodes in sorted batches to prevent deadlock on concurrent updates
+		int changed = nodeInheritanceDao.addBeneficiaries(toChange, changeToInheritFromId);
+		for(String idToChange: toChange){
+			permissionsCache.invalidateNode(idToChange);
+		}
+		if(log.isInfoEnabled()){
+			long elapse = Math.max(1, System.currentTimeMillis()-start);
+			log.info("Changed the benefactor of "+changed+" nodes to "+changeToInheritFromId+" in "+elapse+" ms ("+(changed*1000L/elapse)+" rows/sec)");
 		}
 	}
 	
 	/**
-	 * This is a recursive method that finds all of the nodes that need to change.
+	 * Find all of the nodes that need to change one level of the tree at a time. Only the children of
+	 * nodes that are changing, and that inherit from the same benefactor, are included.
 	 * @param currentBenefactorId
 	 * @param parentId
-	 * @param toChange
+	 * @return
 	 * @throws NotFoundException
 	 * @throws DatastoreException 
 	 */
-	private void addChildrenToChange(String currentBenefactorId, String parentId, Set<String> toChange) throws NotFoundException, DatastoreException{
+	private Set<String> findNodesToChange(String currentBenefactorId, String parentId) throws NotFoundException, DatastoreException{
+		Set<String> toChange = new HashSet<String>();
 		// Find find the parent's benefactor
 		String parentCurrentBenefactorId = nodeInheritanceDao.getBenefactor(parentId);
-		if(parentCurrentBenefactorId.equals(currentBenefactorId)){
-			toChange.add(parentId);
-			// Now check this node's children
-			Iterator<String> it = nodeDao.getChildrenIds(parentId).iterator();
-			// Add each child
-			while(it.hasNext()){
-				String childId = it.next();
-				addChildrenToChange(currentBenefactorId, childId, toChange);
-			}
+		if(!parentCurrentBenefactorId.equals(currentBenefactorId)) return toChange;
+		toChange.add(parentId);
+		Set<String> level = new HashSet<String>(toChange);
+		while(!level.isEmpty()){
+			// Get all of the children of this level with one batched query.
+			level = nodeInheritanceDao.getChildrenInheritingFrom(level, currentBenefactorId);
+			toChange.addAll(level);
 		}
+		return toChange;
 	}
 
 	/**
@@ -146,6 +151,7 @@ public class NodeInheritanceManagerImpl implements NodeInheritanceManager {
 	@Override
 	public void addBeneficiary(String beneficiaryId, String toBenefactorId) throws NotFoundException, DatastoreException {
 		nodeInheritanceDao.addBeneficiary(beneficiaryId, toBenefactorId);
+		permissionsCache.invalidateNode(beneficiaryId);
 	}
 
 }
@@ -1,5 +1,6 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -11,6 +12,7 @@ import org.sagebionetworks.repo.model.EntityHeaderQueryResults;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -172,6 +174,18 @@ public interface NodeManager {
 	 */
 	public Set<Node> getChildren(UserInfo userInfo, String parentId) throws NotFoundException, DatastoreException, UnauthorizedException;
 	
+	/**
+	 * Get the current revision of many nodes along with their annotations.
+	 * Read access is checked once for each distinct benefactor of the nodes.
+	 * @param userInfo
+	 * @param nodeIds
+	 * @return the nodes in the order of the given ids
+	 * @throws NotFoundException if any of the nodes does not exist
+	 * @throws UnauthorizedException if the user cannot read any of the nodes
+	 * @throws DatastoreException 
+	 */
+	public List<NodeWithAnnotations> getNodesWithAnnotations(UserInfo userInfo, Collection<String> nodeIds) throws NotFoundException, DatastoreException, UnauthorizedException;
+	
 	/**
 	 * Get a list of all of the version numbers for a node.
 	 * @param userInfo
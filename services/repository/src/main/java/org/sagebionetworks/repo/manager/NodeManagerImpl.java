@@ -1,8 +1,12 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -21,6 +25,7 @@ import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.ReferenceDao;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -63,6 +68,9 @@ public class NodeManagerImpl implements NodeManager, InitializingBean {
 	@Autowired
 	private ReferenceDao referenceDao;
 	
+	@Autowired
+	private PermissionsCache permissionsCache;
+	
 	// for testing (in prod it's autowired)
 	public void setAuthorizationManager(AuthorizationManager authorizationManager) {
 		 this.authorizationManager =  authorizationManager;
@@ -219,6 +227,9 @@ public class NodeManagerImpl implements NodeManager, InitializingBean {
 			throw new UnauthorizedException(userName+" lacks change access to the requested object.");
 		}
 		nodeDao.delete(nodeId);
+		// The node, its descendants and any ACL the node had are gone.
+		permissionsCache.invalidateAllNodes();
+		permissionsCache.invalidateBenefactor(nodeId);
 		if(log.isDebugEnabled()){
 			log.debug("username "+userName+" deleted node: "+nodeId);
 		}
@@ -426,6 +437,30 @@ public class NodeManagerImpl implements NodeManager, InitializingBean {
 		return nodeDao.getChildren(parentId);
 	}
 
+	@Transactional(readOnly = true)
+	@Override
+	public List<NodeWithAnnotations> getNodesWithAnnotations(UserInfo userInfo, Collection<String> nodeIds) throws NotFoundException, DatastoreException, UnauthorizedException {
+		if(nodeIds == null) throw new IllegalArgumentException("NodeIds cannot be null");
+		UserInfo.validateUserInfo(userInfo);
+		String userName = userInfo.getUser().getUserId();
+		Map<String, NodeWithAnnotations> loaded = nodeDao.getNodesWithAnnotations(nodeIds);
+		List<NodeWithAnnotations> results = new ArrayList<NodeWithAnnotations>(nodeIds.size());
+		Map<String, NodePermissionsInfo> permissions = new HashMap<String, NodePermissionsInfo>();
+		for(String nodeId: nodeIds){
+			NodeWithAnnotations node = loaded.get(nodeId);
+			if(node == null) throw new NotFoundException("The resource you are attempting to access cannot be found: "+nodeId);
+			permissions.put(nodeId, new NodePermissionsInfo(node.getBenefactorId(), node.getNode().getCreatedByPrincipalId()));
+			results.add(node);
+		}
+		if (!authorizationManager.getNodesWithoutAccess(userInfo, permissions, ACCESS_TYPE.READ).isEmpty()) {
+			throw new UnauthorizedException(userName+" lacks read access to the requested object.");
+		}
+		if(log.isDebugEnabled()){
+			log.debug("username "+userName+" fetched "+results.size()+" nodes with annotations");
+		}
+		return results;
+	}
+
 	@Transactional(readOnly = true)
 	@Override
 	public EntityType getNodeType(UserInfo userInfo, String nodeId) throws NotFoundException, DatastoreException, UnauthorizedException {
@@ -0,0 +1,39 @@
+package org.sagebionetworks.repo.manager;
+
+/**
+ * The data about a node needed to make an authorization decision.
+ *
+ */
+public class NodePermissionsInfo {
+
+	private String benefactorId;
+	private Long createdByPrincipalId;
+
+	public NodePermissionsInfo(String benefactorId, Long createdByPrincipalId) {
+		this.benefactorId = benefactorId;
+		this.createdByPrincipalId = createdByPrincipalId;
+	}
+
+	/**
+	 * The node this node inherits its permissions from.
+	 * @return
+	 */
+	public String getBenefactorId() {
+		return benefactorId;
+	}
+
+	/**
+	 * The principal that created the node.
+	 * @return
+	 */
+	public Long getCreatedByPrincipalId() {
+		return createdByPrincipalId;
+	}
+
+	@Override
+	public String toString() {
+		return "NodePermissionsInfo [benefactorId=" + benefactorId
+				+ ", createdByPrincipalId=" + createdByPrincipalId + "]";
+	}
+
+}
@@ -3,6 +3,7 @@ package org.sagebionetworks.repo.manager;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -11,6 +12,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +41,7 @@ import org.sagebionetworks.schema.adapter.org.json.JSONObjectAdapterImpl;
  * 
  */
 
-@SuppressWarnings("rawtypes")
+@SuppressWarnings({ "rawtypes", "unchecked" })
 public class NodeTranslationUtils {
 
 	private static final Logger log = Logger
@@ -50,6 +53,126 @@ public class NodeTranslationUtils {
 	private static Map<String, Field> nodeFieldNames = new HashMap<String, Field>();
 	private static Map<String, String> nameConvertion = new HashMap<String, String>();
 	private static Map<EntityType, Set<String>> primaryFieldsCache = new HashMap<EntityType, Set<String>>();
+	/**
+	 * The translation plan of each entity class. Plans for the entity types are
+	 * built when this class loads, any other class gets a plan on first use.
+	 */
+	private static ConcurrentMap<Class, TranslationPlan> translationPlans = new ConcurrentHashMap<Class, TranslationPlan>();
+
+	/**
+	 * A field of an entity that is also on a node.
+	 */
+	private static class PrimaryField {
+		final Field entityField;
+		final Field nodeField;
+
+		PrimaryField(Field entityField, Field nodeField) {
+			this.entityField = entityField;
+			this.nodeField = nodeField;
+		}
+	}
+
+	/**
+	 * A field of an entity that is stored as an annotation or a reference,
+	 * along with everything the schema says about how to store it.
+	 */
+	private static class SecondaryField {
+		final Field field;
+		final String name;
+		final ObjectSchema schema;
+		final boolean isTransient;
+		final boolean isReferenceSet;
+		final boolean isReference;
+		final boolean isBlob;
+		final boolean isBoolean;
+		final boolean isCollection;
+		final boolean isEnum;
+		// null when the class of an enumeration cannot be found
+		final Class enumClass;
+
+		SecondaryField(Field field, ObjectSchema schema) {
+			this.field = field;
+			this.name = field.getName();
+			this.schema = schema;
+			this.isTransient = schema.isTransient();
+			this.isReferenceSet = schema.getItems() != null
+					&& Reference.class.getName().equals(schema.getItems().getId());
+			this.isReference = Reference.class.getName().equals(schema.getId());
+			this.isBlob = schema.getContentEncoding() != null;
+			this.isBoolean = field.getType() == Boolean.class;
+			this.isCollection = field.getType().isAssignableFrom(Collection.class);
+			this.isEnum = schema.getEnum() != null;
+			Class clazz = null;
+			if (isEnum && schema.getId() != null) {
+				try {
+					clazz = Class.forName(schema.getId());
+				} catch (ClassNotFoundException e) {
+					// reported when a value needs to be converted
+					clazz = null;
+				}
+			}
+			this.enumClass = clazz;
+		}
+	}
+
+	/**
+	 * How the fields of one entity class map onto a node and its annotations.
+	 * Working this out means reflecting on the class and walking its schema,
+	 * so it is done once per class rather than on every translation.
+	 */
+	private static class TranslationPlan {
+		final PrimaryField[] primaryFields;
+		final SecondaryField[] secondaryFields;
+
+		TranslationPlan(Class<? extends Entity> clazz) {
+			ObjectSchema schema = SchemaCache.getSchema(clazz);
+			Map<String, ObjectSchema> schemaProperties = schema.getProperties();
+			if (schemaProperties == null) {
+				schemaProperties = new HashMap<String, ObjectSchema>();
+			}
+			List<PrimaryField> primary = new ArrayList<PrimaryField>();
+			List<SecondaryField> secondary = new ArrayList<SecondaryField>();
+			for (Field field : clazz.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()))
+					continue;
+				String name = field.getName();
+				String nodeName = nameConvertion.get(name);
+				if (nodeName == null) {
+					nodeName = name;
+				}
+				Field nodeField = nodeFieldNames.get(nodeName);
+				if (nodeField != null) {
+					field.setAccessible(true);
+					primary.add(new PrimaryField(field, nodeField));
+				} else {
+					// Skip any property not defined in the schema
+					ObjectSchema propSchema = schemaProperties.get(name);
+					if (propSchema != null) {
+						field.setAccessible(true);
+						secondary.add(new SecondaryField(field, propSchema));
+					}
+				}
+			}
+			this.primaryFields = primary.toArray(new PrimaryField[primary.size()]);
+			this.secondaryFields = secondary.toArray(new SecondaryField[secondary.size()]);
+		}
+	}
+
+	/**
+	 * Get the translation plan for a class, building it on first use.
+	 * 
+	 * @param clazz
+	 * @return
+	 */
+	private static TranslationPlan getTranslationPlan(Class<? extends Entity> clazz) {
+		TranslationPlan plan = translationPlans.get(clazz);
+		if (plan == null) {
+			// Two threads may both build a plan, they are identical.
+			plan = new TranslationPlan(clazz);
+			translationPlans.putIfAbsent(clazz, plan);
+		}
+		return plan;
+	}
 
 	/**
 	 * Build up the cache of primary fields for each object type.
@@ -78,7 +201,10 @@ public class NodeTranslationUtils {
 		// Populate the nodeFieldNames
 		Field[] fields = Node.class.getDeclaredFields();
 		for (Field field : fields) {
+			if (Modifier.isStatic(field.getModifiers()))
+				continue;
 			// make sure all are
+			field.setAccessible(true);
 			nodeFieldNames.put(field.getName(), field);
 		}
 		// Add the name required name conversions
@@ -87,6 +213,10 @@ public class NodeTranslationUtils {
 		nameConvertion.put("etag", "eTag");
 		// build the primary field cache
 		buildPrimaryFieldCache();
+		// plan the translation of each entity type
+		for (EntityType type : EntityType.values()) {
+			getTranslationPlan(type.getClassForType());
+		}
 	}
 
 	/**
@@ -114,28 +244,14 @@ public class NodeTranslationUtils {
 	 * @param node
 	 */
 	public static <T extends Entity> void updateNodeFromObject(T base, Node node) {
-		// First get the schema for this Entity
-		Field[] fields = base.getClass().getDeclaredFields();
-		for (Field field : fields) {
-			String name = field.getName();
-			String nodeName = nameConvertion.get(name);
-			if (nodeName == null) {
-				nodeName = name;
-			}
-			// Only include fields that are in node.
-			Field nodeField = nodeFieldNames.get(nodeName);
-			if (nodeField != null) {
-				// Make sure we can call it.
-				field.setAccessible(true);
-				nodeField.setAccessible(true);
-				Object value;
-				try {
-					value = field.get(base);
-					nodeField.set(node, value);
-				} catch (IllegalAccessException e) {
-					// This should never occur
-					log.log(Level.WARNING, e.getMessage(), e);
-				}
+		// Only include fields that are in node.
+		TranslationPlan plan = getTranslationPlan(base.getClass());
+		for (PrimaryField primary : plan.primaryFields) {
+			try {
+				primary.nodeField.set(node, primary.entityField.get(base));
+			} catch (IllegalAccessException e) {
+				// This should never occur
+				log.log(Level.WARNING, e.getMessage(), e);
 			}
 		}
 	}
@@ -156,81 +272,54 @@ public class NodeTranslationUtils {
 		if (annos == null)
 			throw new IllegalArgumentException("Annotations cannot be null");
 		// Find the fields that are not on nodes.
-		ObjectSchema schema = SchemaCache.getSchema(base);
-		Map<String, ObjectSchema> schemaProperties = schema.getProperties();
-		if (schemaProperties == null) {
-			schemaProperties = new HashMap<String, ObjectSchema>();
-		}
-		Field[] fields = base.getClass().getDeclaredFields();
-		for (Field field : fields) {
-			String name = field.getName();
-			String nodeName = nameConvertion.get(name);
-			if (nodeName == null) {
-				nodeName = name;
+		TranslationPlan plan = getTranslationPlan(base.getClass());
+		for (SecondaryField secondary : plan.secondaryFields) {
+			String name = secondary.name;
+			Object value;
+			try {
+				value = secondary.field.get(base);
+			} catch (IllegalAccessException e) {
+				// This should never occur
+				log.log(Level.WARNING, e.getMessage(), e);
+				continue;
 			}
-			// Is this a field already on Node?
-			if (!nodeFieldNames.containsKey(nodeName)) {
-				// Make sure we can call it.
-				field.setAccessible(true);
-				Object value;
-				try {
-					value = field.get(base);
-
-					// Skip any property not defined in the schema
-					ObjectSchema propSchema = schemaProperties.get(name);
-					if (propSchema == null) {
-						continue;
-					}
-					// If this is an enum then store the string
-					if (propSchema.getEnum() != null) {
-						value = NodeTranslationUtils.getNameFromEnum(value);
-					}
-
-					// skip any transient property as they are not stored.
-					if (propSchema.isTransient())
-						continue;
-					// We do not store fields that are marked as @TransientField
-					// First off is this a collection?
-					if (propSchema.getItems() != null) {
-						// Is this a reference
-						if (Reference.class.getName().equals(
-								propSchema.getItems().getId())) {
-							if (value == null) {
-								references.remove(name);
-							} else {
-								references.put(name, (Set<Reference>) value);
-							}
-							continue;
-						}
-					}
-					// Is this a single references?
-					if (propSchema.getId() != null) {
-						if (Reference.class.getName().equals(propSchema.getId())) {
-							HashSet<Reference> set = new HashSet<Reference>();
-							if (value == null) {
-								references.remove(name);
-							} else {
-								set.add((Reference) value);
-								references.put(name, set);
-								continue;
-							}
-						}
-					}
-					// The schema type will tell us how to store this
-					if (value == null) {
-						annos.deleteAnnotation(name);
-					} else {
-						if (propSchema.getContentEncoding() != null	|| value instanceof JSONEntity) {
-							// This will be stored a a blob
-							byte[] blob = objectToBytes(value, propSchema);
-							annos.replaceAnnotation(name, blob);
-						} else {
-							annos.replaceAnnotation(name, value);
-						}
-					}
-				} catch (IllegalAccessException e) {
-					// This should never occur
-					log.log(Level.WARNING, e.getMessage(), e);
+			// If this is an enum then store the string
+			if (secondary.isEnum && value != null) {
+				value = ((Enum) value).name();
+			}
+			// skip any transient property as they are not stored.
+			if (secondary.isTransient)
+				continue;
+			// Is this a reference
+			if (secondary.isReferenceSet) {
+				if (value == null) {
+					references.remove(name);
+				} else {
+					references.put(name, (Set<Reference>) value);
+				}
+				continue;
+			}
+			// Is this a single references?
+			if (secondary.isReference) {
+				if (value == null) {
+					references.remove(name);
+				} else {
+					HashSet<Reference> set = new HashSet<Reference>();
+					set.add((Reference) value);
+					references.put(name, set);
+					continue;
+				}
+			}
+			// The schema type will tell us how to store this
+			if (value == null) {
+				annos.deleteAnnotation(name);
+			} else {
+				if (secondary.isBlob || value instanceof JSONEntity) {
+					// This will be stored a a blob
+					byte[] blob = objectToBytes(value, secondary.schema);
+					annos.replaceAnnotation(name, blob);
+				} else {
+					annos.replaceAnnotation(name, value);
 				}
 			}
 		}
@@ -429,35 +518,17 @@ public class NodeTranslationUtils {
 			throw new IllegalArgumentException("Base cannot be null");
 		if (node == null)
 			throw new IllegalArgumentException("Node cannot be null");
-		// Find the fields that are not on nodes.
-		ObjectSchema schema = SchemaCache.getSchema(base);
-		Map<String, ObjectSchema> schemaProperties = schema.getProperties();
-		if (schemaProperties == null) {
-			schemaProperties = new HashMap<String, ObjectSchema>();
-		}
-		Field[] fields = base.getClass().getDeclaredFields();
-		for (Field field : fields) {
-			String name = field.getName();
-			String nodeName = nameConvertion.get(name);
-			if (nodeName == null) {
-				nodeName = name;
-			}
-			// Only include fields that are in node.
-			Field nodeField = nodeFieldNames.get(nodeName);
-			if (nodeField != null) {
-				// Make sure we can call it.
-				field.setAccessible(true);
-				nodeField.setAccessible(true);
-				Object value;
-				try {
-					value = nodeField.get(node);
-					if (value != null) {
-						field.set(base, value);
-					}
-				} catch (IllegalAccessException e) {
-					// This should never occur
-					log.log(Level.WARNING, e.getMessage(), e);
+		// Only include fields that are in node.
+		TranslationPlan plan = getTranslationPlan(base.getClass());
+		for (PrimaryField primary : plan.primaryFields) {
+			try {
+				Object value = primary.nodeField.get(node);
+				if (value != null) {
+					primary.entityField.set(base, value);
 				}
+			} catch (IllegalAccessException e) {
+				// This should never occur
+				log.log(Level.WARNING, e.getMessage(), e);
 			}
 		}
 	}
@@ -475,113 +546,76 @@ public class NodeTranslationUtils {
 			throw new IllegalArgumentException("Base cannot be null");
 		if (annos == null)
 			throw new IllegalArgumentException("Annotations cannot be null");
-		// Look up the schema for this Entity.
-		ObjectSchema schema = SchemaCache.getSchema(base);
-		Map<String, ObjectSchema> schemaProperties = schema.getProperties();
-		if (schemaProperties == null) {
-			schemaProperties = new HashMap<String, ObjectSchema>();
-		}
 		// Find the fields that are not on nodes.
-		Field[] fields = base.getClass().getDeclaredFields();
-		for (Field field : fields) {
-			String name = field.getName();
-			String nodeName = nameConvertion.get(name);
-			if (nodeName == null) {
-				nodeName = name;
-			}
-			// Is this a field already on Node?
-			if (!nodeFieldNames.containsKey(nodeName)) {
-				// Make sure we can call it.
-				field.setAccessible(true);
-				ObjectSchema propSchema = schemaProperties.get(name);
-				if (propSchema == null) {
+		TranslationPlan plan = getTranslationPlan(base.getClass());
+		for (SecondaryField secondary : plan.secondaryFields) {
+			String name = secondary.name;
+			Field field = secondary.field;
+			try {
+				// First handle references
+				if (secondary.isReferenceSet) {
+					Set<Reference> referenceGroup = references.get(name);
+					if (null == referenceGroup) {
+						field.set(base, new HashSet<Reference>());
+					} else {
+						field.set(base, referenceGroup);
+					}
+					// done
 					continue;
 				}
-				try {
-					Object value = annos.getSingleValue(name);
-					// First handle references
-					if (TYPE.ARRAY == propSchema.getType()) {
-						// Is this a reference
-						if (Reference.class.getName().equals(
-								propSchema.getItems().getId())) {
-							Set<Reference> referenceGroup = references
-									.get(name);
-							if (null == referenceGroup) {
-								field.set(base, new HashSet<Reference>());
-							} else {
-								field.set(base, referenceGroup);
-							}
-							// done
-							continue;
-						}
+				// Is this a single references?
+				if (secondary.isReference) {
+					Set<Reference> referenceGroup = references.get(name);
+					if (null == referenceGroup) {
+						field.set(base, null);
+					} else {
+						field.set(base, referenceGroup.iterator().next());
+					}
+					// done
+					continue;
+				}
+				Object value = annos.getSingleValue(name);
+				if (value != null) {
+					if (secondary.isBoolean) {
+						// We need to convert the string to a boolean
+						value = Boolean.parseBoolean((String) value);
 					}
-					// Is this a single references?
-					if (propSchema.getId() != null) {
-						if (Reference.class.getName()
-								.equals(propSchema.getId())) {
-							Set<Reference> referenceGroup = references
-									.get(name);
-							if (null == referenceGroup) {
-								field.set(base, null);
-							} else {
-								field.set(base, referenceGroup.iterator()
-										.next());
-							}
-							// done
-							continue;
-						}
+					// If this is an enum then we stored the string value,
+					// so we
+					// must convert back to an enumeration.
+					if (secondary.isEnum) {
+						if (secondary.schema.getId() == null)
+							throw new IllegalArgumentException(
+									"Cannot determine the class of an enumeration because the schema ID is null");
+						if (secondary.enumClass == null)
+							throw new RuntimeException(new ClassNotFoundException(secondary.schema.getId()));
+						value = Enum.valueOf(secondary.enumClass, (String) value);
 					}
-					if (value != null) {
-						if (field.getType() == Boolean.class) {
-							// We need to convert the string to a boolean
-							value = Boolean.parseBoolean((String) value);
-						}
-						// If this is an enum then we stored the string value,
-						// so we
-						// must convert back to an enumeration.
-						if (propSchema.getEnum() != null) {
-							// Get the class for this enumeration.
-							try {
-								if (propSchema.getId() == null)
-									throw new IllegalArgumentException(
-											"Cannot determine the class of an enumeration because the schema ID is null");
-								Class<?> clazz = Class.forName(propSchema
-										.getId());
-								value = NodeTranslationUtils
-										.getValueOfFromEnum((String) value,
-												clazz);
-							} catch (ClassNotFoundException e) {
-								throw new RuntimeException(e);
-							}
-						}
-
-						if (propSchema.isTransient())
-							continue;
-						// Is this an array?
 
-						// JSONEntity and Binary are stored as blobs.
-						if (propSchema.getContentEncoding() != null
-								|| value instanceof JSONEntity) {
-							// Convert from a
-							value = NodeTranslationUtils.bytesToObject(
-									(byte[]) value, propSchema);
-							field.set(base, value);
-							continue;
-						}
+					if (secondary.isTransient)
+						continue;
 
-						if (field.getType().isAssignableFrom(Collection.class)) {
-							List<Object> list = new ArrayList<Object>();
-							list.add(value);
-							field.set(base, list);
-						} else {
-							field.set(base, value);
-						}
+					// JSONEntity and Binary are stored as blobs.
+					if (secondary.isBlob || value instanceof JSONEntity) {
+						// Convert from a
+						value = NodeTranslationUtils.bytesToObject(
+								(byte[]) value, secondary.schema);
+						field.set(base, value);
+						continue;
 					}
 
-				} catch (IllegalAccessException e) {
-					// This should never occur
-					log.log(Level.WARNING, e.getMessage(), e);
+					if (secondary.isCollection) {
+						List<Object> list = new ArrayList<Object>();
+						list.add(value);
+						field.set(base, list);
+					} else {
+						field.set(base, value);
+					}
 				}
+
+			} catch (IllegalAccessException e) {
+				// This should never occur
+				log.log(Level.WARNING, e.getMessage(), e);
 			}
 		}
 	}
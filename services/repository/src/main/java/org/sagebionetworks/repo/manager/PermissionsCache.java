@@ -0,0 +1,88 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Collection;
+
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.UserGroup;
+
+/**
+ * A short lived cache of the data used to make authorization decisions.
+ * 
+ * There are two parts: the benefactor and creator of each node, and the
+ * access decision for a (benefactor, group set, access type). Any change to
+ * an ACL must invalidate its benefactor and any change to a node's benefactor
+ * must invalidate that node. Since other instances of the stack can make these
+ * changes, entries also expire after a short time.
+ * 
+ * An invalidation made inside a transaction is applied at once and again when
+ * the transaction completes.  Until the commit other threads still read the old
+ * rows and could cache them again.
+ *
+ */
+public interface PermissionsCache {
+
+	/**
+	 * Get the cached benefactor and creator of a node.
+	 * @param nodeId
+	 * @return null if the node is not in the cache.
+	 */
+	public NodePermissionsInfo getNodeInfo(String nodeId);
+
+	/**
+	 * Cache the benefactor and creator of a node.
+	 * @param nodeId
+	 * @param info
+	 */
+	public void putNodeInfo(String nodeId, NodePermissionsInfo info);
+
+	/**
+	 * Get a cached access decision.
+	 * @param benefactorId
+	 * @param groups
+	 * @param accessType
+	 * @return null if the decision is not in the cache.
+	 */
+	public Boolean getDecision(String benefactorId, Collection<UserGroup> groups, ACCESS_TYPE accessType);
+
+	/**
+	 * Cache an access decision.
+	 * @param benefactorId
+	 * @param groups
+	 * @param accessType
+	 * @param canAccess
+	 */
+	public void putDecision(String benefactorId, Collection<UserGroup> groups, ACCESS_TYPE accessType, boolean canAccess);
+
+	/**
+	 * Called when a node's benefactor changes or the node is deleted.
+	 * @param nodeId
+	 */
+	public void invalidateNode(String nodeId);
+
+	/**
+	 * Called when the ACL of a benefactor is changed, created or deleted.
+	 * All decisions made against this benefactor are removed.
+	 * @param benefactorId
+	 */
+	public void invalidateBenefactor(String benefactorId);
+
+	/**
+	 * Called when a node is deleted.  The delete cascades to every descendant of
+	 * the node and their IDs are no longer known, so all node information is removed.
+	 */
+	public void invalidateAllNodes();
+
+	/**
+	 * Remove everything from the cache.
+	 */
+	public void clear();
+
+	public long getNodeHitCount();
+
+	public long getNodeMissCount();
+
+	public long getDecisionHitCount();
+
+	public long getDecisionMissCount();
+
+}
@@ -0,0 +1,197 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.UserGroup;
+import org.sagebionetworks.repo.model.util.BoundedCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A bounded, in-memory implementation of the permissions cache.  Both parts are
+ * least recently used maps where each entry expires after the configured time.
+ *
+ */
+public class PermissionsCacheImpl implements PermissionsCache {
+
+	private static final String KEY_DELIMITER = "|";
+
+	private BoundedCache<String, NodePermissionsInfo> nodeCache;
+	private BoundedCache<String, Boolean> decisionCache;
+
+	/**
+	 * Use the stack configuration for the size and timeout.
+	 */
+	public PermissionsCacheImpl(){
+		this(StackConfiguration.getPermissionsCacheMaxSize(), StackConfiguration.getPermissionsCacheTimeoutMS());
+	}
+
+	/**
+	 *
+	 * @param maxEntries The maximum number of entries in each part of the cache.
+	 * @param timeoutMS How long an entry is valid.
+	 */
+	public PermissionsCacheImpl(int maxEntries, long timeoutMS){
+		this.nodeCache = new BoundedCache<String, NodePermissionsInfo>("permissionsNodeCache", maxEntries, timeoutMS);
+		this.decisionCache = new BoundedCache<String, Boolean>("permissionsDecisionCache", maxEntries, timeoutMS);
+	}
+
+	/**
+	 * The decision key starts with the benefactor so all decisions for a benefactor can be found.
+	 * The group IDs are sorted so the key does not depend on the order of the groups.
+	 */
+	static String createDecisionKey(String benefactorId, Collection<UserGroup> groups, ACCESS_TYPE accessType){
+		if(benefactorId == null) throw new IllegalArgumentException("Benefactor cannot be null");
+		if(groups == null) throw new IllegalArgumentException("Groups cannot be null");
+		if(accessType == null) throw new IllegalArgumentException("Access type cannot be null");
+		String[] groupIds = new String[groups.size()];
+		int i = 0;
+		for(UserGroup group: groups){
+			groupIds[i++] = group.getId();
+		}
+		Arrays.sort(groupIds);
+		StringBuilder builder = new StringBuilder();
+		builder.append(benefactorId);
+		builder.append(KEY_DELIMITER);
+		builder.append(accessType.name());
+		for(String id: groupIds){
+			builder.append(KEY_DELIMITER);
+			builder.append(id);
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public NodePermissionsInfo getNodeInfo(String nodeId) {
+		if(nodeId == null) throw new IllegalArgumentException("Node ID cannot be null");
+		return nodeCache.get(nodeId);
+	}
+
+	@Override
+	public void putNodeInfo(String nodeId, NodePermissionsInfo info) {
+		if(nodeId == null) throw new IllegalArgumentException("Node ID cannot be null");
+		if(info == null) throw new IllegalArgumentException("Info cannot be null");
+		nodeCache.put(nodeId, info);
+	}
+
+	@Override
+	public Boolean getDecision(String benefactorId, Collection<UserGroup> groups, ACCESS_TYPE accessType) {
+		return decisionCache.get(createDecisionKey(benefactorId, groups, accessType));
+	}
+
+	@Override
+	public void putDecision(String benefactorId, Collection<UserGroup> groups, ACCESS_TYPE accessType, boolean canAccess) {
+		decisionCache.put(createDecisionKey(benefactorId, groups, accessType), canAccess);
+	}
+
+	@Override
+	public void invalidateNode(String nodeId) {
+		if(nodeId == null) throw new IllegalArgumentException("Node ID cannot be null");
+		nodeCache.remove(nodeId);
+		PendingInvalidations pending = getPendingInvalidations();
+		if(pending != null){
+			pending.nodeIds.add(nodeId);
+		}
+	}
+
+	@Override
+	public void invalidateBenefactor(String benefactorId) {
+		if(benefactorId == null) throw new IllegalArgumentException("Benefactor cannot be null");
+		removeDecisions(benefactorId);
+		PendingInvalidations pending = getPendingInvalidations();
+		if(pending != null){
+			pending.benefactorIds.add(benefactorId);
+		}
+	}
+
+	@Override
+	public void invalidateAllNodes() {
+		nodeCache.clear();
+		PendingInvalidations pending = getPendingInvalidations();
+		if(pending != null){
+			pending.allNodes = true;
+		}
+	}
+
+	/**
+	 * The invalidations to repeat when the current transaction completes.
+	 */
+	private static class PendingInvalidations {
+		boolean allNodes = false;
+		Set<String> nodeIds = new HashSet<String>();
+		Set<String> benefactorIds = new HashSet<String>();
+	}
+
+	/**
+	 * Get the invalidations of the current transaction, registering them to be
+	 * repeated once it completes.  The repeat runs after a rollback too, since the
+	 * thread that made the change could have cached its own uncommitted rows.
+	 * @return null when there is no transaction.
+	 */
+	private PendingInvalidations getPendingInvalidations(){
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) return null;
+		PendingInvalidations pending = (PendingInvalidations) TransactionSynchronizationManager.getResource(this);
+		if(pending == null){
+			final PendingInvalidations toRepeat = new PendingInvalidations();
+			TransactionSynchronizationManager.bindResource(this, toRepeat);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResource(PermissionsCacheImpl.this);
+					if(toRepeat.allNodes){
+						nodeCache.clear();
+					}
+					for(String nodeId: toRepeat.nodeIds){
+						nodeCache.remove(nodeId);
+					}
+					for(String benefactorId: toRepeat.benefactorIds){
+						removeDecisions(benefactorId);
+					}
+				}
+			});
+			pending = toRepeat;
+		}
+		return pending;
+	}
+
+	private void removeDecisions(String benefactorId){
+		final String prefix = benefactorId+KEY_DELIMITER;
+		decisionCache.removeMatching(new BoundedCache.KeyMatcher<String>() {
+			@Override
+			public boolean matches(String key) {
+				return key.startsWith(prefix);
+			}
+		});
+	}
+
+	@Override
+	public void clear() {
+		nodeCache.clear();
+		decisionCache.clear();
+	}
+
+	@Override
+	public long getNodeHitCount() {
+		return nodeCache.getHitCount();
+	}
+
+	@Override
+	public long getNodeMissCount() {
+		return nodeCache.getMissCount();
+	}
+
+	@Override
+	public long getDecisionHitCount() {
+		return decisionCache.getHitCount();
+	}
+
+	@Override
+	public long getDecisionMissCount() {
+		return decisionCache.getMissCount();
+	}
+}
@@ -45,6 +45,9 @@ public class PermissionsManagerImpl implements PermissionsManager {
 	@Autowired
 	NodeDAO nodeDao;
 	
+	@Autowired
+	private PermissionsCache permissionsCache;
+	
 	@Autowired
 	private UserGroupDAO userGroupDAO;
 	
@@ -100,6 +103,7 @@ public class PermissionsManagerImpl implements PermissionsManager {
 		// Before we can update the ACL we must grab the lock on the node.
 		String newETag = nodeDao.lockNodeAndIncrementEtag(acl.getId(), acl.getEtag());
 		aclDAO.update(acl);
+		permissionsCache.invalidateBenefactor(rId);
 		acl = aclDAO.get(acl.getId());
 		acl.setEtag(newETag);
 		return acl;
@@ -124,6 +128,7 @@ public class PermissionsManagerImpl implements PermissionsManager {
 		nodeInheritanceManager.setNodeToInheritFromItself(rId);
 		// persist acl and return
 		String id = aclDAO.create(acl);
+		permissionsCache.invalidateBenefactor(rId);
 		acl = aclDAO.get(acl.getId());
 		acl.setEtag(newEtag);
 		return acl;
@@ -150,6 +155,7 @@ public class PermissionsManagerImpl implements PermissionsManager {
 		// delete access control list
 		AccessControlList acl = aclDAO.getForResource(rId);
 		aclDAO.delete(acl.getId());
+		permissionsCache.invalidateBenefactor(rId);
 		
 		// now find the newly governing ACL
 		benefactor = nodeInheritanceManager.getBenefactor(rId);
@@ -1,5 +1,9 @@
 package org.sagebionetworks.repo.manager;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.Node;
@@ -23,6 +27,13 @@ public class TempMockAuthDao implements AuthorizationManager{
 		return true;
 	}
 
+	@Override
+	public Set<String> getNodesWithoutAccess(UserInfo userInfo,
+			Map<String, NodePermissionsInfo> nodes, ACCESS_TYPE accessType)
+			throws DatastoreException {
+		return new HashSet<String>();
+	}
+
 	@Override
 	public String authorizationSQL(int n) {
 		// TODO Auto-generated method stub
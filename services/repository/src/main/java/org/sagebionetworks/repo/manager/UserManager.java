@@ -68,6 +68,23 @@ public interface UserManager {
 	 */
 	public boolean deletePrincipal(String name);
 
+	/**
+	 * Drop a user from the cache so that the next call to getUserInfo() reloads
+	 * the user's groups.  Call this when the user's group memberships or
+	 * administrator status change.
+	 * @param userName
+	 */
+	public void invalidateUserInfo(String userName);
+
+	/**
+	 * Drop everything cached about a principal after it is created, updated or
+	 * deleted.  For a group this drops every cached user since any of them may
+	 * belong to it.
+	 * @param name
+	 * @param isIndividual
+	 */
+	public void invalidatePrincipal(String name, boolean isIndividual);
+
 	/**
 	 * @param principalId
 	 * @return for a group, returns the group name, for a user returns the display name in the user's profile
@@ -2,13 +2,14 @@ package org.sagebionetworks.repo.manager;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.sagebionetworks.repo.model.AuthorizationConstants;
 import org.sagebionetworks.repo.model.AuthorizationConstants.DEFAULT_GROUPS;
@@ -22,12 +23,17 @@ import org.sagebionetworks.repo.model.UserGroupDAO;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.UserProfile;
 import org.sagebionetworks.repo.model.UserProfileDAO;
+import org.sagebionetworks.repo.model.util.BoundedCache;
 import org.sagebionetworks.repo.model.util.UserGroupUtil;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.schema.ObjectSchema;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Transactional(readOnly = true)
 public class UserManagerImpl implements UserManager {
@@ -40,21 +46,40 @@ public class UserManagerImpl implements UserManager {
 	@Autowired
 	UserProfileDAO userProfileDAO;
 
-	private static Map<String, UserInfo> userInfoCache = null;
-	private static Long cacheTimeout = null;
-	private static Date lastCacheDump = null;
+	// Each user expires on their own, null when caching is turned off
+	private BoundedCache<String, UserInfo> userInfoCache = null;
+	// Incremented by each invalidation so a load that overlaps one is not cached
+	private AtomicLong invalidationCount = new AtomicLong(0);
+	// The default groups never change once they exist
+	private ConcurrentMap<DEFAULT_GROUPS, UserGroup> defaultGroups = new ConcurrentHashMap<DEFAULT_GROUPS, UserGroup>();
+	// Used to load a user in a write transaction without making cache hits pay for one
+	private TransactionTemplate transactionTemplate = null;
 	
 	public UserManagerImpl() {
-		userInfoCache = Collections
-				.synchronizedMap(new HashMap<String, UserInfo>());
-		lastCacheDump = new Date();
+		long cacheTimeout = AuthorizationConstants.AUTH_CACHE_TIMEOUT_DEFAULT;
 		String s = System
 				.getProperty(AuthorizationConstants.AUTH_CACHE_TIMEOUT_MILLIS);
 		if (s != null && s.length() > 0) {
 			cacheTimeout = Long.parseLong(s);
-		} else {
-			cacheTimeout = AuthorizationConstants.AUTH_CACHE_TIMEOUT_DEFAULT;
 		}
+		int maxEntries = AuthorizationConstants.AUTH_CACHE_MAX_ENTRIES_DEFAULT;
+		s = System.getProperty(AuthorizationConstants.AUTH_CACHE_MAX_ENTRIES);
+		if (s != null && s.length() > 0) {
+			maxEntries = Integer.parseInt(s);
+		}
+		if (cacheTimeout > 0) {
+			userInfoCache = new BoundedCache<String, UserInfo>("userInfo", maxEntries, cacheTimeout);
+		}
+	}
+
+	/**
+	 * Injected by Spring.
+	 * @param transactionManager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
+		this.transactionTemplate.setReadOnly(false);
 	}
 
 	// for testing
@@ -148,20 +173,70 @@ public class UserManagerImpl implements UserManager {
 	 * belong to. That is, the 'truth' about groups is assumed to be in the
 	 * system managing 'group memberships' and is mirrored in the system
 	 * managing group permissions.
+	 * 
+	 * A cached user is returned without starting a transaction.  Only a miss
+	 * starts the write transaction needed to create the missing groups.
 	 */
-	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Transactional(propagation = Propagation.SUPPORTS)
 	@Override
 	public UserInfo getUserInfo(String userName) throws DatastoreException,
 			NotFoundException {
-		if (cacheTimeout > 0) { // then use cache
-			Date now = new Date();
-			if (lastCacheDump.getTime() + cacheTimeout < now.getTime()) {
-				clearCache();
-			}
+		if (userInfoCache != null) {
 			UserInfo ui = userInfoCache.get(userName);
 			if (ui != null)
 				return ui;
 		}
+		long invalidationsBefore = invalidationCount.get();
+		UserInfo userInfo = loadUserInfoInTransaction(userName);
+		if (userInfoCache != null && invalidationCount.get() == invalidationsBefore) {
+			userInfoCache.put(userName, userInfo);
+		}
+		return userInfo;
+	}
+
+	/**
+	 * Load a user in a write transaction, joining the caller's transaction if there is one.
+	 * @param userName
+	 * @return
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 */
+	private UserInfo loadUserInfoInTransaction(final String userName) throws DatastoreException, NotFoundException {
+		if (transactionTemplate == null) {
+			// Not wired by Spring
+			return loadUserInfo(userName);
+		}
+		try {
+			return transactionTemplate.execute(new TransactionCallback<UserInfo>() {
+				@Override
+				public UserInfo doInTransaction(TransactionStatus status) {
+					try {
+						return loadUserInfo(userName);
+					} catch (DatastoreException e) {
+						throw new LoadFailedException(e);
+					} catch (NotFoundException e) {
+						throw new LoadFailedException(e);
+					}
+				}
+			});
+		} catch (LoadFailedException e) {
+			if (e.getCause() instanceof NotFoundException) throw (NotFoundException) e.getCause();
+			throw (DatastoreException) e.getCause();
+		}
+	}
+
+	/**
+	 * Carries a checked exception out of the transaction callback, rolling the transaction back.
+	 */
+	private static class LoadFailedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		LoadFailedException(Exception cause) {
+			super(cause);
+		}
+	}
+
+	private UserInfo loadUserInfo(String userName) throws DatastoreException, NotFoundException {
 		User user = userDAO.getUser(userName);
 		Set<UserGroup> groups = new HashSet<UserGroup>();
 		UserGroup individualGroup = null;
@@ -194,9 +269,6 @@ public class UserManagerImpl implements UserManager {
 		userInfo.setIndividualGroup(individualGroup);
 		userInfo.setUser(user);
 		userInfo.setGroups(groups);
-		if (cacheTimeout > 0) { // then use cache
-			userInfoCache.put(userName, userInfo);
-		}
 		return userInfo;
 	}
 	
@@ -218,16 +290,35 @@ public class UserManagerImpl implements UserManager {
 		return newList;
 	}
 
-	/**
-	 * Clear the user cache.
-	 */
-	private void clearCache() {
-		userInfoCache.clear();
-		lastCacheDump = new Date();
+	@Override
+	public void invalidateUserInfo(String userName) {
+		invalidationCount.incrementAndGet();
+		if (userInfoCache != null) {
+			userInfoCache.remove(userName);
+		}
+	}
+
+	@Override
+	public void invalidatePrincipal(String name, boolean isIndividual) {
+		if (isIndividual) {
+			invalidateUserInfo(name);
+			return;
+		}
+		// Any cached user may belong to the group.
+		invalidationCount.incrementAndGet();
+		if (userInfoCache != null) {
+			userInfoCache.clear();
+		}
+		for (DEFAULT_GROUPS group : DEFAULT_GROUPS.values()) {
+			if (group.name().equals(name)) {
+				defaultGroups.remove(group);
+			}
+		}
 	}
 
 	/**
-	 * Lazy fetch of the default groups.
+	 * Lazy fetch of the default groups.  Each group is looked up once and
+	 * then kept until it is deleted.
 	 * 
 	 * @param group
 	 * @return
@@ -237,17 +328,21 @@ public class UserManagerImpl implements UserManager {
 	@Override
 	public UserGroup getDefaultUserGroup(DEFAULT_GROUPS group)
 			throws DatastoreException {
-		UserGroup ug = userGroupDAO.findGroup(group.name(), false);
+		UserGroup ug = defaultGroups.get(group);
+		if (ug != null)
+			return ug;
+		ug = userGroupDAO.findGroup(group.name(), false);
 		if (ug == null)
 			throw new DatastoreException(group + " should exist.");
+		defaultGroups.put(group, ug);
 		return ug;
 	}
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	@Override
 	public void deleteUser(String id) throws DatastoreException, NotFoundException {
-		// Clear the cache when we delete a users.
-		clearCache();
+		// Remove the user from the cache when we delete a users.
+		invalidateUserInfo(id);
 		userDAO.delete(id);
 
 	}
@@ -283,7 +378,14 @@ public class UserManagerImpl implements UserManager {
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	@Override
 	public boolean deletePrincipal(String name) {
-		clearCache();
+		boolean isIndividual = true;
+		try {
+			isIndividual = userGroupDAO.findGroup(name, false) == null;
+		} catch (DatastoreException e) {
+			// Treat it as a group so that every cached user is dropped.
+			isIndividual = false;
+		}
+		invalidatePrincipal(name, isIndividual);
 		return userGroupDAO.deletePrincipal(name);
 	}
 	
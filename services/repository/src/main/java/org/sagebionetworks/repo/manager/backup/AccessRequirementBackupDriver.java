@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -56,6 +58,25 @@ public class AccessRequirementBackupDriver implements GenericBackupDriver {
 			throw new IllegalArgumentException(
 					"Destination file does not exist: "
 							+ destination.getAbsolutePath());
+		log.info("Starting a backup to file: " + destination.getAbsolutePath());
+		progress.appendLog("Starting a backup to file: " + destination.getAbsolutePath());
+		// First write to the file
+		FileOutputStream fos = new FileOutputStream(destination);
+		try {
+			return writeBackup(fos, progress, arsToBackup);
+		} finally {
+			fos.flush();
+			fos.close();
+		}
+	}
+
+	@Override
+	public boolean writeBackup(OutputStream destination, Progress progress,
+			Set<String> arsToBackup) throws IOException,
+			DatastoreException, NotFoundException, InterruptedException {
+		if (destination == null)
+			throw new IllegalArgumentException(
+					"Destination stream cannot be null");
 
 		// get the UserGroups, UserProfiles for the given IDs
 		Set<String> arIds = null;
@@ -66,41 +87,32 @@ public class AccessRequirementBackupDriver implements GenericBackupDriver {
 			arIds = new HashSet<String>(arsToBackup);
 		}
 
-		log.info("Starting a backup to file: " + destination.getAbsolutePath());
-		progress.appendLog("Starting a backup to file: " + destination.getAbsolutePath());
 		progress.setTotalCount(arIds.size());
-		// First write to the file
-		FileOutputStream fos = new FileOutputStream(destination);
-		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
-		try {
-			progress.appendLog("Processing nodes:");
-			for(String idToBackup: arIds){
-				Thread.yield();
-				progress.appendLog(idToBackup);
-				progress.setMessage(idToBackup);
-				
-				AccessRequirement accessRequirement = accessRequirementDAO.get(idToBackup);
-				List<AccessApproval> aas = accessApprovalDAO.getForAccessRequirement(idToBackup);
-				AccessRequirementBackup backup = new AccessRequirementBackup();
-				backup.setAccessRequirement(accessRequirement);
-				backup.setAccessApprovals(aas);
-				
-				ZipEntry entry = new ZipEntry(idToBackup+ZIP_ENTRY_SUFFIX);
-				zos.putNextEntry(entry);
-				NodeSerializerUtil.writeAccessRequirementBackup(backup, zos);
-				progress.incrementProgress();
-				if(progress.shouldTerminate()){
-					throw new InterruptedException("Access Requirement Backup terminated by the user.");
-				}
-			}
-			zos.close();
-			progress.appendLog("Finished processing access requirement.");
-		} finally {
-			if (fos != null) {
-				fos.flush();
-				fos.close();
+		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(destination));
+		progress.appendLog("Processing nodes:");
+		for(String idToBackup: arIds){
+			Thread.yield();
+			progress.appendLog(idToBackup);
+			progress.setMessage(idToBackup);
+			
+			AccessRequirement accessRequirement = accessRequirementDAO.get(idToBackup);
+			List<AccessApproval> aas = accessApprovalDAO.getForAccessRequirement(idToBackup);
+			AccessRequirementBackup backup = new AccessRequirementBackup();
+			backup.setAccessRequirement(accessRequirement);
+			backup.setAccessApprovals(aas);
+			
+			ZipEntry entry = new ZipEntry(idToBackup+ZIP_ENTRY_SUFFIX);
+			zos.putNextEntry(entry);
+			NodeSerializerUtil.writeAccessRequirementBackup(backup, zos);
+			progress.incrementProgress();
+			if(progress.shouldTerminate()){
+				throw new InterruptedException("Access Requirement Backup terminated by the user.");
 			}
 		}
+		// The caller owns the stream so it is finished but not closed.
+		zos.finish();
+		zos.flush();
+		progress.appendLog("Finished processing access requirement.");
 		return true;
 	}
 
@@ -114,42 +126,47 @@ public class AccessRequirementBackupDriver implements GenericBackupDriver {
 		try{
 			log.info("Restoring: "+source.getAbsolutePath());
 			progress.appendLog("Restoring: "+source.getAbsolutePath());
-			// First clear all data
-			ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(fis));
 			progress.setMessage("Reading: "+source.getAbsolutePath());
 			progress.setTotalCount(source.length());
+			return restoreFromBackup(fis, progress);
+		}finally{
+			fis.close();
+		}
+	}
 
-			ZipEntry entry;
-			progress.appendLog("Processing access requirements:");
-			while((entry = zin.getNextEntry()) != null) {
-				progress.setMessage(entry.getName());
-				// Check for termination.
-				if(progress.shouldTerminate()){
-					throw new InterruptedException("Access Requirement restoration terminated by the user.");
-				}
-				
-				// This is a backup file.
-				AccessRequirementBackup backup = NodeSerializerUtil.readAccessRequirementBackup(zin);
-				
-				createOrUpdateAccessRequirementAndApprovals(backup);
-				
-				// Append this id to the log.
-				progress.appendLog(backup.getAccessRequirement().getId().toString());
-				
-				progress.incrementProgressBy(entry.getCompressedSize());
-				if(log.isTraceEnabled()){
-					log.trace(progress.toString());			
-				}
-				// This is run in a tight loop so to be CPU friendly we should yield
-				
-				Thread.yield();
+	@Override
+	public boolean restoreFromBackup(InputStream source, Progress progress)
+			throws IOException, InterruptedException, DatastoreException, NotFoundException, InvalidModelException, ConflictingUpdateException {
+		if(source == null) throw new IllegalArgumentException("Source stream cannot be null");
+		if(progress == null) throw new IllegalArgumentException("Progress cannot be null");
+		ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(source));
+
+		ZipEntry entry;
+		progress.appendLog("Processing access requirements:");
+		while((entry = zin.getNextEntry()) != null) {
+			progress.setMessage(entry.getName());
+			// Check for termination.
+			if(progress.shouldTerminate()){
+				throw new InterruptedException("Access Requirement restoration terminated by the user.");
 			}
-			progress.appendLog("Finished processing nodes.");
-		}finally{
-			if(fis != null){
-				fis.close();
+			
+			// This is a backup file.
+			AccessRequirementBackup backup = NodeSerializerUtil.readAccessRequirementBackup(zin);
+			
+			createOrUpdateAccessRequirementAndApprovals(backup);
+			
+			// Append this id to the log.
+			progress.appendLog(backup.getAccessRequirement().getId().toString());
+			
+			progress.incrementProgressBy(entry.getCompressedSize());
+			if(log.isTraceEnabled()){
+				log.trace(progress.toString());			
 			}
+			// This is run in a tight loop so to be CPU friendly we should yield
+			
+			Thread.yield();
 		}
+		progress.appendLog("Finished processing nodes.");
 		return true;
 	}
 	
@@ -0,0 +1,81 @@
+package org.sagebionetworks.repo.manager.backup;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a backup written by {@link FramedBackupOutputStream}.  The end of this stream is the
+ * empty frame that marks a complete backup.  If the underlying stream ends before that frame,
+ * the backup was cut short and an IOException is thrown.
+ *
+ */
+public class FramedBackupInputStream extends InputStream {
+
+	private DataInputStream in;
+	// The bytes left in the current frame.
+	private int remaining = 0;
+	private boolean complete = false;
+
+	/**
+	 * @param in This stream is not closed.
+	 */
+	public FramedBackupInputStream(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int count = read(one, 0, 1);
+		if(count < 0) return -1;
+		return one[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		if(!nextFrame()) return -1;
+		int count = in.read(b, off, Math.min(len, remaining));
+		if(count < 0) throw truncated();
+		remaining -= count;
+		return count;
+	}
+
+	/**
+	 * Start the next frame if the current one has been read.
+	 * @return False at the end of a complete backup.
+	 * @throws IOException
+	 */
+	private boolean nextFrame() throws IOException {
+		while(remaining == 0){
+			if(complete) return false;
+			try {
+				remaining = in.readInt();
+			} catch (EOFException e) {
+				throw truncated();
+			}
+			if(remaining < 0) throw new IOException("The backup stream is corrupt: found a frame of length "+remaining);
+			if(remaining == 0) complete = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Read past anything the reader did not need, such as the directory at the end of a zip,
+	 * to make sure the backup was complete.
+	 * @throws IOException If the backup was cut short.
+	 */
+	public void readToEnd() throws IOException {
+		byte[] buffer = new byte[4096];
+		while(read(buffer, 0, buffer.length) >= 0){
+			// Discard it.
+		}
+	}
+
+	private static IOException truncated(){
+		return new IOException("The backup stream ended before the backup was complete");
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.sagebionetworks.repo.manager.backup;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a streamed backup as a series of length prefixed frames followed by an empty frame once
+ * the backup is complete.  The HTTP status of a streamed backup is sent before the backup is written,
+ * so the empty frame is the only way the reader can tell a complete backup from one that was cut short.
+ *
+ * Read with {@link FramedBackupInputStream}.
+ *
+ */
+public class FramedBackupOutputStream extends FilterOutputStream {
+
+	private DataOutputStream dataOut;
+	private boolean finished = false;
+
+	/**
+	 * @param out This stream is not closed.
+	 */
+	public FramedBackupOutputStream(OutputStream out) {
+		super(out);
+		this.dataOut = new DataOutputStream(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(finished) throw new IOException("The backup stream is already finished");
+		// An empty frame marks the end.
+		if(len == 0) return;
+		dataOut.writeInt(len);
+		dataOut.write(b, off, len);
+	}
+
+	/**
+	 * Mark the backup as complete.  Only call this once the whole backup has been written.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if(finished) return;
+		dataOut.writeInt(0);
+		dataOut.flush();
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// The caller owns the stream.
+		flush();
+	}
+
+}
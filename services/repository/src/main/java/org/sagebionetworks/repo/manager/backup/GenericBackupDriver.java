@@ -3,6 +3,8 @@ package org.sagebionetworks.repo.manager.backup;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Set;
 
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
@@ -27,6 +29,21 @@ public interface GenericBackupDriver {
 	 */
 	public boolean writeBackup(File destination, Progress progress, Set<String> entitiesToBackup) throws IOException, DatastoreException, NotFoundException, InterruptedException;
 	
+	/**
+	 * Create a backup, writing the zipped results to the passed stream as they are produced.
+	 * This is used to stream a backup directly to another stack.
+	 * The stream is not closed.
+	 * @param destination - The stream that the backup will be written too.
+	 * @param progress - Used to track the progress of the backup.
+	 * @param entitiesToBackup
+	 * @return
+	 * @throws IOException
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws InterruptedException
+	 */
+	public boolean writeBackup(OutputStream destination, Progress progress, Set<String> entitiesToBackup) throws IOException, DatastoreException, NotFoundException, InterruptedException;
+	
 	/**
 	 * Restore all data from the backup file.  Any node that does not exist will
 	 * be created.  If the node already exists it will be updated.
@@ -41,6 +58,21 @@ public interface GenericBackupDriver {
 	 */
 	public boolean restoreFromBackup(File source, Progress progress) throws IOException, InterruptedException, DatastoreException, NotFoundException, InvalidModelException, ConflictingUpdateException;
 	
+	/**
+	 * Restore all data from a zipped backup stream, applying each record as it is read.
+	 * The stream is not closed.
+	 * @param source - The stream of the backup that is to be used to restore.
+	 * @param progress - Used to track the progress of the restore.
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws InvalidModelException
+	 * @throws ConflictingUpdateException
+	 */
+	public boolean restoreFromBackup(InputStream source, Progress progress) throws IOException, InterruptedException, DatastoreException, NotFoundException, InvalidModelException, ConflictingUpdateException;
+	
 	
 	public void delete(String id) throws DatastoreException, NotFoundException;
 
@@ -1,6 +1,7 @@
 package org.sagebionetworks.repo.manager.backup;
 
 import java.util.List;
+import java.util.Map;
 
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.NodeBackup;
@@ -16,6 +17,14 @@ public interface NodeBackupDestination {
 	 */
 	public void createOrUpdateNodeWithRevisions(NodeBackup backup, List<NodeRevisionBackup> revisions);
 	
+	/**
+	 * Create or update a batch of nodes with their revisions in a single transaction.
+	 * The nodes must be in backup order so each parent is before its children.
+	 * @param backups
+	 * @param revisions The revisions of each node keyed by node ID.
+	 */
+	public void createOrUpdateNodesWithRevisions(List<NodeBackup> backups, Map<String, List<NodeRevisionBackup>> revisions);
+	
 	/**
 	 * Clear all data in preparation for the restore.
 	 * @throws NotFoundException 
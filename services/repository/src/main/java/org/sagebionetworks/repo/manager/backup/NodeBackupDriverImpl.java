@@ -2,19 +2,32 @@ package org.sagebionetworks.repo.manager.backup;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.repo.manager.PermissionsCache;
 import org.sagebionetworks.repo.manager.backup.migration.MigrationDriver;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityType;
@@ -44,6 +57,9 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 
 	static private Log log = LogFactory.getLog(NodeBackupDriverImpl.class);
 
+	// How often the throughput is added to the progress log.
+	private static final int THROUGHPUT_LOG_INTERVAL = 1000;
+
 	@Autowired
 	NodeBackupManager backupManager;
 	@Autowired
@@ -52,6 +68,15 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 	MigrationDriver migrationDriver;
 	@Autowired
 	NodeDAO nodeDao;
+	@Autowired
+	PermissionsCache permissionsCache;
+	
+	// The number of threads that load and serialize nodes while the zip is written.
+	private int fetcherThreadCount = StackConfiguration.getBackupFetcherThreadCount();
+	// The maximum number of fetched nodes waiting for the zip writer, not counting the next node to write.
+	private int queueDepth = StackConfiguration.getBackupQueueDepth();
+	// The number of nodes restored in each transaction.
+	int restoreBatchSize = StackConfiguration.getBackupRestoreBatchSize();
 
 
 	/**
@@ -72,6 +97,22 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 		this.nodeSerializer = new NodeSerializerImpl();
 		this.migrationDriver = migrationDriver;
 	}
+	
+	/**
+	 * Used by unit tests.
+	 * 
+	 * @param backupManager
+	 * @param migrationDriver
+	 * @param fetcherThreadCount
+	 * @param queueDepth
+	 */
+	public NodeBackupDriverImpl(NodeBackupManager backupManager, MigrationDriver migrationDriver, int fetcherThreadCount, int queueDepth) {
+		this(backupManager, migrationDriver);
+		if(fetcherThreadCount < 1) throw new IllegalArgumentException("There must be at least one fetcher thread");
+		if(queueDepth < 1) throw new IllegalArgumentException("Queue depth must be at least one");
+		this.fetcherThreadCount = fetcherThreadCount;
+		this.queueDepth = queueDepth;
+	}
 
 	@Override
 	public boolean writeBackup(File destination, Progress progress, Set<String> entitiesToBackup) throws IOException, DatastoreException, NotFoundException, InterruptedException {
@@ -83,6 +124,22 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 					"Destination file dose not exist: "
 							+ destination.getAbsolutePath());
 		if(progress == null) throw new IllegalArgumentException("Progress cannot be null");
+		log.info("Starting a backup to file: " + destination.getAbsolutePath());
+		progress.appendLog("Starting a backup to file: " + destination.getAbsolutePath());
+		// First write to the file
+		FileOutputStream fos = new FileOutputStream(destination);
+		try {
+			return writeBackup(fos, progress, entitiesToBackup);
+		} finally {
+			fos.flush();
+			fos.close();
+		}
+	}
+
+	@Override
+	public boolean writeBackup(OutputStream destination, Progress progress, Set<String> entitiesToBackup) throws IOException, DatastoreException, NotFoundException, InterruptedException {
+		if(destination == null) throw new IllegalArgumentException("Destination stream cannot be null");
+		if(progress == null) throw new IllegalArgumentException("Progress cannot be null");
 		// If the entitiesToBackup is null then include the root
 		List<String> listToBackup = new ArrayList<String>();
 		boolean isRecursive = false;
@@ -95,82 +152,113 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 			isRecursive = false;
 			listToBackup.addAll(entitiesToBackup);
 		}
-		log.info("Starting a backup to file: " + destination.getAbsolutePath());
-		progress.appendLog("Starting a backup to file: " + destination.getAbsolutePath());
 		progress.setTotalCount(backupManager.getTotalNodeCount());
-		// First write to the file
-		FileOutputStream fos = new FileOutputStream(destination);
-		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
+		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(destination));
+		// The fetchers load and serialize nodes while this thread writes the zip.
+		ExecutorService fetchers = Executors.newFixedThreadPool(fetcherThreadCount);
 		try {
 			progress.appendLog("Processing nodes:");
-			// First write the root node as its own entry
+			// The nodes in the order they will be written.  The children of a node
+			// are added to the front so the tree is written depth first.
+			LinkedList<PendingNode> pending = new LinkedList<PendingNode>();
 			for(String idToBackup: listToBackup){
-				// Recursively write each node.
-				progress.appendLog(idToBackup);
-				NodeBackup backup = backupManager.getNode(idToBackup);
-				if(backup == null) throw new IllegalArgumentException("Cannot backup node: "+idToBackup+" because it does not exists");
-				writeBackupNode(zos, backup, "", progress, isRecursive);
+				pending.add(new PendingNode(idToBackup, ""));
+			}
+			long startMS = System.currentTimeMillis();
+			long count = 0;
+			// The number of fetches started but not yet written.
+			int outstanding = 0;
+			while(!pending.isEmpty()){
+				outstanding += submitFetches(fetchers, pending, outstanding);
+				PendingNode next = pending.removeFirst();
+				if(next.parentPath.length() == 0){
+					progress.appendLog(next.nodeId);
+				}
+				SerializedNode serialized = waitForNode(next);
+				outstanding--;
+				for(SerializedEntry entry: serialized.entries){
+					zos.putNextEntry(new ZipEntry(entry.name));
+					zos.write(entry.data);
+				}
+				progress.setMessage(serialized.name);
+				progress.incrementProgress();
+				count++;
+				if(count % THROUGHPUT_LOG_INTERVAL == 0){
+					appendThroughput(progress, count, startMS);
+				}
+				if(log.isTraceEnabled()){
+					log.trace(progress.toString());			
+				}
+				// Check for termination.
+				checkForTermination(progress);
+				if(isRecursive && serialized.children != null){
+					for(int i=serialized.children.size()-1; i>=0; i--){
+						pending.addFirst(new PendingNode(serialized.children.get(i), serialized.path));
+					}
+				}
 			}
-			zos.close();
+			appendThroughput(progress, count, startMS);
+			// The caller owns the stream so it is finished but not closed.
+			zos.finish();
+			zos.flush();
 			progress.appendLog("Finished processing nodes.");
 		} finally {
-			if (fos != null) {
-				fos.flush();
-				fos.close();
-			}
+			fetchers.shutdownNow();
 		}
 		return true;
 	}
 
 	/**
-	 * This is a recursive method that will write the full tree of node data to
-	 * the zip file.
-	 * 
-	 * @param zos
-	 * @param backup
-	 * @param path
-	 * @throws IOException
-	 * @throws DatastoreException 
-	 * @throws NotFoundException 
-	 * @throws InterruptedException 
+	 * Start fetching the nodes at the front of the queue while fewer than the queue depth are outstanding.
+	 * The children of each node written are added in front of nodes that were already fetched, so the limit
+	 * is on the fetches outstanding rather than on the position in the queue.  The first node is always fetched
+	 * so the writer cannot stall, which means at most queueDepth+1 serialized nodes are held at once.
+	 * @param fetchers
+	 * @param pending
+	 * @param outstanding The number of fetches started but not yet written.
+	 * @return The number of fetches started.
 	 */
-	private boolean writeBackupNode(ZipOutputStream zos, NodeBackup backup,
-			String path, Progress progress, boolean isRecurisive) throws IOException, NotFoundException, DatastoreException, InterruptedException {
-		if (backup == null)
-			throw new IllegalArgumentException("NodeBackup cannot be null");
-		if (backup.getNode() == null)
-			throw new IllegalArgumentException("NodeBackup.node cannot be null");
-		Node node = backup.getNode();
-		if (node.getId() == null)
-			throw new IllegalArgumentException("node.id cannot be null");
-		// Since this could be called in a tight loop, we need to be
-		// CPU friendly
-		Thread.yield();
-		path = path + node.getId() + PATH_DELIMITER;
-		ZipEntry entry = new ZipEntry(path + NODE_XML_FILE);
-		zos.putNextEntry(entry);
-		// Write this node
-		NodeSerializerUtil.writeNodeBackup(backup, zos);
-		// Now write all revisions of this node.
-		writeRevisions(zos, backup, path);
-		progress.setMessage(backup.getNode().getName());
-		progress.incrementProgress();
-		if(log.isTraceEnabled()){
-			log.trace(progress.toString());			
+	private int submitFetches(ExecutorService fetchers, LinkedList<PendingNode> pending, int outstanding){
+		int started = 0;
+		boolean first = true;
+		for(final PendingNode toFetch: pending){
+			if(toFetch.future == null){
+				if(!first && outstanding + started >= queueDepth) break;
+				toFetch.future = fetchers.submit(new Callable<SerializedNode>() {
+					@Override
+					public SerializedNode call() throws Exception {
+						return serializeNode(toFetch.nodeId, toFetch.parentPath);
+					}
+				});
+				started++;
+			}
+			first = false;
 		}
-		// Check for termination.
-		checkForTermination(progress);
-		if(isRecurisive){
-			// now write each child
-			List<String> childList = backup.getChildren();
-			if (childList != null) {
-				for (String childId : childList) {
-					NodeBackup child = backupManager.getNode(childId);
-					writeBackupNode(zos, child, path, progress, isRecurisive);
-				}
-			}			
+		return started;
+	}
+
+	/**
+	 * Wait for a node to be fetched and rethrow anything thrown by the fetcher.
+	 * @param pending
+	 * @return
+	 */
+	private SerializedNode waitForNode(PendingNode pending) throws IOException, NotFoundException, DatastoreException, InterruptedException{
+		try {
+			return pending.future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) throw (IOException) cause;
+			if(cause instanceof NotFoundException) throw (NotFoundException) cause;
+			if(cause instanceof DatastoreException) throw (DatastoreException) cause;
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
 		}
-		return true;
+	}
+
+	private static void appendThroughput(Progress progress, long count, long startMS){
+		double elapsedSecs = Math.max(1, System.currentTimeMillis()-startMS)/1000.0;
+		progress.appendLog(String.format("Wrote %1$d nodes at %2$.1f nodes/sec", count, count/elapsedSecs));
 	}
 
 	public static void checkForTermination(Progress progress)
@@ -182,30 +270,33 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 	}
 
 	/**
-	 * Add a single revision
+	 * Load a node and all of its revisions and serialize each as a zip entry.
+	 * This is run by the fetchers so it must not touch the zip stream.
 	 * 
-	 * @param zos
-	 * @param backup
-	 * @param path
-	 * @throws IOException
+	 * @param nodeId
+	 * @param parentPath
+	 * @return
 	 * @throws DatastoreException 
 	 * @throws NotFoundException 
 	 */
-	private void writeRevisions(ZipOutputStream zos, NodeBackup backup,
-			String path) throws IOException, NotFoundException, DatastoreException {
-		if (backup == null)
-			throw new IllegalArgumentException("NodeBackup cannot be null");
+	SerializedNode serializeNode(String nodeId, String parentPath) throws NotFoundException, DatastoreException {
+		NodeBackup backup = backupManager.getNode(nodeId);
+		if(backup == null) throw new IllegalArgumentException("Cannot backup node: "+nodeId+" because it does not exists");
 		if (backup.getNode() == null)
 			throw new IllegalArgumentException("NodeBackup.node cannot be null");
 		Node node = backup.getNode();
 		if (node.getId() == null)
 			throw new IllegalArgumentException("node.id cannot be null");
+		String path = parentPath + node.getId() + PATH_DELIMITER;
+		List<SerializedEntry> entries = new ArrayList<SerializedEntry>();
+		// Write this node
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NodeSerializerUtil.writeNodeBackup(backup, out);
+		entries.add(new SerializedEntry(path + NODE_XML_FILE, out.toByteArray()));
+		// Now write all revisions of this node.
 		List<Long> revList = backup.getRevisions();
 		if (revList != null) {
 			for (Long revId : revList) {
-				ZipEntry entry = new ZipEntry(path + REVISIONS_FOLDER
-						+ PATH_DELIMITER + revId + XML_FILE_SUFFIX);
-				zos.putNextEntry(entry);
 				NodeRevisionBackup rev = backupManager.getNodeRevision(node.getId(),	revId);
 				if (rev == null)
 					throw new RuntimeException(
@@ -214,13 +305,61 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 				if(!NodeRevisionBackup.CURRENT_XML_VERSION.equals(rev.getXmlVersion())){
 					throw new RuntimeException("Cannot write a NodeRevisionBackup that is not set to the current xml version.  Expected version: "+NodeRevisionBackup.CURRENT_XML_VERSION+" but was "+rev.getXmlVersion());
 				}
-				NodeSerializerUtil.writeNodeRevision(rev, zos);
+				out = new ByteArrayOutputStream();
+				NodeSerializerUtil.writeNodeRevision(rev, out);
+				entries.add(new SerializedEntry(path + REVISIONS_FOLDER
+						+ PATH_DELIMITER + revId + XML_FILE_SUFFIX, out.toByteArray()));
 			}
 		}
+		return new SerializedNode(path, node.getName(), backup.getChildren(), entries);
 	}
 
 	/**
-	 * Restore from the backup.
+	 * A node waiting to be written.
+	 */
+	private static class PendingNode {
+		final String nodeId;
+		final String parentPath;
+		Future<SerializedNode> future;
+
+		PendingNode(String nodeId, String parentPath) {
+			this.nodeId = nodeId;
+			this.parentPath = parentPath;
+		}
+	}
+
+	/**
+	 * A node and its revisions, serialized and ready to be written.
+	 */
+	static class SerializedNode {
+		final String path;
+		final String name;
+		final List<String> children;
+		final List<SerializedEntry> entries;
+
+		SerializedNode(String path, String name, List<String> children, List<SerializedEntry> entries) {
+			this.path = path;
+			this.name = name;
+			this.children = children;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * A single zip entry.
+	 */
+	static class SerializedEntry {
+		final String name;
+		final byte[] data;
+
+		SerializedEntry(String name, byte[] data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Restore from the backup.  The nodes are restored in batches, each in its own transaction.
 	 * @throws InterruptedException 
 	 */
 	@Override
@@ -232,97 +371,161 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 		try{
 			log.info("Restoring: "+source.getAbsolutePath());
 			progress.appendLog("Restoring: "+source.getAbsolutePath());
-			// First clear all data
-			ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(fis));
 			progress.setMessage("Reading: "+source.getAbsolutePath());
 			progress.setTotalCount(source.length());
-			// We need to map the node type to the node id.
-			EntityType nodeType = null;
-			NodeBackup backup = null;
-			List<NodeRevisionBackup> revisions = null;
-			ZipEntry entry;
-			progress.appendLog("Processing nodes:");
-			while((entry = zin.getNextEntry()) != null) {
-				progress.setMessage(entry.getName());
-				// Check for termination.
-				checkForTermination(progress);
-				// What is the name of this entry
+			return restoreFromBackup(fis, progress);
+		}finally{
+			fis.close();
+		}
+	}
+
+	/**
+	 * Restore from a backup stream.  Each batch is written as soon as it has been read, so a
+	 * stream from another stack is applied as it arrives.
+	 * @throws InterruptedException 
+	 */
+	@Override
+	public boolean restoreFromBackup(InputStream source, Progress progress) throws IOException, InterruptedException {
+		if(source == null) throw new IllegalArgumentException("Source stream cannot be null");
+		if(progress == null) throw new IllegalArgumentException("Progress cannot be null");
+		RestoreBatch batch = new RestoreBatch();
+		ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(source));
+		// We need to map the node type to the node id.
+		EntityType nodeType = null;
+		NodeBackup backup = null;
+		List<NodeRevisionBackup> revisions = null;
+		ZipEntry entry;
+		progress.appendLog("Processing nodes:");
+		long readStart = System.currentTimeMillis();
+		while((entry = zin.getNextEntry()) != null) {
+			progress.setMessage(entry.getName());
+			// Check for termination.
+			checkForTermination(progress);
+			// What is the name of this entry
 //				log.info("Writing entry: "+entry.getName());
-				// Is this a node or a revision?
-				if(isNodeBackupFile(entry.getName())){
-					// Push the current data
-					if(backup != null){
-						createOrUpdateNodeWithRevisions(backup, revisions);
-						// clear the current data
-						backup = null;
-						
-					}
-					// This is a backup file.
-					backup = nodeSerializer.readNodeBackup(zin);
-					// Append this id to the log.
-					progress.appendLog(backup.getNode().getId());
-					revisions = new ArrayList<NodeRevisionBackup>();
-					try{
-						nodeType = EntityType.valueOf(backup.getNode().getNodeType());
-					}catch(IllegalArgumentException e){
-						// This was likely a deleted entity type.
-						nodeType = EntityType.unknown;
-						backup = null;
-						// for now skip unknown types
-						continue;
-					}
-					
-					migrationDriver.migrateNodePrincipals(backup);
+			// Is this a node or a revision?
+			if(isNodeBackupFile(entry.getName())){
+				// Push the current data
+				if(backup != null){
+					batch.add(backup, revisions);
+					// clear the current data
+					backup = null;
 					
-					// Are we restoring the root node?
-					if(backup.getNode().getParentId() == null){
-						// This node is a root.  Does it match the current root?
-						String currentRootId = getCurrentRootId();
-						if(!backup.getNode().getId().equals(currentRootId)){
-							// We are being asked to restore a root node but we already have one.
-							// Since the current root does not match the ID of the root we were given
-							// we must clear all data and start with a clean database
-							backupManager.clearAllData();
-						}
-					}
-				}else if(isNodeRevisionFile(entry.getName())){
-					// Skip unknown types.
-					if(EntityType.unknown == nodeType) continue;
-					if(backup == null) throw new IllegalArgumentException("Found a revsions without a matching entity.");
-					if(revisions == null) throw new IllegalArgumentException("Found a revisoin without any matching entity");
-
-					// This is a revision file.
-					NodeRevisionBackup revision = NodeSerializerUtil.readNodeRevision(zin);
-					// Add this to the list
-					// Migrate the revision to the current version
-					nodeType = migrationDriver.migrateToCurrentVersion(revision, nodeType);
-					// nodeType is changed as needed
-					backup.getNode().setNodeType(nodeType.name());
-					// Add this to the list of revisions to be processed
-					revisions.add(revision);
-				}else{
-					throw new IllegalArgumentException("Did not recongnize file name: "+entry.getName());
 				}
-				progress.incrementProgressBy(entry.getCompressedSize());
-				if(log.isTraceEnabled()){
-					log.trace(progress.toString());			
+				if(batch.size() >= restoreBatchSize){
+					batch.readMS += System.currentTimeMillis()-readStart;
+					writeBatch(batch);
+					readStart = System.currentTimeMillis();
+				}
+				// This is a backup file.
+				backup = nodeSerializer.readNodeBackup(zin);
+				// Append this id to the log.
+				progress.appendLog(backup.getNode().getId());
+				revisions = new ArrayList<NodeRevisionBackup>();
+				try{
+					nodeType = EntityType.valueOf(backup.getNode().getNodeType());
+				}catch(IllegalArgumentException e){
+					// This was likely a deleted entity type.
+					nodeType = EntityType.unknown;
+					backup = null;
+					// for now skip unknown types
+					continue;
 				}
-				// This is run in a tight loop so to be CPU friendly we should yield
 				
-				Thread.yield();
-			}
-			progress.appendLog("Finished processing nodes.");
-			if(backup != null){
-				// do the final backup
-				createOrUpdateNodeWithRevisions(backup, revisions);
+				migrationDriver.migrateNodePrincipals(backup);
+				
+				// Are we restoring the root node?
+				if(backup.getNode().getParentId() == null){
+					// This node is a root.  Does it match the current root?
+					String currentRootId = getCurrentRootId();
+					if(!backup.getNode().getId().equals(currentRootId)){
+						// We are being asked to restore a root node but we already have one.
+						// Since the current root does not match the ID of the root we were given
+						// we must clear all data and start with a clean database
+						batch.readMS += System.currentTimeMillis()-readStart;
+						writeBatch(batch);
+						long clearStart = System.currentTimeMillis();
+						backupManager.clearAllData();
+						batch.clearMS += System.currentTimeMillis()-clearStart;
+						readStart = System.currentTimeMillis();
+					}
+				}
+			}else if(isNodeRevisionFile(entry.getName())){
+				// Skip unknown types.
+				if(EntityType.unknown == nodeType) continue;
+				if(backup == null) throw new IllegalArgumentException("Found a revsions without a matching entity.");
+				if(revisions == null) throw new IllegalArgumentException("Found a revisoin without any matching entity");
+
+				// This is a revision file.
+				NodeRevisionBackup revision = NodeSerializerUtil.readNodeRevision(zin);
+				// Add this to the list
+				// Migrate the revision to the current version
+				nodeType = migrationDriver.migrateToCurrentVersion(revision, nodeType);
+				// nodeType is changed as needed
+				backup.getNode().setNodeType(nodeType.name());
+				// Add this to the list of revisions to be processed
+				revisions.add(revision);
+			}else{
+				throw new IllegalArgumentException("Did not recongnize file name: "+entry.getName());
 			}
-		}finally{
-			if(fis != null){
-				fis.close();
+			progress.incrementProgressBy(entry.getCompressedSize());
+			if(log.isTraceEnabled()){
+				log.trace(progress.toString());			
 			}
 		}
+		if(backup != null){
+			batch.add(backup, revisions);
+		}
+		batch.readMS += System.currentTimeMillis()-readStart;
+		// do the final batch
+		writeBatch(batch);
+		progress.appendLog("Finished processing nodes.");
+		progress.appendLog(String.format("Restored %1$d nodes in %2$d batches. Read: %3$d ms, write: %4$d ms, clear: %5$d ms",
+				batch.nodeCount, batch.batchCount, batch.readMS, batch.writeMS, batch.clearMS));
 		return true;
 	}
+
+	/**
+	 * Write all of the nodes in the batch and then clear it.
+	 * @param batch
+	 * @throws InterruptedException
+	 */
+	private void writeBatch(RestoreBatch batch) throws InterruptedException{
+		if(batch.size() == 0) return;
+		long start = System.currentTimeMillis();
+		createOrUpdateNodesWithRevisions(batch.backups, batch.revisions);
+		batch.writeMS += System.currentTimeMillis()-start;
+		batch.nodeCount += batch.size();
+		batch.batchCount++;
+		batch.clear();
+	}
+
+	/**
+	 * The nodes waiting to be restored and the time spent in each phase of the restore.
+	 */
+	private static class RestoreBatch {
+		final List<NodeBackup> backups = new ArrayList<NodeBackup>();
+		final Map<String, List<NodeRevisionBackup>> revisions = new HashMap<String, List<NodeRevisionBackup>>();
+		long nodeCount = 0;
+		long batchCount = 0;
+		long readMS = 0;
+		long writeMS = 0;
+		long clearMS = 0;
+
+		void add(NodeBackup backup, List<NodeRevisionBackup> nodeRevisions){
+			backups.add(backup);
+			revisions.put(backup.getNode().getId(), nodeRevisions);
+		}
+
+		int size(){
+			return backups.size();
+		}
+
+		void clear(){
+			backups.clear();
+			revisions.clear();
+		}
+	}
 	
 	/**
 	 * Get the ID of the current root node.
@@ -379,10 +582,31 @@ public class NodeBackupDriverImpl implements GenericBackupDriver {
 			backupManager.createOrUpdateNodeWithRevisions(backup, revisions);
 		}
 	}
+	
+	/**
+	 * Create or update a batch of nodes with deadlock detection.
+	 * @param backups
+	 * @param revisions
+	 * @throws InterruptedException
+	 */
+	void createOrUpdateNodesWithRevisions(List<NodeBackup> backups, Map<String, List<NodeRevisionBackup>> revisions) throws InterruptedException{
+		// This can deadlock (see PLFM-1341)
+		try{
+			backupManager.createOrUpdateNodesWithRevisions(backups, revisions);
+		}catch (DeadlockLoserDataAccessException e){
+			// Try again
+			Thread.sleep(100);
+			//Try once more.  If it fails again then the exception is thrown.
+			backupManager.createOrUpdateNodesWithRevisions(backups, revisions);
+		}
+	}
 
 	@Override
 	public void delete(String id) throws DatastoreException,
 			NotFoundException {
 		nodeDao.delete(id);
+		// The node, its descendants and any ACL the node had are gone.
+		permissionsCache.invalidateAllNodes();
+		permissionsCache.invalidateBenefactor(id);
 	}
 }
@@ -1,21 +1,29 @@
 package org.sagebionetworks.repo.manager.backup;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.sagebionetworks.repo.manager.PermissionsCache;
+import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.AccessControlListDAO;
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeBackup;
 import org.sagebionetworks.repo.model.NodeBackupDAO;
 import org.sagebionetworks.repo.model.NodeConstants;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.NodeInheritanceDAO;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.SchemaCache;
 import org.sagebionetworks.repo.model.UserGroupDAO;
 import org.sagebionetworks.repo.model.UserProfile;
@@ -56,6 +64,9 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 	@Autowired
 	private NodeInheritanceDAO inheritanceDAO;
 	
+	@Autowired
+	private PermissionsCache permissionsCache;
+	
 	private static final ObjectSchema userProfileSchema = SchemaCache.getSchema(UserProfile.class);
 
 
@@ -102,6 +113,24 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 		return rev;
 	}
 
+	@Transactional(readOnly = true)
+	@Override
+	public Map<String, NodeWithAnnotations> getNodesWithAnnotations(Collection<String> ids) throws DatastoreException {
+		return nodeDao.getNodesWithAnnotations(ids);
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public List<String> getNodeChildrenIds(String id) throws DatastoreException {
+		return nodeDao.getChildrenIdsAsList(id);
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public Map<String, AccessControlList> getNodeACLs(Collection<String> ids) throws DatastoreException {
+		return aclDAO.getForResources(ids);
+	}
+
 	@Override
 	public long getTotalNodeCount() {
 		return nodeBackupDao.getTotalNodeCount();
@@ -117,14 +146,7 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 	 * @throws InvalidModelException 
 	 */
 	private void createOrUpdateNode(NodeBackup backup) {
-		if(backup == null) throw new IllegalArgumentException("NodeBackup cannot be null");
-		if(backup.getNode() == null) throw new IllegalArgumentException("NodeBackup.node cannot be null");
-		if(backup.getNode().getId() == null) throw new IllegalArgumentException("NodeBackup.node.id cannot be null");
-		if(backup.getBenefactor() == null) throw new IllegalArgumentException("NodeBackup.benefactor cannot be null");
-		if(backup.getBenefactor().equals(backup.getNode().getId()) && backup.getAcl()==null) 
-			throw new IllegalArgumentException("Node is it's own permissions benefactor but ACL is missing");
-		if(!backup.getBenefactor().equals(backup.getNode().getId()) && backup.getAcl()!=null) 
-			throw new IllegalArgumentException("Node is NOT it's own permissions benefactor, yet it has an ACL");
+		validateBackup(backup);
 		String nodeId = backup.getNode().getId();
 		// Does this node already exist
 		try {
@@ -161,6 +183,9 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 			}
 			// Set the benefactor
 			inheritanceDAO.addBeneficiary(nodeId, backup.getBenefactor());
+			// The ACL or benefactor of this node might have changed
+			permissionsCache.invalidateNode(nodeId);
+			permissionsCache.invalidateBenefactor(nodeId);
 		} catch (Exception e) {
 			// Convert all exceptions to runtimes to force a rollback on this
 			// node.
@@ -169,23 +194,47 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 	}
 
 	/**
-	 * Create or update a single revision.
+	 * Validate a node backup before it is restored.
+	 * @param backup
+	 */
+	private static void validateBackup(NodeBackup backup){
+		if(backup == null) throw new IllegalArgumentException("NodeBackup cannot be null");
+		if(backup.getNode() == null) throw new IllegalArgumentException("NodeBackup.node cannot be null");
+		if(backup.getNode().getId() == null) throw new IllegalArgumentException("NodeBackup.node.id cannot be null");
+		if(backup.getBenefactor() == null) throw new IllegalArgumentException("NodeBackup.benefactor cannot be null");
+		if(backup.getBenefactor().equals(backup.getNode().getId()) && backup.getAcl()==null) 
+			throw new IllegalArgumentException("Node is it's own permissions benefactor but ACL is missing");
+		if(!backup.getBenefactor().equals(backup.getNode().getId()) && backup.getAcl()!=null) 
+			throw new IllegalArgumentException("Node is NOT it's own permissions benefactor, yet it has an ACL");
+	}
+
+	/**
+	 * Validate a revision and its annotations before it is restored.
 	 * @param rev
+	 * @throws InvalidModelException 
 	 */
-	private void createOrUpdateRevision(NodeRevisionBackup rev) {
+	private static void validateRevision(NodeRevisionBackup rev) throws InvalidModelException {
 		if(rev == null) throw new IllegalArgumentException("NodeRevisionBackup cannot be null");
 		if(rev.getNodeId() == null) throw new IllegalArgumentException("NodeRevisionBackup.nodeId cannot be null");
 		if(rev.getRevisionNumber() == null) throw new IllegalArgumentException("NodeRevisionBackup.revisionNumber cannot be null");
 		if(rev.getLabel() == null) throw new IllegalArgumentException("NodeRevisionBackup.revisionNumber cannot be null");
-		try{
-			// Validate the annotations
-			if(rev.getNamedAnnotations() != null){
-				NamedAnnotations named = rev.getNamedAnnotations();
-				Iterator<String> it = named.nameIterator();
-				while(it.hasNext()){
-					FieldTypeCache.validateAnnotations(named.getAnnotationsForName(it.next()));
-				}
+		// Validate the annotations
+		if(rev.getNamedAnnotations() != null){
+			NamedAnnotations named = rev.getNamedAnnotations();
+			Iterator<String> it = named.nameIterator();
+			while(it.hasNext()){
+				FieldTypeCache.validateAnnotations(named.getAnnotationsForName(it.next()));
 			}
+		}
+	}
+
+	/**
+	 * Create or update a single revision.
+	 * @param rev
+	 */
+	private void createOrUpdateRevision(NodeRevisionBackup rev) {
+		try{
+			validateRevision(rev);
 			if(nodeDao.doesNodeRevisionExist(rev.getNodeId(), rev.getRevisionNumber())){
 				// This is an update.
 				nodeBackupDao.updateRevisionFromBackup(rev);
@@ -210,6 +259,8 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 			if(id == null) return;
 			// Delete it.
 			nodeDao.delete(id);
+			// Every node is gone.
+			permissionsCache.clear();
 		} catch (Exception e) {
 			// Convert all exceptions to runtimes to force a rollback on this node.
 			throw new RuntimeException(e);
@@ -222,6 +273,81 @@ public class NodeBackupManagerImpl implements NodeBackupManager {
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
 	@Override
 	public void createOrUpdateNodeWithRevisions(NodeBackup backup,	List<NodeRevisionBackup> revisions) {
+		createOrUpdateNodeAndRevisions(backup, revisions);
+	}
+
+	/**
+	 * New nodes are created with a batch insert for each table and their benefactors
+	 * are set with one update for each benefactor once all of the nodes exist.  Nodes that
+	 * already exist are updated one at a time.
+	 */
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+	@Override
+	public void createOrUpdateNodesWithRevisions(List<NodeBackup> backups, Map<String, List<NodeRevisionBackup>> revisions) {
+		if(backups == null) throw new IllegalArgumentException("backups cannot be null");
+		if(revisions == null) throw new IllegalArgumentException("revisions cannot be null");
+		List<Node> toCreate = new ArrayList<Node>();
+		List<NodeRevisionBackup> revisionsToCreate = new ArrayList<NodeRevisionBackup>();
+		List<NodeBackup> created = new ArrayList<NodeBackup>();
+		List<NodeBackup> toUpdate = new ArrayList<NodeBackup>();
+		// The new nodes of each benefactor.
+		Map<String, List<String>> beneficiaries = new LinkedHashMap<String, List<String>>();
+		try {
+			for(NodeBackup backup: backups){
+				validateBackup(backup);
+				String nodeId = backup.getNode().getId();
+				List<NodeRevisionBackup> nodeRevisions = revisions.get(nodeId);
+				if(nodeRevisions == null) throw new IllegalArgumentException("Cannot find the revisions of node: "+nodeId);
+				if(nodeDao.doesNodeExist(KeyFactory.stringToKey(nodeId))){
+					toUpdate.add(backup);
+					continue;
+				}
+				for(NodeRevisionBackup rev: nodeRevisions){
+					validateRevision(rev);
+				}
+				toCreate.add(backup.getNode());
+				revisionsToCreate.addAll(nodeRevisions);
+				created.add(backup);
+				List<String> ids = beneficiaries.get(backup.getBenefactor());
+				if(ids == null){
+					ids = new ArrayList<String>();
+					beneficiaries.put(backup.getBenefactor(), ids);
+				}
+				ids.add(nodeId);
+			}
+			nodeBackupDao.createNewNodesFromBackup(toCreate, revisionsToCreate);
+			for(NodeBackup backup: created){
+				if (backup.getAcl() != null) {
+					aclDAO.create(backup.getAcl());
+				}
+			}
+			// Set the benefactors now that all of the new nodes exist.
+			for(Map.Entry<String, List<String>> entry: beneficiaries.entrySet()){
+				inheritanceDAO.addBeneficiaries(entry.getValue(), entry.getKey());
+			}
+			for(NodeBackup backup: created){
+				String nodeId = backup.getNode().getId();
+				permissionsCache.invalidateNode(nodeId);
+				permissionsCache.invalidateBenefactor(nodeId);
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// Convert all exceptions to runtimes to force a rollback on this batch.
+			throw new RuntimeException(e);
+		}
+		// The parents of existing nodes might be new so they are updated last.
+		for(NodeBackup backup: toUpdate){
+			createOrUpdateNodeAndRevisions(backup, revisions.get(backup.getNode().getId()));
+		}
+	}
+
+	/**
+	 * Create or update a node and all of its revisions.
+	 * @param backup
+	 * @param revisions
+	 */
+	private void createOrUpdateNodeAndRevisions(NodeBackup backup,	List<NodeRevisionBackup> revisions) {
 		if(backup == null) throw new IllegalArgumentException("backup cannot be null");
 		if(revisions == null) throw new IllegalArgumentException("revisions cannot be null");
 		// Make sure we process revision in their natural order
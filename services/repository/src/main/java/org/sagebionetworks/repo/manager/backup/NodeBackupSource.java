@@ -1,11 +1,15 @@
 package org.sagebionetworks.repo.manager.backup;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.NodeBackup;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.web.NotFoundException;
 
 /**
@@ -51,6 +55,30 @@ public interface NodeBackupSource {
 	 */
 	public NodeRevisionBackup getNodeRevision(String nodeId, Long revisionId) throws NotFoundException, DatastoreException;
 	
+	/**
+	 * Fetch the current revision of many nodes, with their annotations and benefactors, in one call.
+	 * @param ids
+	 * @return The nodes keyed by id.  Ids that do not exist are not in the map.
+	 * @throws DatastoreException
+	 */
+	public Map<String, NodeWithAnnotations> getNodesWithAnnotations(Collection<String> ids) throws DatastoreException;
+	
+	/**
+	 * Get the ids of the children of a node.
+	 * @param id
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public List<String> getNodeChildrenIds(String id) throws DatastoreException;
+	
+	/**
+	 * Fetch the ACLs of many nodes in one call.
+	 * @param ids
+	 * @return The ACLs keyed by node id.  Nodes that do not have an ACL are not in the map.
+	 * @throws DatastoreException
+	 */
+	public Map<String, AccessControlList> getNodeACLs(Collection<String> ids) throws DatastoreException;
+	
 	/**
 	 * How many nodes are there?  This is used to track progress.
 	 * @return
@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -70,6 +72,25 @@ public class PrincipalBackupDriver implements GenericBackupDriver {
 			throw new IllegalArgumentException(
 					"Destination file does not exist: "
 							+ destination.getAbsolutePath());
+		log.info("Starting a principal backup to file: " + destination.getAbsolutePath());
+		progress.appendLog("Starting a principal backup to file: " + destination.getAbsolutePath());
+		// First write to the file
+		FileOutputStream fos = new FileOutputStream(destination);
+		try {
+			return writeBackup(fos, progress, principalsToBackup);
+		} finally {
+			fos.flush();
+			fos.close();
+		}
+	}
+
+	@Override
+	public boolean writeBackup(OutputStream destination, Progress progress,
+			Set<String> principalsToBackup) throws IOException,
+			DatastoreException, NotFoundException, InterruptedException {
+		if (destination == null)
+			throw new IllegalArgumentException(
+					"Destination stream cannot be null");
 
 		// get the UserGroups, UserProfiles for the given IDs
 		List<PrincipalBackup> backups = new ArrayList<PrincipalBackup>();
@@ -115,24 +136,15 @@ public class PrincipalBackupDriver implements GenericBackupDriver {
 		}
 		
 		// serialize and write to 'destination'
-		log.info("Starting a principal backup to file: " + destination.getAbsolutePath());
-		progress.appendLog("Starting a principal backup to file: " + destination.getAbsolutePath());
-		// First write to the file
-		FileOutputStream fos = new FileOutputStream(destination);
-		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
-		try {
-			Thread.yield();
-			ZipEntry entry = new ZipEntry(PRINCIPAL_XML_FILE);
-			zos.putNextEntry(entry);
-			NodeSerializerUtil.writePrincipalBackups(backups, zos);
-			zos.close();
-			progress.appendLog("Finished processing principals.");
-		} finally {
-			if (fos != null) {
-				fos.flush();
-				fos.close();
-			}
-		}
+		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(destination));
+		Thread.yield();
+		ZipEntry entry = new ZipEntry(PRINCIPAL_XML_FILE);
+		zos.putNextEntry(entry);
+		NodeSerializerUtil.writePrincipalBackups(backups, zos);
+		// The caller owns the stream so it is finished but not closed.
+		zos.finish();
+		zos.flush();
+		progress.appendLog("Finished processing principals.");
 		return true;
 	}
 
@@ -146,29 +158,33 @@ public class PrincipalBackupDriver implements GenericBackupDriver {
 		try{
 			log.info("Restoring: "+source.getAbsolutePath());
 			progress.appendLog("Restoring: "+source.getAbsolutePath());
-			// First clear all data
-			ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(fis));
 			progress.setMessage("Reading: "+source.getAbsolutePath());
 			progress.setTotalCount(source.length());
-			ZipEntry entry;
-			progress.appendLog("Processing principals:");
-			while((entry = zin.getNextEntry()) != null) {
-				progress.setMessage(entry.getName());
-				// Check for termination.
-				NodeBackupDriverImpl.checkForTermination(progress);
+			return restoreFromBackup(fis, progress);
+		}finally{
+			fis.close();
+		}
+	}
 
-				Collection<PrincipalBackup> principalBackups = NodeSerializerUtil.readPrincipalBackups(zin);
-				createOrUpdatePrincipals(principalBackups, progress);
-				
-				Thread.yield();
-			}
-			progress.appendLog("Finished processing principals.");
+	@Override
+	public boolean restoreFromBackup(InputStream source, Progress progress)
+			throws IOException, InterruptedException {
+		if(source == null) throw new IllegalArgumentException("Source stream cannot be null");
+		if(progress == null) throw new IllegalArgumentException("Progress cannot be null");
+		ZipInputStream zin = new  ZipInputStream(new BufferedInputStream(source));
+		ZipEntry entry;
+		progress.appendLog("Processing principals:");
+		while((entry = zin.getNextEntry()) != null) {
+			progress.setMessage(entry.getName());
+			// Check for termination.
+			NodeBackupDriverImpl.checkForTermination(progress);
 
-		}finally{
-			if(fis != null){
-				fis.close();
-			}
+			Collection<PrincipalBackup> principalBackups = NodeSerializerUtil.readPrincipalBackups(zin);
+			createOrUpdatePrincipals(principalBackups, progress);
+			
+			Thread.yield();
 		}
+		progress.appendLog("Finished processing principals.");
 		return true;
 	}
 	
@@ -235,6 +251,8 @@ public class PrincipalBackupDriver implements GenericBackupDriver {
 	 			} else {
 	 				userGroupDAO.create(srcUserGroup);
 	 			}
+				// the restored principal replaces anything cached about it
+				userManager.invalidatePrincipal(srcUserGroup.getName(), isIndividual);
 				if (!isIndividual) continue;
 				// now, for individuals, we also migrate the user profile
 				UserProfile dstUserProfile = null;
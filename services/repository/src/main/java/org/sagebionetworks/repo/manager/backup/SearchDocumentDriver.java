@@ -2,6 +2,8 @@ package org.sagebionetworks.repo.manager.backup;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.sagebionetworks.repo.model.AccessControlList;
@@ -46,6 +48,16 @@ public interface SearchDocumentDriver {
 	 */
 	public Document formulateSearchDocument(Node node, NodeRevisionBackup rev,
 			AccessControlList acl, EntityPath entityPath) throws DatastoreException, NotFoundException;
+
+	/**
+	 * Create the search documents of a batch of entities.  The ACL, path, and display name
+	 * lookups are shared across the batch.
+	 * 
+	 * @param entityIds
+	 * @return the search documents of the entities that still exist
+	 * @throws DatastoreException
+	 */
+	public List<Document> formulateSearchDocuments(Collection<String> entityIds) throws DatastoreException;
 	
 
 }
\ No newline at end of file
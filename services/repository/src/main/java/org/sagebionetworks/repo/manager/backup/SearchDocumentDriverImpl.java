@@ -1,5 +1,6 @@
 package org.sagebionetworks.repo.manager.backup;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -9,6 +10,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,9 +30,11 @@ import org.sagebionetworks.repo.model.Annotations;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityHeader;
 import org.sagebionetworks.repo.model.EntityPath;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
-import org.sagebionetworks.repo.model.NodeBackup;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.ResourceAccess;
 import org.sagebionetworks.repo.model.query.jdo.NodeAliasCache;
@@ -64,10 +69,13 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	 * No more than 100 values in a field value array
 	 */
 	public static final int FIELD_VALUE_SIZE_LIMIT = 100;
+	/**
+	 * The number of nodes loaded with each bulk fetch
+	 */
+	static final int PAGE_SIZE = 100;
 
 	private static Log log = LogFactory.getLog(SearchDocumentDriverImpl.class);
 
-	private static final String PATH_DELIMITER = "/";
 	private static final String CATCH_ALL_FIELD = "annotations";
 	private static final String DISEASE_FIELD = "disease";
 	private static final String TISSUE_FIELD = "tissue";
@@ -174,8 +182,9 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		}
 		log.info("Starting a backup to file: " + destination.getAbsolutePath());
 		progress.setTotalCount(backupManager.getTotalNodeCount());
-		// First write to the file
-		FileOutputStream outputStream = new FileOutputStream(destination);
+		// First write to the file. Documents are small so buffer them rather
+		// than writing each one straight to the file.
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(destination));
 		// DEV NOTE: (1) AwesomeSearch cannot currently accept zipped content so
 		// we are not making a ZipOutputStream here (2) AwesomeSearch expects a
 		// raw JSON array so we cannot use something like
@@ -184,71 +193,168 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		// streaming we are doing here to help with memory usage when dealing
 		// with a large batch of entities to send to search so this is better
 		// anyway
-		outputStream.write('[');
-		boolean isFirstEntry = true;
-		// First write the root node as its own entry
-		for (String idToBackup : listToBackup) {
-			// Recursively write each node.
-			NodeBackup backup = backupManager.getNode(idToBackup);
-			if (backup == null)
-				throw new IllegalArgumentException("Cannot backup node: "
-						+ idToBackup + " because it does not exists");
-			writeSearchDocumentBatch(outputStream, backup, "", progress,
-					isRecursive, isFirstEntry);
-			isFirstEntry = false;
+		try {
+			outputStream.write('[');
+			BatchContext context = new BatchContext();
+			// The nodes waiting to be written. When recursing the path of each
+			// child is built from the path of its parent, otherwise we start
+			// from the path of each node's parent.
+			LinkedList<PendingDocument> pending = new LinkedList<PendingDocument>();
+			for (String idToBackup : listToBackup) {
+				pending.add(new PendingDocument(idToBackup,
+						isRecursive ? new ArrayList<EntityHeader>() : null));
+			}
+			boolean isFirstEntry = true;
+			while (!pending.isEmpty()) {
+				List<PendingDocument> page = new ArrayList<PendingDocument>(PAGE_SIZE);
+				while (!pending.isEmpty() && page.size() < PAGE_SIZE) {
+					page.add(pending.removeFirst());
+				}
+				List<PendingDocument> children = writeSearchDocumentPage(
+						outputStream, page, progress, isRecursive, isFirstEntry,
+						context);
+				isFirstEntry = false;
+				// The children go in front so the walk stays depth first and
+				// the queue does not grow with the width of the tree.
+				pending.addAll(0, children);
+			}
+			outputStream.write(']');
+			outputStream.flush();
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * State shared by all of the documents of a single batch. Many nodes share
+	 * the same benefactor, parent, and creator so each of these is only looked
+	 * up once per batch.
+	 */
+	private static class BatchContext {
+		Map<String, AccessControlList> aclsByBenefactor = new HashMap<String, AccessControlList>();
+		Map<String, List<EntityHeader>> pathsByParent = new HashMap<String, List<EntityHeader>>();
+		Map<Long, String> displayNames = new HashMap<Long, String>();
+	}
+
+	/**
+	 * Get the path of a node's parent, using the batch's cache.
+	 */
+	private List<EntityHeader> getParentPath(Node node, BatchContext context)
+			throws NotFoundException, DatastoreException {
+		String parentId = node.getParentId();
+		if (parentId == null)
+			return new ArrayList<EntityHeader>();
+		List<EntityHeader> parentPath = context.pathsByParent.get(parentId);
+		if (parentPath == null) {
+			parentPath = nodeManager.getNodePathAsAdmin(parentId);
+			context.pathsByParent.put(parentId, parentPath);
+		}
+		return parentPath;
+	}
+
+	/**
+	 * Load the ACLs of the benefactors of a page that are not already in the
+	 * batch's cache with a single call.
+	 */
+	private void loadBenefactorAcls(Collection<NodeWithAnnotations> page,
+			BatchContext context) throws DatastoreException {
+		Set<String> toLoad = new HashSet<String>();
+		for (NodeWithAnnotations current : page) {
+			if (!context.aclsByBenefactor.containsKey(current.getBenefactorId())) {
+				toLoad.add(current.getBenefactorId());
+			}
+		}
+		if (toLoad.isEmpty())
+			return;
+		Map<String, AccessControlList> acls = backupManager.getNodeACLs(toLoad);
+		for (String benefactorId : toLoad) {
+			// A benefactor without an ACL is cached too so it is not loaded again
+			context.aclsByBenefactor.put(benefactorId, acls.get(benefactorId));
 		}
-		outputStream.write(']');
-		outputStream.flush();
-		outputStream.close();
 	}
 
 	/**
-	 * This is a recursive method that will write the full tree of node data to
-	 * the search document batch.
+	 * Create the path header of a node from the node itself, matching what
+	 * the path query returns.
+	 */
+	private static EntityHeader createPathHeader(Node node) {
+		EntityHeader header = new EntityHeader();
+		header.setId(node.getId());
+		header.setName(node.getName());
+		header.setType(EntityType.valueOf(node.getNodeType()).getEntityType());
+		return header;
+	}
+
+	/**
+	 * A node waiting to be written.
+	 */
+	private static class PendingDocument {
+		final String nodeId;
+		// Null when the path must be looked up.
+		final List<EntityHeader> parentPath;
+
+		PendingDocument(String nodeId, List<EntityHeader> parentPath) {
+			this.nodeId = nodeId;
+			this.parentPath = parentPath;
+		}
+	}
+
+	/**
+	 * Write the search documents of a page of nodes. The nodes of the page are
+	 * loaded with their current revisions in a single call.
 	 * 
+	 * @return the children of the page when recursing
 	 * @throws JSONObjectAdapterException
 	 */
-	private void writeSearchDocumentBatch(OutputStream outputStream,
-			NodeBackup backup, String path, Progress progress,
-			boolean isRecursive, boolean isFirstEntry)
-			throws NotFoundException, DatastoreException, InterruptedException,
-			IOException, JSONObjectAdapterException {
-		if (backup == null)
-			throw new IllegalArgumentException("NodeBackup cannot be null");
-		if (backup.getNode() == null)
-			throw new IllegalArgumentException("NodeBackup.node cannot be null");
-		Node node = backup.getNode();
-		if (node.getId() == null)
-			throw new IllegalArgumentException("node.id cannot be null");
-		// Since this could be called in a tight loop, we need to be
-		// CPU friendly
-		Thread.yield();
-		path = path + node.getId() + PATH_DELIMITER;
-		// Write this node
-		// A well-formed JSON array does not end with a final comma, so here's
-		// how we ensure we add the right commas
-		if (isFirstEntry) {
-			isFirstEntry = false;
-		} else {
-			outputStream.write(",\n".getBytes());
+	private List<PendingDocument> writeSearchDocumentPage(
+			OutputStream outputStream, List<PendingDocument> page,
+			Progress progress, boolean isRecursive, boolean isFirstEntry,
+			BatchContext context) throws NotFoundException,
+			DatastoreException, InterruptedException, IOException,
+			JSONObjectAdapterException {
+		List<String> ids = new ArrayList<String>(page.size());
+		for (PendingDocument toWrite : page) {
+			ids.add(toWrite.nodeId);
 		}
-		writeSearchDocument(outputStream, backup, path);
-		progress.setMessage(backup.getNode().getName());
-		progress.incrementProgress();
-		log.info(progress.toString());
-		// Check for termination.
-		checkForTermination(progress);
-		if (isRecursive) {
-			// now write each child
-			List<String> childList = backup.getChildren();
-			if (childList != null) {
-				for (String childId : childList) {
-					NodeBackup child = backupManager.getNode(childId);
-					writeSearchDocumentBatch(outputStream, child, path,
-							progress, isRecursive, false);
+		Map<String, NodeWithAnnotations> loaded = backupManager
+				.getNodesWithAnnotations(ids);
+		loadBenefactorAcls(loaded.values(), context);
+		List<PendingDocument> children = new ArrayList<PendingDocument>();
+		for (PendingDocument toWrite : page) {
+			NodeWithAnnotations current = loaded.get(toWrite.nodeId);
+			if (current == null)
+				throw new IllegalArgumentException("Cannot backup node: "
+						+ toWrite.nodeId + " because it does not exists");
+			Node node = current.getNode();
+			// Since this could be called in a tight loop, we need to be
+			// CPU friendly
+			Thread.yield();
+			List<EntityHeader> parentPath = toWrite.parentPath != null ? toWrite.parentPath
+					: getParentPath(node, context);
+			List<EntityHeader> path = new ArrayList<EntityHeader>(parentPath.size() + 1);
+			path.addAll(parentPath);
+			path.add(createPathHeader(node));
+			// A well-formed JSON array does not end with a final comma, so here's
+			// how we ensure we add the right commas
+			if (isFirstEntry) {
+				isFirstEntry = false;
+			} else {
+				outputStream.write(",\n".getBytes());
+			}
+			outputStream.write(cleanSearchDocument(formulateSearchDocument(
+					current, path, context)));
+			progress.setMessage(node.getName());
+			progress.incrementProgress();
+			log.info(progress.toString());
+			// Check for termination.
+			checkForTermination(progress);
+			if (isRecursive) {
+				for (String childId : backupManager.getNodeChildrenIds(node.getId())) {
+					children.add(new PendingDocument(childId, path));
 				}
 			}
 		}
+		return children;
 	}
 
 	/**
@@ -265,37 +371,67 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	}
 
 	/**
-	 * Write a single search document
-	 * 
-	 * @throws JSONObjectAdapterException
+	 * Create the search document of a node whose path is already known.
 	 */
-	private void writeSearchDocument(OutputStream outputStream,
-			NodeBackup backup, String path) throws NotFoundException,
-			DatastoreException, IOException, JSONObjectAdapterException {
-		if (backup == null)
-			throw new IllegalArgumentException("NodeBackup cannot be null");
-		if (backup.getNode() == null)
-			throw new IllegalArgumentException("NodeBackup.node cannot be null");
-		Node node = backup.getNode();
+	private Document formulateSearchDocument(NodeWithAnnotations current,
+			List<EntityHeader> pathHeaders, BatchContext context)
+			throws NotFoundException, DatastoreException {
+		Node node = current.getNode();
 		if (node.getId() == null)
 			throw new IllegalArgumentException("node.id cannot be null");
-		String benefactorId = backup.getBenefactor();
-		NodeBackup benefactorBackup = backupManager.getNode(benefactorId);
-		Long revId = node.getVersionNumber();
-		NodeRevisionBackup rev = backupManager.getNodeRevision(node.getId(),
-				revId);
+		// The ACLs of the page were loaded with the page
+		AccessControlList acl = context.aclsByBenefactor.get(current
+				.getBenefactorId());
 
-		List<EntityHeader> pathHeaders = nodeManager.getNodePathAsAdmin(node.getId());
 		EntityPath entityPath = new EntityPath();
 		entityPath.setPath(pathHeaders);
-		
-		Document document = formulateSearchDocument(node, rev, benefactorBackup
-				.getAcl(), entityPath);
-		outputStream.write(cleanSearchDocument(document));
-		outputStream.flush();
+
+		return formulateSearchDocument(node, current.getAnnotations(), acl,
+				entityPath, context.displayNames);
 	}
 
-	static byte[] cleanSearchDocument(Document document)
+	@Override
+	public List<Document> formulateSearchDocuments(Collection<String> entityIds)
+			throws DatastoreException {
+		BatchContext context = new BatchContext();
+		List<Document> documents = new ArrayList<Document>(entityIds.size());
+		List<String> ids = new ArrayList<String>(entityIds);
+		for (int start = 0; start < ids.size(); start += PAGE_SIZE) {
+			List<String> page = ids.subList(start,
+					Math.min(ids.size(), start + PAGE_SIZE));
+			// Deleted entities are not in the map
+			Map<String, NodeWithAnnotations> loaded = backupManager
+					.getNodesWithAnnotations(page);
+			loadBenefactorAcls(loaded.values(), context);
+			for (String entityId : page) {
+				NodeWithAnnotations current = loaded.get(entityId);
+				try {
+					if (current == null)
+						throw new NotFoundException();
+					List<EntityHeader> path = new ArrayList<EntityHeader>(
+							getParentPath(current.getNode(), context));
+					path.add(createPathHeader(current.getNode()));
+					documents.add(formulateSearchDocument(current, path,
+							context));
+				} catch (NotFoundException e) {
+					// The entity or one of its ancestors was deleted
+					log.debug("Skipping search document for deleted entity: "
+							+ entityId);
+				}
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Serialize a search document the way search expects it.
+	 * 
+	 * @param document
+	 * @return the UTF-8 bytes of the document
+	 * @throws UnsupportedEncodingException
+	 * @throws JSONObjectAdapterException
+	 */
+	public static byte[] cleanSearchDocument(Document document)
 			throws UnsupportedEncodingException, JSONObjectAdapterException {
 		String serializedDocument = EntityFactory
 				.createJSONStringForEntity(document);
@@ -316,6 +452,14 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	@Override
 	public Document formulateSearchDocument(Node node, NodeRevisionBackup rev,
 			AccessControlList acl, EntityPath entityPath) throws DatastoreException, NotFoundException {
+		return formulateSearchDocument(node, rev.getNamedAnnotations(), acl,
+				entityPath, new HashMap<Long, String>());
+	}
+
+	private Document formulateSearchDocument(Node node,
+			NamedAnnotations annotations, AccessControlList acl,
+			EntityPath entityPath,
+			Map<Long, String> displayNames) throws DatastoreException, NotFoundException {
 		DateTime now = DateTime.now();
 		Document document = new Document();
 		DocumentFields fields = new DocumentFields();
@@ -352,9 +496,9 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		if (null != node.getDescription()) {
 			fields.setDescription(node.getDescription());
 		}
-		fields.setCreated_by(getDisplayNameForPrincipalId(node.getCreatedByPrincipalId()));
+		fields.setCreated_by(getDisplayNameForPrincipalId(node.getCreatedByPrincipalId(), displayNames));
 		fields.setCreated_on(node.getCreatedOn().getTime() / 1000);
-		fields.setModified_by(getDisplayNameForPrincipalId(node.getModifiedByPrincipalId()));
+		fields.setModified_by(getDisplayNameForPrincipalId(node.getModifiedByPrincipalId(), displayNames));
 		fields.setModified_on(node.getModifiedOn().getTime() / 1000);
 
 		// Stuff in this field any extra copies of data that you would like to
@@ -375,9 +519,9 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		fields.setTissue(new ArrayList<String>());
 		fields.setPlatform(new ArrayList<String>());
 		fields.setNum_samples(new ArrayList<Long>());
-		addAnnotationsToSearchDocument(fields, rev.getNamedAnnotations()
+		addAnnotationsToSearchDocument(fields, annotations
 				.getPrimaryAnnotations());
-		addAnnotationsToSearchDocument(fields, rev.getNamedAnnotations()
+		addAnnotationsToSearchDocument(fields, annotations
 				.getAdditionalAnnotations());
 
 		// Transform the annotations array back to an array containing a single
@@ -439,7 +583,17 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		return document;
 	}
 
-	private String getDisplayNameForPrincipalId(long principalId) {
+	private String getDisplayNameForPrincipalId(long principalId,
+			Map<Long, String> displayNames) {
+		String displayName = displayNames.get(principalId);
+		if (displayName == null) {
+			displayName = lookupDisplayName(principalId);
+			displayNames.put(principalId, displayName);
+		}
+		return displayName;
+	}
+
+	private String lookupDisplayName(long principalId) {
 		String displayName = ""+principalId;
 		try {
 			displayName = userManager.getDisplayName(principalId);
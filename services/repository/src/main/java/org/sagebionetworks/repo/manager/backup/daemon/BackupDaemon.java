@@ -6,7 +6,9 @@ import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.util.Date;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,6 +38,7 @@ public class BackupDaemon implements Runnable{
 	
 	private static final String PREFIX_BACKUP = "Backup-";
 	private static final String PREFIX_TEMP = "temp-";
+	private static final String PREFIX_INCREMENTAL = "Incremental-";
 	private static final String PREFIX_SEARCH = "search-";
 	static private Log log = LogFactory.getLog(BackupDaemon.class);
 	public static long NANO_SECONDS_PER_MILISECOND = 1000000;
@@ -52,6 +55,8 @@ public class BackupDaemon implements Runnable{
 	private String backupFileName;
 	// The set of entities to backup
 	private Set<String> entitiesToBackup;
+	// The last change included in an incremental backup.
+	private long lastChangeNumber;
 	
 	private BackupRestoreStatus status;
 	private long startTimeNano;
@@ -66,6 +71,10 @@ public class BackupDaemon implements Runnable{
 	// Is the driver daemon done?
 	private volatile boolean isDriverDone;
 	private volatile Throwable driverError;
+	// Released when the driver finishes or fails so the watcher does not have to sleep it out.
+	private CountDownLatch driverFinished;
+	// Told when this daemon has written its final status.
+	private DaemonCompletionRegistry completionRegistry;
 
 	
 	/**
@@ -98,6 +107,14 @@ public class BackupDaemon implements Runnable{
 		this.entitiesToBackup = entitiesToBackup;
 	}
 	
+	/**
+	 * Set the registry that is told when this daemon finishes.  This is protected and should only be called from the launcher.
+	 * @param completionRegistry
+	 */
+	void setCompletionRegistry(DaemonCompletionRegistry completionRegistry) {
+		this.completionRegistry = completionRegistry;
+	}
+	
 	/**
 	 * Get the backup file name
 	 * @return
@@ -121,6 +138,10 @@ public class BackupDaemon implements Runnable{
 				// This is a full backup file.
 				prefix = PREFIX_BACKUP;
 			}
+			else if(DaemonType.INCREMENTAL_BACKUP == type) {
+				// Unlike the temporary files these are kept.
+				prefix = PREFIX_INCREMENTAL;
+			}
 			else if(DaemonType.SEARCH_DOCUMENT == type) {
 				prefix = PREFIX_SEARCH;
 			}
@@ -162,8 +183,8 @@ public class BackupDaemon implements Runnable{
 				if(driverError != null){
 					throw new Throwable(driverError);
 				}
-				// First sleep to give the drive a chance to work
-				Thread.sleep(1000);
+				// Give the driver a chance to work, waking up as soon as it finishes.
+				driverFinished.await(1000, TimeUnit.MILLISECONDS);
 				// Should we terminate?
 				progress.setTerminate(backupRestoreStatusDao.shouldJobTerminate(status.getId()));
 				// Update the status from the progress
@@ -178,7 +199,7 @@ public class BackupDaemon implements Runnable{
 				updateStatus();
 			}
 			// If this a backup then update the file to s3
-			if(DaemonType.BACKUP == type){
+			if(DaemonType.BACKUP == type || DaemonType.INCREMENTAL_BACKUP == type){
 				// Once the driver is done upload the file to S3.
 				status.setProgresssMessage("Starting to upload temp file: "+tempBackup.getAbsolutePath()+" to S3...");
 				updateStatus();
@@ -204,7 +225,12 @@ public class BackupDaemon implements Runnable{
 
 			// We are done
 			status.setStatus(DaemonStatus.COMPLETED);
-			status.setProgresssMessage("Finished: "+this.type);
+			if(DaemonType.INCREMENTAL_BACKUP == type){
+				// The next incremental backup should start after this change.
+				status.setProgresssMessage("Finished: "+this.type+" through change number: "+lastChangeNumber);
+			}else{
+				status.setProgresssMessage("Finished: "+this.type);
+			}
 			status.setProgresssCurrent(status.getProgresssTotal());
 			// update the status for the last time.
 			updateStatus();
@@ -218,6 +244,10 @@ public class BackupDaemon implements Runnable{
 				// Delete the temp file
 				tempToDelete.delete();
 			}
+			// The final status has been written so release anyone waiting on this daemon.
+			if(completionRegistry != null){
+				completionRegistry.complete(status.getId());
+			}
 		}
 	}
 
@@ -228,6 +258,7 @@ public class BackupDaemon implements Runnable{
 	 */
 	private void startDriverThread(final File tempBackup, final Progress progress) {
 		isDriverDone = false;
+		driverFinished = new CountDownLatch(1);
 		// The second level pool is used to do the actual work.
 		// We need a second pool to prevent deadlock.
 		workerPool.execute(new Runnable(){
@@ -235,7 +266,7 @@ public class BackupDaemon implements Runnable{
 			public void run() {
 				// Tell the driver to do its thing
 				try {
-					if(DaemonType.BACKUP == type){
+					if(DaemonType.BACKUP == type || DaemonType.INCREMENTAL_BACKUP == type){
 						// This is a backup
 						backupDriver.writeBackup(tempBackup, progress, entitiesToBackup);							
 					}else if(DaemonType.RESTORE == type) {
@@ -251,7 +282,9 @@ public class BackupDaemon implements Runnable{
 				} catch (Throwable e) {
 					// Keep track of the error.
 					driverError = e;
-				} 
+				} finally {
+					driverFinished.countDown();
+				}
 		}});
 	}
 
@@ -311,6 +344,21 @@ public class BackupDaemon implements Runnable{
 		return start(userPrincipalId);
 	}
 	
+	/**
+	 * Start this daemon for a backup of the entities changed since a change number.
+	 * @param userPrincipalId
+	 * @param lastChangeNumber The last change included in this backup.
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public BackupRestoreStatus startIncrementalBackup(String userPrincipalId, long lastChangeNumber) throws DatastoreException {
+		if(userPrincipalId == null) throw new IllegalArgumentException("userPrincipalId cannot be null");
+		if(entitiesToBackup == null) throw new IllegalArgumentException("An incremental backup must have a set of entities to backup");
+		this.type = DaemonType.INCREMENTAL_BACKUP;
+		this.lastChangeNumber = lastChangeNumber;
+		return start(userPrincipalId);
+	}
+	
 	/**
 	 * Start this daemon for a restore.
 	 * @param userName
@@ -355,6 +403,9 @@ public class BackupDaemon implements Runnable{
 		// Create the new status.
 		String id = backupRestoreStatusDao.create(status);
 		status.setId(id);
+		if(completionRegistry != null){
+			completionRegistry.register(id);
+		}
 		// Now that we have our status we are ready to go.
 		// Start the watcher thread.
 		watcherPool.execute(this);
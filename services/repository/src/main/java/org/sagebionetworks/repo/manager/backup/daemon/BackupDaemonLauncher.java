@@ -1,8 +1,13 @@
 package org.sagebionetworks.repo.manager.backup.daemon;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Set;
 
+import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.repo.model.MigratableObjectType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
@@ -33,6 +38,42 @@ public interface BackupDaemonLauncher {
 	 */
 	public BackupRestoreStatus startRestore(UserInfo username, String fileName, MigratableObjectType migrationType) throws UnauthorizedException, DatastoreException;
 	
+	/**
+	 * Write a backup directly to the passed stream on the caller's thread.  Unlike a backup daemon
+	 * nothing is written to a temp file or S3, so another stack can restore the stream as it arrives.
+	 * 
+	 * @param username
+	 * @param entitiesToBackup
+	 * @param migrationType
+	 * @param out The zipped backup is written to this stream in frames, ending with an empty frame once the
+	 * backup is complete (see {@link org.sagebionetworks.repo.manager.backup.FramedBackupOutputStream}).
+	 * The stream is not closed.
+	 * @throws UnauthorizedException
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void streamBackup(UserInfo username, Set<String> entitiesToBackup, MigratableObjectType migrationType, OutputStream out) throws UnauthorizedException, DatastoreException, NotFoundException, IOException, InterruptedException;
+	
+	/**
+	 * Restore from a backup stream on the caller's thread, applying each batch as it is read.
+	 * 
+	 * @param username
+	 * @param migrationType
+	 * @param in A framed backup as written by {@link #streamBackup(UserInfo, Set, MigratableObjectType, OutputStream)}.
+	 * An IOException is thrown if the stream ends before the backup is complete.
+	 * @return The COMPLETED status of the restore.
+	 * @throws UnauthorizedException
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws InvalidModelException
+	 * @throws ConflictingUpdateException
+	 */
+	public BackupRestoreStatus restoreFromStream(UserInfo username, MigratableObjectType migrationType, InputStream in) throws UnauthorizedException, DatastoreException, NotFoundException, IOException, InterruptedException, InvalidModelException, ConflictingUpdateException;
+	
 	public void delete(UserInfo username, MigratableObjectDescriptor mod) throws UnauthorizedException, DatastoreException, NotFoundException;
 	/**
 	 * The daemon should create a starting status, and then start the thread 
@@ -43,6 +84,19 @@ public interface BackupDaemonLauncher {
 	 */
 	public BackupRestoreStatus startSearchDocument(UserInfo userInfo, Set<String> entityIds) throws UnauthorizedException, DatastoreException;
 
+	/**
+	 * Start a backup of every entity that was created or changed, or had its ACL changed,
+	 * since the given change number.  Changes that have not committed when the change log is read are
+	 * waited for, so no change up to the last change number of the backup is missed.
+	 * Entities that no longer exist are left out and parents are written before their children.
+	 * @param userInfo
+	 * @param sinceChangeNumber Changes with a change number greater than or equal to this are included.
+	 * @return
+	 * @throws UnauthorizedException
+	 * @throws DatastoreException
+	 */
+	public BackupRestoreStatus startIncrementalBackup(UserInfo userInfo, long sinceChangeNumber) throws UnauthorizedException, DatastoreException;
+
 
 	/**
 	 * Terminate an existing backup daemon.
@@ -64,5 +118,18 @@ public interface BackupDaemonLauncher {
 	 * @throws DatastoreException 
 	 */
 	public BackupRestoreStatus getStatus(UserInfo username, String id) throws UnauthorizedException, DatastoreException, NotFoundException;
+	
+	/**
+	 * Wait for a daemon to finish and then get its status.  This returns as soon as the daemon is COMPLETED or FAILED,
+	 * or when the wait is over, whichever comes first.
+	 * @param username
+	 * @param id
+	 * @param maxWaitMS The longest to wait.  This is capped at {@link BackupDaemonLauncherImpl#MAX_WAIT_MS}.
+	 * @return
+	 * @throws UnauthorizedException
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 */
+	public BackupRestoreStatus waitForCompletion(UserInfo username, String id, long maxWaitMS) throws UnauthorizedException, DatastoreException, NotFoundException;
 
 }
@@ -1,19 +1,42 @@
 package org.sagebionetworks.repo.manager.backup.daemon;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.repo.manager.backup.FramedBackupInputStream;
+import org.sagebionetworks.repo.manager.backup.FramedBackupOutputStream;
 import org.sagebionetworks.repo.manager.backup.GenericBackupDriver;
+import org.sagebionetworks.repo.manager.backup.Progress;
 import org.sagebionetworks.repo.manager.backup.SearchDocumentDriver;
 import org.sagebionetworks.repo.model.BackupRestoreStatusDAO;
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.repo.model.MigratableObjectType;
+import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
+import org.sagebionetworks.repo.model.daemon.DaemonStatus;
+import org.sagebionetworks.repo.model.daemon.DaemonType;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -31,6 +54,12 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 	
 	private static String backupBucket = StackConfiguration.getSharedS3BackupBucket();
 	private static String workflowBucket = StackConfiguration.getS3WorkflowBucket();
+	// The number of changes read from the change log at a time.
+	static final long CHANGE_PAGE_SIZE = 1000;
+	// The longest a caller can wait for a daemon to finish in one call.
+	public static final long MAX_WAIT_MS = 30*1000;
+	// How often to check the status of a daemon that is running on another instance.
+	static final long REMOTE_POLL_MS = 250;
 	
 	@Autowired
 	BackupRestoreStatusDAO backupRestoreStatusDao;
@@ -41,12 +70,21 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 	@Autowired
 	SearchDocumentDriver searchDocumentDriver;
 	
+	@Autowired
+	ChangeDAO changeDAO;
+	
+	@Autowired
+	NodeDAO nodeDao;
+	
 	@Autowired
 	ExecutorService backupDaemonThreadPool;
 	
 	@Autowired
 	ExecutorService backupDaemonThreadPool2;
 	
+	// The daemons started by this instance.
+	DaemonCompletionRegistry completionRegistry = new DaemonCompletionRegistry();
+	
 	// for use by Spring
 	public void setBackupDriverMap(Map<String,GenericBackupDriver> map) {
 		this.backupDriverMap = map;
@@ -67,6 +105,7 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 		
 		// Create a new daemon and start it
 		BackupDaemon daemon = new BackupDaemon(backupRestoreStatusDao, typeSpecificBackupDriver, searchDocumentDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, entitiesToBackup);
+		daemon.setCompletionRegistry(completionRegistry);
 		// Start that bad boy up!
 		return daemon.startBackup(username.getIndividualGroup().getId());
 	}
@@ -82,10 +121,116 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 		// Create a new daemon and start it
 		GenericBackupDriver entityBackupDriver = backupDriverMap.get(MigratableObjectType.ENTITY.name());
 		BackupDaemon daemon = new BackupDaemon(backupRestoreStatusDao, entityBackupDriver, searchDocumentDriver, client, workflowBucket, backupDaemonThreadPool, backupDaemonThreadPool2, entityIds);
+		daemon.setCompletionRegistry(completionRegistry);
 		// Start that bad boy up!
 		return daemon.startSearchDocument(username.getIndividualGroup().getId());
 	}
 	
+	@Override
+	public BackupRestoreStatus startIncrementalBackup(UserInfo username, long sinceChangeNumber) throws UnauthorizedException, DatastoreException {
+		UserInfo.validateUserInfo(username);
+		// Only an admin can start a backup Daemon
+		if(!username.isAdmin()) throw new UnauthorizedException("Must be an administrator to start a backup daemon");
+		// Changes made while the log is read are left for the next backup.
+		long lastChangeNumber = changeDAO.getCurrentChangeNumber();
+		Set<String> entityIds = getEntitiesChangedSince(sinceChangeNumber, lastChangeNumber);
+		
+		AmazonS3Client client = createNewAWSClient();
+		
+		// Create a new daemon and start it
+		GenericBackupDriver entityBackupDriver = backupDriverMap.get(MigratableObjectType.ENTITY.name());
+		BackupDaemon daemon = new BackupDaemon(backupRestoreStatusDao, entityBackupDriver, searchDocumentDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2, entityIds);
+		daemon.setCompletionRegistry(completionRegistry);
+		return daemon.startIncrementalBackup(username.getIndividualGroup().getId(), lastChangeNumber);
+	}
+
+	/**
+	 * Read the change log a page at a time.  Each object has a single change so a deleted entity
+	 * cannot also have a later change.  An ACL change includes its owning entity.
+	 * 
+	 * Each page waits for the changes below its last change number that have not committed yet,
+	 * so once the last page is read no change up to the last change number can still appear and the
+	 * next backup can start right after it.
+	 * 
+	 * An entity can still be deleted after its change is read, so only the entities that still exist
+	 * are returned, with each parent before its children so the backup can be restored in order.
+	 * @param sinceChangeNumber
+	 * @param lastChangeNumber
+	 * @return
+	 * @throws DatastoreException
+	 */
+	Set<String> getEntitiesChangedSince(long sinceChangeNumber, long lastChangeNumber) throws DatastoreException {
+		Set<String> entityIds = new HashSet<String>();
+		Set<String> deletedIds = new HashSet<String>();
+		long next = sinceChangeNumber;
+		while(next <= lastChangeNumber){
+			List<ChangeMessage> page = changeDAO.listCommittedChanges(next, CHANGE_PAGE_SIZE);
+			if(page.isEmpty()) break;
+			for(ChangeMessage change: page){
+				if(change.getChangeNumber() > lastChangeNumber) break;
+				if(ObjectType.ENTITY == change.getObjectType() && ChangeType.DELETE == change.getChangeType()){
+					deletedIds.add(change.getObjectId());
+				}else{
+					entityIds.add(change.getObjectId());
+				}
+			}
+			next = page.get(page.size()-1).getChangeNumber()+1;
+		}
+		entityIds.removeAll(deletedIds);
+		return sortParentsFirst(entityIds);
+	}
+
+	/**
+	 * Order the entities that still exist by their depth in the tree.  The ancestors of the entities
+	 * are read a level at a time, so this takes one query per level per block of ids.
+	 * @param entityIds
+	 * @return
+	 * @throws DatastoreException
+	 */
+	Set<String> sortParentsFirst(Set<String> entityIds) throws DatastoreException {
+		// Entities that were deleted, directly or with an ancestor, are not in the map.
+		final Map<String, String> parents = new HashMap<String, String>(nodeDao.getParentIds(entityIds));
+		List<String> toSort = new ArrayList<String>(parents.keySet());
+		Set<String> toLoad = findUnknownParents(parents);
+		while(!toLoad.isEmpty()){
+			Map<String, String> loaded = nodeDao.getParentIds(toLoad);
+			for(String id: toLoad){
+				// An ancestor deleted since its descendants were read is treated as a root.
+				parents.put(id, loaded.get(id));
+			}
+			toLoad = findUnknownParents(parents);
+		}
+		final Map<String, Integer> depths = new HashMap<String, Integer>();
+		for(String id: toSort){
+			depths.put(id, getDepth(id, parents));
+		}
+		Collections.sort(toSort, new Comparator<String>() {
+			@Override
+			public int compare(String one, String two) {
+				return depths.get(one).compareTo(depths.get(two));
+			}
+		});
+		return new LinkedHashSet<String>(toSort);
+	}
+
+	private static Set<String> findUnknownParents(Map<String, String> parents){
+		Set<String> unknown = new HashSet<String>();
+		for(String parentId: parents.values()){
+			if(parentId != null && !parents.containsKey(parentId)){
+				unknown.add(parentId);
+			}
+		}
+		return unknown;
+	}
+
+	private static int getDepth(String id, Map<String, String> parents){
+		int depth = 0;
+		for(String parentId = parents.get(id); parentId != null; parentId = parents.get(parentId)){
+			depth++;
+		}
+		return depth;
+	}
+	
 	@Override
 	public BackupRestoreStatus startRestore(UserInfo username, String fileName, MigratableObjectType migrationType)	throws UnauthorizedException, DatastoreException {
 		UserInfo.validateUserInfo(username);
@@ -101,9 +246,62 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 		
 		// Create a new daemon and start it
 		BackupDaemon daemon = new BackupDaemon(backupRestoreStatusDao, typeSpecificBackupDriver, searchDocumentDriver, client, backupBucket, backupDaemonThreadPool, backupDaemonThreadPool2);
+		daemon.setCompletionRegistry(completionRegistry);
 		return daemon.startRestore(username.getIndividualGroup().getId(), fileName);
 	}
 
+	@Override
+	public void streamBackup(UserInfo username, Set<String> entitiesToBackup, MigratableObjectType migrationType, OutputStream out)
+			throws UnauthorizedException, DatastoreException, NotFoundException, IOException, InterruptedException {
+		UserInfo.validateUserInfo(username);
+		// Only an admin can stream a backup
+		if(!username.isAdmin()) throw new UnauthorizedException("Must be an administrator to stream a backup");
+		if(out == null) throw new IllegalArgumentException("Output stream cannot be null");
+		GenericBackupDriver typeSpecificBackupDriver = getBackupDriver(migrationType);
+		// The response status has already been sent, so the end frame is what tells the reader the backup is complete.
+		FramedBackupOutputStream framed = new FramedBackupOutputStream(out);
+		typeSpecificBackupDriver.writeBackup(framed, new Progress(), entitiesToBackup);
+		framed.finish();
+	}
+
+	@Override
+	public BackupRestoreStatus restoreFromStream(UserInfo username, MigratableObjectType migrationType, InputStream in)
+			throws UnauthorizedException, DatastoreException, NotFoundException, IOException, InterruptedException, InvalidModelException, ConflictingUpdateException {
+		UserInfo.validateUserInfo(username);
+		// Only an admin can restore
+		if(!username.isAdmin()) throw new UnauthorizedException("Must be an administrator to restore from a stream");
+		if(in == null) throw new IllegalArgumentException("Input stream cannot be null");
+		GenericBackupDriver typeSpecificBackupDriver = getBackupDriver(migrationType);
+		long start = System.currentTimeMillis();
+		Progress progress = new Progress();
+		FramedBackupInputStream framed = new FramedBackupInputStream(in);
+		typeSpecificBackupDriver.restoreFromBackup(framed, progress);
+		// The driver stops reading at the end of the zip entries, so read on to the end frame to reject a stream that was cut short.
+		// Batches applied before that point stay applied; the restore creates or updates so it can simply be run again.
+		framed.readToEnd();
+		// The restore is finished when we get here so the status is not persisted.
+		BackupRestoreStatus status = new BackupRestoreStatus();
+		status.setType(DaemonType.RESTORE);
+		status.setStatus(DaemonStatus.COMPLETED);
+		status.setStartedBy(username.getIndividualGroup().getId());
+		status.setStartedOn(new Date(start));
+		status.setProgresssMessage("Finished: "+DaemonType.RESTORE);
+		status.setProgresssCurrent(progress.getCurrentIndex());
+		status.setProgresssTotal(progress.getCurrentIndex());
+		status.setLog(progress.getLog());
+		status.setTotalTimeMS(System.currentTimeMillis()-start);
+		return status;
+	}
+
+	private GenericBackupDriver getBackupDriver(MigratableObjectType migrationType) {
+		if (migrationType==null) throw new IllegalArgumentException("Migration type cannot be null");
+		GenericBackupDriver typeSpecificBackupDriver = backupDriverMap.get(migrationType.name());
+		if (typeSpecificBackupDriver==null) {
+			throw new IllegalArgumentException("No backupDriver for "+migrationType.toString());
+		}
+		return typeSpecificBackupDriver;
+	}
+
 	/**
 	 * Create a new AWS client using the configuration credentials.
 	 * @return
@@ -138,6 +336,31 @@ public class BackupDaemonLauncherImpl implements BackupDaemonLauncher {
 		return backupRestoreStatusDao.get(id);
 	}
 
+	@Override
+	public BackupRestoreStatus waitForCompletion(UserInfo user, String id, long maxWaitMS) throws UnauthorizedException, DatastoreException, NotFoundException {
+		BackupRestoreStatus status = getStatus(user, id);
+		long deadline = System.currentTimeMillis()+Math.min(maxWaitMS, MAX_WAIT_MS);
+		try {
+			while(!isFinished(status)){
+				long remaining = deadline-System.currentTimeMillis();
+				if(remaining <= 0) break;
+				// A daemon started by this instance tells us when it is done.  Any other daemon must be polled.
+				if(!completionRegistry.awaitCompletion(id, remaining)){
+					Thread.sleep(Math.min(remaining, REMOTE_POLL_MS));
+				}
+				status = backupRestoreStatusDao.get(id);
+			}
+		} catch (InterruptedException e) {
+			// Return what we have.
+			Thread.currentThread().interrupt();
+		}
+		return status;
+	}
+
+	private static boolean isFinished(BackupRestoreStatus status){
+		return DaemonStatus.COMPLETED == status.getStatus() || DaemonStatus.FAILED == status.getStatus();
+	}
+
 	@Override
 	public void delete(UserInfo user, MigratableObjectDescriptor mod)
 			throws UnauthorizedException, DatastoreException, NotFoundException {
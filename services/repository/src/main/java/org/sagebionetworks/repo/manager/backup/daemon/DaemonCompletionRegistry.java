@@ -0,0 +1,54 @@
+package org.sagebionetworks.repo.manager.backup.daemon;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets callers wait for a daemon running in this JVM to finish without polling its status.
+ * A daemon is registered before it starts and signals when it has written its final status.
+ * Daemons started by other instances are not registered here.
+ *
+ */
+public class DaemonCompletionRegistry {
+
+	private ConcurrentMap<String, CountDownLatch> running = new ConcurrentHashMap<String, CountDownLatch>();
+
+	/**
+	 * Register a daemon before it starts.
+	 * @param daemonId
+	 */
+	public void register(String daemonId) {
+		if(daemonId == null) throw new IllegalArgumentException("Daemon ID cannot be null");
+		running.putIfAbsent(daemonId, new CountDownLatch(1));
+	}
+
+	/**
+	 * Signal that a daemon has finished, releasing anyone waiting on it.
+	 * @param daemonId
+	 */
+	public void complete(String daemonId) {
+		if(daemonId == null) return;
+		CountDownLatch latch = running.remove(daemonId);
+		if(latch != null){
+			latch.countDown();
+		}
+	}
+
+	/**
+	 * Wait for a daemon of this JVM to finish.
+	 * @param daemonId
+	 * @param maxWaitMS
+	 * @return False if the daemon is not running in this JVM, so the caller must check its status instead.
+	 * True if the daemon finished or the wait timed out.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCompletion(String daemonId, long maxWaitMS) throws InterruptedException {
+		CountDownLatch latch = running.get(daemonId);
+		if(latch == null) return false;
+		latch.await(maxWaitMS, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.manager.backup.migration;
 
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.MigratableObjectData;
+import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.repo.model.QueryResults;
 
 /**
@@ -23,5 +24,17 @@ public interface DependencyManager {
 	 * @throws DatastoreException 
 	 */
 	QueryResults<MigratableObjectData> getAllObjects(long offset, long limit, boolean includeDependencies) throws DatastoreException;
+	
+	/**
+	 * get the objects that follow the given object, ordered by type and then by ID.  Unlike the offset
+	 * based method above, each page costs the same no matter how far into the listing it is, so a client
+	 * can stream the entire listing.
+	 * 
+	 * @param after, the last object of the previous page, or null for the first page
+	 * @param limit, pagination param
+	 * @return
+	 * @throws DatastoreException 
+	 */
+	QueryResults<MigratableObjectData> getAllObjectsAfter(MigratableObjectDescriptor after, long limit, boolean includeDependencies) throws DatastoreException;
 
 }
@@ -9,7 +9,9 @@ import java.util.List;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.MigratableDAO;
 import org.sagebionetworks.repo.model.MigratableObjectData;
+import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.repo.model.QueryResults;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
 
 /**
  * @author brucehoff
@@ -56,4 +58,33 @@ public class DependencyManagerImpl implements DependencyManager {
 			return queryResults;
 	}
 
+	@Override
+	public QueryResults<MigratableObjectData> getAllObjectsAfter(MigratableObjectDescriptor after, long limit, boolean includeDependencies) throws DatastoreException {
+		long total = 0L;
+		List<MigratableObjectData> ods = new ArrayList<MigratableObjectData>();
+		// the DAOs are listed in the order their objects are returned, so skip the DAOs before the 'after' type
+		boolean started = (after==null);
+		for (MigratableDAO migratableDAO : getMigratableDaos()) {
+			long afterId = -1L;
+			if (!started && migratableDAO.getMigratableObjectType().equals(after.getType())) {
+				started = true;
+				afterId = KeyFactory.stringToKey(after.getId());
+			}
+			long numNeeded = limit-ods.size();
+			if (started && numNeeded>0L) {
+				QueryResults<MigratableObjectData> localResults = 
+					migratableDAO.getMigrationObjectDataAfter(afterId, numNeeded, includeDependencies);
+				ods.addAll(localResults.getResults());
+				total += localResults.getTotalNumberOfResults();
+			} else {
+				total += migratableDAO.getCount();
+			}
+		}
+		if (!started) throw new IllegalArgumentException("Unknown object type: "+after.getType());
+		QueryResults<MigratableObjectData> queryResults = new QueryResults<MigratableObjectData>();
+		queryResults.setResults(ods);
+		queryResults.setTotalNumberOfResults((int)total);
+		return queryResults;
+	}
+
 }
@@ -0,0 +1,22 @@
+package org.sagebionetworks.repo.manager.search;
+
+import java.io.IOException;
+
+import org.sagebionetworks.utils.HttpClientHelperException;
+
+/**
+ * Sends batches of search documents to the search index.
+ *
+ */
+public interface CloudSearchClient {
+
+	/**
+	 * Send a batch of search documents.
+	 * 
+	 * @param batch A JSON array of search documents encoded as UTF-8.
+	 * @throws IOException
+	 * @throws HttpClientHelperException
+	 */
+	public void sendDocuments(byte[] batch) throws IOException, HttpClientHelperException;
+
+}
@@ -0,0 +1,36 @@
+package org.sagebionetworks.repo.manager.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.client.HttpClient;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.utils.HttpClientHelper;
+import org.sagebionetworks.utils.HttpClientHelperException;
+
+/**
+ * Sends search documents to the CloudSearch document service of this stack.
+ *
+ */
+public class CloudSearchClientImpl implements CloudSearchClient {
+
+	private static final Map<String, String> SEND_DOCUMENTS_REQUEST_HEADERS;
+	static {
+		Map<String, String> requestHeaders = new HashMap<String, String>();
+		requestHeaders.put("Content-Type", "application/json; charset=UTF-8");
+		SEND_DOCUMENTS_REQUEST_HEADERS = Collections.unmodifiableMap(requestHeaders);
+	}
+
+	private HttpClient httpClient = HttpClientHelper.createNewClient(true);
+	private String documentServiceEndpoint = StackConfiguration.getDocumentServiceEndpoint();
+
+	@Override
+	public void sendDocuments(byte[] batch) throws IOException, HttpClientHelperException {
+		HttpClientHelper.postStream(httpClient, documentServiceEndpoint,
+				new ByteArrayInputStream(batch), batch.length, SEND_DOCUMENTS_REQUEST_HEADERS);
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.sagebionetworks.repo.manager.search;
+
+import org.sagebionetworks.repo.model.DatastoreException;
+
+/**
+ * Keeps the search index up to date by sending the search documents of entities as
+ * they change.  Entity and ACL changes are read from the change log.
+ *
+ */
+public interface SearchIndexUpdater {
+
+	/**
+	 * Called by the scheduler.  Sends the search documents of everything that changed
+	 * since the last run.  When a batch cannot be sent the run stops and the next run
+	 * starts over from the first change that was not sent.  Only the instance that holds
+	 * the lease of the updater's change log cursor does anything.
+	 * @throws DatastoreException
+	 */
+	public void updateIndex() throws DatastoreException;
+
+	/**
+	 * The number of changes in the change log that were not yet sent to the index as
+	 * of the end of the last run on this instance.
+	 * @return
+	 */
+	public long getChangeNumberLag();
+
+	/**
+	 * How long it has been since a run last caught up with the change log.
+	 * @return -1 if no run has caught up yet.
+	 */
+	public long getMSSinceCaughtUp();
+
+	/**
+	 * The total number of search documents sent.
+	 * @return
+	 */
+	public long getDocumentsSentCount();
+
+	/**
+	 * The total number of attempts to send a batch that failed.
+	 * @return
+	 */
+	public long getFailedAttemptCount();
+
+}
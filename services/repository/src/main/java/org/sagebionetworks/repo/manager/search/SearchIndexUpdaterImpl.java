@@ -0,0 +1,385 @@
+package org.sagebionetworks.repo.manager.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.repo.manager.backup.SearchDocumentDriver;
+import org.sagebionetworks.repo.manager.backup.SearchDocumentDriverImpl;
+import org.sagebionetworks.repo.model.ChangeCursorDAO;
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.NodeInheritanceDAO;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
+import org.sagebionetworks.repo.model.search.Document;
+import org.sagebionetworks.repo.model.search.DocumentTypeNames;
+import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import profiler.org.sagebionetworks.cloudwatch.Consumer;
+import profiler.org.sagebionetworks.cloudwatch.ProfileData;
+
+/**
+ * Reads the change log page by page and sends the search documents of the changed entities in
+ * batches.  The change log only keeps the latest change of each object, so an entity edited many
+ * times between runs is only sent once, and each page is further reduced to one document per entity.
+ *
+ * An ACL change is sent as a new document for every entity that inherits from the ACL, a page
+ * of entities at a time.  Deleting an entity records a delete for each of its descendants as
+ * well, so the documents of the whole subtree are removed.
+ *
+ * The log is read with {@link ChangeDAO#listCommittedChanges(long, long)}, which waits for changes
+ * that have not committed yet, so the updater can continue right after the last change it read.
+ * The position in the change log is kept in the database and only the instance holding its
+ * lease runs the updater, so restarts and the other instances of the stack do not re-send or
+ * skip changes.  The first run starts from the current end of the change log; the search updater
+ * tool is still used to bring a new index up to date.
+ *
+ * When CloudWatch is on, the lag and the counters are sent to CloudWatch after every run.
+ *
+ */
+public class SearchIndexUpdaterImpl implements SearchIndexUpdater {
+
+	static private Log log = LogFactory.getLog(SearchIndexUpdaterImpl.class);
+
+	// The name of the change log cursor of the updater.
+	static final String CURSOR_NAME = "SEARCH_INDEX_UPDATER";
+	// The holder renews the lease after every page, so this only runs out when the holder stops.
+	static final long LEASE_MS = 5*60*1000;
+	static final String METRIC_NAMESPACE = "SearchIndexUpdater";
+
+	@Autowired
+	ChangeDAO changeDAO;
+
+	@Autowired
+	ChangeCursorDAO changeCursorDAO;
+
+	@Autowired
+	Consumer consumer;
+
+	@Autowired
+	NodeInheritanceDAO inheritanceDAO;
+
+	@Autowired
+	SearchDocumentDriver searchDocumentDriver;
+
+	@Autowired
+	CloudSearchClient cloudSearchClient;
+
+	private boolean enabled;
+	private int pageSize;
+	private int maxBatchBytes;
+	private int maxRetries;
+	private long retryBaseMS;
+	private boolean shouldProfile = false;
+
+	// Identifies this instance as the holder of the cursor's lease.
+	private final String leaseOwner = UUID.randomUUID().toString();
+
+	private volatile long changeNumberLag = 0;
+	private volatile long lastCaughtUpOn = -1;
+	private AtomicLong documentsSent = new AtomicLong(0);
+	private AtomicLong failedAttempts = new AtomicLong(0);
+
+	/**
+	 * Used by Spring
+	 */
+	public SearchIndexUpdaterImpl() {
+		this(StackConfiguration.getSearchIndexUpdaterEnabled(),
+				StackConfiguration.getSearchIndexUpdaterPageSize(),
+				StackConfiguration.getSearchIndexUpdaterMaxBatchBytes(),
+				StackConfiguration.getSearchIndexUpdaterMaxRetries(),
+				StackConfiguration.getSearchIndexUpdaterRetryBaseMS());
+	}
+
+	/**
+	 * Used by unit tests.
+	 *
+	 * @param enabled
+	 * @param pageSize
+	 * @param maxBatchBytes
+	 * @param maxRetries
+	 * @param retryBaseMS
+	 */
+	SearchIndexUpdaterImpl(boolean enabled, int pageSize, int maxBatchBytes,
+			int maxRetries, long retryBaseMS) {
+		if(pageSize < 1) throw new IllegalArgumentException("Page size must be greater than zero");
+		this.enabled = enabled;
+		this.pageSize = pageSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxRetries = maxRetries;
+		this.retryBaseMS = retryBaseMS;
+	}
+
+	/**
+	 * Used by Spring to turn on the CloudWatch metrics.
+	 * @param shouldProfile
+	 */
+	public void setShouldProfile(boolean shouldProfile) {
+		this.shouldProfile = shouldProfile;
+	}
+
+	@Override
+	public synchronized void updateIndex() throws DatastoreException {
+		if(!enabled) return;
+		// Another instance is updating the index.
+		if(!changeCursorDAO.acquireLease(CURSOR_NAME, leaseOwner, LEASE_MS)) return;
+		Long savedChangeNumber = changeCursorDAO.getNextChangeNumber(CURSOR_NAME);
+		if(savedChangeNumber == null){
+			savedChangeNumber = changeDAO.getCurrentChangeNumber()+1;
+			moveCursor(savedChangeNumber);
+			log.info("Updating the search index starting with change number: "+savedChangeNumber);
+		}
+		long nextChangeNumber = savedChangeNumber;
+		long start = System.currentTimeMillis();
+		long sentBefore = documentsSent.get();
+		try{
+			while(true){
+				List<ChangeMessage> page = changeDAO.listCommittedChanges(nextChangeNumber, pageSize);
+				sendChanges(page);
+				if(!page.isEmpty()){
+					nextChangeNumber = page.get(page.size()-1).getChangeNumber()+1;
+				}
+				// Save the position after every page, which also renews the lease.
+				moveCursor(nextChangeNumber);
+				if(page.size() < pageSize) break;
+			}
+			lastCaughtUpOn = System.currentTimeMillis();
+		}finally{
+			changeNumberLag = Math.max(0, changeDAO.getCurrentChangeNumber()-(nextChangeNumber-1));
+			long sent = documentsSent.get()-sentBefore;
+			if(sent > 0){
+				log.info("Sent "+sent+" search documents in "+(System.currentTimeMillis()-start)+" ms. Change number lag: "+changeNumberLag);
+			}
+			sendMetrics();
+		}
+	}
+
+	/**
+	 * Save the position of the updater in the change log.
+	 * @param nextChangeNumber
+	 * @throws DatastoreException If another instance took the lease.
+	 */
+	private void moveCursor(long nextChangeNumber) throws DatastoreException {
+		if(!changeCursorDAO.setNextChangeNumber(CURSOR_NAME, leaseOwner, nextChangeNumber, LEASE_MS)){
+			throw new DatastoreException("Another instance took over updating the search index");
+		}
+	}
+
+	/**
+	 * Renew the lease while a long page is sent.
+	 * @throws DatastoreException If another instance took the lease.
+	 */
+	private void renewLease() throws DatastoreException {
+		if(!changeCursorDAO.acquireLease(CURSOR_NAME, leaseOwner, LEASE_MS)){
+			throw new DatastoreException("Another instance took over updating the search index");
+		}
+	}
+
+	/**
+	 * Send the lag and counters to CloudWatch.
+	 */
+	private void sendMetrics(){
+		if(!shouldProfile) return;
+		Date now = new Date();
+		addMetric("changeNumberLag", getChangeNumberLag(), "Count", now);
+		addMetric("msSinceCaughtUp", getMSSinceCaughtUp(), "Milliseconds", now);
+		addMetric("documentsSent", getDocumentsSentCount(), "Count", now);
+		addMetric("failedAttempts", getFailedAttemptCount(), "Count", now);
+	}
+
+	private void addMetric(String name, long value, String unit, Date timestamp){
+		// CloudWatch does not take negative values, such as the time since a run that never happened.
+		if(value < 0) return;
+		ProfileData data = new ProfileData();
+		data.setNamespace(METRIC_NAMESPACE);
+		data.setName(name);
+		data.setLatency(value);
+		data.setUnit(unit);
+		data.setTimestamp(timestamp);
+		consumer.addProfileData(data);
+	}
+
+	/**
+	 * Send the documents of a page of changes.
+	 * @param changes
+	 * @throws DatastoreException
+	 */
+	private void sendChanges(List<ChangeMessage> changes) throws DatastoreException {
+		if(changes.isEmpty()) return;
+		Set<String> toAdd = new LinkedHashSet<String>();
+		Set<String> toDelete = new LinkedHashSet<String>();
+		for(ChangeMessage change: changes){
+			String entityId = KeyFactory.keyToString(KeyFactory.stringToKey(change.getObjectId()));
+			if(ObjectType.ENTITY == change.getObjectType()){
+				if(ChangeType.DELETE == change.getChangeType()){
+					toDelete.add(entityId);
+				}else{
+					toAdd.add(entityId);
+				}
+			}else if(ObjectType.ACL == change.getObjectType()){
+				toAdd.addAll(getEntitiesGovernedBy(entityId, change.getChangeType()));
+			}
+		}
+		toAdd.removeAll(toDelete);
+		// An ACL change can govern any number of entities, so the documents are built a page at a time.
+		List<String> addList = new ArrayList<String>(toAdd);
+		for(int start=0; start<addList.size(); start+=pageSize){
+			if(start > 0){
+				renewLease();
+			}
+			List<String> addPage = addList.subList(start, Math.min(addList.size(), start+pageSize));
+			List<Document> documents = searchDocumentDriver.formulateSearchDocuments(addPage);
+			// Anything without a document was deleted after it changed.
+			Set<String> found = new HashSet<String>();
+			for(Document document: documents){
+				found.add(document.getId());
+			}
+			for(String entityId: addPage){
+				if(!found.contains(entityId)){
+					toDelete.add(entityId);
+				}
+			}
+			sendInBatches(documents);
+		}
+		long version = DateTime.now().getMillis()/1000;
+		List<Document> deletes = new ArrayList<Document>(toDelete.size());
+		for(String entityId: toDelete){
+			Document delete = new Document();
+			delete.setType(DocumentTypeNames.delete);
+			delete.setId(entityId);
+			delete.setVersion(version);
+			deletes.add(delete);
+		}
+		sendInBatches(deletes);
+	}
+
+	/**
+	 * Find the entities whose permissions are governed by the ACL of the given entity after the ACL changed.
+	 * @param entityId
+	 * @param changeType
+	 * @return
+	 * @throws DatastoreException
+	 */
+	private Set<String> getEntitiesGovernedBy(String entityId, ChangeType changeType) throws DatastoreException {
+		Set<String> governed = new LinkedHashSet<String>();
+		governed.add(entityId);
+		try{
+			if(ChangeType.DELETE != changeType){
+				governed.addAll(inheritanceDAO.getBeneficiaries(entityId));
+			}else{
+				// The entity and the children that inherited from it now inherit from its new benefactor.
+				String benefactorId = inheritanceDAO.getBenefactor(entityId);
+				Set<String> parents = new HashSet<String>();
+				parents.add(entityId);
+				while(!parents.isEmpty()){
+					parents = inheritanceDAO.getChildrenInheritingFrom(parents, benefactorId);
+					governed.addAll(parents);
+				}
+			}
+		}catch(NotFoundException e){
+			// The entity was deleted so there is nothing left to govern.
+		}
+		return governed;
+	}
+
+	/**
+	 * Send documents as JSON arrays no larger than the maximum batch size.
+	 * @param documents
+	 * @throws DatastoreException
+	 */
+	private void sendInBatches(List<Document> documents) throws DatastoreException {
+		ByteArrayOutputStream batch = new ByteArrayOutputStream();
+		int count = 0;
+		try{
+			for(Document document: documents){
+				byte[] bytes = SearchDocumentDriverImpl.cleanSearchDocument(document);
+				// The closing bracket and a separating comma.
+				if(count > 0 && batch.size()+bytes.length+2 > maxBatchBytes){
+					sendBatch(batch, count);
+					batch.reset();
+					count = 0;
+				}
+				batch.write(count == 0 ? '[' : ',');
+				batch.write(bytes);
+				count++;
+			}
+			if(count > 0){
+				sendBatch(batch, count);
+			}
+		}catch(IOException e){
+			throw new DatastoreException(e);
+		}catch(JSONObjectAdapterException e){
+			throw new DatastoreException(e);
+		}
+	}
+
+	/**
+	 * Close and send a batch, retrying with exponential backoff.
+	 * @param batch
+	 * @param count
+	 * @throws DatastoreException
+	 */
+	private void sendBatch(ByteArrayOutputStream batch, int count) throws DatastoreException {
+		batch.write(']');
+		byte[] bytes = batch.toByteArray();
+		for(int attempt=0; ; attempt++){
+			try{
+				cloudSearchClient.sendDocuments(bytes);
+				documentsSent.addAndGet(count);
+				return;
+			}catch(Exception e){
+				failedAttempts.incrementAndGet();
+				if(attempt >= maxRetries){
+					throw new DatastoreException("Failed to send a batch of "+count+" search documents after "+(attempt+1)+" attempts", e);
+				}
+				long waitMS = retryBaseMS<<attempt;
+				log.warn("Failed to send a batch of "+count+" search documents, will retry in "+waitMS+" ms", e);
+				try{
+					Thread.sleep(waitMS);
+				}catch(InterruptedException ie){
+					Thread.currentThread().interrupt();
+					throw new DatastoreException(ie);
+				}
+			}
+		}
+	}
+
+	@Override
+	public long getChangeNumberLag() {
+		return changeNumberLag;
+	}
+
+	@Override
+	public long getMSSinceCaughtUp() {
+		long caughtUpOn = lastCaughtUpOn;
+		if(caughtUpOn < 0) return -1;
+		return System.currentTimeMillis()-caughtUpOn;
+	}
+
+	@Override
+	public long getDocumentsSentCount() {
+		return documentsSent.get();
+	}
+
+	@Override
+	public long getFailedAttemptCount() {
+		return failedAttempts.get();
+	}
+
+}
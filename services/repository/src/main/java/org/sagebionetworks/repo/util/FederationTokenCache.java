@@ -0,0 +1,202 @@
+package org.sagebionetworks.repo.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.util.BoundedCache;
+import org.springframework.http.HttpMethod;
+
+import com.amazonaws.services.securitytoken.model.Credentials;
+
+/**
+ * Caches STS federation tokens so that presigning urls does not need a
+ * GetFederationToken round trip for each url.
+ * <ul>
+ * <li>The policy of a token only depends on the federated user, the entity and
+ * the method, so that is the key.</li>
+ * <li>A token is only handed out if it lives at least as long as the caller
+ * needs, otherwise it is replaced early.</li>
+ * <li>Concurrent requests for the same key share a single call to STS.</li>
+ * </ul>
+ *
+ */
+public class FederationTokenCache {
+
+	/**
+	 * Creates a new token when there is no usable cached token.
+	 */
+	public interface Loader {
+		public FederationToken load() throws DatastoreException;
+	}
+
+	/**
+	 * Credentials and when they stop working.
+	 */
+	public static class FederationToken {
+		private final Credentials credentials;
+		private final DateTime expires;
+
+		public FederationToken(Credentials credentials, DateTime expires) {
+			this.credentials = credentials;
+			this.expires = expires;
+		}
+
+		public Credentials getCredentials() {
+			return credentials;
+		}
+
+		public DateTime getExpires() {
+			return expires;
+		}
+	}
+
+	private final BoundedCache<Key, FederationToken> cache;
+	private final ConcurrentMap<Key, FutureTask<FederationToken>> inFlight = new ConcurrentHashMap<Key, FutureTask<FederationToken>>();
+	private final AtomicLong loadCount = new AtomicLong(0);
+	private final AtomicLong coalescedCount = new AtomicLong(0);
+
+	/**
+	 * @param name The name used to report the statistics of this cache.
+	 * @param maxEntries
+	 */
+	public FederationTokenCache(String name, int maxEntries) {
+		// Each entry expires with its token.
+		this.cache = new BoundedCache<Key, FederationToken>(name, maxEntries, 0);
+	}
+
+	/**
+	 * Get a token that is valid until at least the given time, loading a new
+	 * one if the cached token would expire before then.
+	 *
+	 * @param federatedUserId
+	 * @param entityId
+	 * @param method
+	 * @param minimumExpires
+	 * @param loader
+	 * @return
+	 * @throws DatastoreException
+	 */
+	public FederationToken get(String federatedUserId, String entityId,
+			HttpMethod method, DateTime minimumExpires, final Loader loader)
+			throws DatastoreException {
+		final Key key = new Key(federatedUserId, entityId, method.name());
+		FederationToken token = cache.get(key);
+		if (null != token && token.getExpires().isAfter(minimumExpires)) {
+			return token;
+		}
+		FutureTask<FederationToken> task = new FutureTask<FederationToken>(new Callable<FederationToken>() {
+			@Override
+			public FederationToken call() throws Exception {
+				FederationToken loaded = loader.load();
+				cache.put(key, loaded, loaded.getExpires().getMillis());
+				return loaded;
+			}
+		});
+		FutureTask<FederationToken> existing = inFlight.putIfAbsent(key, task);
+		if (null != existing) {
+			// Another request is already loading a token for this key.
+			coalescedCount.incrementAndGet();
+			return await(existing);
+		}
+		try {
+			loadCount.incrementAndGet();
+			task.run();
+			return await(task);
+		} finally {
+			inFlight.remove(key, task);
+		}
+	}
+
+	private static FederationToken await(FutureTask<FederationToken> task) throws DatastoreException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatastoreException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DatastoreException) throw (DatastoreException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new DatastoreException(cause);
+		}
+	}
+
+	/**
+	 * Remove all tokens.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * The number of tokens requested from STS.
+	 * @return
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * The number of requests that waited for a token requested by another request.
+	 * @return
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	private static class Key {
+		private final String federatedUserId;
+		private final String entityId;
+		private final String method;
+
+		Key(String federatedUserId, String entityId, String method) {
+			this.federatedUserId = federatedUserId;
+			this.entityId = entityId;
+			this.method = method;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((entityId == null) ? 0 : entityId.hashCode());
+			result = prime * result + ((federatedUserId == null) ? 0 : federatedUserId.hashCode());
+			result = prime * result + ((method == null) ? 0 : method.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (entityId == null) {
+				if (other.entityId != null)
+					return false;
+			} else if (!entityId.equals(other.entityId))
+				return false;
+			if (federatedUserId == null) {
+				if (other.federatedUserId != null)
+					return false;
+			} else if (!federatedUserId.equals(other.federatedUserId))
+				return false;
+			if (method == null) {
+				if (other.method != null)
+					return false;
+			} else if (!method.equals(other.method))
+				return false;
+			return true;
+		}
+	}
+}
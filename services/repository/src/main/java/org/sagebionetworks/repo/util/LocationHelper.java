@@ -1,5 +1,7 @@
 package org.sagebionetworks.repo.util;
 
+import java.util.List;
+
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.springframework.http.HttpMethod;
 
@@ -70,6 +72,30 @@ public interface LocationHelper {
 	 */
 	String presignS3GETUrlShortLived(String userId, String path) throws DatastoreException;
 
+	/**
+	 * Return pre-signed GET URLs for many S3 keys at once.  Keys that belong to
+	 * the same entity are signed with the same security token, so this makes
+	 * at most one STS call per entity.  Note that authentication and
+	 * authorization should have been checked *prior* to calling this method.
+	 * 
+	 * @param userId
+	 * @param s3Keys
+	 * @return the pre-signed S3 URLs in the same order as the keys
+	 * @throws DatastoreException
+	 */
+	List<String> presignS3GETUrls(String userId, List<String> s3Keys) throws DatastoreException;
+
+	/**
+	 * Return pre-signed HEAD URLs for many S3 keys at once.  Keys that belong
+	 * to the same entity are signed with the same security token.
+	 * 
+	 * @param userId
+	 * @param s3Keys
+	 * @return the pre-signed S3 URLs in the same order as the keys
+	 * @throws DatastoreException
+	 */
+	List<String> presignS3HEADUrls(String userId, List<String> s3Keys) throws DatastoreException;
+
 	/**
 	 * Return a pre-signed URL for use checking the status of files in S3, such
 	 * as the current MD5 checksum. The returned URL will be valid for a HEAD
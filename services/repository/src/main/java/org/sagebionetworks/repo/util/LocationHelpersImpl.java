@@ -1,8 +1,9 @@
 package org.sagebionetworks.repo.util;
 
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Map;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,6 +13,8 @@ import org.joda.time.DateTime;
 import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.repo.model.util.BoundedCache;
+import org.sagebionetworks.repo.util.FederationTokenCache.FederationToken;
 import org.sagebionetworks.securitytools.HMACUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
@@ -40,14 +43,27 @@ public class LocationHelpersImpl implements LocationHelper {
 	// http://docs.amazonwebservices.com/STS/latest/APIReference/API_GetFederationToken.html
 	private static final int MAX_POLICY_LENGTH = 2048;
 	private static final int CACHE_SIZE = 4096;
+	// The cache is also bounded by the total length of the cached urls.
+	private static final long CACHE_MAX_URL_CHARACTERS = CACHE_SIZE*1024L;
 
 	// Cache for presigned Urls so that (1) we do not beat up STS & get throttled and (2) to help with caching proxies downstream.
 	// Note that the cache key must be userId+s3Key+method because its not okay to give out urls signed for one user to another user.
 	// This cache is far from perfect, it can get spoiled by folks doing a select * on a large number of locationable 
 	// entities since we are still presigning urls when returned as part of a query.
-	private static final Map<PresignedUrlCacheKey, PresignedUrlCacheValue> URL_CACHE = Collections
-			.synchronizedMap(new LruCache<PresignedUrlCacheKey, PresignedUrlCacheValue>(
-					CACHE_SIZE));
+	// Each entry expires with its url.
+	private static final BoundedCache<PresignedUrlCacheKey, PresignedUrlCacheValue> URL_CACHE = new BoundedCache<PresignedUrlCacheKey, PresignedUrlCacheValue>(
+			"presignedUrlCache", CACHE_SIZE, CACHE_MAX_URL_CHARACTERS, 0,
+			new BoundedCache.Weigher<PresignedUrlCacheKey, PresignedUrlCacheValue>() {
+				@Override
+				public long weigh(PresignedUrlCacheKey key, PresignedUrlCacheValue value) {
+					return value.getUrl().length();
+				}
+			});
+
+	// Federation tokens are cached separately from the urls since one token can sign every url
+	// for a user, entity and method.  Only tokens used to presign GET and HEAD urls are cached,
+	// tokens handed out to clients are always new.
+	private final FederationTokenCache tokenCache = new FederationTokenCache("federationTokenCache", CACHE_SIZE);
 
 	private static final int READ_ACCESS_EXPIRY_HOURS = StackConfiguration
 			.getS3ReadAccessExpiryHours();
@@ -74,6 +90,8 @@ public class LocationHelpersImpl implements LocationHelper {
 
 	@Autowired
 	private AmazonClientFactory amazonClientFactory;
+	// Created on first use and shared by all requests
+	private volatile AWSSecurityTokenService stsClient = null;
 	
 	/**
 	 * Default constructor
@@ -133,29 +151,81 @@ public class LocationHelpersImpl implements LocationHelper {
 		return getS3Url(userId, s3Key, HttpMethod.GET, READ_ACCESS_EXPIRY_SECONDS);
 	}
 
+	@Override
+	public List<String> presignS3GETUrls(String userId, List<String> s3Keys)
+			throws DatastoreException {
+		return getS3Urls(userId, s3Keys, HttpMethod.GET, READ_ACCESS_EXPIRY_HOURS_IN_SECONDS);
+	}
+
+	@Override
+	public List<String> presignS3HEADUrls(String userId, List<String> s3Keys)
+			throws DatastoreException {
+		return getS3Urls(userId, s3Keys, HttpMethod.HEAD, READ_ACCESS_EXPIRY_HOURS_IN_SECONDS);
+	}
+
 	private String getS3Url(String userId, String s3Key, HttpMethod method,
 			int expiresSeconds) throws DatastoreException {
+		return getS3Urls(userId, Collections.singletonList(s3Key), method, expiresSeconds).get(0);
+	}
 
-		DateTime now = new DateTime();
+	/**
+	 * Presign urls for many keys in one pass.  Keys under the same entity
+	 * share a federation token.
+	 */
+	private List<String> getS3Urls(String userId, List<String> s3Keys,
+			HttpMethod method, int expiresSeconds) throws DatastoreException {
 
-		// Check the cache first
-		PresignedUrlCacheKey key = new PresignedUrlCacheKey(userId, s3Key,
-				method.name());
-		PresignedUrlCacheValue value = URL_CACHE.get(key);
-		if (null != value) {
-			// if url is not too stale, reuse it
-			DateTime minimumTimeLeft = now.plusSeconds(expiresSeconds / 2);
-			if (value.getExpires().isAfter(minimumTimeLeft)) {
-				return value.getUrl();
+		DateTime now = new DateTime();
+		// if a url or token is not too stale, reuse it
+		DateTime minimumTimeLeft = now.plusSeconds(expiresSeconds / 2);
+		String federatedUserId = getFederatedUserId(userId);
+
+		List<String> presignedUrls = new ArrayList<String>(s3Keys.size());
+		for (String s3Key : s3Keys) {
+			// Check the cache first
+			PresignedUrlCacheKey key = new PresignedUrlCacheKey(userId, s3Key,
+					method.name());
+			PresignedUrlCacheValue value = URL_CACHE.get(key);
+			if (null != value && value.getExpires().isAfter(minimumTimeLeft)) {
+				presignedUrls.add(value.getUrl());
+				continue;
 			}
+			FederationToken token = getCachedFederationToken(federatedUserId,
+					method, s3Key, minimumTimeLeft);
+			// A url cannot outlive the token that signed it
+			DateTime expires = now.plusSeconds(expiresSeconds);
+			if (token.getExpires().isBefore(expires)) {
+				expires = token.getExpires();
+			}
+			String presignedUrl = signS3Url(token.getCredentials(), s3Key, method, expires);
+
+			// Add this to the cache
+			value = new PresignedUrlCacheValue(presignedUrl, expires);
+			URL_CACHE.put(key, value, expires.getMillis());
+			presignedUrls.add(presignedUrl);
 		}
+		return presignedUrls;
+	}
 
-		// Get the credentials with which to sign the request
-		Credentials token = createFederationTokenForS3(userId, method, s3Key);
+	private FederationToken getCachedFederationToken(final String federatedUserId,
+			final HttpMethod method, String s3Key, DateTime minimumExpires)
+			throws DatastoreException {
+		// Parse out the entity id from the url
+		final String entityId = getEntityIdFromS3Url(s3Key);
+		return tokenCache.get(federatedUserId, entityId, method, minimumExpires,
+				new FederationTokenCache.Loader() {
+					@Override
+					public FederationToken load() throws DatastoreException {
+						return createFederationToken(federatedUserId, method, entityId);
+					}
+				});
+	}
+
+	private String signS3Url(Credentials token, String s3Key, HttpMethod method,
+			DateTime expires) throws DatastoreException {
 		AWSCredentials creds = new BasicAWSCredentials(token.getAccessKeyId(),
 				token.getSecretAccessKey());
 
-		DateTime expires = now.plusSeconds(expiresSeconds);
 		String expirationInSeconds = Long.toString(expires.getMillis() / 1000L);
 
 		// Formulate the canonical string to sign
@@ -168,14 +238,8 @@ public class LocationHelpersImpl implements LocationHelper {
 				token.getSessionToken()).append("\n");
 		buf.append("/").append(S3_BUCKET).append(s3Key);
 
-		String presignedUrl = sign(buf.toString(), creds, s3Key,
+		return sign(buf.toString(), creds, s3Key,
 				expirationInSeconds, token.getSessionToken());
-
-		// Add this to the cache
-		value = new PresignedUrlCacheValue(presignedUrl, expires);
-		URL_CACHE.put(key, value);
-
-		return presignedUrl;
 	}
 
 	@Override
@@ -271,6 +335,13 @@ public class LocationHelpersImpl implements LocationHelper {
 	public Credentials createFederationTokenForS3(String userId, HttpMethod method,
 			String s3Key) throws NumberFormatException, DatastoreException {
 
+		// Parse out the entity id from the url
+		String entityId = getEntityIdFromS3Url(s3Key);
+
+		return createFederationToken(getFederatedUserId(userId), method, entityId).getCredentials();
+	}
+
+	private String getFederatedUserId(String userId) {
 		// Append the stack name to the federated username for prod vs. test
 		// isolation
 		// since we cannot ensure that folks do not use the same user name on
@@ -280,10 +351,13 @@ public class LocationHelpersImpl implements LocationHelper {
 			federatedUserId = federatedUserId.substring(0,
 					MAX_FEDERATED_NAME_LENGTH);
 		}
+		return federatedUserId;
+	}
 
-		// Parse out the entity id from the url
-		String entityId = getEntityIdFromS3Url(s3Key);
-		
+	private FederationToken createFederationToken(String federatedUserId,
+			HttpMethod method, String entityId) throws DatastoreException {
+
+		DateTime now = new DateTime();
 		int durationSeconds = ((HttpMethod.PUT == method) ? WRITE_ACCESS_EXPIRY_HOURS
 				: READ_ACCESS_EXPIRY_HOURS) * 3600;
 		String policy = (HttpMethod.PUT == method) ? READWRITE_DATA_POLICY
@@ -294,16 +368,29 @@ public class LocationHelpersImpl implements LocationHelper {
 			throw new IllegalArgumentException("Security token policy too long: " + policy);
 		}
 
-		AWSSecurityTokenService client = amazonClientFactory
-				.getAWSSecurityTokenServiceClient();
-
 		GetFederationTokenRequest request = new GetFederationTokenRequest();
 		request.setName(federatedUserId);
 		request.setDurationSeconds(durationSeconds);
 		request.setPolicy(policy);
-		GetFederationTokenResult result = client.getFederationToken(request);
+		GetFederationTokenResult result = getSTSClient().getFederationToken(request);
+
+		Credentials credentials = result.getCredentials();
+		// Measured from before the request so we never think the token lives longer than it does
+		DateTime expires = now.plusSeconds(durationSeconds);
+		if (null != credentials.getExpiration()
+				&& credentials.getExpiration().getTime() < expires.getMillis()) {
+			expires = new DateTime(credentials.getExpiration());
+		}
+		return new FederationToken(credentials, expires);
+	}
 
-		return result.getCredentials();
+	private AWSSecurityTokenService getSTSClient() {
+		AWSSecurityTokenService client = stsClient;
+		if (null == client) {
+			client = amazonClientFactory.getAWSSecurityTokenServiceClient();
+			stsClient = client;
+		}
+		return client;
 	}
 
 	@Override
@@ -34,10 +34,10 @@ public class StackStatusInterceptor implements HandlerInterceptor {
 			return true;
 		}
 		
-		// Get the current stack status
-		StatusEnum status = stackStatusDao.getCurrentStatus();
+		// Get the current stack status. This comes from a snapshot so it does not cost a query per request.
+		StackStatus full = stackStatusDao.getFullCurrentStatus();
+		StatusEnum status = full.getStatus();
 		if(StatusEnum.DOWN == status){
-			StackStatus full = stackStatusDao.getFullCurrentStatus();
 			throw new ServiceUnavailableException("Synapse is down for maintenance.  Message: "+full.getCurrentMessage());
 		}else if(StatusEnum.READ_WRITE == status){
 			return true;
@@ -46,7 +46,6 @@ public class StackStatusInterceptor implements HandlerInterceptor {
 			if("GET".equals(request.getMethod())){
 				return true;
 			}else{
-				StackStatus full = stackStatusDao.getFullCurrentStatus();
 				throw new ServiceUnavailableException("Synapse is in READ_ONLY mode for maintenance.  Only HTTP GETs are allowed at this time.  Message: "+full.getCurrentMessage());
 			}
 		}else{
@@ -121,6 +121,15 @@ public class UrlHelpers {
 	 */
 	public static final String MIGRATION_TYPE_PARAM = "migrationType";
 	
+	/**
+	 * parameter used by an incremental backup for the first change to include
+	 */
+	public static final String CHANGE_NUMBER_PARAM = "changeNumber";
+	/**
+	 * When getting the status of a daemon, wait up to this many milliseconds for it to finish.
+	 */
+	public static final String MAX_WAIT_MS_PARAM = "maxWaitMS";
+	
 	/**
 	 * All of the base URLs for Synapse objects
 	 */
@@ -257,11 +266,21 @@ public class UrlHelpers {
 	public static final String BACKUP						= "/backup";
 	public static final String RESTORE						= "/restore";
 	public static final String SEARCH_DOCUMENT 				= "/searchDocument";
+	public static final String INCREMENTAL_BACKUP			= "/incrementalBackup";
 	public static final String DAEMON_ID					= "/{daemonId}";
 	public static final String ENTITY_BACKUP_DAMEON			= DAEMON+BACKUP;
 	public static final String ENTITY_RESTORE_DAMEON		= DAEMON+RESTORE;
 	public static final String ENTITY_SEARCH_DOCUMENT_DAMEON = DAEMON+SEARCH_DOCUMENT;
+	public static final String ENTITY_INCREMENTAL_BACKUP_DAMEON = DAEMON+INCREMENTAL_BACKUP;
 	public static final String ENTITY_DAEMON_ID				= DAEMON+DAEMON_ID;
+	/**
+	 * Backups streamed directly between stacks, without a daemon or S3.
+	 */
+	public static final String STREAM						= ADMIN+"/stream";
+	public static final String STREAM_BACKUP				= STREAM+BACKUP;
+	public static final String STREAM_RESTORE				= STREAM+RESTORE;
+	// A framed zip, so not a plain zip.
+	public static final String BACKUP_STREAM_CONTENT_TYPE	= "application/octet-stream";
 	
 	public static final String CONCEPT	= "/concept";
 	public static final String CONCEPT_ID	= CONCEPT+ID;
@@ -289,6 +308,11 @@ public class UrlHelpers {
 	 */
 	public static final String STACK_STATUS					= ADMIN+"/synapse/status";
 	
+	/**
+	 * The statistics of the in-memory caches of this instance
+	 */
+	public static final String CACHE_STATISTICS				= ADMIN+"/cache/statistics";
+	
 	/**
 	 * Mapping of dependent property classes to their URL suffixes
 	 */
@@ -306,6 +330,13 @@ public class UrlHelpers {
 	 * when listing objects to back up.
 	 */
 	public static final String INCLUDE_DEPENDENCIES_PARAM = "includeDependencies";
+	
+	/**
+	 * Lists the objects to back up, ordered by type and then by ID, starting after the given object.
+	 */
+	public static final String GET_BACKUP_OBJECTS_AFTER = "/backupObjectsAfter";
+	public static final String AFTER_TYPE_PARAM = "afterType";
+	public static final String AFTER_ID_PARAM = "afterId";
 
 	/**
 	 * This is a memoized cache for our URL regular expressions
@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.web.controller;
 
 import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.sagebionetworks.repo.model.AuthorizationConstants;
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
@@ -13,6 +14,7 @@ import org.sagebionetworks.repo.model.ServiceConstants;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
 import org.sagebionetworks.repo.model.daemon.RestoreSubmission;
+import org.sagebionetworks.repo.model.status.CacheStatisticsList;
 import org.sagebionetworks.repo.model.status.StackStatus;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.repo.web.UrlHelpers;
@@ -54,6 +56,23 @@ public class AdministrationController extends BaseController {
 		return serviceProvider.getAdministrationService().getAllBackupObjects(userId, offset, limit, includeDependencies);
 	}
 	
+	/**
+	 * List the objects to back up ordered by type and then by ID, starting after the given object.
+	 * Unlike the offset based listing, each page costs the same no matter how far into the listing it is.
+	 * Omit the 'after' parameters to get the first page.
+	 */
+	@ResponseStatus(HttpStatus.OK)
+	@RequestMapping(value = UrlHelpers.GET_BACKUP_OBJECTS_AFTER, method = RequestMethod.GET)
+	public @ResponseBody PaginatedResults<MigratableObjectData> getBackupObjectsAfter(
+			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = true) String userId,
+			@RequestParam(value = UrlHelpers.AFTER_TYPE_PARAM, required = false) String afterType,
+			@RequestParam(value = UrlHelpers.AFTER_ID_PARAM, required = false) String afterId,
+			@RequestParam(value = ServiceConstants.PAGINATION_LIMIT_PARAM, required = false, defaultValue = ServiceConstants.DEFAULT_PAGINATION_LIMIT_PARAM) Integer limit,
+			@RequestParam(value = UrlHelpers.INCLUDE_DEPENDENCIES_PARAM, required = false, defaultValue = "true") Boolean  includeDependencies
+			) throws DatastoreException, UnauthorizedException, NotFoundException {
+		return serviceProvider.getAdministrationService().getBackupObjectsAfter(userId, afterType, afterId, limit, includeDependencies);
+	}
+	
 	
 	/**
 	 * Start a backup daemon.  Monitor the status of the daemon with the getStatus method.
@@ -117,6 +136,66 @@ public class AdministrationController extends BaseController {
 		return serviceProvider.getAdministrationService().startRestore(file, userId, type, header, request);
 	}
 	
+	/**
+	 * Stream a backup directly in the response, without a daemon or S3.  The optional BackupSubmission
+	 * body limits the backup to the given objects.  Another stack can restore the stream as it arrives
+	 * with the restore stream method.
+	 * @param userId
+	 * @param type
+	 * @param header
+	 * @param request
+	 * @param response
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@ResponseStatus(HttpStatus.OK)
+	@RequestMapping(value = { 
+			UrlHelpers.STREAM_BACKUP
+			}, method = RequestMethod.POST)
+	public void streamBackup(
+			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId,
+			@RequestParam(value = UrlHelpers.MIGRATION_TYPE_PARAM, required=true) String type,
+			@RequestHeader HttpHeaders header,
+			HttpServletRequest request,
+			HttpServletResponse response)
+			throws DatastoreException, UnauthorizedException, NotFoundException, IOException, InterruptedException {
+		
+		serviceProvider.getAdministrationService().streamBackup(userId, type, header, request, response);
+	}
+	
+	/**
+	 * Restore from a backup stream that is the body of the request.  Each batch is applied as it
+	 * is read, and the restore is finished when this returns.
+	 * @param userId
+	 * @param type
+	 * @param request
+	 * @return
+	 * @throws DatastoreException
+	 * @throws InvalidModelException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws ConflictingUpdateException
+	 * @throws InterruptedException
+	 */
+	@ResponseStatus(HttpStatus.CREATED)
+	@RequestMapping(value = { 
+			UrlHelpers.STREAM_RESTORE
+			}, method = RequestMethod.POST)
+	public @ResponseBody
+	BackupRestoreStatus restoreFromStream(
+			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId,
+			@RequestParam(value = UrlHelpers.MIGRATION_TYPE_PARAM, required=true) String type,
+			HttpServletRequest request)
+			throws DatastoreException, InvalidModelException,
+			UnauthorizedException, NotFoundException, IOException, ConflictingUpdateException, InterruptedException {
+
+		return serviceProvider.getAdministrationService().restoreFromStream(userId, type, request);
+	}
+	
 	/**
 	 * Delete a migratable object
 	 * 
@@ -175,10 +254,40 @@ public class AdministrationController extends BaseController {
 		return serviceProvider.getAdministrationService().startSearchDocument(userId, header, request);
 	}
 	
+	/**
+	 * Start a backup of every entity changed since the given change number.  Monitor the status of the daemon
+	 * with the getStatus method.  When finished, the progress message includes the last change in the backup.
+	 * @param userId
+	 * @param changeNumber
+	 * @param header
+	 * @param request
+	 * @return
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 */
+	@ResponseStatus(HttpStatus.CREATED)
+	@RequestMapping(value = { 
+			UrlHelpers.ENTITY_INCREMENTAL_BACKUP_DAMEON
+			}, method = RequestMethod.POST)
+	public @ResponseBody
+	BackupRestoreStatus startIncrementalBackup(
+			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId,
+			@RequestParam(value = UrlHelpers.CHANGE_NUMBER_PARAM, required = true) Long changeNumber,
+			@RequestHeader HttpHeaders header,
+			HttpServletRequest request)
+			throws DatastoreException, UnauthorizedException, NotFoundException {
+		
+		return serviceProvider.getAdministrationService().startIncrementalBackup(userId, changeNumber);
+	}
+	
 	/**
 	 * Get the status of a running daemon (either a backup or restore)
+	 * When maxWaitMS is given the call waits until the daemon is finished or the time is up, so
+	 * the caller can start its next job as soon as this one is done without polling.
 	 * @param daemonId
 	 * @param userId
+	 * @param maxWaitMS
 	 * @param header
 	 * @param request
 	 * @return
@@ -197,11 +306,15 @@ public class AdministrationController extends BaseController {
 	BackupRestoreStatus getStatus(
 			@PathVariable String daemonId,
 			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId,
+			@RequestParam(value = UrlHelpers.MAX_WAIT_MS_PARAM, required = false) Long maxWaitMS,
 			@RequestHeader HttpHeaders header,
 			HttpServletRequest request)
 			throws DatastoreException, InvalidModelException,
 			UnauthorizedException, NotFoundException, IOException, ConflictingUpdateException {
 
+		if(maxWaitMS != null){
+			return serviceProvider.getAdministrationService().waitForCompletion(daemonId, userId, maxWaitMS);
+		}
 		return serviceProvider.getAdministrationService().getStatus(daemonId, userId, header, request);
 	}
 	
@@ -287,5 +400,27 @@ public class AdministrationController extends BaseController {
 
 		return serviceProvider.getAdministrationService().updateStatusStackStatus(userId, header, request);
 	}
+	
+	/**
+	 * Get the hit, miss and eviction statistics of the in-memory caches of the instance
+	 * that handles this request.
+	 * 
+	 * @param userId
+	 * @return
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws UnauthorizedException
+	 */
+	@ResponseStatus(HttpStatus.OK)
+	@RequestMapping(value = { 
+			UrlHelpers.CACHE_STATISTICS
+			}, method = RequestMethod.GET)
+	public @ResponseBody
+	CacheStatisticsList getCacheStatistics(
+			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId)
+			throws DatastoreException, NotFoundException, UnauthorizedException {
+
+		return serviceProvider.getAdministrationService().getCacheStatistics(userId);
+	}
 
 }
@@ -1,10 +1,13 @@
 package org.sagebionetworks.repo.web.controller;
 
+import java.io.IOException;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.repo.model.AuthorizationConstants;
 import org.sagebionetworks.repo.model.DatastoreException;
-import org.sagebionetworks.repo.model.QueryResults;
 import org.sagebionetworks.repo.model.ServiceConstants;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.queryparser.ParseException;
@@ -17,8 +20,6 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
  * @author deflaux
@@ -27,28 +28,60 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @Controller
 public class QueryController extends BaseController {
 
+	private static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+	private static final long RESPONSE_BUFFER_PADDING_BYTES = 16*1024;
+
 	@Autowired
 	ServiceProvider serviceProvider;	
 
 	/**
+	 * The results are written directly to the response as each row is read
+	 * from the database.
+	 * 
 	 * @param userId
 	 * @param query
+	 * @param keyset
+	 *            when true the results are paged with a continuation token
+	 *            rather than an offset
+	 * @param pageToken
+	 *            the nextPageToken from the previous page of a keyset paged
+	 *            query
+	 * @param count
+	 *            when false the total number of results is not computed
 	 * @param request
-	 * @return paginated results
+	 * @param response
 	 * @throws DatastoreException
 	 * @throws ParseException
 	 * @throws NotFoundException
 	 * @throws UnauthorizedException
+	 * @throws IOException
 	 */
-	@ResponseStatus(HttpStatus.OK)
 	@RequestMapping(value = UrlHelpers.QUERY, method = RequestMethod.GET)
-	public @ResponseBody
-	QueryResults query(
+	public void query(
 			@RequestParam(value = AuthorizationConstants.USER_ID_PARAM, required = false) String userId,
 			@RequestParam(value = ServiceConstants.QUERY_PARAM, required = true) String query,
-			HttpServletRequest request) throws DatastoreException,
-			ParseException, NotFoundException, UnauthorizedException {
-		return serviceProvider.getEntityService().query(userId, query, request);
+			@RequestParam(value = ServiceConstants.QUERY_KEYSET_PARAM, required = false) Boolean keyset,
+			@RequestParam(value = ServiceConstants.QUERY_PAGE_TOKEN_PARAM, required = false) String pageToken,
+			@RequestParam(value = ServiceConstants.QUERY_COUNT_PARAM, required = false) Boolean count,
+			HttpServletRequest request,
+			HttpServletResponse response) throws DatastoreException,
+			ParseException, NotFoundException, UnauthorizedException, IOException {
+		boolean keysetPaging = keyset != null && keyset;
+		boolean includeCount = count == null || count;
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(CONTENT_TYPE_JSON);
+		// The buffer is larger than the query byte limit, so nothing is committed
+		// before the limit is reached and an error can still replace a partial result.
+		response.setBufferSize((int) (StackConfiguration.getMaximumBytesPerQueryResult() + RESPONSE_BUFFER_PADDING_BYTES));
+		boolean success = false;
+		try {
+			serviceProvider.getEntityService().streamQuery(userId, query, keysetPaging, pageToken, includeCount, response.getOutputStream());
+			success = true;
+		} finally {
+			if (!success && !response.isCommitted()) {
+				response.resetBuffer();
+			}
+		}
 	}
 	
 }
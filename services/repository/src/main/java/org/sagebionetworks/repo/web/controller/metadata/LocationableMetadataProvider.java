@@ -2,6 +2,7 @@ package org.sagebionetworks.repo.web.controller.metadata;
 
 import java.net.FileNameMap;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -166,30 +167,32 @@ public class LocationableMetadataProvider implements
 
 		List<LocationData> locations = locationable.getLocations();
 		if (null != locations) {
+			List<LocationData> s3Locations = new ArrayList<LocationData>();
+			List<String> s3Keys = new ArrayList<String>();
 			for (LocationData location : locations) {
 				if (location.getType().equals(LocationTypeNames.awss3)) {
-					String signedPath = null;
-					if ((null != method)
-							&& (method.equals(RequestMethod.HEAD.name()))) {
-						signedPath = locationHelper
-								.presignS3HEADUrl(
-										request
-												.getParameter(AuthorizationConstants.USER_ID_PARAM),
-										location.getPath());
-					} else {
-						signedPath = locationHelper
-								.presignS3GETUrl(
-										request
-												.getParameter(AuthorizationConstants.USER_ID_PARAM),
-										location.getPath());
-					}
-
-					// Overwrite the path with a presigned S3 URL to use to
-					// get the
-					// data from S3
-					location.setPath(signedPath);
+					s3Locations.add(location);
+					s3Keys.add(location.getPath());
 				}
 			}
+			if (s3Keys.isEmpty()) {
+				return;
+			}
+			// Sign all of the locations together so they share a security token
+			String userId = request.getParameter(AuthorizationConstants.USER_ID_PARAM);
+			List<String> signedPaths = null;
+			if ((null != method)
+					&& (method.equals(RequestMethod.HEAD.name()))) {
+				signedPaths = locationHelper.presignS3HEADUrls(userId, s3Keys);
+			} else {
+				signedPaths = locationHelper.presignS3GETUrls(userId, s3Keys);
+			}
+			for (int i = 0; i < s3Locations.size(); i++) {
+				// Overwrite the path with a presigned S3 URL to use to
+				// get the
+				// data from S3
+				s3Locations.get(i).setPath(signedPaths.get(i));
+			}
 		}
 	}
 
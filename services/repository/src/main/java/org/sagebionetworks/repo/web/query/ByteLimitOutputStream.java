@@ -0,0 +1,57 @@
+package org.sagebionetworks.repo.web.query;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that throws an IllegalArgumentException once more than the
+ * maximum number of bytes have been written to it.
+ * 
+ */
+public class ByteLimitOutputStream extends FilterOutputStream {
+
+	private long maxBytes;
+	private long bytesWritten = 0;
+
+	/**
+	 * @param out
+	 * @param maxBytes The maximum number of bytes that can be written.
+	 */
+	public ByteLimitOutputStream(OutputStream out, long maxBytes) {
+		super(out);
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkLimit(1);
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkLimit(len);
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Count the bytes and throw if the limit is exceeded.
+	 * @param toWrite
+	 */
+	private void checkLimit(int toWrite) {
+		bytesWritten += toWrite;
+		if (bytesWritten > maxBytes) {
+			throw new IllegalArgumentException("The results of this query exceeded the maximumn number of allowable byte: "+maxBytes+".  Please try the query again with a smaller page size or limit the columns returend in the select clause.");
+		}
+	}
+
+	/**
+	 * The number of bytes written to this stream.
+	 * @return
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.sagebionetworks.repo.web.query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.sagebionetworks.repo.model.NodeQueryRow;
+import org.sagebionetworks.repo.model.NodeQueryRowHandler;
+
+/**
+ * Writes query results as JSON directly to an output stream as each row is read
+ * from the database. The JSON matches the serialized form of QueryResults.
+ * 
+ * The byte limit is enforced on the bytes actually written.
+ * 
+ */
+public class QueryResultsStreamWriter implements NodeQueryRowHandler {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	public static final String TOTAL_NUMBER_OF_RESULTS = "totalNumberOfResults";
+	public static final String RESULTS = "results";
+	public static final String NEXT_PAGE_TOKEN = "nextPageToken";
+
+	private ByteLimitOutputStream limitStream;
+	private JsonGenerator generator;
+	private String tableName;
+	private Set<String> excluded;
+
+	/**
+	 * 
+	 * @param out The stream the JSON is written to.
+	 * @param maxBytes The maximum number of bytes that can be written.
+	 * @param tableName Each field name is prefixed with this table name.
+	 * @param excluded Fields that should not be written. Can be null.
+	 * @throws IOException
+	 */
+	public QueryResultsStreamWriter(OutputStream out, long maxBytes, String tableName, Set<String> excluded) throws IOException {
+		if(out == null) throw new IllegalArgumentException("OutputStream cannot be null");
+		if(tableName == null) throw new IllegalArgumentException("Table name cannot be null");
+		this.limitStream = new ByteLimitOutputStream(out, maxBytes);
+		this.generator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(limitStream, JsonEncoding.UTF8);
+		this.tableName = tableName;
+		this.excluded = excluded;
+	}
+
+	@Override
+	public void startResults(long totalNumberOfResults) {
+		try {
+			generator.writeStartObject();
+			generator.writeNumberField(TOTAL_NUMBER_OF_RESULTS, totalNumberOfResults);
+			generator.writeArrayFieldStart(RESULTS);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void handleRow(NodeQueryRow row) {
+		try {
+			generator.writeStartObject();
+			for(int i=0; i<row.size(); i++){
+				String name = row.getName(i);
+				if(excluded != null && excluded.contains(name)) continue;
+				generator.writeFieldName(tableName+"."+name);
+				generator.writeObject(row.getValue(i));
+			}
+			generator.writeEndObject();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void endResults(String nextPageToken) {
+		try {
+			generator.writeEndArray();
+			if(nextPageToken != null){
+				generator.writeStringField(NEXT_PAGE_TOKEN, nextPageToken);
+			}else{
+				generator.writeNullField(NEXT_PAGE_TOKEN);
+			}
+			generator.writeEndObject();
+			generator.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The number of bytes written so far.
+	 * @return
+	 */
+	public long getBytesWritten(){
+		return limitStream.getBytesWritten();
+	}
+
+}
@@ -3,6 +3,7 @@ package org.sagebionetworks.repo.web.service;
 import java.io.IOException;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
@@ -12,6 +13,7 @@ import org.sagebionetworks.repo.model.PaginatedResults;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
 import org.sagebionetworks.repo.model.daemon.RestoreSubmission;
+import org.sagebionetworks.repo.model.status.CacheStatisticsList;
 import org.sagebionetworks.repo.model.status.StackStatus;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.springframework.http.HttpHeaders;
@@ -23,6 +25,20 @@ public interface AdministrationService {
 			Boolean includeDependencies) throws DatastoreException,
 			UnauthorizedException, NotFoundException;
 
+	/**
+	 * List the objects to back up ordered by type and then by ID, starting after the given object.
+	 * @param userId
+	 * @param afterType the type of the last object of the previous page, or null for the first page
+	 * @param afterId the ID of the last object of the previous page, or null for the first page
+	 * @param limit
+	 * @param includeDependencies
+	 * @return
+	 */
+	public PaginatedResults<MigratableObjectData> getBackupObjectsAfter(
+			String userId, String afterType, String afterId, Integer limit,
+			Boolean includeDependencies) throws DatastoreException,
+			UnauthorizedException, NotFoundException;
+
 	/**
 	 * Start a backup daemon.  Monitor the status of the daemon with the getStatus method.
 	 * @param userId
@@ -64,6 +80,47 @@ public interface AdministrationService {
 			InvalidModelException, UnauthorizedException, NotFoundException,
 			IOException, ConflictingUpdateException;
 
+	/**
+	 * Write a backup directly to the response as a zip stream.  The optional BackupSubmission
+	 * of the request limits the backup to the given objects.
+	 * 
+	 * @param userId
+	 * @param type
+	 * @param header
+	 * @param request
+	 * @param response
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void streamBackup(String userId, String type, HttpHeaders header,
+			HttpServletRequest request, HttpServletResponse response)
+			throws DatastoreException, UnauthorizedException,
+			NotFoundException, IOException, InterruptedException;
+
+	/**
+	 * Restore from the zip stream that is the body of the request.  The restore is applied as
+	 * the stream is read and is finished when this returns.
+	 * 
+	 * @param userId
+	 * @param type
+	 * @param request
+	 * @return
+	 * @throws DatastoreException
+	 * @throws InvalidModelException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 * @throws IOException
+	 * @throws ConflictingUpdateException
+	 * @throws InterruptedException
+	 */
+	public BackupRestoreStatus restoreFromStream(String userId, String type,
+			HttpServletRequest request) throws DatastoreException,
+			InvalidModelException, UnauthorizedException, NotFoundException,
+			IOException, ConflictingUpdateException, InterruptedException;
+
 	/**
 	 * Delete a migratable object
 	 * 
@@ -103,6 +160,18 @@ public interface AdministrationService {
 			UnauthorizedException, NotFoundException, IOException,
 			ConflictingUpdateException;
 
+	/**
+	 * Start a backup of every entity changed since the given change number.
+	 * @param userId
+	 * @param changeNumber
+	 * @return
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 */
+	public BackupRestoreStatus startIncrementalBackup(String userId, Long changeNumber)
+			throws DatastoreException, UnauthorizedException, NotFoundException;
+
 	/**
 	 * Get the status of a running daemon (either a backup or restore)
 	 * @param daemonId
@@ -123,6 +192,19 @@ public interface AdministrationService {
 			UnauthorizedException, NotFoundException, IOException,
 			ConflictingUpdateException;
 
+	/**
+	 * Wait for a daemon to finish and then get its status.
+	 * @param daemonId
+	 * @param userId
+	 * @param maxWaitMS
+	 * @return The status as soon as the daemon is finished, or when the wait is over.
+	 * @throws DatastoreException
+	 * @throws UnauthorizedException
+	 * @throws NotFoundException
+	 */
+	public BackupRestoreStatus waitForCompletion(String daemonId, String userId, long maxWaitMS)
+			throws DatastoreException, UnauthorizedException, NotFoundException;
+
 	/**
 	 * Terminate a running daemon.  This has no effect if the daemon is already terminated.
 	 * @param daemonId
@@ -177,4 +259,17 @@ public interface AdministrationService {
 			throws DatastoreException, NotFoundException,
 			UnauthorizedException, IOException;
 
+	/**
+	 * Get the statistics of the in-memory caches of this instance.
+	 * 
+	 * @param userId
+	 * @return
+	 * @throws DatastoreException
+	 * @throws NotFoundException
+	 * @throws UnauthorizedException
+	 */
+	public CacheStatisticsList getCacheStatistics(String userId)
+			throws DatastoreException, NotFoundException,
+			UnauthorizedException;
+
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.sagebionetworks.repo.manager.StackStatusManager;
 import org.sagebionetworks.repo.manager.UserManager;
@@ -22,8 +23,11 @@ import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.daemon.BackupRestoreStatus;
 import org.sagebionetworks.repo.model.daemon.BackupSubmission;
 import org.sagebionetworks.repo.model.daemon.RestoreSubmission;
+import org.sagebionetworks.repo.model.status.CacheStatisticsList;
 import org.sagebionetworks.repo.model.status.StackStatus;
+import org.sagebionetworks.repo.model.util.BoundedCache;
 import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.repo.web.UrlHelpers;
 import org.sagebionetworks.repo.web.controller.ObjectTypeSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -65,6 +69,26 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		result.setTotalNumberOfResults(queryResults.getTotalNumberOfResults());
 		return result;
 	}
+
+	@Override
+	public PaginatedResults<MigratableObjectData> getBackupObjectsAfter(
+			String userId, String afterType, String afterId, Integer limit, Boolean includeDependencies)
+			throws DatastoreException, UnauthorizedException, NotFoundException {
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		if (!userInfo.isAdmin()) throw new UnauthorizedException("Only an administrator may access this service.");
+		MigratableObjectDescriptor after = null;
+		if (afterType!=null || afterId!=null) {
+			if (afterType==null || afterId==null) throw new IllegalArgumentException("Both "+UrlHelpers.AFTER_TYPE_PARAM+" and "+UrlHelpers.AFTER_ID_PARAM+" are required");
+			after = new MigratableObjectDescriptor();
+			after.setType(MigratableObjectType.valueOf(afterType));
+			after.setId(afterId);
+		}
+		QueryResults<MigratableObjectData> queryResults = dependencyManager.getAllObjectsAfter(after, limit, includeDependencies);
+		PaginatedResults<MigratableObjectData> result = new PaginatedResults<MigratableObjectData>();
+		result.setResults(queryResults.getResults());
+		result.setTotalNumberOfResults(queryResults.getTotalNumberOfResults());
+		return result;
+	}
 	
 	
 	/* (non-Javadoc)
@@ -106,6 +130,36 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		// start a restore daemon
 		return backupDaemonLauncher.startRestore(userInfo, file.getFileName(), MigratableObjectType.valueOf(type));
 	}
+
+	@Override
+	public void streamBackup(String userId, String type, HttpHeaders header,
+			HttpServletRequest request, HttpServletResponse response)
+			throws DatastoreException, UnauthorizedException,
+			NotFoundException, IOException, InterruptedException {
+		// The BackupSubmission is optional.  When included we will only backup the entity Ids included.
+		Set<String> entityIdsToBackup = null;
+		if(request.getInputStream() != null){
+			BackupSubmission submission = objectTypeSerializer.deserialize(request.getInputStream(), header,BackupSubmission.class, header.getContentType());
+			entityIdsToBackup = submission.getEntityIdsToBackup();
+		}
+		// Get the user
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		MigratableObjectType migrationType = MigratableObjectType.valueOf(type);
+		// The backup is written to the response as it is created.
+		response.setContentType(UrlHelpers.BACKUP_STREAM_CONTENT_TYPE);
+		backupDaemonLauncher.streamBackup(userInfo, entityIdsToBackup, migrationType, response.getOutputStream());
+		response.flushBuffer();
+	}
+
+	@Override
+	public BackupRestoreStatus restoreFromStream(String userId, String type,
+			HttpServletRequest request) throws DatastoreException,
+			InvalidModelException, UnauthorizedException, NotFoundException,
+			IOException, ConflictingUpdateException, InterruptedException {
+		// Get the user
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		return backupDaemonLauncher.restoreFromStream(userInfo, MigratableObjectType.valueOf(type), request.getInputStream());
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.sagebionetworks.repo.web.service.AdministrationService#deleteMigratableObject(java.lang.String, java.lang.String, java.lang.String, org.springframework.http.HttpHeaders, javax.servlet.http.HttpServletRequest)
@@ -147,6 +201,14 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		return backupDaemonLauncher.startSearchDocument(userInfo, entityIdsToBackup);
 	}
 	
+	@Override
+	public BackupRestoreStatus startIncrementalBackup(String userId, Long changeNumber)
+			throws DatastoreException, UnauthorizedException, NotFoundException {
+		if(changeNumber == null) throw new IllegalArgumentException("Change number cannot be null");
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		return backupDaemonLauncher.startIncrementalBackup(userInfo, changeNumber);
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.sagebionetworks.repo.web.service.AdministrationService#getStatus(java.lang.String, java.lang.String, org.springframework.http.HttpHeaders, javax.servlet.http.HttpServletRequest)
 	 */
@@ -161,6 +223,13 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		// Get the status of this daemon
 		return backupDaemonLauncher.getStatus(userInfo, daemonId);
 	}
+
+	@Override
+	public BackupRestoreStatus waitForCompletion(String daemonId, String userId, long maxWaitMS)
+			throws DatastoreException, UnauthorizedException, NotFoundException {
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		return backupDaemonLauncher.waitForCompletion(userInfo, daemonId, maxWaitMS);
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.sagebionetworks.repo.web.service.AdministrationService#terminateDaemon(java.lang.String, java.lang.String, org.springframework.http.HttpHeaders, javax.servlet.http.HttpServletRequest)
@@ -204,4 +273,14 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		return stackStatusManager.updateStatus(userInfo, updatedValue);
 	}
 
+	@Override
+	public CacheStatisticsList getCacheStatistics(String userId)
+			throws DatastoreException, NotFoundException, UnauthorizedException {
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		if (!userInfo.isAdmin()) throw new UnauthorizedException("Only an administrator may access this service.");
+		CacheStatisticsList results = new CacheStatisticsList();
+		results.setList(BoundedCache.getAllStatistics());
+		return results;
+	}
+
 }
@@ -1,5 +1,7 @@
 package org.sagebionetworks.repo.web.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 
@@ -581,6 +583,46 @@ public interface EntityService {
 			throws DatastoreException, ParseException, NotFoundException,
 			UnauthorizedException;
 
+	/**
+	 * Perform a query, optionally using keyset paging. Each page seeks directly to the row following the 
+	 * last row of the previous page, so the offset of the query is ignored.
+	 * 
+	 * @param userId
+	 * @param query
+	 * @param keysetPaging When true, the results will include a token for the next page.
+	 * @param pageToken The token from the previous page. Null for the first page.
+	 * @param count When false the total number of results is not computed.
+	 * @param request
+	 * @return
+	 * @throws DatastoreException
+	 * @throws ParseException
+	 * @throws NotFoundException
+	 * @throws UnauthorizedException
+	 */
+	public QueryResults query(String userId, String query, boolean keysetPaging, String pageToken, boolean count, HttpServletRequest request)
+			throws DatastoreException, ParseException, NotFoundException,
+			UnauthorizedException;
+
+	/**
+	 * Perform a query, writing the results as JSON directly to the passed stream as 
+	 * each row is read.  The results are never held in memory.
+	 * 
+	 * @param userId
+	 * @param query
+	 * @param keysetPaging When true, the results will include a token for the next page.
+	 * @param pageToken The token from the previous page. Null for the first page.
+	 * @param count When false the total number of results is not computed.
+	 * @param out
+	 * @throws DatastoreException
+	 * @throws ParseException
+	 * @throws NotFoundException
+	 * @throws UnauthorizedException
+	 * @throws IOException 
+	 */
+	public void streamQuery(String userId, String query, boolean keysetPaging, String pageToken, boolean count, OutputStream out)
+			throws DatastoreException, ParseException, NotFoundException,
+			UnauthorizedException, IOException;
+
 	
 	/**
 	 * Get the number of children that this entity has.
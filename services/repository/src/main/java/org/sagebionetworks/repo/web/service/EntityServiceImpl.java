@@ -1,5 +1,7 @@
 package org.sagebionetworks.repo.web.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -12,6 +14,7 @@ import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.ids.IdGenerator;
 import org.sagebionetworks.repo.manager.EntityManager;
 import org.sagebionetworks.repo.manager.PermissionsManager;
@@ -50,6 +53,7 @@ import org.sagebionetworks.repo.web.controller.metadata.EntityEvent;
 import org.sagebionetworks.repo.web.controller.metadata.EventType;
 import org.sagebionetworks.repo.web.controller.metadata.MetadataProviderFactory;
 import org.sagebionetworks.repo.web.controller.metadata.TypeSpecificMetadataProvider;
+import org.sagebionetworks.repo.web.query.QueryResultsStreamWriter;
 import org.sagebionetworks.repo.web.query.QueryStatement;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DeadlockLoserDataAccessException;
@@ -699,15 +703,40 @@ public class EntityServiceImpl implements EntityService {
 	@Override
 	public QueryResults query(String userId, String query, HttpServletRequest request) 
 			throws DatastoreException, ParseException, NotFoundException, UnauthorizedException {
+		return query(userId, query, false, null, true, request);
+	}
+	
+	@Override
+	public QueryResults query(String userId, String query, boolean keysetPaging, String pageToken, boolean count, HttpServletRequest request) 
+			throws DatastoreException, ParseException, NotFoundException, UnauthorizedException {
 		// Parse and validate the query
 		QueryStatement stmt = new QueryStatement(query);
 		// Convert from a query statement to a basic query
 		BasicQuery basic = QueryTranslator.createBasicQuery(stmt);
+		basic.setKeysetPaging(keysetPaging);
+		basic.setPageToken(pageToken);
+		basic.setCount(count);
 		QueryResults results = executeQueryWithAnnotations(userId, basic, request);
 		results.setResults(formulateResult(stmt, results.getResults()));
 		return results;
 	}
 	
+	@Override
+	public void streamQuery(String userId, String query, boolean keysetPaging, String pageToken, boolean count, OutputStream out)
+			throws DatastoreException, ParseException, NotFoundException, UnauthorizedException, IOException {
+		// Parse and validate the query
+		QueryStatement stmt = new QueryStatement(query);
+		// Convert from a query statement to a basic query
+		BasicQuery basic = QueryTranslator.createBasicQuery(stmt);
+		basic.setKeysetPaging(keysetPaging);
+		basic.setPageToken(pageToken);
+		basic.setCount(count);
+		UserInfo userInfo = userManager.getUserInfo(userId);
+		// Each row is written as it is read, applying the same rules as formulateResult()
+		QueryResultsStreamWriter writer = new QueryResultsStreamWriter(out, StackConfiguration.getMaximumBytesPerQueryResult(), stmt.getTableName(), EXCLUDED_PROPERTIES.get("dataset"));
+		nodeQueryDao.executeQuery(basic, userInfo, writer);
+	}
+	
 	@Override
 	public QueryResults executeQueryWithAnnotations(String userId, BasicQuery query, HttpServletRequest request) throws DatastoreException, NotFoundException, UnauthorizedException {
 		if(query == null) throw new IllegalArgumentException("Query cannot be null");
@@ -715,13 +744,15 @@ public class EntityServiceImpl implements EntityService {
 		UserInfo userInfo = userManager.getUserInfo(userId);
 		NodeQueryResults nodeResults = nodeQueryDao.executeQuery(query, userInfo);
 		// done
-		return new QueryResults(nodeResults.getAllSelectedData(), nodeResults.getTotalNumberOfResults());
+		QueryResults results = new QueryResults(nodeResults.getAllSelectedData(), nodeResults.getTotalNumberOfResults());
+		results.setNextPageToken(nodeResults.getNextPageToken());
+		return results;
 	}
 
 
 	/**
 	 * First, execute the given query to determine the nodes that match the criteria.
-	 * Then, for each node id, fetch the entity and build up the paginated results.
+	 * Then, fetch the entities for the node ids and build up the paginated results.
 	 * 
 	 * @param <T>
 	 * @param paging
@@ -743,11 +774,11 @@ public class EntityServiceImpl implements EntityService {
 			DatastoreException, UnauthorizedException {
 		// First execute the query.
 		NodeQueryResults nodeResults = nodeQueryDao.executeQuery(query, userInfo);
-		// Fetch each entity
-		List<T> entityList = new ArrayList<T>();
-		for(String id: nodeResults.getResultIds()){
-			T entity = this.getEntity(userInfo, id, request, clazz, EventType.GET);
-			entityList.add(entity);
+		// Fetch the entities together then add the type specific metadata to each
+		List<T> entityList = entityManager.getEntities(userInfo, nodeResults.getResultIds(), clazz);
+		EntityType type = EntityType.getNodeTypeForClass(clazz);
+		for(T entity: entityList){
+			this.doAddServiceSpecificMetadata(userInfo, entity, type, request, EventType.GET);
 		}
 		return new PaginatedResults<T>(request.getServletPath()
 				+ UrlHelpers.ENTITY, entityList,
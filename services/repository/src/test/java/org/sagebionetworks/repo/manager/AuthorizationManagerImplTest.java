@@ -8,7 +8,10 @@ import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -250,6 +253,31 @@ public class AuthorizationManagerImplTest {
 		
 	}
 
+	@Test
+	public void testGetNodesWithoutAccess() throws Exception {
+		Map<String, NodePermissionsInfo> nodes = new HashMap<String, NodePermissionsInfo>();
+		// The child inherits from its parent
+		nodes.put(node.getId(), new NodePermissionsInfo(node.getId(), node.getCreatedByPrincipalId()));
+		nodes.put(childNode.getId(), new NodePermissionsInfo(node.getId(), childNode.getCreatedByPrincipalId()));
+		nodes.put(nodeCreatedByTestUser.getId(), new NodePermissionsInfo(nodeCreatedByTestUser.getId(), nodeCreatedByTestUser.getCreatedByPrincipalId()));
+		// The user owns one of the nodes
+		Set<String> expected = new HashSet<String>();
+		expected.add(node.getId());
+		expected.add(childNode.getId());
+		assertEquals(expected, authorizationManager.getNodesWithoutAccess(userInfo, nodes, ACCESS_TYPE.READ));
+		// Granting access to the parent grants it to the child
+		AccessControlList acl = permissionsManager.getACL(node.getId(), userInfo);
+		acl = AuthorizationHelper.addToACL(acl, userInfo.getIndividualGroup(), ACCESS_TYPE.READ);
+		acl = permissionsManager.updateACL(acl, adminUser);
+		assertTrue(authorizationManager.getNodesWithoutAccess(userInfo, nodes, ACCESS_TYPE.READ).isEmpty());
+		assertEquals(expected, authorizationManager.getNodesWithoutAccess(userInfo, nodes, ACCESS_TYPE.DELETE));
+		// The same answers as checking one node at a time
+		for (String nodeId : nodes.keySet()) {
+			assertEquals(authorizationManager.canAccess(userInfo, nodeId, ACCESS_TYPE.DELETE), !expected.contains(nodeId));
+		}
+		assertTrue(authorizationManager.getNodesWithoutAccess(adminUser, nodes, ACCESS_TYPE.DELETE).isEmpty());
+	}
+	
 	// test lack of access to something that doesn't inherit its permissions, whose parent you CAN access
 	@Test
 	public void testCantAccessNotInherited() throws Exception {		
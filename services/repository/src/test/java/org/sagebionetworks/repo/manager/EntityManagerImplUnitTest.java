@@ -1,15 +1,32 @@
 package org.sagebionetworks.repo.manager;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.sagebionetworks.ids.IdGenerator;
 import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.InvalidModelException;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
+import org.sagebionetworks.repo.model.Project;
+import org.sagebionetworks.repo.model.Reference;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.User;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -74,6 +91,67 @@ public class EntityManagerImplUnitTest {
 	}
 	
 
+	/**
+	 * A loaded node of the given type with a single annotation.
+	 */
+	private NodeWithAnnotations createLoadedNode(String id, EntityType type) {
+		Node node = new Node();
+		node.setId(id);
+		node.setName("name" + id);
+		node.setNodeType(type.name());
+		node.setCreatedOn(new Date());
+		node.setModifiedOn(new Date());
+		node.setReferences(new HashMap<String, Set<Reference>>());
+		NamedAnnotations annos = new NamedAnnotations();
+		annos.getAdditionalAnnotations().addAnnotation("key", "value" + id);
+		return new NodeWithAnnotations(node, annos, "syn1");
+	}
+	
+	@Test
+	public void testGetEntities() throws Exception {
+		List<String> ids = Arrays.asList("syn3", "syn2", "syn4");
+		List<NodeWithAnnotations> loaded = new ArrayList<NodeWithAnnotations>();
+		for (String id : ids) {
+			loaded.add(createLoadedNode(id, EntityType.project));
+		}
+		when(mockNodeManager.getNodesWithAnnotations(mockUser, ids)).thenReturn(loaded);
+		List<Project> projects = entityManager.getEntities(mockUser, ids, Project.class);
+		assertEquals(ids.size(), projects.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(ids.get(i), projects.get(i).getId());
+			assertEquals("name" + ids.get(i), projects.get(i).getName());
+		}
+	}
+	
+	@Test (expected=IllegalArgumentException.class)
+	public void testGetEntitiesWrongType() throws Exception {
+		List<String> ids = Arrays.asList("syn3");
+		List<NodeWithAnnotations> loaded = new ArrayList<NodeWithAnnotations>();
+		loaded.add(createLoadedNode("syn3", EntityType.dataset));
+		when(mockNodeManager.getNodesWithAnnotations(mockUser, ids)).thenReturn(loaded);
+		entityManager.getEntities(mockUser, ids, Project.class);
+	}
+	
+	@Test
+	public void testGetEntityChildren() throws Exception {
+		String parentId = "syn1";
+		Set<Node> children = new HashSet<Node>();
+		children.add(createLoadedNode("syn2", EntityType.project).getNode());
+		children.add(createLoadedNode("syn3", EntityType.layer).getNode());
+		when(mockNodeManager.getChildren(mockUser, parentId)).thenReturn(children);
+		// Only the children of the requested type are loaded
+		List<String> expectedIds = Arrays.asList("syn2");
+		List<NodeWithAnnotations> loaded = new ArrayList<NodeWithAnnotations>();
+		loaded.add(createLoadedNode("syn2", EntityType.project));
+		when(mockNodeManager.getNodesWithAnnotations(mockUser, expectedIds)).thenReturn(loaded);
+		List<Project> results = entityManager.getEntityChildren(mockUser, parentId, Project.class);
+		assertEquals(1, results.size());
+		assertEquals("syn2", results.get(0).getId());
+		// The children are not fetched one at a time
+		verify(mockNodeManager, never()).get(mockUser, "syn2");
+		verify(mockNodeManager, never()).getAnnotations((UserInfo)Mockito.any(), anyString());
+	}
+
 	@Test (expected=UnauthorizedException.class)
 	public void testGetAttachmentUrlNoReadAccess() throws Exception{
 		Long tokenId = new Long(456);
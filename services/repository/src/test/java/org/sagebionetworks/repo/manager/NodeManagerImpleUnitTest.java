@@ -4,11 +4,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +35,7 @@ import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.NamedAnnotations;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.model.ReferenceDao;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.User;
@@ -197,6 +207,55 @@ public class NodeManagerImpleUnitTest {
 		assertEquals(copy, annos);
 	}
 	
+	@Test
+	public void testGetNodesWithAnnotations() throws Exception {
+		List<String> ids = Arrays.asList("103", "101", "102");
+		Map<String, NodeWithAnnotations> loaded = new HashMap<String, NodeWithAnnotations>();
+		for(String id: ids){
+			Node node = new Node();
+			node.setId(id);
+			node.setCreatedByPrincipalId(1L);
+			// Every node shares one benefactor
+			loaded.put(id, new NodeWithAnnotations(node, new NamedAnnotations(), "100"));
+		}
+		when(mockNodeDao.getNodesWithAnnotations(ids)).thenReturn(loaded);
+		ArgumentCaptor<Map> permissions = ArgumentCaptor.forClass(Map.class);
+		when(mockAuthDao.getNodesWithoutAccess(eq(mockUserInfo), permissions.capture(), eq(ACCESS_TYPE.READ))).thenReturn(Collections.<String>emptySet());
+		List<NodeWithAnnotations> results = nodeManager.getNodesWithAnnotations(mockUserInfo, ids);
+		// The results are in the requested order
+		assertEquals(ids.size(), results.size());
+		for(int i=0; i<ids.size(); i++){
+			assertEquals(ids.get(i), results.get(i).getNode().getId());
+		}
+		// All of the nodes were authorized with a single call
+		assertEquals(ids.size(), permissions.getValue().size());
+		NodePermissionsInfo info = (NodePermissionsInfo) permissions.getValue().get("101");
+		assertEquals("100", info.getBenefactorId());
+		assertEquals(new Long(1), info.getCreatedByPrincipalId());
+		verify(mockAuthDao, never()).canAccess(eq(mockUserInfo), anyString(), (ACCESS_TYPE)any());
+	}
+	
+	@Test(expected=UnauthorizedException.class)
+	public void testGetNodesWithAnnotationsUnauthorized() throws Exception {
+		List<String> ids = Arrays.asList("101");
+		Node node = new Node();
+		node.setId("101");
+		node.setCreatedByPrincipalId(1L);
+		Map<String, NodeWithAnnotations> loaded = new HashMap<String, NodeWithAnnotations>();
+		loaded.put("101", new NodeWithAnnotations(node, new NamedAnnotations(), "100"));
+		when(mockNodeDao.getNodesWithAnnotations(ids)).thenReturn(loaded);
+		Set<String> denied = Collections.singleton("101");
+		when(mockAuthDao.getNodesWithoutAccess(eq(mockUserInfo), (Map<String, NodePermissionsInfo>)any(), eq(ACCESS_TYPE.READ))).thenReturn(denied);
+		nodeManager.getNodesWithAnnotations(mockUserInfo, ids);
+	}
+	
+	@Test(expected=NotFoundException.class)
+	public void testGetNodesWithAnnotationsNotFound() throws Exception {
+		List<String> ids = Arrays.asList("101");
+		when(mockNodeDao.getNodesWithAnnotations(ids)).thenReturn(new HashMap<String, NodeWithAnnotations>());
+		nodeManager.getNodesWithAnnotations(mockUserInfo, ids);
+	}
+	
 	@Test
 	public void testGetReferences() throws Exception {
 		EntityHeaderQueryResults expected = new EntityHeaderQueryResults();
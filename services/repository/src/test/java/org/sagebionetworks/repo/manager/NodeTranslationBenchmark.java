@@ -0,0 +1,263 @@
+package org.sagebionetworks.repo.manager;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.Entity;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.Reference;
+import org.sagebionetworks.repo.model.SchemaCache;
+import org.sagebionetworks.schema.ObjectSchema;
+import org.sagebionetworks.schema.TYPE;
+import org.sagebionetworks.schema.adapter.JSONEntity;
+
+/**
+ * Compares the entity to node translation of each entity type with the
+ * reflective field lookup it replaced. The reflective copies of the primary
+ * and secondary fields below are the old implementation, kept here for
+ * comparison only. The full round trip through annotations is also reported. This is not a unit
+ * test, run the main method with: <iterations>
+ *
+ */
+public class NodeTranslationBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 2000;
+
+	private static Map<String, Field> nodeFieldNames = new HashMap<String, Field>();
+	private static Map<String, String> nameConvertion = new HashMap<String, String>();
+	static {
+		for (Field field : Node.class.getDeclaredFields()) {
+			nodeFieldNames.put(field.getName(), field);
+		}
+		nameConvertion.put("creator", "createdBy");
+		nameConvertion.put("creationDate", "createdOn");
+		nameConvertion.put("etag", "eTag");
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		System.out.println("Iterations: " + iterations);
+		for (EntityType type : EntityType.values()) {
+			Entity entity = type.getClassForType().newInstance();
+			entity.setId("syn123");
+			entity.setName("benchmark " + type.name());
+			entity.setDescription("an entity used to time the translation");
+			entity.setParentId("syn456");
+			entity.setEtag("7");
+			entity.setCreatedBy("benchmark@sagebase.org");
+			entity.setCreatedOn(new Date());
+			// Warm up the JIT
+			run(type, entity, WARM_UP_ITERATIONS, false);
+			run(type, entity, iterations, true);
+		}
+	}
+
+	private static void run(EntityType type, Entity entity, int iterations, boolean print) throws Exception {
+		Node node = new Node();
+		Entity copy = type.getClassForType().newInstance();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			reflectiveUpdateNodeFromObject(entity, node);
+			reflectiveUpdateObjectFromNode(copy, node);
+		}
+		report(print, type.name() + " reflective primary", start, iterations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			NodeTranslationUtils.updateNodeFromObject(entity, node);
+			NodeTranslationUtils.updateObjectFromNode(copy, node);
+		}
+		report(print, type.name() + " planned primary", start, iterations);
+
+		Map<String, Set<Reference>> references = new HashMap<String, Set<Reference>>();
+		Annotations annos = new Annotations();
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			reflectiveUpdateNodeSecondaryFieldsFromObject(entity, annos, references);
+			reflectiveUpdateObjectFromNodeSecondaryFields(copy, annos, references);
+		}
+		report(print, type.name() + " reflective secondary", start, iterations);
+
+		references = new HashMap<String, Set<Reference>>();
+		annos = new Annotations();
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			NodeTranslationUtils.updateNodeSecondaryFieldsFromObject(entity, annos, references);
+			NodeTranslationUtils.updateObjectFromNodeSecondaryFields(copy, annos, references);
+		}
+		report(print, type.name() + " planned secondary", start, iterations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Node roundTrip = NodeTranslationUtils.createFromEntity(entity);
+			Annotations annos = new Annotations();
+			NodeTranslationUtils.updateNodeSecondaryFieldsFromObject(entity, annos, roundTrip.getReferences());
+			NodeTranslationUtils.updateObjectFromNodeSecondaryFields(copy, annos, roundTrip.getReferences());
+			NodeTranslationUtils.updateObjectFromNode(copy, roundTrip);
+		}
+		report(print, type.name() + " planned round trip", start, iterations);
+	}
+
+	private static void reflectiveUpdateNodeFromObject(Entity base, Node node) throws IllegalAccessException {
+		for (Field field : base.getClass().getDeclaredFields()) {
+			String name = field.getName();
+			String nodeName = nameConvertion.get(name);
+			if (nodeName == null) {
+				nodeName = name;
+			}
+			Field nodeField = nodeFieldNames.get(nodeName);
+			if (nodeField != null) {
+				field.setAccessible(true);
+				nodeField.setAccessible(true);
+				nodeField.set(node, field.get(base));
+			}
+		}
+	}
+
+	private static void reflectiveUpdateObjectFromNode(Entity base, Node node) throws IllegalAccessException {
+		for (Field field : base.getClass().getDeclaredFields()) {
+			String name = field.getName();
+			String nodeName = nameConvertion.get(name);
+			if (nodeName == null) {
+				nodeName = name;
+			}
+			Field nodeField = nodeFieldNames.get(nodeName);
+			if (nodeField != null) {
+				field.setAccessible(true);
+				nodeField.setAccessible(true);
+				Object value = nodeField.get(node);
+				if (value != null) {
+					field.set(base, value);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void reflectiveUpdateNodeSecondaryFieldsFromObject(Entity base, Annotations annos,
+			Map<String, Set<Reference>> references) throws IllegalAccessException {
+		ObjectSchema schema = SchemaCache.getSchema(base);
+		Map<String, ObjectSchema> schemaProperties = schema.getProperties();
+		if (schemaProperties == null) {
+			schemaProperties = new HashMap<String, ObjectSchema>();
+		}
+		for (Field field : base.getClass().getDeclaredFields()) {
+			String name = field.getName();
+			String nodeName = nameConvertion.get(name);
+			if (nodeName == null) {
+				nodeName = name;
+			}
+			if (nodeFieldNames.containsKey(nodeName)) {
+				continue;
+			}
+			field.setAccessible(true);
+			Object value = field.get(base);
+			ObjectSchema propSchema = schemaProperties.get(name);
+			if (propSchema == null) {
+				continue;
+			}
+			if (propSchema.getEnum() != null) {
+				value = NodeTranslationUtils.getNameFromEnum(value);
+			}
+			if (propSchema.isTransient()) {
+				continue;
+			}
+			if (propSchema.getItems() != null && Reference.class.getName().equals(propSchema.getItems().getId())) {
+				if (value == null) {
+					references.remove(name);
+				} else {
+					references.put(name, (Set<Reference>) value);
+				}
+				continue;
+			}
+			if (propSchema.getId() != null && Reference.class.getName().equals(propSchema.getId())) {
+				if (value == null) {
+					references.remove(name);
+				} else {
+					HashSet<Reference> set = new HashSet<Reference>();
+					set.add((Reference) value);
+					references.put(name, set);
+					continue;
+				}
+			}
+			if (value == null) {
+				annos.deleteAnnotation(name);
+			} else if (propSchema.getContentEncoding() != null || value instanceof JSONEntity) {
+				annos.replaceAnnotation(name, NodeTranslationUtils.objectToBytes(value, propSchema));
+			} else {
+				annos.replaceAnnotation(name, value);
+			}
+		}
+	}
+
+	private static void reflectiveUpdateObjectFromNodeSecondaryFields(Entity base, Annotations annos,
+			Map<String, Set<Reference>> references) throws IllegalAccessException, ClassNotFoundException {
+		ObjectSchema schema = SchemaCache.getSchema(base);
+		Map<String, ObjectSchema> schemaProperties = schema.getProperties();
+		if (schemaProperties == null) {
+			schemaProperties = new HashMap<String, ObjectSchema>();
+		}
+		for (Field field : base.getClass().getDeclaredFields()) {
+			String name = field.getName();
+			String nodeName = nameConvertion.get(name);
+			if (nodeName == null) {
+				nodeName = name;
+			}
+			if (nodeFieldNames.containsKey(nodeName)) {
+				continue;
+			}
+			field.setAccessible(true);
+			ObjectSchema propSchema = schemaProperties.get(name);
+			if (propSchema == null) {
+				continue;
+			}
+			Object value = annos.getSingleValue(name);
+			if (TYPE.ARRAY == propSchema.getType() && Reference.class.getName().equals(propSchema.getItems().getId())) {
+				Set<Reference> referenceGroup = references.get(name);
+				field.set(base, referenceGroup == null ? new HashSet<Reference>() : referenceGroup);
+				continue;
+			}
+			if (propSchema.getId() != null && Reference.class.getName().equals(propSchema.getId())) {
+				Set<Reference> referenceGroup = references.get(name);
+				field.set(base, referenceGroup == null ? null : referenceGroup.iterator().next());
+				continue;
+			}
+			if (value == null) {
+				continue;
+			}
+			if (field.getType() == Boolean.class) {
+				value = Boolean.parseBoolean((String) value);
+			}
+			if (propSchema.getEnum() != null) {
+				value = NodeTranslationUtils.getValueOfFromEnum((String) value, Class.forName(propSchema.getId()));
+			}
+			if (propSchema.isTransient()) {
+				continue;
+			}
+			if (propSchema.getContentEncoding() != null || value instanceof JSONEntity) {
+				field.set(base, NodeTranslationUtils.bytesToObject((byte[]) value, propSchema));
+			} else if (field.getType().isAssignableFrom(Collection.class)) {
+				List<Object> list = new ArrayList<Object>();
+				list.add(value);
+				field.set(base, list);
+			} else {
+				field.set(base, value);
+			}
+		}
+	}
+
+	private static void report(boolean print, String name, long startNano, int iterations) {
+		if (!print) return;
+		double elapsedMS = (System.nanoTime() - startNano) / 1000000.0;
+		System.out.println(String.format("%-45s %10.0f ops/sec", name, iterations / (elapsedMS / 1000.0)));
+	}
+}
@@ -347,6 +347,20 @@ public class NodeTranslationUtilsTest {
 		assertEquals(code, clone);
 	}
 	
+	@Test
+	public void testEveryEntityTypeRoundTrip() throws Exception{
+		// The translation plan of each entity type must copy every field it knows about.
+		for(EntityType type: EntityType.values()){
+			Entity entity = type.getClassForType().newInstance();
+			entity.setName("name of "+type.name());
+			entity.setDescription("description of "+type.name());
+			entity.setParentId("syn456");
+			entity.setCreatedBy("someone@sagebase.org");
+			Entity clone = cloneUsingNodeTranslation(entity);
+			assertEquals(entity, clone);
+		}
+	}
+	
 	@Test
 	public void testIsPrimaryFieldNames(){
 		// check all of the fields for each object type.
@@ -0,0 +1,166 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.UserGroup;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class PermissionsCacheImplTest {
+
+	private PermissionsCacheImpl cache;
+	private List<UserGroup> groups;
+
+	@Before
+	public void before(){
+		cache = new PermissionsCacheImpl(3, 60*1000);
+		groups = new ArrayList<UserGroup>();
+		groups.add(createGroup("9"));
+		groups.add(createGroup("2"));
+	}
+
+	private UserGroup createGroup(String id){
+		UserGroup group = new UserGroup();
+		group.setId(id);
+		return group;
+	}
+
+	@Test
+	public void testNodeInfo(){
+		assertNull(cache.getNodeInfo("syn1"));
+		assertEquals(1, cache.getNodeMissCount());
+		NodePermissionsInfo info = new NodePermissionsInfo("syn0", 123L);
+		cache.putNodeInfo("syn1", info);
+		assertEquals(info, cache.getNodeInfo("syn1"));
+		assertEquals(1, cache.getNodeHitCount());
+		cache.invalidateNode("syn1");
+		assertNull(cache.getNodeInfo("syn1"));
+		assertEquals(2, cache.getNodeMissCount());
+	}
+
+	@Test
+	public void testDecisionGroupOrder(){
+		assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+		cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+		// The same groups in a different order
+		List<UserGroup> reversed = new ArrayList<UserGroup>();
+		reversed.add(groups.get(1));
+		reversed.add(groups.get(0));
+		assertEquals(Boolean.TRUE, cache.getDecision("syn0", reversed, ACCESS_TYPE.READ));
+		assertEquals(PermissionsCacheImpl.createDecisionKey("syn0", groups, ACCESS_TYPE.READ),
+				PermissionsCacheImpl.createDecisionKey("syn0", reversed, ACCESS_TYPE.READ));
+		// Another type is not cached
+		assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.UPDATE));
+		assertEquals(1, cache.getDecisionHitCount());
+		assertEquals(2, cache.getDecisionMissCount());
+	}
+
+	@Test
+	public void testInvalidateBenefactor(){
+		cache.putDecision("syn1", groups, ACCESS_TYPE.READ, true);
+		cache.putDecision("syn1", groups, ACCESS_TYPE.UPDATE, false);
+		cache.putDecision("syn10", groups, ACCESS_TYPE.READ, true);
+		cache.invalidateBenefactor("syn1");
+		assertNull(cache.getDecision("syn1", groups, ACCESS_TYPE.READ));
+		assertNull(cache.getDecision("syn1", groups, ACCESS_TYPE.UPDATE));
+		// A benefactor with the same prefix must not be removed.
+		assertNotNull(cache.getDecision("syn10", groups, ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testMaxSize(){
+		for(int i=0; i<4; i++){
+			cache.putNodeInfo("syn"+i, new NodePermissionsInfo("syn0", 1L));
+		}
+		// The eldest was removed
+		assertNull(cache.getNodeInfo("syn0"));
+		for(int i=1; i<4; i++){
+			assertNotNull(cache.getNodeInfo("syn"+i));
+		}
+	}
+
+	@Test
+	public void testExpires() throws InterruptedException{
+		cache = new PermissionsCacheImpl(3, 10);
+		cache.putNodeInfo("syn1", new NodePermissionsInfo("syn0", 1L));
+		cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+		Thread.sleep(20);
+		assertNull(cache.getNodeInfo("syn1"));
+		assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testClear(){
+		cache.putNodeInfo("syn1", new NodePermissionsInfo("syn0", 1L));
+		cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+		cache.clear();
+		assertNull(cache.getNodeInfo("syn1"));
+		assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+		assertTrue(cache.getNodeMissCount() > 0);
+	}
+
+	@Test
+	public void testInvalidateAllNodes(){
+		cache.putNodeInfo("syn1", new NodePermissionsInfo("syn0", 1L));
+		cache.putNodeInfo("syn2", new NodePermissionsInfo("syn0", 1L));
+		cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+		cache.invalidateAllNodes();
+		assertNull(cache.getNodeInfo("syn1"));
+		assertNull(cache.getNodeInfo("syn2"));
+		// Decisions are only removed with their benefactor.
+		assertEquals(Boolean.TRUE, cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testInvalidateAllNodesAfterCompletion(){
+		TransactionSynchronizationManager.initSynchronization();
+		try{
+			cache.putNodeInfo("syn2", new NodePermissionsInfo("syn1", 1L));
+			cache.invalidateAllNodes();
+			// Before the commit another thread reads the deleted child and caches it again.
+			cache.putNodeInfo("syn2", new NodePermissionsInfo("syn1", 1L));
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			assertEquals(1, synchronizations.size());
+			synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			assertNull(cache.getNodeInfo("syn2"));
+		}finally{
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testInvalidateAfterCompletion(){
+		TransactionSynchronizationManager.initSynchronization();
+		try{
+			cache.putNodeInfo("syn1", new NodePermissionsInfo("syn0", 1L));
+			cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+			cache.invalidateNode("syn1");
+			cache.invalidateBenefactor("syn0");
+			assertNull(cache.getNodeInfo("syn1"));
+			assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+			// Before the commit another thread reads the old rows and caches them again.
+			cache.putNodeInfo("syn1", new NodePermissionsInfo("syn0", 1L));
+			cache.putDecision("syn0", groups, ACCESS_TYPE.READ, true);
+			// All of the invalidations of a transaction share one synchronization.
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			assertEquals(1, synchronizations.size());
+			synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			assertNull(cache.getNodeInfo("syn1"));
+			assertNull(cache.getDecision("syn0", groups, ACCESS_TYPE.READ));
+			assertFalse(TransactionSynchronizationManager.hasResource(cache));
+		}finally{
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+}
@@ -4,7 +4,9 @@ package org.sagebionetworks.repo.manager;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -199,5 +201,36 @@ public class UserManagerImplTest {
 		userManager.getUserInfo(AuthorizationConstants.ANONYMOUS_USER_ID);
 	}
 	
+	@Test
+	public void testCachedUntilInvalidated() throws Exception {
+		UserInfo ui = userManager.getUserInfo(TEST_USER);
+		groupsToDelete.add(ui.getIndividualGroup().getId());
+		groupsToDelete.add(userGroupDAO.findGroup(TestUserDAO.TEST_GROUP_NAME, false).getId());
+		// The second call is served from the cache
+		assertSame(ui, userManager.getUserInfo(TEST_USER));
+		// Invalidating another user does not drop this one
+		userManager.invalidateUserInfo(AuthorizationConstants.ANONYMOUS_USER_ID);
+		assertSame(ui, userManager.getUserInfo(TEST_USER));
+		// Now the user is reloaded
+		userManager.invalidateUserInfo(TEST_USER);
+		UserInfo reloaded = userManager.getUserInfo(TEST_USER);
+		assertNotSame(ui, reloaded);
+		assertEquals(ui.getIndividualGroup(), reloaded.getIndividualGroup());
+		// A change to a group drops every user
+		userManager.invalidatePrincipal(TestUserDAO.TEST_GROUP_NAME, false);
+		assertNotSame(reloaded, userManager.getUserInfo(TEST_USER));
+	}
+	
+	@Test
+	public void testDefaultGroupPinned() throws Exception {
+		UserGroup publicGroup = userManager.getDefaultUserGroup(DEFAULT_GROUPS.PUBLIC);
+		assertSame(publicGroup, userManager.getDefaultUserGroup(DEFAULT_GROUPS.PUBLIC));
+		// Until the group changes
+		userManager.invalidatePrincipal(DEFAULT_GROUPS.PUBLIC.name(), false);
+		UserGroup reloaded = userManager.getDefaultUserGroup(DEFAULT_GROUPS.PUBLIC);
+		assertNotSame(publicGroup, reloaded);
+		assertEquals(publicGroup, reloaded);
+	}
+	
 
 }
@@ -0,0 +1,86 @@
+package org.sagebionetworks.repo.manager.backup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class FramedBackupStreamTest {
+
+	private static byte[] frame(byte[] data, boolean finish) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FramedBackupOutputStream framed = new FramedBackupOutputStream(out);
+		// Write in uneven pieces.
+		framed.write(data, 0, 3);
+		framed.write(data[3]);
+		framed.write(data, 4, data.length-4);
+		if(finish){
+			framed.finish();
+		}
+		framed.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] readAll(FramedBackupInputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[5];
+		int count;
+		while((count = in.read(buffer)) >= 0){
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] data = "A backup that is written in frames".getBytes("UTF-8");
+		byte[] framed = frame(data, true);
+		// Anything after the end frame is not part of the backup.
+		byte[] withTrailing = Arrays.copyOf(framed, framed.length+3);
+		FramedBackupInputStream in = new FramedBackupInputStream(new ByteArrayInputStream(withTrailing));
+		assertArrayEquals(data, readAll(in));
+		assertEquals(-1, in.read());
+		in.readToEnd();
+	}
+
+	@Test
+	public void testReadToEnd() throws IOException {
+		byte[] data = "Only part of this is read".getBytes("UTF-8");
+		FramedBackupInputStream in = new FramedBackupInputStream(new ByteArrayInputStream(frame(data, true)));
+		assertEquals(data[0], in.read());
+		in.readToEnd();
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testNotFinished() throws IOException {
+		byte[] data = "A backup that failed part way".getBytes("UTF-8");
+		FramedBackupInputStream in = new FramedBackupInputStream(new ByteArrayInputStream(frame(data, false)));
+		try{
+			readAll(in);
+			fail("A backup without the end frame is incomplete");
+		}catch(IOException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void testTruncatedInFrame() throws IOException {
+		byte[] data = "A backup that was cut off".getBytes("UTF-8");
+		byte[] framed = frame(data, true);
+		FramedBackupInputStream in = new FramedBackupInputStream(new ByteArrayInputStream(Arrays.copyOf(framed, framed.length-10)));
+		try{
+			in.readToEnd();
+			fail("A truncated backup is incomplete");
+		}catch(IOException e){
+			// expected
+		}
+	}
+
+}
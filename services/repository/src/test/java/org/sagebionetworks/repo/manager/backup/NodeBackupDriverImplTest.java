@@ -7,13 +7,19 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.sql.BatchUpdateException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -135,6 +141,137 @@ public class NodeBackupDriverImplTest {
 		}
 	}
 	
+	@Test
+	public void testStreamRoundTrip() throws Exception{
+		// The destination reads the backup while the source is still writing it.
+		final PipedOutputStream out = new PipedOutputStream();
+		PipedInputStream in = new PipedInputStream(out, 1024);
+		final Exception[] writeError = new Exception[1];
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sourceDriver.writeBackup(out, new Progress(), null);
+					out.close();
+				} catch (Exception e) {
+					writeError[0] = e;
+				}
+			}
+		});
+		writer.start();
+		try{
+			Progress progress = new Progress();
+			assertTrue(destinationDriver.restoreFromBackup(in, progress));
+			// The zip directory that follows the entries is not needed by the restore.
+			while(in.read() != -1);
+			writer.join();
+			assertNull(writeError[0]);
+			assertEquals(stubSource, stubDestination);
+			assertTrue(progress.getLog().contains("Restored "+stubSource.getTotalNodeCount()+" nodes"));
+		}finally{
+			in.close();
+		}
+	}
+	
+	@Test
+	public void testParallelWriteOrder() throws Exception{
+		File serial = File.createTempFile("NodeBackupDriverImplTest", ".zip");
+		File parallel = File.createTempFile("NodeBackupDriverImplTest", ".zip");
+		try{
+			new NodeBackupDriverImpl(stubSource, mockMigrationDriver, 1, 1).writeBackup(serial, new Progress(), null);
+			Progress progress = new Progress();
+			new NodeBackupDriverImpl(stubSource, mockMigrationDriver, 4, 3).writeBackup(parallel, progress, null);
+			// The entries must be written in the same order no matter how many fetchers are used.
+			List<String> serialNames = getEntryNames(serial);
+			assertTrue(serialNames.size() > 0);
+			assertEquals(serialNames, getEntryNames(parallel));
+			assertEquals(progress.getTotalCount(), progress.getCurrentIndex());
+			assertTrue(progress.getLog().contains("nodes/sec"));
+			// The parallel file can be restored.
+			destinationDriver.restoreFromBackup(parallel, new Progress());
+			assertEquals(stubSource, stubDestination);
+		}finally{
+			serial.delete();
+			parallel.delete();
+		}
+	}
+	
+	@Test
+	public void testFetchesBounded() throws Exception{
+		// A deep and wide tree, so the children of each node are added in front of nodes that were already fetched.
+		Random rand = new Random(123);
+		TreeNodeBackup root = generateRandomLeaf(rand, true, 1, 2);
+		root.getNode().setParentId(null);
+		addChildren(rand, root, 5, 3);
+		final AtomicInteger fetched = new AtomicInteger(0);
+		NodeBackupStub countingSource = new NodeBackupStub(root){
+			@Override
+			public NodeBackup getNode(String id) {
+				fetched.incrementAndGet();
+				return super.getNode(id);
+			}
+		};
+		final int queueDepth = 2;
+		final AtomicInteger maxAhead = new AtomicInteger(0);
+		Progress progress = new Progress(){
+			@Override
+			public void incrementProgress() {
+				super.incrementProgress();
+				// Every node fetched but not yet written is held in memory.
+				int ahead = fetched.get() - (int) getCurrentIndex();
+				if(ahead > maxAhead.get()) maxAhead.set(ahead);
+			}
+		};
+		File file = File.createTempFile("NodeBackupDriverImplTest", ".zip");
+		try{
+			new NodeBackupDriverImpl(countingSource, mockMigrationDriver, 4, queueDepth).writeBackup(file, progress, null);
+			assertEquals(progress.getTotalCount(), progress.getCurrentIndex());
+			assertTrue("Fetched "+maxAhead.get()+" nodes ahead of the writer", maxAhead.get() <= queueDepth);
+		}finally{
+			file.delete();
+		}
+	}
+	
+	private static void addChildren(Random rand, TreeNodeBackup parent, int depth, int width){
+		if(depth == 0) return;
+		for(int i=0; i<width; i++){
+			TreeNodeBackup child = generateRandomLeaf(rand, false, 1, 2);
+			parent.getChildren().add(child);
+			addChildren(rand, child, depth-1, width);
+		}
+	}
+	
+	private static List<String> getEntryNames(File file) throws IOException{
+		List<String> names = new LinkedList<String>();
+		ZipInputStream zin = new ZipInputStream(new FileInputStream(file));
+		try{
+			ZipEntry entry;
+			while((entry = zin.getNextEntry()) != null){
+				names.add(entry.getName());
+			}
+		}finally{
+			zin.close();
+		}
+		return names;
+	}
+	
+	@Test
+	public void testRestoreBatches() throws Exception{
+		File temp = File.createTempFile("NodeBackupDriverImplTest", ".zip");
+		try{
+			sourceDriver.writeBackup(temp, new Progress(), null);
+			int nodeCount = (int) stubSource.getTotalNodeCount();
+			destinationDriver.restoreBatchSize = 3;
+			Progress progress = new Progress();
+			destinationDriver.restoreFromBackup(temp, progress);
+			assertEquals(stubSource, stubDestination);
+			assertEquals((nodeCount+2)/3, stubDestination.getBatchCount());
+			assertTrue(progress.getLog().contains("Restored "+nodeCount+" nodes"));
+		}finally{
+			temp.delete();
+		}
+	}
+	
 	@Test
 	public void testRoundTripSubSet() throws IOException, DatastoreException, NotFoundException, InterruptedException{
 		// Create a temp file
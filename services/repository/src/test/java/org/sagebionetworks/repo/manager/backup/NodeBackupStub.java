@@ -1,6 +1,7 @@
 package org.sagebionetworks.repo.manager.backup;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -12,6 +13,7 @@ import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeBackup;
 import org.sagebionetworks.repo.model.NodeRevisionBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
 import org.sagebionetworks.repo.web.NotFoundException;
 
 /**
@@ -26,6 +28,7 @@ public class NodeBackupStub implements NodeBackupManager {
 	private Map<String, NodeRevisionBackup> revisionIdMap = new HashMap<String, NodeRevisionBackup>();
 	private long nodeIdSequence;
 	private boolean wasCleared = false;
+	private int batchCount = 0;
 	
 	public NodeBackupStub(TreeNodeBackup root){
 		this.root = root;
@@ -140,6 +143,20 @@ public class NodeBackupStub implements NodeBackupManager {
 		return nn;
 	}
 
+	@Override
+	public Map<String, NodeWithAnnotations> getNodesWithAnnotations(Collection<String> ids) {
+		Map<String, NodeWithAnnotations> results = new HashMap<String, NodeWithAnnotations>();
+		for(String id: ids){
+			TreeNodeBackup nn = nodeIdMap.get(id);
+			if(nn == null) continue;
+			Node node = nn.getNode();
+			NodeRevisionBackup rev = getNodeRevision(id, node.getVersionNumber());
+			results.put(id, new NodeWithAnnotations(node, rev == null ? null : rev.getNamedAnnotations(), nn.getBenefactor()));
+		}
+		return results;
+	}
+
+	@Override
 	public List<String> getNodeChildrenIds(String id) {
 		TreeNodeBackup nn = getNodeNode(id);
 		// Build up the list of children
@@ -170,6 +187,18 @@ public class NodeBackupStub implements NodeBackupManager {
 		return nn.getAcl();
 	}
 
+	@Override
+	public Map<String, AccessControlList> getNodeACLs(Collection<String> ids) {
+		Map<String, AccessControlList> results = new HashMap<String, AccessControlList>();
+		for(String id: ids){
+			TreeNodeBackup nn = nodeIdMap.get(id);
+			if(nn != null && nn.getAcl() != null){
+				results.put(id, nn.getAcl());
+			}
+		}
+		return results;
+	}
+
 	@Override
 	public NodeRevisionBackup getNodeRevision(String nodeId, Long revId) {
 		String revKey = createKeyForLongs(nodeId, revId);
@@ -272,6 +301,24 @@ public class NodeBackupStub implements NodeBackupManager {
 			createOrUpdateRevision(rev);
 		}
 	}
+
+	@Override
+	public void createOrUpdateNodesWithRevisions(List<NodeBackup> backups, Map<String, List<NodeRevisionBackup>> revisions) {
+		if(backups == null) throw new IllegalArgumentException("backups cannot be null");
+		if(revisions == null) throw new IllegalArgumentException("revisions cannot be null");
+		batchCount++;
+		for(NodeBackup backup: backups){
+			createOrUpdateNodeWithRevisions(backup, revisions.get(backup.getNode().getId()));
+		}
+	}
+
+	/**
+	 * The number of batches that have been restored.
+	 * @return
+	 */
+	public int getBatchCount() {
+		return batchCount;
+	}
 	
 
 }
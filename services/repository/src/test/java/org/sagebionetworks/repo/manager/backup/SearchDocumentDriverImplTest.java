@@ -0,0 +1,231 @@
+package org.sagebionetworks.repo.manager.backup;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.repo.manager.NodeManager;
+import org.sagebionetworks.repo.manager.UserManager;
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.AccessControlList;
+import org.sagebionetworks.repo.model.EntityHeader;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Node;
+import org.sagebionetworks.repo.model.NodeBackup;
+import org.sagebionetworks.repo.model.NodeWithAnnotations;
+import org.sagebionetworks.repo.model.ResourceAccess;
+import org.sagebionetworks.repo.model.query.jdo.NodeAliasCache;
+import org.sagebionetworks.repo.model.search.Document;
+
+/**
+ * Unit tests for SearchDocumentDriverImpl
+ *
+ */
+public class SearchDocumentDriverImplTest {
+
+	private static final Long CREATOR = 42L;
+
+	NodeBackupManager mockBackupManager;
+	NodeManager mockNodeManager;
+	UserManager mockUserManager;
+	SearchDocumentDriverImpl driver;
+	File destination;
+	Map<String, NodeWithAnnotations> nodes;
+	Map<String, AccessControlList> acls;
+
+	@Before
+	public void before() throws Exception {
+		mockBackupManager = Mockito.mock(NodeBackupManager.class);
+		mockNodeManager = Mockito.mock(NodeManager.class);
+		mockUserManager = Mockito.mock(UserManager.class);
+		NodeAliasCache mockAliasCache = Mockito.mock(NodeAliasCache.class);
+		when(mockAliasCache.getPreferredAlias(anyString())).thenReturn("folder");
+		when(mockUserManager.getDisplayName(CREATOR)).thenReturn("Creator");
+		driver = new SearchDocumentDriverImpl(mockBackupManager);
+		driver.nodeManager = mockNodeManager;
+		driver.userManager = mockUserManager;
+		driver.aliasCache = mockAliasCache;
+		nodes = new HashMap<String, NodeWithAnnotations>();
+		acls = new HashMap<String, AccessControlList>();
+		when(mockBackupManager.getNodeACLs(any(Collection.class))).thenAnswer(new Answer<Map<String, AccessControlList>>() {
+			@Override
+			public Map<String, AccessControlList> answer(InvocationOnMock invocation) throws Throwable {
+				Map<String, AccessControlList> results = new HashMap<String, AccessControlList>();
+				for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+					if (acls.containsKey(id)) {
+						results.put((String) id, acls.get(id));
+					}
+				}
+				return results;
+			}
+		});
+		when(mockBackupManager.getNodesWithAnnotations(any(Collection.class))).thenAnswer(new Answer<Map<String, NodeWithAnnotations>>() {
+			@Override
+			public Map<String, NodeWithAnnotations> answer(InvocationOnMock invocation) throws Throwable {
+				Map<String, NodeWithAnnotations> results = new HashMap<String, NodeWithAnnotations>();
+				for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+					if (nodes.containsKey(id)) {
+						results.put((String) id, nodes.get(id));
+					}
+				}
+				return results;
+			}
+		});
+
+		// A root that is its own benefactor with two children that inherit from it.
+		AccessControlList acl = new AccessControlList();
+		ResourceAccess ra = new ResourceAccess();
+		ra.setPrincipalId(123L);
+		ra.setAccessType(new HashSet<ACCESS_TYPE>(Arrays.asList(ACCESS_TYPE.READ)));
+		Set<ResourceAccess> resourceAccess = new HashSet<ResourceAccess>();
+		resourceAccess.add(ra);
+		acl.setResourceAccess(resourceAccess);
+		NodeBackup root = createBackup("syn1", null, "syn1", "syn2", "syn3");
+		root.setAcl(acl);
+		acls.put("syn1", acl);
+		createBackup("syn2", "syn1", "syn1");
+		createBackup("syn3", "syn1", "syn1");
+		when(mockBackupManager.getRootId()).thenReturn("syn1");
+		when(mockBackupManager.getTotalNodeCount()).thenReturn(3L);
+
+		destination = File.createTempFile("searchDocument", ".json");
+	}
+
+	@After
+	public void after() {
+		if (destination != null) {
+			destination.delete();
+		}
+	}
+
+	private NodeBackup createBackup(String id, String parentId,
+			String benefactorId, String... children) throws Exception {
+		Node node = new Node();
+		node.setId(id);
+		node.setParentId(parentId);
+		node.setName("name" + id);
+		node.setETag("0");
+		node.setNodeType(EntityType.folder.name());
+		node.setVersionNumber(1L);
+		node.setCreatedByPrincipalId(CREATOR);
+		node.setCreatedOn(new Date());
+		node.setModifiedByPrincipalId(CREATOR);
+		node.setModifiedOn(new Date());
+		NodeBackup backup = new NodeBackup();
+		backup.setNode(node);
+		backup.setBenefactor(benefactorId);
+		backup.setChildren(new ArrayList<String>(Arrays.asList(children)));
+		when(mockBackupManager.getNode(id)).thenReturn(backup);
+		when(mockBackupManager.getNodeChildrenIds(id)).thenReturn(backup.getChildren());
+		nodes.put(id, new NodeWithAnnotations(node, new NamedAnnotations(), benefactorId));
+		return backup;
+	}
+
+	private JSONArray readDocuments() throws Exception {
+		Reader in = new InputStreamReader(new FileInputStream(destination), "UTF-8");
+		try {
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				builder.append(buffer, 0, read);
+			}
+			return new JSONArray(builder.toString());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testRecursive() throws Exception {
+		driver.writeSearchDocument(destination, new Progress(), null);
+		JSONArray documents = readDocuments();
+		assertEquals(3, documents.length());
+		// The path of a child is its parent's path followed by the child.
+		JSONObject fields = documents.getJSONObject(1).getJSONObject("fields");
+		assertEquals("syn2", fields.getString("id"));
+		JSONArray path = new JSONObject(fields.getString("path")).getJSONArray("path");
+		assertEquals(2, path.length());
+		assertEquals("syn1", path.getJSONObject(0).getString("id"));
+		assertEquals("syn2", path.getJSONObject(1).getString("id"));
+		assertEquals("123", fields.getJSONArray("acl").getString(0));
+		assertEquals("Creator", fields.getString("created_by"));
+		// Paths come from the walk, the shared benefactor is fetched once, and
+		// the shared creator is looked up once.
+		verify(mockNodeManager, never()).getNodePathAsAdmin(anyString());
+		verify(mockBackupManager, times(1)).getNodeACLs(any(Collection.class));
+		// The root is one page and its children another, each loaded with one call.
+		verify(mockBackupManager, times(2)).getNodesWithAnnotations(any(Collection.class));
+		verify(mockBackupManager, never()).getNode(anyString());
+		verify(mockBackupManager, never()).getNodeRevision(anyString(), anyLong());
+		verify(mockUserManager, times(1)).getDisplayName(CREATOR);
+	}
+
+	@Test
+	public void testEntitySet() throws Exception {
+		List<EntityHeader> rootPath = new ArrayList<EntityHeader>();
+		EntityHeader rootHeader = new EntityHeader();
+		rootHeader.setId("syn1");
+		rootHeader.setName("namesyn1");
+		rootHeader.setType(EntityType.folder.getEntityType());
+		rootPath.add(rootHeader);
+		when(mockNodeManager.getNodePathAsAdmin("syn1")).thenReturn(rootPath);
+		Set<String> ids = new HashSet<String>();
+		ids.add("syn2");
+		ids.add("syn3");
+		driver.writeSearchDocument(destination, new Progress(), ids);
+		JSONArray documents = readDocuments();
+		assertEquals(2, documents.length());
+		for (int i = 0; i < documents.length(); i++) {
+			JSONObject fields = documents.getJSONObject(i).getJSONObject("fields");
+			JSONArray path = new JSONObject(fields.getString("path")).getJSONArray("path");
+			assertEquals(2, path.length());
+			assertEquals(fields.getString("id"), path.getJSONObject(1).getString("id"));
+		}
+		// Both children share a parent so its path is only fetched once.
+		verify(mockNodeManager, times(1)).getNodePathAsAdmin("syn1");
+		verify(mockBackupManager, times(1)).getNodeACLs(any(Collection.class));
+		verify(mockBackupManager, times(1)).getNodesWithAnnotations(any(Collection.class));
+	}
+
+	@Test
+	public void testFormulateSearchDocuments() throws Exception {
+		when(mockNodeManager.getNodePathAsAdmin("syn1")).thenReturn(new ArrayList<EntityHeader>());
+		// syn9 was deleted.
+		List<Document> documents = driver.formulateSearchDocuments(Arrays.asList("syn2", "syn9", "syn3"));
+		// Deleted entities are left out.
+		assertEquals(2, documents.size());
+		assertEquals("syn2", documents.get(0).getId());
+		assertEquals("syn3", documents.get(1).getId());
+		verify(mockNodeManager, times(1)).getNodePathAsAdmin("syn1");
+		verify(mockBackupManager, times(1)).getNodesWithAnnotations(any(Collection.class));
+	}
+}
@@ -88,6 +88,42 @@ public class BackupDaemonLauncherImplAutowireTest {
 		backupDaemonLauncher.getStatus(nonAdmin, "123");
 	}
 	
+	@Test (expected=UnauthorizedException.class)
+	public void testNonAdminUserWaitForCompletion() throws UnauthorizedException, DatastoreException, NotFoundException{
+		UserInfo nonAdmin = testUserProvider.getTestUserInfo();
+		backupDaemonLauncher.waitForCompletion(nonAdmin, "123", 1000);
+	}
+	
+	@Test
+	public void testWaitForCompletion() throws UnauthorizedException, DatastoreException, NotFoundException, InvalidModelException{
+		Node node = new Node();
+		node.setName("BackupDaemonLauncherImplAutowireTest.testWaitForCompletion");
+		node.setNodeType(EntityType.project.name());
+		UserInfo admin = testUserProvider.getTestAdminUserInfo();
+		String id = nodeManager.createNewNode(node, admin);
+		nodesToDelete.add(id);
+		HashSet<String> toBackup = new HashSet<String>();
+		toBackup.add(id);
+		BackupRestoreStatus status = backupDaemonLauncher.startBackup(admin, toBackup, MigratableObjectType.ENTITY);
+		long start = System.currentTimeMillis();
+		while(DaemonStatus.COMPLETED != status.getStatus()){
+			if(System.currentTimeMillis()-start > TIMEOUT){
+				fail("Timmed out waiting for the backup deamon to finish");
+			}
+			// This returns as soon as the daemon finishes.
+			status = backupDaemonLauncher.waitForCompletion(admin, status.getId(), BackupDaemonLauncherImpl.MAX_WAIT_MS);
+			if(DaemonStatus.FAILED == status.getStatus()){
+				fail("Unexpected failure: "+status.getErrorMessage()+" "+status.getErrorDetails());
+			}
+		}
+		assertNotNull(status.getBackupUrl());
+		// Waiting on a finished daemon returns right away.
+		long before = System.currentTimeMillis();
+		status = backupDaemonLauncher.waitForCompletion(admin, status.getId(), BackupDaemonLauncherImpl.MAX_WAIT_MS);
+		assertEquals(DaemonStatus.COMPLETED, status.getStatus());
+		assertTrue(System.currentTimeMillis()-before < BackupDaemonLauncherImpl.MAX_WAIT_MS);
+	}
+	
 	@Test
 	public void testRoundTrip() throws UnauthorizedException, DatastoreException, NotFoundException, InterruptedException, InvalidModelException{
 		// First create a node using random datat
@@ -0,0 +1,101 @@
+package org.sagebionetworks.repo.manager.backup.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
+
+/**
+ * Mocks are used to test how the launcher reads the change log.
+ *
+ */
+public class BackupDaemonLauncherImplTest {
+
+	ChangeDAO mockChangeDao;
+	NodeDAO mockNodeDao;
+	BackupDaemonLauncherImpl launcher;
+	// The parent of each node that exists.
+	final Map<String, String> tree = new HashMap<String, String>();
+
+	@Before
+	public void before() throws Exception {
+		mockChangeDao = Mockito.mock(ChangeDAO.class);
+		mockNodeDao = Mockito.mock(NodeDAO.class);
+		launcher = new BackupDaemonLauncherImpl();
+		launcher.changeDAO = mockChangeDao;
+		launcher.nodeDao = mockNodeDao;
+		// root <- project <- folder <- file
+		tree.put("syn1", null);
+		tree.put("syn2", "syn1");
+		tree.put("syn3", "syn2");
+		tree.put("syn4", "syn3");
+		when(mockNodeDao.getParentIds(any(Collection.class))).thenAnswer(new Answer<Map<String, String>>() {
+			@Override
+			public Map<String, String> answer(InvocationOnMock invocation) throws Throwable {
+				Collection<String> ids = (Collection<String>) invocation.getArguments()[0];
+				Map<String, String> results = new HashMap<String, String>();
+				for(String id: ids){
+					if(tree.containsKey(id)){
+						results.put(id, tree.get(id));
+					}
+				}
+				return results;
+			}
+		});
+	}
+
+	@Test
+	public void testParentsFirst() throws Exception {
+		List<ChangeMessage> page = Arrays.asList(
+				createChange(1, "syn4", ObjectType.ENTITY, ChangeType.UPDATE),
+				createChange(2, "syn2", ObjectType.ACL, ChangeType.UPDATE),
+				createChange(3, "syn3", ObjectType.ENTITY, ChangeType.CREATE));
+		when(mockChangeDao.listCommittedChanges(eq(0L), anyLong())).thenReturn(page);
+		Set<String> results = launcher.getEntitiesChangedSince(0, 3);
+		// The ancestors outside of the changes decide the order too.
+		assertEquals(Arrays.asList("syn2", "syn3", "syn4"), new ArrayList<String>(results));
+	}
+
+	@Test
+	public void testCascadeDelete() throws Exception {
+		// Deleting the folder also deleted the file, but only the folder's delete is in the log.
+		List<ChangeMessage> page = Arrays.asList(
+				createChange(1, "syn4", ObjectType.ENTITY, ChangeType.UPDATE),
+				createChange(2, "syn2", ObjectType.ENTITY, ChangeType.UPDATE),
+				createChange(3, "syn3", ObjectType.ENTITY, ChangeType.DELETE));
+		tree.remove("syn3");
+		tree.remove("syn4");
+		when(mockChangeDao.listCommittedChanges(eq(0L), anyLong())).thenReturn(page);
+		Set<String> results = launcher.getEntitiesChangedSince(0, 3);
+		assertEquals(Arrays.asList("syn2"), new ArrayList<String>(results));
+	}
+
+	private static ChangeMessage createChange(long changeNumber, String objectId, ObjectType objectType, ChangeType changeType){
+		ChangeMessage change = new ChangeMessage();
+		change.setChangeNumber(changeNumber);
+		change.setObjectId(objectId);
+		change.setObjectType(objectType);
+		change.setChangeType(changeType);
+		return change;
+	}
+}
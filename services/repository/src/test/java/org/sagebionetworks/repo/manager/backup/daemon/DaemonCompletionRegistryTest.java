@@ -0,0 +1,49 @@
+package org.sagebionetworks.repo.manager.backup.daemon;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DaemonCompletionRegistryTest {
+
+	@Test
+	public void testNotRegistered() throws InterruptedException{
+		DaemonCompletionRegistry registry = new DaemonCompletionRegistry();
+		// A daemon of another instance cannot be waited on.
+		assertFalse(registry.awaitCompletion("123", 1000));
+	}
+
+	@Test
+	public void testComplete() throws InterruptedException{
+		final DaemonCompletionRegistry registry = new DaemonCompletionRegistry();
+		registry.register("123");
+		Thread completer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// complete anyway
+				}
+				registry.complete("123");
+			}
+		});
+		long start = System.currentTimeMillis();
+		completer.start();
+		assertTrue(registry.awaitCompletion("123", 10*1000));
+		// We were released by the daemon, not the timeout.
+		assertTrue(System.currentTimeMillis()-start < 10*1000);
+		// Once complete the daemon is no longer registered.
+		assertFalse(registry.awaitCompletion("123", 1000));
+	}
+
+	@Test
+	public void testTimeout() throws InterruptedException{
+		DaemonCompletionRegistry registry = new DaemonCompletionRegistry();
+		registry.register("123");
+		long start = System.currentTimeMillis();
+		assertTrue(registry.awaitCompletion("123", 50));
+		assertTrue(System.currentTimeMillis()-start >= 50);
+	}
+}
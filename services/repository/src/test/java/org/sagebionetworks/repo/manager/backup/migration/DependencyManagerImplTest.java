@@ -205,4 +205,43 @@ public class DependencyManagerImplTest {
 			assertEquals(""+i, id.getId());
 		}
 	}
+	
+	/**
+	 * Pages by ID: starts part way through DAO #1 and continues into DAO #2
+	 * 
+	 */
+	@Test
+	public void testGetAllObjectsAfter() throws Exception {
+		DependencyManagerImpl dependencyManager = new DependencyManagerImpl();
+		List<MigratableDAO> migratableDaos = new ArrayList<MigratableDAO>();
+		
+		MigratableDAO dao1 = Mockito.mock(MigratableDAO.class);
+		when(dao1.getCount()).thenReturn(LIST_SIZE);
+		when(dao1.getMigratableObjectType()).thenReturn(MigratableObjectType.ENTITY);
+		when(dao1.getMigrationObjectDataAfter(eq(0L)/*afterId*/, eq(3L)/*limit*/, anyBoolean()/*includeDependencies*/)).thenReturn(generateMigrationData(1L, 2L, true));
+		migratableDaos.add(dao1);
+		
+		MigratableDAO dao2 = Mockito.mock(MigratableDAO.class);
+		when(dao2.getCount()).thenReturn(LIST_SIZE);
+		when(dao2.getMigratableObjectType()).thenReturn(MigratableObjectType.PRINCIPAL);
+		when(dao2.getMigrationObjectDataAfter(eq(-1L)/*afterId*/, eq(1L)/*limit*/, anyBoolean()/*includeDependencies*/)).thenReturn(generateMigrationData(3L, 1L, false));
+		migratableDaos.add(dao2);
+		
+		dependencyManager.setMigratableDaos(migratableDaos);
+		QueryResults<MigratableObjectData> results = dependencyManager.getAllObjectsAfter(ObjectDescriptorUtils.createEntityObjectDescriptor(0L), 3, true);
+		
+		List<MigratableObjectData> ods = results.getResults();
+		assertEquals(3, ods.size());
+		assertEquals(2L*LIST_SIZE, results.getTotalNumberOfResults());
+		assertEquals("syn1", ods.get(0).getId().getId());
+		assertEquals("syn2", ods.get(1).getId().getId());
+		assertEquals(MigratableObjectType.PRINCIPAL, ods.get(2).getId().getType());
+		assertEquals("3", ods.get(2).getId().getId());
+		
+		// the first page starts at the beginning of DAO #1
+		when(dao1.getMigrationObjectDataAfter(eq(-1L)/*afterId*/, eq(1L)/*limit*/, anyBoolean()/*includeDependencies*/)).thenReturn(generateMigrationData(0L, 1L, true));
+		results = dependencyManager.getAllObjectsAfter(null, 1, true);
+		assertEquals(1, results.getResults().size());
+		assertEquals("syn0", results.getResults().get(0).getId().getId());
+	}
 }
@@ -0,0 +1,65 @@
+package org.sagebionetworks.repo.manager.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sagebionetworks.repo.model.ChangeCursorDAO;
+
+/**
+ * Change log cursors kept in memory.
+ *
+ */
+public class ChangeCursorDAOStub implements ChangeCursorDAO {
+
+	private Map<String, Long> nextChangeNumbers = new HashMap<String, Long>();
+	private Map<String, String> owners = new HashMap<String, String>();
+	private Map<String, Long> expiresOn = new HashMap<String, Long>();
+
+	@Override
+	public synchronized boolean acquireLease(String cursorName, String owner, long leaseMS) {
+		String current = owners.get(cursorName);
+		Long expires = expiresOn.get(cursorName);
+		long now = System.currentTimeMillis();
+		if(current != null && !current.equals(owner) && expires != null && expires >= now) return false;
+		owners.put(cursorName, owner);
+		expiresOn.put(cursorName, now+leaseMS);
+		return true;
+	}
+
+	@Override
+	public synchronized Long getNextChangeNumber(String cursorName) {
+		return nextChangeNumbers.get(cursorName);
+	}
+
+	@Override
+	public synchronized boolean setNextChangeNumber(String cursorName, String owner, long nextChangeNumber, long leaseMS) {
+		if(!owner.equals(owners.get(cursorName))) return false;
+		nextChangeNumbers.put(cursorName, nextChangeNumber);
+		expiresOn.put(cursorName, System.currentTimeMillis()+leaseMS);
+		return true;
+	}
+
+	@Override
+	public synchronized void releaseLease(String cursorName, String owner) {
+		if(owner.equals(owners.get(cursorName))){
+			owners.remove(cursorName);
+			expiresOn.remove(cursorName);
+		}
+	}
+
+	/**
+	 * Expire the lease whoever holds it, as if the holder had stopped.
+	 * @param cursorName
+	 */
+	public synchronized void expireLease(String cursorName) {
+		expiresOn.put(cursorName, 0L);
+	}
+
+	@Override
+	public synchronized void deleteAllCursors() {
+		nextChangeNumbers.clear();
+		owners.clear();
+		expiresOn.clear();
+	}
+
+}
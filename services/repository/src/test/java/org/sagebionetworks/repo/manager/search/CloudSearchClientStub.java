@@ -0,0 +1,43 @@
+package org.sagebionetworks.repo.manager.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sagebionetworks.utils.HttpClientHelperException;
+
+/**
+ * A search index that keeps the batches sent to it in memory.
+ *
+ */
+public class CloudSearchClientStub implements CloudSearchClient {
+
+	private List<String> batches = new ArrayList<String>();
+	private int failuresLeft = 0;
+
+	/**
+	 * Fail the next calls.
+	 * @param count
+	 */
+	public void failNext(int count) {
+		this.failuresLeft = count;
+	}
+
+	@Override
+	public void sendDocuments(byte[] batch) throws IOException, HttpClientHelperException {
+		if(failuresLeft > 0){
+			failuresLeft--;
+			throw new IOException("Stub failure");
+		}
+		batches.add(new String(batch, "UTF-8"));
+	}
+
+	/**
+	 * The batches sent so far.
+	 * @return
+	 */
+	public List<String> getBatches() {
+		return batches;
+	}
+
+}
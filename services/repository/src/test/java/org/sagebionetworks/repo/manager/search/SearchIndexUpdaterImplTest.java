@@ -0,0 +1,260 @@
+package org.sagebionetworks.repo.manager.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.repo.manager.backup.SearchDocumentDriver;
+import org.sagebionetworks.repo.model.ChangeDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.NodeInheritanceDAO;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.message.ObjectType;
+import org.sagebionetworks.repo.model.search.Document;
+import org.sagebionetworks.repo.model.search.DocumentTypeNames;
+
+import profiler.org.sagebionetworks.cloudwatch.Consumer;
+import profiler.org.sagebionetworks.cloudwatch.ProfileData;
+
+/**
+ * Unit tests for SearchIndexUpdaterImpl
+ *
+ */
+public class SearchIndexUpdaterImplTest {
+
+	private static final int PAGE_SIZE = 10;
+
+	ChangeDAO mockChangeDAO;
+	NodeInheritanceDAO mockInheritanceDAO;
+	SearchDocumentDriver mockDriver;
+	CloudSearchClientStub stub;
+	ChangeCursorDAOStub cursorStub;
+	Set<String> deleted;
+	List<Collection<String>> requested;
+
+	@Before
+	public void before() throws Exception {
+		mockChangeDAO = Mockito.mock(ChangeDAO.class);
+		mockInheritanceDAO = Mockito.mock(NodeInheritanceDAO.class);
+		mockDriver = Mockito.mock(SearchDocumentDriver.class);
+		stub = new CloudSearchClientStub();
+		cursorStub = new ChangeCursorDAOStub();
+		deleted = new HashSet<String>();
+		requested = new ArrayList<Collection<String>>();
+		when(mockChangeDAO.getCurrentChangeNumber()).thenReturn(0L);
+		// The driver creates a document for each entity that has not been deleted.
+		when(mockDriver.formulateSearchDocuments(any(Collection.class))).thenAnswer(new Answer<List<Document>>() {
+			@Override
+			public List<Document> answer(InvocationOnMock invocation) throws Throwable {
+				Collection<String> ids = (Collection<String>) invocation.getArguments()[0];
+				requested.add(new ArrayList<String>(ids));
+				List<Document> documents = new ArrayList<Document>();
+				for(String id: ids){
+					if(deleted.contains(id)) continue;
+					Document document = new Document();
+					document.setType(DocumentTypeNames.add);
+					document.setId(id);
+					document.setVersion(1L);
+					documents.add(document);
+				}
+				return documents;
+			}
+		});
+	}
+
+	private SearchIndexUpdaterImpl createUpdater(boolean enabled, int maxBatchBytes, int maxRetries) {
+		SearchIndexUpdaterImpl updater = new SearchIndexUpdaterImpl(enabled, PAGE_SIZE, maxBatchBytes, maxRetries, 1);
+		updater.changeDAO = mockChangeDAO;
+		updater.inheritanceDAO = mockInheritanceDAO;
+		updater.searchDocumentDriver = mockDriver;
+		updater.cloudSearchClient = stub;
+		updater.changeCursorDAO = cursorStub;
+		return updater;
+	}
+
+	private static ChangeMessage createChange(long number, String id, ObjectType objectType, ChangeType changeType) {
+		ChangeMessage change = new ChangeMessage();
+		change.setChangeNumber(number);
+		change.setObjectId(id);
+		change.setObjectType(objectType);
+		change.setChangeType(changeType);
+		change.setObjectEtag(changeType == ChangeType.DELETE ? null : "0");
+		return change;
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		SearchIndexUpdaterImpl updater = createUpdater(false, 1000000, 0);
+		updater.updateIndex();
+		verify(mockChangeDAO, never()).getCurrentChangeNumber();
+		assertEquals(0, stub.getBatches().size());
+	}
+
+	@Test
+	public void testEntityChanges() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(1, "syn1", ObjectType.ENTITY, ChangeType.CREATE));
+		page.add(createChange(2, "syn2", ObjectType.ENTITY, ChangeType.UPDATE));
+		page.add(createChange(3, "syn3", ObjectType.ENTITY, ChangeType.DELETE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		// syn2 was deleted after it was updated.
+		deleted.add("syn2");
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 0);
+		updater.updateIndex();
+		assertEquals(1, stub.getBatches().size());
+		JSONArray batch = new JSONArray(stub.getBatches().get(0));
+		assertEquals(3, batch.length());
+		assertEquals("syn1", batch.getJSONObject(0).getString("id"));
+		assertEquals("add", batch.getJSONObject(0).getString("type"));
+		assertEquals("syn3", batch.getJSONObject(1).getString("id"));
+		assertEquals("delete", batch.getJSONObject(1).getString("type"));
+		assertEquals("syn2", batch.getJSONObject(2).getString("id"));
+		assertEquals("delete", batch.getJSONObject(2).getString("type"));
+		assertEquals(3, updater.getDocumentsSentCount());
+		assertTrue(updater.getMSSinceCaughtUp() >= 0);
+
+		// The next run starts after the last change.
+		when(mockChangeDAO.getCurrentChangeNumber()).thenReturn(3L);
+		updater.updateIndex();
+		assertEquals(1, stub.getBatches().size());
+		assertEquals(0, updater.getChangeNumberLag());
+	}
+
+	@Test
+	public void testAclChange() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		// ACL changes can use the numeric form of the ID.
+		page.add(createChange(1, "4", ObjectType.ACL, ChangeType.UPDATE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		when(mockInheritanceDAO.getBeneficiaries("syn4")).thenReturn(new HashSet<String>(Arrays.asList("syn4", "syn5", "syn6")));
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 0);
+		updater.updateIndex();
+		// Every entity governed by the ACL gets a new document.
+		assertEquals(1, requested.size());
+		assertEquals(new HashSet<String>(Arrays.asList("syn4", "syn5", "syn6")), new HashSet<String>(requested.get(0)));
+		assertEquals(3, new JSONArray(stub.getBatches().get(0)).length());
+	}
+
+	@Test
+	public void testBatchSizeLimit() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(1, "syn1", ObjectType.ENTITY, ChangeType.UPDATE));
+		page.add(createChange(2, "syn2", ObjectType.ENTITY, ChangeType.UPDATE));
+		page.add(createChange(3, "syn3", ObjectType.ENTITY, ChangeType.UPDATE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		// Too small for two documents.
+		SearchIndexUpdaterImpl updater = createUpdater(true, 60, 0);
+		updater.updateIndex();
+		assertEquals(3, stub.getBatches().size());
+		for(String batch: stub.getBatches()){
+			assertEquals(1, new JSONArray(batch).length());
+		}
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(1, "syn1", ObjectType.ENTITY, ChangeType.UPDATE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		stub.failNext(2);
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 2);
+		updater.updateIndex();
+		assertEquals(1, stub.getBatches().size());
+		assertEquals(2, updater.getFailedAttemptCount());
+	}
+
+	@Test
+	public void testRetriesExhausted() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(1, "syn1", ObjectType.ENTITY, ChangeType.UPDATE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		when(mockChangeDAO.getCurrentChangeNumber()).thenReturn(0L, 1L);
+		stub.failNext(2);
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 1);
+		try {
+			updater.updateIndex();
+			fail("The batch should have failed");
+		} catch (DatastoreException e) {
+			// expected
+		}
+		assertEquals(0, stub.getBatches().size());
+		assertEquals(1, updater.getChangeNumberLag());
+		// The next run sends the change again.
+		updater.updateIndex();
+		assertEquals(1, stub.getBatches().size());
+		assertEquals(0, updater.getChangeNumberLag());
+	}
+
+	@Test
+	public void testOnlyLeaseHolderRuns() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(500, "syn1", ObjectType.ENTITY, ChangeType.UPDATE));
+		when(mockChangeDAO.getCurrentChangeNumber()).thenReturn(399L);
+		when(mockChangeDAO.listCommittedChanges(400L, PAGE_SIZE)).thenReturn(page);
+		when(mockChangeDAO.listCommittedChanges(501L, PAGE_SIZE)).thenReturn(new ArrayList<ChangeMessage>());
+		SearchIndexUpdaterImpl first = createUpdater(true, 1000000, 0);
+		SearchIndexUpdaterImpl second = createUpdater(true, 1000000, 0);
+		first.updateIndex();
+		assertEquals(1, stub.getBatches().size());
+		assertEquals(new Long(501), cursorStub.getNextChangeNumber(SearchIndexUpdaterImpl.CURSOR_NAME));
+		// The first instance holds the lease.
+		second.updateIndex();
+		verify(mockChangeDAO, never()).listCommittedChanges(501L, PAGE_SIZE);
+		// Once the first instance stops the second continues from the saved cursor.
+		cursorStub.expireLease(SearchIndexUpdaterImpl.CURSOR_NAME);
+		second.updateIndex();
+		verify(mockChangeDAO).listCommittedChanges(501L, PAGE_SIZE);
+		assertEquals(1, stub.getBatches().size());
+	}
+
+	@Test
+	public void testAclChangePaging() throws Exception {
+		List<ChangeMessage> page = new ArrayList<ChangeMessage>();
+		page.add(createChange(1, "syn4", ObjectType.ACL, ChangeType.UPDATE));
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(page);
+		Set<String> beneficiaries = new HashSet<String>();
+		for(int i=0; i<PAGE_SIZE*2+5; i++){
+			beneficiaries.add("syn"+(100+i));
+		}
+		when(mockInheritanceDAO.getBeneficiaries("syn4")).thenReturn(beneficiaries);
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 0);
+		updater.updateIndex();
+		// The documents are built a page at a time.
+		assertEquals(3, requested.size());
+		for(Collection<String> ids: requested){
+			assertTrue(ids.size() <= PAGE_SIZE);
+		}
+		assertEquals(PAGE_SIZE*2+6, updater.getDocumentsSentCount());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		when(mockChangeDAO.listCommittedChanges(1L, PAGE_SIZE)).thenReturn(new ArrayList<ChangeMessage>());
+		Consumer mockConsumer = Mockito.mock(Consumer.class);
+		SearchIndexUpdaterImpl updater = createUpdater(true, 1000000, 0);
+		updater.consumer = mockConsumer;
+		updater.setShouldProfile(true);
+		updater.updateIndex();
+		// The lag, the time since caught up and both counters.
+		verify(mockConsumer, times(4)).addProfileData(any(ProfileData.class));
+	}
+}
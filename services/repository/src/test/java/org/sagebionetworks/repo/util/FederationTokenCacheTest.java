@@ -0,0 +1,141 @@
+package org.sagebionetworks.repo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.util.FederationTokenCache.FederationToken;
+import org.springframework.http.HttpMethod;
+
+import com.amazonaws.services.securitytoken.model.Credentials;
+
+/**
+ * Unit tests for FederationTokenCache
+ *
+ */
+public class FederationTokenCacheTest {
+
+	/**
+	 * Issues tokens that live for an hour.
+	 */
+	private static class CountingLoader implements FederationTokenCache.Loader {
+		AtomicInteger calls = new AtomicInteger(0);
+		volatile boolean fail = false;
+		CountDownLatch release = null;
+
+		@Override
+		public FederationToken load() throws DatastoreException {
+			calls.incrementAndGet();
+			if (release != null) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new DatastoreException(e);
+				}
+			}
+			if (fail) throw new DatastoreException("STS is unavailable");
+			return new FederationToken(new Credentials(), new DateTime().plusHours(1));
+		}
+	}
+
+	FederationTokenCache cache;
+	CountingLoader loader;
+
+	@Before
+	public void before() {
+		cache = new FederationTokenCache("federationTokenCacheTest", 100);
+		loader = new CountingLoader();
+	}
+
+	@Test
+	public void testHit() throws Exception {
+		DateTime minimumExpires = new DateTime().plusMinutes(30);
+		FederationToken token = cache.get("stack-user", "syn123", HttpMethod.GET, minimumExpires, loader);
+		assertSame(token, cache.get("stack-user", "syn123", HttpMethod.GET, minimumExpires, loader));
+		assertEquals(1, loader.calls.get());
+		// Each part of the key matters
+		assertNotSame(token, cache.get("stack-other", "syn123", HttpMethod.GET, minimumExpires, loader));
+		assertNotSame(token, cache.get("stack-user", "syn456", HttpMethod.GET, minimumExpires, loader));
+		assertNotSame(token, cache.get("stack-user", "syn123", HttpMethod.HEAD, minimumExpires, loader));
+		assertEquals(4, loader.calls.get());
+	}
+
+	@Test
+	public void testReplacedEarly() throws Exception {
+		FederationToken token = cache.get("stack-user", "syn123", HttpMethod.GET, new DateTime(), loader);
+		// The cached token expires in an hour which is too soon for this request
+		FederationToken replaced = cache.get("stack-user", "syn123", HttpMethod.GET, new DateTime().plusHours(2), loader);
+		assertNotSame(token, replaced);
+		assertEquals(2, loader.calls.get());
+		// The new token is cached
+		assertSame(replaced, cache.get("stack-user", "syn123", HttpMethod.GET, new DateTime(), loader));
+	}
+
+	@Test
+	public void testFailureNotCached() throws Exception {
+		loader.fail = true;
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get("stack-user", "syn123", HttpMethod.GET, new DateTime(), loader);
+				fail("STS is unavailable");
+			} catch (DatastoreException e) {
+				// expected
+			}
+		}
+		assertEquals(2, loader.calls.get());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		loader.release = new CountDownLatch(1);
+		final int threadCount = 5;
+		final List<FederationToken> results = new ArrayList<FederationToken>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						FederationToken token = cache.get("stack-user", "syn123", HttpMethod.GET, new DateTime(), loader);
+						synchronized (results) {
+							results.add(token);
+						}
+					} catch (Exception e) {
+						// counted as a missing result
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		// Wait for every other request to join the first one.
+		long start = System.currentTimeMillis();
+		while (cache.getCoalescedCount() < threadCount - 1) {
+			assertTrue("Timed out waiting for the requests", System.currentTimeMillis() - start < 10000);
+			Thread.sleep(10);
+		}
+		loader.release.countDown();
+		for (Thread thread : threads) {
+			thread.join(10000);
+		}
+		// One call to STS answered every request.
+		assertEquals(1, loader.calls.get());
+		assertEquals(1, cache.getLoadCount());
+		assertEquals(threadCount, results.size());
+		for (FederationToken token : results) {
+			assertSame(results.get(0), token);
+		}
+	}
+}
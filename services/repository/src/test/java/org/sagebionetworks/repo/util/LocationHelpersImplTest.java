@@ -8,6 +8,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +18,7 @@ import org.junit.runner.RunWith;
 import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -143,4 +147,33 @@ public class LocationHelpersImplTest {
 		assertFalse(headUrl.equals(helper.presignS3HEADUrl("user1@foo.com", "/123/foo.zip", 6)));
 	}
 	
+	@Test
+	public void testFederationTokenReuse() throws Exception {
+		StubSTSClientFactory sts = new StubSTSClientFactory();
+		LocationHelper stubbedHelper = new LocationHelpersImpl(sts);
+		
+		// Keys under the same entity share a token
+		List<String> urls = stubbedHelper.presignS3GETUrls("batch@foo.com",
+				Arrays.asList("/456/foo.zip", "/456/bar.zip", "/789/foo.zip"));
+		assertEquals(3, urls.size());
+		assertTrue(urls.get(0).contains("/456/foo.zip?"));
+		assertTrue(urls.get(1).contains("/456/bar.zip?"));
+		assertTrue(urls.get(2).contains("/789/foo.zip?"));
+		assertEquals(2, sts.getRequests().size());
+		
+		// A url that is not cached yet is signed with the cached token
+		stubbedHelper.presignS3GETUrl("batch@foo.com", "/456/baz.zip");
+		stubbedHelper.presignS3GETUrl("batch@foo.com", "/456/short.zip", 6);
+		assertEquals(2, sts.getRequests().size());
+		
+		// Other users and methods get their own tokens
+		stubbedHelper.presignS3GETUrl("other@foo.com", "/456/foo.zip");
+		stubbedHelper.presignS3HEADUrls("batch@foo.com", Arrays.asList("/456/foo.zip"));
+		assertEquals(4, sts.getRequests().size());
+		
+		// Tokens handed out to clients are always new
+		stubbedHelper.createFederationTokenForS3("batch@foo.com", HttpMethod.GET, "/456/foo.zip");
+		assertEquals(5, sts.getRequests().size());
+	}
+	
 }
@@ -0,0 +1,66 @@
+package org.sagebionetworks.repo.util;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.identitymanagement.AmazonIdentityManagement;
+import com.amazonaws.services.identitymanagement.AmazonIdentityManagementClient;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
+import com.amazonaws.services.securitytoken.model.Credentials;
+import com.amazonaws.services.securitytoken.model.GetFederationTokenRequest;
+import com.amazonaws.services.securitytoken.model.GetFederationTokenResult;
+
+/**
+ * A local stand-in for STS that issues a new token for each request and
+ * records the requests it was sent.
+ *
+ */
+public class StubSTSClientFactory implements AmazonClientFactory {
+
+	private List<GetFederationTokenRequest> requests = Collections.synchronizedList(new ArrayList<GetFederationTokenRequest>());
+
+	@Override
+	public AmazonIdentityManagement getAmazonIdentityManagementClient() {
+		return mock(AmazonIdentityManagementClient.class);
+	}
+
+	@Override
+	public AWSSecurityTokenService getAWSSecurityTokenServiceClient() {
+		AWSSecurityTokenService mock = mock(AWSSecurityTokenServiceClient.class);
+		when(mock.getFederationToken(Mockito.<GetFederationTokenRequest>anyObject())).thenAnswer(new Answer<GetFederationTokenResult>() {
+			@Override
+			public GetFederationTokenResult answer(InvocationOnMock invocation) throws Throwable {
+				GetFederationTokenRequest request = (GetFederationTokenRequest) invocation.getArguments()[0];
+				requests.add(request);
+				int count = requests.size();
+				Credentials creds = new Credentials();
+				creds.setAccessKeyId("fakeAccessKeyId" + count);
+				creds.setSecretAccessKey("fakeSecretAccessKey" + count);
+				creds.setSessionToken("fakeSessionToken" + count);
+				creds.setExpiration(new Date(System.currentTimeMillis() + request.getDurationSeconds() * 1000L));
+				GetFederationTokenResult result = new GetFederationTokenResult();
+				result.setCredentials(creds);
+				return result;
+			}
+		});
+		return mock;
+	}
+
+	/**
+	 * The requests sent to this STS.
+	 * @return
+	 */
+	public List<GetFederationTokenRequest> getRequests() {
+		return requests;
+	}
+}
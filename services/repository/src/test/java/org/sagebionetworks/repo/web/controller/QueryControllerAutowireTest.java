@@ -9,6 +9,7 @@ import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,15 +20,13 @@ import org.sagebionetworks.repo.manager.TestUserDAO;
 import org.sagebionetworks.repo.manager.UserManager;
 import org.sagebionetworks.repo.model.Data;
 import org.sagebionetworks.repo.model.DatastoreException;
-import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.Project;
 import org.sagebionetworks.repo.model.QueryResults;
-import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
-import org.sagebionetworks.repo.queryparser.ParseException;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.repo.web.service.EntityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -66,16 +65,25 @@ public class QueryControllerAutowireTest {
 	}
 	
 	
+	/**
+	 * Run the query through the controller and read the streamed results.
+	 */
+	private QueryResults query(String query) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.query(TestUserDAO.ADMIN_USER_NAME, query, null, null, null, mockRequest, response);
+		return new ObjectMapper().readValue(response.getContentAsString(), QueryResults.class);
+	}
+	
 	@Test
 	public void testQueryForRoot() throws Exception{
 		String query = "select id, eTag from entity where parentId == null";
-		QueryResults results = controller.query(TestUserDAO.ADMIN_USER_NAME, query, mockRequest);
+		QueryResults results = query(query);
 		assertNotNull(results);
 		assertTrue(results.getTotalNumberOfResults() > 0);
 	}
 	
 	@Test
-	public void testPLFM_1272() throws DatastoreException, InvalidModelException, UnauthorizedException, NotFoundException, ParseException{
+	public void testPLFM_1272() throws Exception{
 		// Create a project
 		Project p = new Project();
 		p.setEntityType(Project.class.getName());
@@ -92,18 +100,18 @@ public class QueryControllerAutowireTest {
 		data.setId(id);
 		// Now query for the data object
 		String queryString = "SELECT id, name FROM data WHERE data.parentId == \""+p.getId()+"\"";
-		QueryResults results = controller.query(TestUserDAO.ADMIN_USER_NAME, queryString, mockRequest);
+		QueryResults results = query(queryString);
 		assertNotNull(results);
 		assertEquals(1l, results.getTotalNumberOfResults());
 		
 		queryString = "SELECT id, name FROM layer WHERE layer.parentId == \""+p.getId()+"\"";
-		results = controller.query(TestUserDAO.ADMIN_USER_NAME, queryString, mockRequest);
+		results = query(queryString);
 		assertNotNull(results);
 		assertEquals(1l, results.getTotalNumberOfResults());
 	}
 	
 	@Test
-	public void testQueryByPrincipal() throws DatastoreException, InvalidModelException, UnauthorizedException, NotFoundException, ParseException{
+	public void testQueryByPrincipal() throws Exception{
 		// Create a project
 		Project p = new Project();
 		p.setEntityType(Project.class.getName());
@@ -113,7 +121,7 @@ public class QueryControllerAutowireTest {
 		toDelete.add(p.getId());
 		// Now query for the data object
 		String queryString = "SELECT id, name FROM project WHERE createdByPrincipalId == \""+user.getIndividualGroup().getId()+"\"";
-		QueryResults results = controller.query(TestUserDAO.ADMIN_USER_NAME, queryString, mockRequest);
+		QueryResults results = query(queryString);
 		assertNotNull(results);
 		assertEquals(1l, results.getTotalNumberOfResults());
 	}
@@ -0,0 +1,72 @@
+package org.sagebionetworks.repo.web.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.NodeQueryRow;
+import org.sagebionetworks.repo.model.QueryResults;
+
+public class QueryResultsStreamWriterTest {
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRoundTrip() throws Exception{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultsStreamWriter writer = new QueryResultsStreamWriter(out, 10000, "entity", new HashSet<String>(Arrays.asList("excluded")));
+		writer.startResults(2);
+		NodeQueryRow row = new NodeQueryRow();
+		row.add("id", "syn123");
+		row.add("excluded", "skip me");
+		row.add("longAnno", Arrays.asList(1L, 2L));
+		writer.handleRow(row);
+		row.clear();
+		row.add("id", "syn456");
+		writer.handleRow(row);
+		writer.endResults(null);
+		assertEquals(out.size(), writer.getBytesWritten());
+		
+		QueryResults<Map<String, Object>> results = new ObjectMapper().readValue(out.toString("UTF-8"), QueryResults.class);
+		assertEquals(2, results.getTotalNumberOfResults());
+		assertNull(results.getNextPageToken());
+		List<Map<String, Object>> rows = results.getResults();
+		assertEquals(2, rows.size());
+		assertEquals("syn123", rows.get(0).get("entity.id"));
+		assertTrue(!rows.get(0).containsKey("entity.excluded"));
+		assertEquals(2, ((List)rows.get(0).get("entity.longAnno")).size());
+		assertEquals("syn456", rows.get(1).get("entity.id"));
+	}
+	
+	@Test
+	public void testNextPageToken() throws Exception{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultsStreamWriter writer = new QueryResultsStreamWriter(out, 10000, "entity", null);
+		writer.startResults(-1);
+		writer.endResults("token");
+		QueryResults results = new ObjectMapper().readValue(out.toString("UTF-8"), QueryResults.class);
+		assertEquals("token", results.getNextPageToken());
+	}
+	
+	@Test (expected=IllegalArgumentException.class)
+	public void testByteLimit() throws Exception{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultsStreamWriter writer = new QueryResultsStreamWriter(out, 100, "entity", null);
+		writer.startResults(1000);
+		NodeQueryRow row = new NodeQueryRow();
+		for(int i=0; i<1000; i++){
+			row.clear();
+			row.add("id", "syn"+i);
+			writer.handleRow(row);
+		}
+		writer.endResults(null);
+	}
+
+}
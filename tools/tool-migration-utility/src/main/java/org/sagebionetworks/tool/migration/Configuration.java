@@ -32,5 +32,12 @@ public interface Configuration {
 	
 	public long getWorkerTimeoutMs();	
 	
+	/**
+	 * When true, each backup is streamed from the source directly into a restore of the destination,
+	 * instead of going through a temp file and S3 on each side.
+	 * @return
+	 */
+	public boolean useStreamingMigration();
+	
 	
 }
@@ -34,6 +34,12 @@ public class Constants {
 	 */
 	public static final long MS_BETWEEN_SYNPASE_CALLS = 100;
 	
+	/**
+	 * How long (MS) the repository should hold a daemon status call waiting for the daemon to finish.
+	 * The call returns as soon as the daemon finishes, so this only needs to stay under the client's socket timeout.
+	 */
+	public static final long MS_DAEMON_STATUS_WAIT = 3000;
+	
 	public static long NANO_SECS_PER_MIL_SEC = 1000000;
 
 }
@@ -142,6 +142,12 @@ public class MigrationConfigurationImpl implements Configuration {
 	public long getWorkerTimeoutMs(){
 		return Long.parseLong(System.getProperty("org.sagebionetworks.worker.thread.timout.ms"));
 	}
+	
+	@Override
+	public boolean useStreamingMigration(){
+		// This property is optional and defaults to false.
+		return Boolean.parseBoolean(System.getProperty("org.sagebionetworks.streaming.migration"));
+	}
 
 	
 }
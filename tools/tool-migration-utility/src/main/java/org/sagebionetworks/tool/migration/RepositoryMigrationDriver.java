@@ -6,11 +6,14 @@ import java.io.InputStreamReader;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,6 +22,7 @@ import org.sagebionetworks.repo.model.MigratableObjectData;
 import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
 import org.sagebionetworks.tool.migration.Progress.AggregateProgress;
 import org.sagebionetworks.tool.migration.Progress.BasicProgress;
+import org.sagebionetworks.tool.migration.dao.MigratableObjectIterator;
 import org.sagebionetworks.tool.migration.dao.MigrationQueryRunner;
 import org.sagebionetworks.tool.migration.job.AggregateResult;
 import org.sagebionetworks.tool.migration.job.BuilderResponse;
@@ -27,6 +31,7 @@ import org.sagebionetworks.tool.migration.job.DeleteJobBuilder;
 import org.sagebionetworks.tool.migration.job.Job;
 import org.sagebionetworks.tool.migration.job.JobQueueWorker;
 import org.sagebionetworks.tool.migration.job.JobUtil;
+import org.sagebionetworks.tool.migration.job.MergeJoinJobBuilder;
 import org.sagebionetworks.tool.migration.job.UpdateJobBuilder;
 
 /**
@@ -38,6 +43,15 @@ public class RepositoryMigrationDriver {
 
 	static private Log log = LogFactory.getLog(RepositoryMigrationDriver.class);
 	static private MigrationConfigurationImpl configuration = new MigrationConfigurationImpl();
+	
+	/**
+	 * The number of jobs that can wait on the queue for each thread.  When the queue is full
+	 * the diff waits for the workers to catch up.
+	 */
+	static private final int JOBS_QUEUED_PER_THREAD = 4;
+	static private final long MS_BETWEEN_PROGRESS_REPORTS = 2000;
+	static private final long MS_WAIT_FOR_JOBS = 100;
+	static private long lastDiffReport = 0;
 
 	/**
 	 * @param args
@@ -69,57 +83,53 @@ public class RepositoryMigrationDriver {
 			maxThreads = 2;
 		}
 		ExecutorService threadPool = Executors.newFixedThreadPool(maxThreads);
+		// The diff runs on its own thread so it cannot starve the workers of the pool.
+		ExecutorService diffThread = Executors.newSingleThreadExecutor();
 		// The JOB queue
-		Queue<Job> jobQueue = new ConcurrentLinkedQueue<Job>();
+		BlockingQueue<Job> jobQueue = new LinkedBlockingQueue<Job>(maxThreads*JOBS_QUEUED_PER_THREAD);
 		
 		// Start up the thread 
 		int entitesProcessed = 0;
 		int failedJobs = 0;
 		int successJobs = 0;
-		// There are three parts to this loop.
-		// 1. Get all entity data from both the source and destination.
-		// 2. Calculate what needs to be created, updated, or deleted and create a job for each.
-		// 3. Process all jobs on the queue.
+		// There are two parts to this loop, which run at the same time.
+		// 1. Stream the data of the source and destination, ordered by ID, and merge join them to find what
+		// needs to be created, updated, or deleted.  Each job is put on the queue as soon as its batch is full.
+		// 2. Process the jobs on the queue.
 		// Wash/rinse repeat.
 		long totalStart = System.currentTimeMillis();
 		while(true){
-			// 1. Get all entity data from both the source and destination.
+			// 1. Start the diff of the source and destination.
 			BasicProgress sourceProgress = new BasicProgress();
 			BasicProgress destProgress = new BasicProgress();
-			AllEntityDataWorker<MigratableObjectData> sourceQueryWorker = new AllEntityDataWorker<MigratableObjectData>(sourceQueryRunner, sourceProgress);
-			AllEntityDataWorker<MigratableObjectData> destQueryWorker = new AllEntityDataWorker<MigratableObjectData>(destQueryRunner, destProgress);
-			// Start both at the same time
-			Future<List<MigratableObjectData>> sourceFuture = threadPool.submit(sourceQueryWorker);
-			Future<List<MigratableObjectData>> destFuture = threadPool.submit(destQueryWorker);
-			// Wait for both to finish
-			log.info("Starting phase one: Gathering all data from the source and destination repository...");
-			while(!sourceFuture.isDone() || !destFuture.isDone()){
-				// Report on the progress.
-				log.info("     Source query: "+sourceProgress.getCurrentStatus());
-				log.info("Destination query: "+destProgress.getCurrentStatus());
-				Thread.sleep(2000);
-			}
-			
-			// Get the results
-			List<MigratableObjectData> sourceData = sourceFuture.get();
-			List<MigratableObjectData> destData = destFuture.get();
-			log.debug("Finished phase one.  Source entity count: "+sourceData.size()+". Destination entity Count: "+destData.size());
-			// Start phase 2
-			log.debug("Starting phase two: Calculating creates, updates, and deletes...");
-			populateQueue(threadPool, jobQueue, sourceData, destData, configuration.getMaximumBatchSize());
+			MigratableObjectIterator sourceIterator = new MigratableObjectIterator(sourceClient, /*queryForDependencies*/true, sourceProgress);
+			MigratableObjectIterator destIterator = new MigratableObjectIterator(destClient, /*queryForDependencies*/false, destProgress);
+			log.info("Starting the diff of the source and destination repository...");
+			Future<ResponseBundle> diffFuture = diffThread.submit(new MergeJoinJobBuilder(sourceIterator, destIterator, jobQueue, configuration.getMaximumBatchSize()));
 			
-			// 3. Process all jobs on the queue.
-			log.debug("Starting phase three: Processing the job queue...");
+			// 2. Process the jobs on the queue until the diff is done and the queue is empty.
 			AggregateProgress consumingProgress = new AggregateProgress();
-			Future<AggregateResult> consumFuture = consumeAllJobs(factory, threadPool, jobQueue, consumingProgress);
-			while(!consumFuture.isDone()){
-				log.info("Processing entities: "+consumingProgress.getCurrentStatus());
-				Thread.sleep(2000);
+			while(!diffFuture.isDone() || !jobQueue.isEmpty()){
+				if(jobQueue.isEmpty()){
+					// Wait for the diff to find some work.
+					if(!waitForDone(diffFuture, MS_WAIT_FOR_JOBS)){
+						logDiffProgress(sourceProgress, destProgress);
+					}
+					continue;
+				}
+				Future<AggregateResult> consumFuture = consumeAllJobs(factory, threadPool, jobQueue, consumingProgress);
+				// Wake up as soon as the jobs are done so the next ones can start right away.
+				while(!waitForDone(consumFuture, MS_BETWEEN_PROGRESS_REPORTS)){
+					logDiffProgress(sourceProgress, destProgress);
+					log.info("Processing entities: "+consumingProgress.getCurrentStatus());
+				}
+				AggregateResult result = consumFuture.get();
+				entitesProcessed += result.getTotalEntitesProcessed();
+				failedJobs += result.getFailedJobCount();
+				successJobs += result.getSuccessfulJobCount();
 			}
-			AggregateResult result = consumFuture.get();
-			entitesProcessed += result.getTotalEntitesProcessed();
-			failedJobs += result.getFailedJobCount();
-			successJobs += result.getSuccessfulJobCount();
+			ResponseBundle response = diffFuture.get();
+			log.info("Submitted "+response.getCreateResponse().getSubmittedToQueue()+" Entities to create queue.  There are "+response.getCreateResponse().getPendingDependencies()+" Entities pending dependency creations. Submitted "+response.getUpdateResponse().getSubmittedToQueue()+" updates to the queue. Submitted "+response.getDeleteResponse().getSubmittedToQueue()+" for delete.");
 			String format = "FAILED jobs: %1$-10d SUCCESSFUL jobs: %2$-10d total entities processed: %3$-10d";
 			log.info("Cleared the queue: "+String.format(format, failedJobs, successJobs, entitesProcessed));
 			// If there are any failures exist
@@ -130,6 +140,34 @@ public class RepositoryMigrationDriver {
 		
 	}
 
+	/**
+	 * Wait for a future to be done.
+	 * @param future
+	 * @param maxWaitMS
+	 * @return True as soon as the future is done, false if it is still running after the wait.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public static boolean waitForDone(Future<?> future, long maxWaitMS) throws InterruptedException, ExecutionException {
+		try {
+			future.get(maxWaitMS, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Report on the progress of the diff, at most once per reporting interval.
+	 */
+	private static void logDiffProgress(BasicProgress sourceProgress, BasicProgress destProgress) {
+		long now = System.currentTimeMillis();
+		if(now-lastDiffReport < MS_BETWEEN_PROGRESS_REPORTS) return;
+		lastDiffReport = now;
+		log.info("     Source query: "+sourceProgress.getCurrentStatus());
+		log.info("Destination query: "+destProgress.getCurrentStatus());
+	}
+
 	/**
 	 * Load the configuration using the passed args.
 	 * @param configuration 
@@ -0,0 +1,95 @@
+package org.sagebionetworks.tool.migration.dao;
+
+import static org.sagebionetworks.tool.migration.Constants.MS_BETWEEN_SYNPASE_CALLS;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.sagebionetworks.client.SynapseAdministration;
+import org.sagebionetworks.client.exceptions.SynapseServiceException;
+import org.sagebionetworks.repo.model.MigratableObjectData;
+import org.sagebionetworks.repo.model.PaginatedResults;
+import org.sagebionetworks.tool.migration.Progress.BasicProgress;
+
+/**
+ * Streams all of the migratable objects of a repository ordered by type and then by ID.
+ * Only one page is held in memory at a time, and each page starts after the last object
+ * of the previous page so the cost of a page does not grow as we move through the listing.
+ *
+ */
+public class MigratableObjectIterator implements Iterator<MigratableObjectData> {
+
+	private SynapseAdministration client;
+	private boolean queryForDependencies;
+	private BasicProgress progress;
+
+	private Iterator<MigratableObjectData> page = null;
+	private MigratableObjectData last = null;
+	private boolean done = false;
+
+	public MigratableObjectIterator(SynapseAdministration client, boolean queryForDependencies, BasicProgress progress) {
+		this.client = client;
+		this.queryForDependencies = queryForDependencies;
+		this.progress = progress;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (page!=null && page.hasNext()) return true;
+		if (done) return false;
+		fetchNextPage();
+		return page.hasNext();
+	}
+
+	@Override
+	public MigratableObjectData next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		last = page.next();
+		if (progress!=null) {
+			progress.setCurrent(progress.getCurrent()+1);
+		}
+		return last;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Fetch the page that follows the last object returned.
+	 */
+	private void fetchNextPage() {
+		try {
+			// Yield between queries
+			if (last!=null) Thread.sleep(MS_BETWEEN_SYNPASE_CALLS);
+			PaginatedResults<MigratableObjectData> results = null;
+			int retryCount = 0;
+			while (true) {
+				try {
+					results = client.getMigratableObjectsAfter(last==null ? null : last.getId(), MigrationQueryRunner.PAGE_SIZE, queryForDependencies);
+					break;
+				} catch (SynapseServiceException e) {
+					// will retry, unless we've hit the retry limit
+					if (retryCount>=MigrationQueryRunner.MAX_RETRIES-1) {
+						throw e;
+					}
+				}
+				Thread.sleep(1000L);
+				retryCount++;
+			}
+			if (progress!=null) {
+				progress.setTotal(results.getTotalNumberOfResults());
+			}
+			page = results.getResults().iterator();
+			if (results.getResults().size()<MigrationQueryRunner.PAGE_SIZE) {
+				done = true;
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
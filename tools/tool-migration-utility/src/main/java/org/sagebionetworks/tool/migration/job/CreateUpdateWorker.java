@@ -1,5 +1,9 @@
 package org.sagebionetworks.tool.migration.job;
 
+import static org.sagebionetworks.tool.migration.Constants.MS_DAEMON_STATUS_WAIT;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -69,7 +73,8 @@ public class CreateUpdateWorker implements Callable<WorkerResult> {
 			if(now-start > configuration.getWorkerTimeoutMs()){
 				throw new InterruptedException("Timed out waiting for the daemon to complete");
 			}
-			BackupRestoreStatus status = client.getDaemonStatus(daemonId);
+			// The call returns as soon as the daemon finishes, so there is no need to sleep between calls.
+			BackupRestoreStatus status = client.waitForDaemonStatus(daemonId, MS_DAEMON_STATUS_WAIT);
 			// Update the status
 			updateProgress(status, this.progress);
 			// Check to see if we failed.
@@ -83,8 +88,6 @@ public class CreateUpdateWorker implements Callable<WorkerResult> {
 			} else {
 				logStatus(status);
 			}
-			// Wait.
-			Thread.sleep(2000);
 		}
 	}
 
@@ -139,13 +142,41 @@ public class CreateUpdateWorker implements Callable<WorkerResult> {
 		}
 	}
 
+	/**
+	 * Stream the backup from the source directly into a restore of the destination.
+	 * The destination applies the backup as it arrives, so nothing is written to disk or S3.
+	 * @param submission
+	 * @return
+	 * @throws SynapseException
+	 * @throws JSONObjectAdapterException
+	 * @throws IOException
+	 */
+	public BackupRestoreStatus streamBackupToDestination(BackupSubmission submission)
+			throws SynapseException, JSONObjectAdapterException, IOException {
+		SynapseAdministration source = clientFactory.createNewSourceClient(configuration);
+		SynapseAdministration destination = clientFactory.createNewDestinationClient(configuration);
+		InputStream backup = source.getBackupStream(submission, type);
+		try {
+			BackupRestoreStatus status = destination.restoreFromStream(backup, type);
+			logStatus(status);
+			return status;
+		} finally {
+			backup.close();
+		}
+	}
+
 	@Override
 	public WorkerResult call() throws Exception {
 		try {
-			// First get a connection to the source
-			SynapseAdministration client = clientFactory.createNewSourceClient(configuration);
 			BackupSubmission sumbission = new BackupSubmission();
 			sumbission.setEntityIdsToBackup(this.entities);
+			if(configuration.useStreamingMigration()){
+				streamBackupToDestination(sumbission);
+				progress.setDone();
+				return new WorkerResult(this.entities.size(), WorkerResult.JobStatus.SUCCEEDED);
+			}
+			// First get a connection to the source
+			SynapseAdministration client = clientFactory.createNewSourceClient(configuration);
 			// Start a backup.
 			BackupRestoreStatus status = client.startBackupDaemon(sumbission, type);
 			// Wait for the backup to complete
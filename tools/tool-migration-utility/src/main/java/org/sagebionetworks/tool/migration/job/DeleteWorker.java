@@ -1,5 +1,7 @@
 package org.sagebionetworks.tool.migration.job;
 
+import static org.sagebionetworks.tool.migration.Constants.MS_BETWEEN_SYNPASE_CALLS;
+
 import java.net.SocketTimeoutException;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -68,7 +70,8 @@ public class DeleteWorker implements Callable<WorkerResult> {
 					}
 				}
 				progress.setCurrent(progress.getCurrent()+1);
-				Thread.sleep(1000);
+				// Each delete is synchronous so we only need to yield between calls.
+				Thread.sleep(MS_BETWEEN_SYNPASE_CALLS);
 			}
 			// done
 			progress.setDone();
@@ -0,0 +1,268 @@
+package org.sagebionetworks.tool.migration.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+import org.sagebionetworks.repo.model.MigratableObjectData;
+import org.sagebionetworks.repo.model.MigratableObjectDescriptor;
+import org.sagebionetworks.repo.model.MigratableObjectType;
+import org.sagebionetworks.tool.migration.ResponseBundle;
+import org.sagebionetworks.tool.migration.job.Job.Type;
+
+/**
+ * Builds the create, update, and delete jobs in a single pass over the source and destination
+ * listings.  Both listings must be ordered by type and then by ID, so the differences can be found
+ * with a merge join and each job is put on the queue as soon as its batch is full.  Neither listing
+ * is held in memory.  The only state that grows with the size of the repository is an index of the
+ * destination IDs used to check dependencies, which costs a long per object.
+ *
+ * A dependency is fulfilled when it is in the destination and is not being deleted.  When an object
+ * depends on something the destination listing has not reached yet, the object is deferred and checked
+ * again against the complete index once the join finishes.  Only objects with such forward dependencies
+ * are held until the end.  Objects whose dependencies are not in the destination at all are counted as
+ * pending and will be picked up in a future round, once the dependencies have been created.
+ *
+ */
+public class MergeJoinJobBuilder implements Callable<ResponseBundle> {
+
+	/**
+	 * The order of the types in the listings.  This must match the order of the DAOs of the
+	 * repository's dependency manager.
+	 */
+	public static final MigratableObjectType[] TYPE_ORDER = new MigratableObjectType[] {
+		MigratableObjectType.PRINCIPAL,
+		MigratableObjectType.ENTITY,
+		MigratableObjectType.ACCESSREQUIREMENT
+	};
+
+	private static final String SYNAPSE_ID_PREFIX = "syn";
+
+	private Iterator<MigratableObjectData> source;
+	private Iterator<MigratableObjectData> dest;
+	private BlockingQueue<Job> queue;
+	private int batchSize;
+
+	private Map<MigratableObjectType, SortedIdIndex> destIndex = new HashMap<MigratableObjectType, SortedIdIndex>();
+
+	/**
+	 *
+	 * @param source The source listing ordered by type and then by ID.
+	 * @param dest The destination listing ordered by type and then by ID.
+	 * @param queue Jobs are put on this queue as they are built.  When the queue is bounded the join waits for room.
+	 * @param batchSize
+	 */
+	public MergeJoinJobBuilder(Iterator<MigratableObjectData> source, Iterator<MigratableObjectData> dest, BlockingQueue<Job> queue, int batchSize) {
+		super();
+		this.source = source;
+		this.dest = dest;
+		this.queue = queue;
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public ResponseBundle call() throws Exception {
+		int createsSubmitted = 0;
+		int pendingCreates = 0;
+		int updatesSubmitted = 0;
+		int deletesSubmitted = 0;
+		Map<MigratableObjectType, Set<String>> batchesToCreate = new HashMap<MigratableObjectType, Set<String>>();
+		Map<MigratableObjectType, Set<String>> batchesToUpdate = new HashMap<MigratableObjectType, Set<String>>();
+		Map<MigratableObjectType, Set<String>> batchesToDelete = new HashMap<MigratableObjectType, Set<String>>();
+		List<MigratableObjectData> deferredCreates = new ArrayList<MigratableObjectData>();
+		List<MigratableObjectData> deferredUpdates = new ArrayList<MigratableObjectData>();
+
+		MigratableObjectData sourceObject = next(source, null);
+		MigratableObjectData destObject = next(dest, null);
+		while (sourceObject!=null || destObject!=null) {
+			int compare;
+			if (sourceObject==null) {
+				compare = 1;
+			} else if (destObject==null) {
+				compare = -1;
+			} else {
+				compare = compare(sourceObject.getId(), destObject.getId());
+			}
+			if (compare<0) {
+				// Only in the source so it must be created once its dependencies are in place.
+				Boolean fulfilled = dependenciesFulfilled(sourceObject, destObject);
+				if (fulfilled==null) {
+					deferredCreates.add(sourceObject);
+				} else if (fulfilled) {
+					addToBatch(batchesToCreate, sourceObject.getId(), Type.CREATE);
+					createsSubmitted++;
+				} else {
+					// This will get picked up in a future round.
+					pendingCreates++;
+				}
+				sourceObject = next(source, sourceObject);
+			} else if (compare>0) {
+				// Only in the destination so it must be deleted.
+				addToBatch(batchesToDelete, destObject.getId(), Type.DELETE);
+				deletesSubmitted++;
+				destObject = next(dest, destObject);
+			} else {
+				// In both, so it needs an update if the eTags do not match.
+				addToIndex(destObject.getId());
+				MigratableObjectData nextDest = next(dest, destObject);
+				if (!sourceObject.getEtag().equals(destObject.getEtag())) {
+					Boolean fulfilled = dependenciesFulfilled(sourceObject, nextDest);
+					if (fulfilled==null) {
+						deferredUpdates.add(sourceObject);
+					} else if (fulfilled) {
+						addToBatch(batchesToUpdate, sourceObject.getId(), Type.UPDATE);
+						updatesSubmitted++;
+					}
+				}
+				sourceObject = next(source, sourceObject);
+				destObject = nextDest;
+			}
+		}
+		// The index is now complete so the deferred objects can be decided.
+		for (MigratableObjectData deferred : deferredCreates) {
+			if (dependenciesFulfilled(deferred, null)) {
+				addToBatch(batchesToCreate, deferred.getId(), Type.CREATE);
+				createsSubmitted++;
+			} else {
+				pendingCreates++;
+			}
+		}
+		for (MigratableObjectData deferred : deferredUpdates) {
+			if (dependenciesFulfilled(deferred, null)) {
+				addToBatch(batchesToUpdate, deferred.getId(), Type.UPDATE);
+				updatesSubmitted++;
+			}
+		}
+		// Submit any batches left over
+		submitAll(batchesToCreate, Type.CREATE);
+		submitAll(batchesToUpdate, Type.UPDATE);
+		submitAll(batchesToDelete, Type.DELETE);
+		// Report the results.
+		return new ResponseBundle(new BuilderResponse(createsSubmitted, pendingCreates), new BuilderResponse(updatesSubmitted, 0), new BuilderResponse(deletesSubmitted, 0));
+	}
+
+	/**
+	 * Get the next object of a listing, making sure the listing is in order.
+	 * @param listing
+	 * @param previous
+	 * @return null when the listing is exhausted.
+	 */
+	private static MigratableObjectData next(Iterator<MigratableObjectData> listing, MigratableObjectData previous) {
+		if (!listing.hasNext()) return null;
+		MigratableObjectData next = listing.next();
+		if (previous!=null && compare(previous.getId(), next.getId())>=0) {
+			throw new IllegalStateException("Listing is out of order: "+next.getId()+" follows "+previous.getId());
+		}
+		return next;
+	}
+
+	private void addToBatch(Map<MigratableObjectType, Set<String>> batches, MigratableObjectDescriptor id, Type jobType) throws InterruptedException {
+		Set<String> batch = batches.get(id.getType());
+		if (batch==null) {
+			batch = new HashSet<String>();
+			batches.put(id.getType(), batch);
+		}
+		batch.add(id.getId());
+		if (batch.size() >= this.batchSize) {
+			this.queue.put(new Job(batch, id.getType(), jobType));
+			batches.remove(id.getType());
+		}
+	}
+
+	private void submitAll(Map<MigratableObjectType, Set<String>> batches, Type jobType) throws InterruptedException {
+		for (MigratableObjectType objectType : batches.keySet()) {
+			Set<String> batch = batches.get(objectType);
+			if (!batch.isEmpty()) {
+				this.queue.put(new Job(batch, objectType, jobType));
+			}
+		}
+		batches.clear();
+	}
+
+	private void addToIndex(MigratableObjectDescriptor id) {
+		SortedIdIndex index = destIndex.get(id.getType());
+		if (index==null) {
+			index = new SortedIdIndex();
+			destIndex.put(id.getType(), index);
+		}
+		index.add(parseId(id.getId()));
+	}
+
+	/**
+	 * Check the dependencies of an object against the destination IDs indexed so far.
+	 * @param objectToMigrate
+	 * @param destPosition The next object of the destination listing, or null once the listing is exhausted.
+	 * @return true when every dependency is in the destination, false when one is not, or null when a
+	 * dependency the destination listing has not reached yet is needed to decide.
+	 */
+	private Boolean dependenciesFulfilled(MigratableObjectData objectToMigrate, MigratableObjectData destPosition) {
+		boolean undecided = false;
+		for (MigratableObjectDescriptor dependency : objectToMigrate.getDependencies()) {
+			SortedIdIndex index = destIndex.get(dependency.getType());
+			if (index!=null && index.contains(parseId(dependency.getId()))) continue;
+			if (destPosition!=null && compare(dependency, destPosition.getId())>=0) {
+				// Not reached yet, so it may still be in the destination.
+				undecided = true;
+			} else {
+				return false;
+			}
+		}
+		return undecided ? null : Boolean.TRUE;
+	}
+
+	/**
+	 * Compare two objects by type and then by ID, the order of the listings.
+	 * @param one
+	 * @param two
+	 * @return
+	 */
+	public static int compare(MigratableObjectDescriptor one, MigratableObjectDescriptor two) {
+		int typeCompare = typeOrder(one.getType())-typeOrder(two.getType());
+		if (typeCompare!=0) return typeCompare;
+		long oneId = parseId(one.getId());
+		long twoId = parseId(two.getId());
+		return oneId<twoId ? -1 : (oneId==twoId ? 0 : 1);
+	}
+
+	private static int typeOrder(MigratableObjectType type) {
+		for (int i=0; i<TYPE_ORDER.length; i++) {
+			if (TYPE_ORDER[i]==type) return i;
+		}
+		throw new IllegalArgumentException("Unknown type: "+type);
+	}
+
+	private static long parseId(String id) {
+		if (id.startsWith(SYNAPSE_ID_PREFIX)) {
+			id = id.substring(SYNAPSE_ID_PREFIX.length());
+		}
+		return Long.parseLong(id);
+	}
+
+	/**
+	 * The IDs of one type seen in the destination.  The IDs arrive in order so appending keeps them sorted.
+	 */
+	private static class SortedIdIndex {
+
+		private long[] ids = new long[1024];
+		private int size = 0;
+
+		void add(long id) {
+			if (size==ids.length) {
+				ids = Arrays.copyOf(ids, size*2);
+			}
+			ids[size++] = id;
+		}
+
+		boolean contains(long id) {
+			return Arrays.binarySearch(ids, 0, size, id)>=0;
+		}
+	}
+
+}
@@ -193,6 +193,12 @@ public class SearchUpdaterConfigurationImpl implements Configuration {
 				.getProperty("org.sagebionetworks.worker.thread.timout.ms"));
 	}
 
+	@Override
+	public boolean useStreamingMigration() {
+		// The search updater does not migrate.
+		return false;
+	}
+
 	/**
 	 * When true, all search documents will be updated even if they are already up-to-date.
 	 * @return
@@ -1,5 +1,7 @@
 package org.sagebionetworks.tool.searchupdater.job;
 
+import static org.sagebionetworks.tool.migration.Constants.MS_DAEMON_STATUS_WAIT;
+
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -74,7 +76,8 @@ public class SearchDocumentAddWorker implements Callable<WorkerResult> {
 				throw new InterruptedException(
 						"Timed out waiting for the daemon to complete");
 			}
-			BackupRestoreStatus status = client.getDaemonStatus(daemonId);
+			// The call returns as soon as the daemon finishes, so there is no need to sleep between calls.
+			BackupRestoreStatus status = client.waitForDaemonStatus(daemonId, MS_DAEMON_STATUS_WAIT);
 			// Check to see if we failed.
 			if (DaemonStatus.FAILED == status.getStatus()) {
 				throw new InterruptedException("Failed: " + status.getType()
@@ -87,8 +90,6 @@ public class SearchDocumentAddWorker implements Callable<WorkerResult> {
 				return status;
 			}
 			logStatus(status);
-			// Wait.
-			Thread.sleep(2000);
 		}
 	}
 
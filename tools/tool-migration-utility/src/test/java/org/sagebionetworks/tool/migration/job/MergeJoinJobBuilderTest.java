@@ -0,0 +1,137 @@
+package org.sagebionetworks.tool.migration.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.MigratableObjectData;
+import org.sagebionetworks.repo.model.MigratableObjectType;
+import org.sagebionetworks.tool.migration.ResponseBundle;
+import org.sagebionetworks.tool.migration.job.Job.Type;
+
+public class MergeJoinJobBuilderTest {
+
+	List<MigratableObjectData> source;
+	BlockingQueue<Job> jobQueue;
+
+	@Before
+	public void before(){
+		source = new ArrayList<MigratableObjectData>();
+		// A principal
+		source.add(XestUtil.createMigratableObjectData("1", "0", null, MigratableObjectType.PRINCIPAL));
+		// A root with a few children
+		source.add(XestUtil.createMigratableObjectData("syn1", "0", null));
+		source.add(XestUtil.createMigratableObjectData("syn2", "0", "syn1"));
+		source.add(XestUtil.createMigratableObjectData("syn3", "0", "syn1"));
+		source.add(XestUtil.createMigratableObjectData("syn10", "0", "syn2"));
+		// An access requirement
+		source.add(XestUtil.createMigratableObjectData("1", "0", null, MigratableObjectType.ACCESSREQUIREMENT));
+		jobQueue = new LinkedBlockingQueue<Job>();
+	}
+
+	private Set<String> collectIds(Type jobType, MigratableObjectType objectType){
+		Set<String> ids = new HashSet<String>();
+		for(Job job: jobQueue){
+			if(job.getJobType() == jobType && job.getObjectType() == objectType){
+				ids.addAll(job.getObjectIds());
+			}
+		}
+		return ids;
+	}
+
+	@Test
+	public void testDestinationEmpty() throws Exception{
+		List<MigratableObjectData> dest = new ArrayList<MigratableObjectData>();
+		MergeJoinJobBuilder builder = new MergeJoinJobBuilder(source.iterator(), dest.iterator(), jobQueue, 5);
+		ResponseBundle response = builder.call();
+		// Only the objects without dependencies can be created
+		assertEquals(3, response.getCreateResponse().getSubmittedToQueue());
+		assertEquals(3, response.getCreateResponse().getPendingDependencies());
+		assertEquals(0, response.getUpdateResponse().getSubmittedToQueue());
+		assertEquals(0, response.getDeleteResponse().getSubmittedToQueue());
+		assertEquals(3, jobQueue.size());
+		assertTrue(collectIds(Type.CREATE, MigratableObjectType.ENTITY).contains("syn1"));
+		assertTrue(collectIds(Type.CREATE, MigratableObjectType.PRINCIPAL).contains("1"));
+		assertTrue(collectIds(Type.CREATE, MigratableObjectType.ACCESSREQUIREMENT).contains("1"));
+	}
+
+	@Test
+	public void testCreateUpdateDelete() throws Exception{
+		List<MigratableObjectData> dest = new ArrayList<MigratableObjectData>();
+		// The principal and root are in the destination, but the root is out of date.
+		dest.add(XestUtil.cloneMigratableObjectData(source.get(0)));
+		MigratableObjectData root = XestUtil.cloneMigratableObjectData(source.get(1));
+		root.setEtag("1");
+		dest.add(root);
+		// Something that has since been deleted from the source.
+		dest.add(XestUtil.createMigratableObjectData("syn5", "0", "syn1"));
+		MergeJoinJobBuilder builder = new MergeJoinJobBuilder(source.iterator(), dest.iterator(), jobQueue, 1);
+		ResponseBundle response = builder.call();
+		// syn2, syn3, and the access requirement can be created.  syn10 waits for syn2.
+		assertEquals(3, response.getCreateResponse().getSubmittedToQueue());
+		assertEquals(1, response.getCreateResponse().getPendingDependencies());
+		assertEquals(1, response.getUpdateResponse().getSubmittedToQueue());
+		assertEquals(1, response.getDeleteResponse().getSubmittedToQueue());
+		// A batch size of one means one job per object.
+		assertEquals(5, jobQueue.size());
+		Set<String> created = collectIds(Type.CREATE, MigratableObjectType.ENTITY);
+		assertEquals(2, created.size());
+		assertTrue(created.contains("syn2"));
+		assertTrue(created.contains("syn3"));
+		assertTrue(collectIds(Type.UPDATE, MigratableObjectType.ENTITY).contains("syn1"));
+		assertTrue(collectIds(Type.DELETE, MigratableObjectType.ENTITY).contains("syn5"));
+	}
+
+	@Test
+	public void testForwardDependency() throws Exception{
+		// Objects that depend on something with a higher ID, which the join has not reached yet.
+		List<MigratableObjectData> forward = new ArrayList<MigratableObjectData>();
+		forward.add(XestUtil.createMigratableObjectData("syn1", "0", "syn20"));
+		forward.add(XestUtil.createMigratableObjectData("syn2", "0", "syn20"));
+		forward.add(XestUtil.createMigratableObjectData("syn3", "0", "syn30"));
+		forward.add(XestUtil.createMigratableObjectData("syn20", "0", null));
+		List<MigratableObjectData> dest = new ArrayList<MigratableObjectData>();
+		// syn1 is out of date and syn20 is in the destination, syn30 is not.
+		MigratableObjectData stale = XestUtil.cloneMigratableObjectData(forward.get(0));
+		stale.setEtag("1");
+		dest.add(stale);
+		dest.add(XestUtil.cloneMigratableObjectData(forward.get(3)));
+		MergeJoinJobBuilder builder = new MergeJoinJobBuilder(forward.iterator(), dest.iterator(), jobQueue, 5);
+		ResponseBundle response = builder.call();
+		assertEquals(1, response.getCreateResponse().getSubmittedToQueue());
+		assertEquals(1, response.getCreateResponse().getPendingDependencies());
+		assertEquals(1, response.getUpdateResponse().getSubmittedToQueue());
+		assertTrue(collectIds(Type.CREATE, MigratableObjectType.ENTITY).contains("syn2"));
+		assertTrue(collectIds(Type.UPDATE, MigratableObjectType.ENTITY).contains("syn1"));
+	}
+
+	@Test
+	public void testInSync() throws Exception{
+		List<MigratableObjectData> dest = new ArrayList<MigratableObjectData>();
+		for(MigratableObjectData data: source){
+			dest.add(XestUtil.cloneMigratableObjectData(data));
+		}
+		MergeJoinJobBuilder builder = new MergeJoinJobBuilder(source.iterator(), dest.iterator(), jobQueue, 5);
+		ResponseBundle response = builder.call();
+		assertEquals(0, response.getCreateResponse().getSubmittedToQueue());
+		assertEquals(0, response.getUpdateResponse().getSubmittedToQueue());
+		assertEquals(0, response.getDeleteResponse().getSubmittedToQueue());
+		assertEquals(0, jobQueue.size());
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void testOutOfOrder() throws Exception{
+		// IDs are compared as numbers so syn10 cannot come before syn1.
+		source.add(1, XestUtil.createMigratableObjectData("syn10", "0", null));
+		MergeJoinJobBuilder builder = new MergeJoinJobBuilder(source.iterator(), new ArrayList<MigratableObjectData>().iterator(), jobQueue, 5);
+		builder.call();
+	}
+}